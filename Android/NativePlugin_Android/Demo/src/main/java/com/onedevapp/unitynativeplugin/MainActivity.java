@@ -7,7 +7,6 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
-import android.util.Base64;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageView;
@@ -85,23 +84,27 @@ public class MainActivity extends FragmentActivity
             @Override
             public void onClick(View v) {
                /* ImagePickerManager.Builder(MainActivity.this)
-                        .handler(new OnImagePickerListener() {
+                        .handler(new OnImageSelectedListener() {
                             @Override
-                            public void onImageSelected(String imageDetails) {
+                            public void onImageSelected(boolean status, String message, int errorCode) {
 
                                 try {
-                                    JSONObject jso = new  JSONObject(imageDetails);
-                                    boolean status = jso.getBoolean("status");
                                     if(status){
-                                        String imageBase64 = jso.getString("imageBase64");
+                                        JSONObject jso = new  JSONObject(message);
+                                        int transferId = jso.getInt("transferId");
+                                        byte[] imageBytes = new byte[jso.getInt("transferSize")];
+                                        //pull the encoded image in chunks, the native buffer is freed with the last one
+                                        for (int offset = 0; offset < imageBytes.length; offset += 64 * 1024) {
+                                            byte[] chunk = ImagePickerManager.getTransferChunkBytes(transferId, offset, 64 * 1024);
+                                            System.arraycopy(chunk, 0, imageBytes, offset, chunk.length);
+                                            ImagePickerManager.acknowledgeTransferChunk(transferId, offset, chunk.length);
+                                        }
                                         ImageView image = (ImageView) findViewById(R.id.imageViewProfilePic);
-
-                                        byte[] decodedString = Base64.decode(imageBase64, Base64.DEFAULT);
-                                        Bitmap decodedByte = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
+                                        Bitmap decodedByte = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length);
                                         image.setImageBitmap(decodedByte);
                                         fileUri = Uri.parse(jso.getString("uri"));
                                     }else{
-                                        Log.v(TAG, jso.getString("message"));
+                                        Log.v(TAG, message);
                                     }
                                 } catch (JSONException e) {
                                     Log.v(TAG, e.toString());
@@ -109,6 +112,7 @@ public class MainActivity extends FragmentActivity
                             }
                         })
                         .setPickerType(0)
+                        .setResultMode(2)
                         .openImagePicker();*/
 
             }
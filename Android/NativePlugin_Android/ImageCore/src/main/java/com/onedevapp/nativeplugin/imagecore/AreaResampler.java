@@ -0,0 +1,264 @@
+package com.onedevapp.nativeplugin.imagecore;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * AreaResampler downscales ARGB pixels to an exact size with an area-average filter:
+ * every target pixel is the coverage weighted average of the source pixels under it, so large ratios don't alias.
+ * Weights are computed once per size pair, and rows can be resampled in independent bands on several threads.
+ * Colors are averaged premultiplied by alpha, so transparent pixels don't bleed into their neighbours.
+ */
+public final class AreaResampler {
+
+    // region Declarations
+    //bands are not split below this many target rows
+    private static final int MIN_BAND_ROWS = 16;
+    //accumulator of one target row per thread, grown as needed and kept between calls
+    private static final ThreadLocal<float[]> sScratch = new ThreadLocal<>();
+
+    private final int mSourceWidth;
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+    private final Contributions mColumns;
+    private final Contributions mRows;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Prepare the filter weights of a size pair
+     *
+     * @param sourceWidth  width of the source
+     * @param sourceHeight height of the source
+     * @param targetWidth  width of the target, at most the source width
+     * @param targetHeight height of the target, at most the source height
+     */
+    public AreaResampler(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0 || targetWidth > sourceWidth || targetHeight > sourceHeight)
+            throw new IllegalArgumentException("Can't downscale " + sourceWidth + "x" + sourceHeight + " to " + targetWidth + "x" + targetHeight);
+        this.mSourceWidth = sourceWidth;
+        this.mTargetWidth = targetWidth;
+        this.mTargetHeight = targetHeight;
+        this.mColumns = new Contributions(sourceWidth, targetWidth);
+        this.mRows = new Contributions(sourceHeight, targetHeight);
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Width of the target
+     */
+    public int getTargetWidth() {
+        return mTargetWidth;
+    }
+
+    /**
+     * Height of the target
+     */
+    public int getTargetHeight() {
+        return mTargetHeight;
+    }
+
+    /**
+     * First source row read by a target row
+     *
+     * @param targetRow target row
+     * @return source row
+     */
+    public int getSourceRowStart(int targetRow) {
+        return mRows.mStarts[targetRow];
+    }
+
+    /**
+     * Source row after the last one read by a target row
+     *
+     * @param targetRow target row
+     * @return source row
+     */
+    public int getSourceRowEnd(int targetRow) {
+        return mRows.mStarts[targetRow] + mRows.mCounts[targetRow];
+    }
+
+    /**
+     * Resample every target row on the calling thread
+     *
+     * @param source ARGB source pixels, row by row
+     * @param target ARGB target pixels, row by row
+     */
+    public void resample(int[] source, int[] target) {
+        resampleRows(source, target, 0, mTargetHeight);
+    }
+
+    /**
+     * Resample the target in row bands on the pool, the calling thread waits and helps until every band is done
+     *
+     * @param source ARGB source pixels, row by row
+     * @param target ARGB target pixels, row by row
+     * @param pool   pool running the bands
+     */
+    public void resample(int[] source, int[] target, ForkJoinPool pool) {
+        int bandRows = Math.max(MIN_BAND_ROWS, mTargetHeight / (pool.getParallelism() * 4));
+        pool.invoke(new Band(this, source, target, 0, mTargetHeight, bandRows));
+    }
+
+    /**
+     * Resample a band of target rows, bands don't share any state so they can run in parallel
+     *
+     * @param source   ARGB source pixels, row by row
+     * @param target   ARGB target pixels, row by row
+     * @param rowStart first target row of the band
+     * @param rowEnd   target row after the band
+     */
+    public void resampleRows(int[] source, int[] target, int rowStart, int rowEnd) {
+        resampleRows(source, 0, target, 0, rowStart, rowEnd);
+    }
+
+    /**
+     * Resample a band of target rows from and into partial buffers, so only the rows of the band are held at once.
+     * The source buffer must hold the rows from {@link #getSourceRowStart(int)} of rowStart to {@link #getSourceRowEnd(int)} of rowEnd - 1
+     *
+     * @param source         ARGB source pixels, row by row, starting at sourceFirstRow
+     * @param sourceFirstRow source row held at the start of the source buffer
+     * @param target         ARGB target pixels, row by row, starting at targetFirstRow
+     * @param targetFirstRow target row held at the start of the target buffer
+     * @param rowStart       first target row of the band
+     * @param rowEnd         target row after the band
+     */
+    public void resampleRows(int[] source, int sourceFirstRow, int[] target, int targetFirstRow, int rowStart, int rowEnd) {
+        float[] accumulator = getScratch(mTargetWidth * 4);
+        int[] columnStarts = mColumns.mStarts;
+        int[] columnCounts = mColumns.mCounts;
+        float[] columnWeights = mColumns.mWeights;
+        int columnStride = mColumns.mStride;
+
+        for (int y = rowStart; y < rowEnd; y++) {
+            for (int i = 0; i < mTargetWidth * 4; i++) accumulator[i] = 0f;
+
+            int firstRow = mRows.mStarts[y];
+            for (int r = 0; r < mRows.mCounts[y]; r++) {
+                float rowWeight = mRows.mWeights[y * mRows.mStride + r];
+                int sourceOffset = (firstRow + r - sourceFirstRow) * mSourceWidth;
+
+                for (int x = 0; x < mTargetWidth; x++) {
+                    float alpha = 0f, red = 0f, green = 0f, blue = 0f;
+                    int start = sourceOffset + columnStarts[x];
+                    int weightOffset = x * columnStride;
+                    for (int c = 0; c < columnCounts[x]; c++) {
+                        int pixel = source[start + c];
+                        float a = (pixel >>> 24) * columnWeights[weightOffset + c];
+                        alpha += a;
+                        red += ((pixel >> 16) & 0xFF) * a;
+                        green += ((pixel >> 8) & 0xFF) * a;
+                        blue += (pixel & 0xFF) * a;
+                    }
+                    int index = x * 4;
+                    accumulator[index] += alpha * rowWeight;
+                    accumulator[index + 1] += red * rowWeight;
+                    accumulator[index + 2] += green * rowWeight;
+                    accumulator[index + 3] += blue * rowWeight;
+                }
+            }
+
+            int targetOffset = (y - targetFirstRow) * mTargetWidth;
+            for (int x = 0; x < mTargetWidth; x++) {
+                int index = x * 4;
+                float alpha = accumulator[index];
+                if (alpha <= 0f) {
+                    target[targetOffset + x] = 0;
+                    continue;
+                }
+                target[targetOffset + x] = (clamp(alpha) << 24) | (clamp(accumulator[index + 1] / alpha) << 16)
+                        | (clamp(accumulator[index + 2] / alpha) << 8) | clamp(accumulator[index + 3] / alpha);
+            }
+        }
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Returns the accumulator of the calling thread, at least the given size
+     */
+    private static float[] getScratch(int size) {
+        float[] scratch = sScratch.get();
+        if (scratch == null || scratch.length < size) {
+            scratch = new float[size];
+            sScratch.set(scratch);
+        }
+        return scratch;
+    }
+
+    private static int clamp(float value) {
+        int rounded = (int) (value + 0.5f);
+        return rounded < 0 ? 0 : (rounded > 255 ? 255 : rounded);
+    }
+    //endregion
+
+    /**
+     * Source span and coverage weights of every target index along one axis
+     */
+    private static final class Contributions {
+        private final int[] mStarts;
+        private final int[] mCounts;
+        private final float[] mWeights;   //mStride weights per target index
+        private final int mStride;
+
+        private Contributions(int sourceSize, int targetSize) {
+            double scale = (double) sourceSize / targetSize;
+            mStride = (int) Math.ceil(scale) + 1;
+            mStarts = new int[targetSize];
+            mCounts = new int[targetSize];
+            mWeights = new float[targetSize * mStride];
+
+            for (int i = 0; i < targetSize; i++) {
+                double begin = i * scale;
+                double end = Math.min(sourceSize, (i + 1) * scale);
+                int first = (int) Math.floor(begin);
+                int last = Math.min(sourceSize - 1, (int) Math.ceil(end) - 1);
+                mStarts[i] = first;
+                mCounts[i] = last - first + 1;
+                for (int s = first; s <= last; s++) {
+                    //part of the source pixel covered by the target pixel
+                    double coverage = Math.min(end, s + 1) - Math.max(begin, s);
+                    mWeights[i * mStride + (s - first)] = (float) (coverage / scale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Target rows split in halves until they are small enough to resample directly
+     */
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final AreaResampler mResampler;
+        private final int[] mSource;
+        private final int[] mTarget;
+        private final int mRowStart;
+        private final int mRowEnd;
+        private final int mBandRows;
+
+        private Band(AreaResampler resampler, int[] source, int[] target, int rowStart, int rowEnd, int bandRows) {
+            this.mResampler = resampler;
+            this.mSource = source;
+            this.mTarget = target;
+            this.mRowStart = rowStart;
+            this.mRowEnd = rowEnd;
+            this.mBandRows = bandRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (mRowEnd - mRowStart <= mBandRows) {
+                mResampler.resampleRows(mSource, mTarget, mRowStart, mRowEnd);
+                return;
+            }
+            int middle = (mRowStart + mRowEnd) >>> 1;
+            invokeAll(new Band(mResampler, mSource, mTarget, mRowStart, middle, mBandRows),
+                    new Band(mResampler, mSource, mTarget, middle, mRowEnd, mBandRows));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.onedevapp.nativeplugin.imagecore;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Backend of the image pipeline, it owns the pixels while {@link ImagePipeline} makes the size and orientation decisions.
+ * Android uses Bitmap, {@link RasterCodec} is the pure java backend used on the JVM.
+ *
+ * @param <I> image type of the backend
+ */
+public interface ImageCodec<I> {
+
+    /**
+     * Decode the stream, reduced by the sample size
+     *
+     * @param inputStream stream positioned at the start of the image
+     * @param width       width of the source, as read from its header
+     * @param height      height of the source, as read from its header
+     * @param sampleSize  power of 2 reduction applied while decoding
+     * @return decoded image
+     * @throws IOException if the image can't be decoded
+     */
+    I decode(InputStream inputStream, int width, int height, int sampleSize) throws IOException;
+
+    /**
+     * Width of the image in pixels
+     */
+    int getWidth(I image);
+
+    /**
+     * Height of the image in pixels
+     */
+    int getHeight(I image);
+
+    /**
+     * Rotate the image clockwise then scale it to the target size, into a new image
+     *
+     * @param image        source image, left untouched
+     * @param degrees      0, 90, 180 or 270
+     * @param targetWidth  width of the result
+     * @param targetHeight height of the result
+     * @return transformed image
+     */
+    I transform(I image, int degrees, int targetWidth, int targetHeight);
+
+    /**
+     * Release an image which is no longer used
+     */
+    void release(I image);
+}
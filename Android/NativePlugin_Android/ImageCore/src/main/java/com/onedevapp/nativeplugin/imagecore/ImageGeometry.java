@@ -0,0 +1,137 @@
+package com.onedevapp.nativeplugin.imagecore;
+
+/**
+ * ImageGeometry holds the size and orientation decisions of the image pipeline.
+ * It only works on numbers, so the same decisions are made on Android and in JVM benchmarks.
+ */
+public final class ImageGeometry {
+
+    // region Declarations
+    //exif orientation values
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+    //endregion
+
+    private ImageGeometry() {
+
+    }
+
+    /**
+     * Largest power of 2 sample size which keeps both width and height larger than the requested ones
+     *
+     * @param width     width of the source
+     * @param height    height of the source
+     * @param reqWidth  width to compress image
+     * @param reqHeight height to compress image
+     * @return SampleSize in int
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if (height > reqHeight || width > reqWidth) {
+
+            final int halfHeight = height / 2;
+            final int halfWidth = width / 2;
+
+            // Calculate the largest inSampleSize value that is a power of 2 and keeps both
+            // height and width larger than the requested height and width.
+            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * Size of the image once scaled to fit in the requested size, images are never enlarged
+     *
+     * @param width     width of the image
+     * @param height    height of the image
+     * @param reqWidth  max width
+     * @param reqHeight max height
+     * @return target width and height
+     */
+    public static int[] calculateTargetSize(int width, int height, int reqWidth, int reqHeight) {
+        float scale = Math.min(1f, Math.min((float) reqWidth / width, (float) reqHeight / height));
+        return new int[]{Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale))};
+    }
+
+    /**
+     * Scale used by ImageCompressor.compressToBitmap(Bitmap), which compares the requested height
+     * to the width and the requested width to the height
+     *
+     * @param width     width of the image
+     * @param height    height of the image
+     * @param reqWidth  width to compress image
+     * @param reqHeight height to compress image
+     * @return scale factor
+     */
+    public static float calculateBitmapScale(int width, int height, int reqWidth, int reqHeight) {
+        return Math.min(((float) reqHeight / width), ((float) reqWidth / height));
+    }
+
+    /**
+     * Clockwise rotation needed to display an image with the exif orientation upright
+     *
+     * @param orientation exif orientation
+     * @return 0, 90, 180 or 270
+     */
+    public static int getRotationDegrees(int orientation) {
+        if (orientation == ORIENTATION_ROTATE_90) return 90;
+        if (orientation == ORIENTATION_ROTATE_180) return 180;
+        if (orientation == ORIENTATION_ROTATE_270) return 270;
+        return 0;
+    }
+
+    /**
+     * Clockwise rotation to display the stored pixels of any exif orientation upright.
+     * Mirrored orientations are rotated first, then mirrored horizontally, see {@link #isMirrored(int)}
+     *
+     * @param orientation exif orientation
+     * @return 0, 90, 180 or 270
+     */
+    public static int getDisplayRotationDegrees(int orientation) {
+        switch (orientation) {
+            case ORIENTATION_ROTATE_90:
+            case ORIENTATION_TRANSPOSE:
+                return 90;
+            case ORIENTATION_ROTATE_180:
+            case ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ORIENTATION_ROTATE_270:
+            case ORIENTATION_TRANSVERSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Whether the stored pixels are mirrored horizontally once rotated by {@link #getDisplayRotationDegrees(int)}
+     *
+     * @param orientation exif orientation
+     * @return true for the flip, transpose and transverse orientations
+     */
+    public static boolean isMirrored(int orientation) {
+        return orientation == ORIENTATION_FLIP_HORIZONTAL || orientation == ORIENTATION_FLIP_VERTICAL
+                || orientation == ORIENTATION_TRANSPOSE || orientation == ORIENTATION_TRANSVERSE;
+    }
+
+    /**
+     * Whether the rotation swaps width and height
+     *
+     * @param degrees rotation in degrees
+     * @return true for 90 and 270
+     */
+    public static boolean isSwapped(int degrees) {
+        return degrees == 90 || degrees == 270;
+    }
+}
@@ -0,0 +1,96 @@
+package com.onedevapp.nativeplugin.imagecore;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ImagePipeline decodes an image to fit a requested size with any {@link ImageCodec}:
+ * the sample size is applied while decoding, then rotation and the remaining scale in a single transform.
+ */
+public final class ImagePipeline {
+
+    private ImagePipeline() {
+
+    }
+
+    /**
+     * Decode the image upright, fitting in reqWidth x reqHeight
+     *
+     * @param codec       backend owning the pixels
+     * @param inputStream stream positioned at the start of the image
+     * @param width       width of the source, as read from its header
+     * @param height      height of the source, as read from its header
+     * @param orientation exif orientation of the source
+     * @param reqWidth    max width of the result
+     * @param reqHeight   max height of the result
+     * @param <I>         image type of the backend
+     * @return upright image which fits the requested size
+     * @throws IOException if the image can't be decoded
+     */
+    public static <I> I decodeToFit(ImageCodec<I> codec, InputStream inputStream, int width, int height, int orientation,
+                                    int reqWidth, int reqHeight) throws IOException {
+        boolean swapped = ImageGeometry.isSwapped(ImageGeometry.getRotationDegrees(orientation));
+        // Calculate inSampleSize against the stored orientation
+        int sampleSize = swapped ? ImageGeometry.calculateInSampleSize(width, height, reqHeight, reqWidth)
+                : ImageGeometry.calculateInSampleSize(width, height, reqWidth, reqHeight);
+        return decodeToFit(codec, inputStream, width, height, orientation, reqWidth, reqHeight, sampleSize);
+    }
+
+    /**
+     * Decode the image upright with a given sample size, fitting in reqWidth x reqHeight.
+     * A sample size larger than needed gives a result smaller than requested, it is never enlarged
+     *
+     * @param codec       backend owning the pixels
+     * @param inputStream stream positioned at the start of the image
+     * @param width       width of the source, as read from its header
+     * @param height      height of the source, as read from its header
+     * @param orientation exif orientation of the source
+     * @param reqWidth    max width of the result
+     * @param reqHeight   max height of the result
+     * @param sampleSize  power of 2 reduction applied while decoding
+     * @param <I>         image type of the backend
+     * @return upright image which fits the requested size
+     * @throws IOException if the image can't be decoded
+     */
+    public static <I> I decodeToFit(ImageCodec<I> codec, InputStream inputStream, int width, int height, int orientation,
+                                    int reqWidth, int reqHeight, int sampleSize) throws IOException {
+        int degrees = ImageGeometry.getRotationDegrees(orientation);
+        boolean swapped = ImageGeometry.isSwapped(degrees);
+        I sampled = codec.decode(inputStream, width, height, sampleSize);
+        if (sampled == null)
+            throw new IOException("Unable to decode image");
+
+        int uprightWidth = swapped ? codec.getHeight(sampled) : codec.getWidth(sampled);
+        int uprightHeight = swapped ? codec.getWidth(sampled) : codec.getHeight(sampled);
+        int[] targetSize = ImageGeometry.calculateTargetSize(uprightWidth, uprightHeight, reqWidth, reqHeight);
+        if (degrees == 0 && targetSize[0] == uprightWidth && targetSize[1] == uprightHeight) return sampled;
+
+        I upright = codec.transform(sampled, degrees, targetSize[0], targetSize[1]);
+        codec.release(sampled);
+        return upright;
+    }
+
+    /**
+     * Decode the image in its stored orientation with a given sample size, fitting the size it has once displayed upright.
+     * The orientation is left to the caller, e.g. texture coordinates, so the pixels are never rotated
+     * and an image which already fits is returned as decoded
+     *
+     * @param codec       backend owning the pixels
+     * @param inputStream stream positioned at the start of the image
+     * @param width       width of the source, as read from its header
+     * @param height      height of the source, as read from its header
+     * @param orientation exif orientation of the source
+     * @param reqWidth    max width of the upright result
+     * @param reqHeight   max height of the upright result
+     * @param sampleSize  power of 2 reduction applied while decoding
+     * @param <I>         image type of the backend
+     * @return image in the stored orientation
+     * @throws IOException if the image can't be decoded
+     */
+    public static <I> I decodeStoredToFit(ImageCodec<I> codec, InputStream inputStream, int width, int height, int orientation,
+                                          int reqWidth, int reqHeight, int sampleSize) throws IOException {
+        boolean swapped = ImageGeometry.isSwapped(ImageGeometry.getDisplayRotationDegrees(orientation));
+        return decodeToFit(codec, inputStream, width, height, ImageGeometry.ORIENTATION_NORMAL,
+                swapped ? reqHeight : reqWidth, swapped ? reqWidth : reqHeight, sampleSize);
+    }
+}
@@ -0,0 +1,221 @@
+package com.onedevapp.nativeplugin.imagecore;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Pure java backend of {@link ImageCodec}.
+ * It reads and writes binary PPM (P6) so it doesn't depend on any platform codec: sampling averages each
+ * sampleSize x sampleSize block like a decoder downsampling, and transform rotates and resamples bilinearly.
+ */
+public class RasterCodec implements ImageCodec<RasterImage> {
+
+    // region Declarations
+    private static final int MAX_VALUE = 255;
+    //endregion
+
+    // region ImageCodec
+
+    @Override
+    public RasterImage decode(InputStream inputStream, int width, int height, int sampleSize) throws IOException {
+        int[] header = readHeader(inputStream);
+        if (header[0] != width || header[1] != height)
+            throw new IOException("Header size " + header[0] + "x" + header[1] + " doesn't match " + width + "x" + height);
+
+        int sample = Math.max(1, sampleSize);
+        //decoders round the sampled size up
+        int sampledWidth = (width + sample - 1) / sample;
+        int sampledHeight = (height + sample - 1) / sample;
+        int[] pixels = new int[sampledWidth * sampledHeight];
+        byte[] row = new byte[width * 3];
+        int[] sums = new int[sampledWidth * 3];
+
+        for (int sampledY = 0; sampledY < sampledHeight; sampledY++) {
+            int rows = Math.min(sample, height - sampledY * sample);
+            Arrays.fill(sums, 0);
+            for (int r = 0; r < rows; r++) {
+                readFully(inputStream, row);
+                for (int x = 0; x < width; x++) {
+                    int sum = (x / sample) * 3;
+                    sums[sum] += row[x * 3] & 0xFF;
+                    sums[sum + 1] += row[x * 3 + 1] & 0xFF;
+                    sums[sum + 2] += row[x * 3 + 2] & 0xFF;
+                }
+            }
+            int offset = sampledY * sampledWidth;
+            for (int sampledX = 0; sampledX < sampledWidth; sampledX++) {
+                int count = rows * Math.min(sample, width - sampledX * sample);
+                int sum = sampledX * 3;
+                pixels[offset + sampledX] = pack(sums[sum] / count, sums[sum + 1] / count, sums[sum + 2] / count);
+            }
+        }
+        return new RasterImage(sampledWidth, sampledHeight, pixels);
+    }
+
+    @Override
+    public int getWidth(RasterImage image) {
+        return image.getWidth();
+    }
+
+    @Override
+    public int getHeight(RasterImage image) {
+        return image.getHeight();
+    }
+
+    @Override
+    public RasterImage transform(RasterImage image, int degrees, int targetWidth, int targetHeight) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] source = image.getPixels();
+        boolean swapped = ImageGeometry.isSwapped(degrees);
+        float scaleX = (float) (swapped ? height : width) / targetWidth;
+        float scaleY = (float) (swapped ? width : height) / targetHeight;
+
+        int[] pixels = new int[targetWidth * targetHeight];
+        for (int y = 0; y < targetHeight; y++) {
+            float v = (y + 0.5f) * scaleY - 0.5f;
+            for (int x = 0; x < targetWidth; x++) {
+                float u = (x + 0.5f) * scaleX - 0.5f;
+                //map the upright position back to the stored image
+                float sourceX;
+                float sourceY;
+                if (degrees == 90) {
+                    sourceX = v;
+                    sourceY = height - 1 - u;
+                } else if (degrees == 180) {
+                    sourceX = width - 1 - u;
+                    sourceY = height - 1 - v;
+                } else if (degrees == 270) {
+                    sourceX = width - 1 - v;
+                    sourceY = u;
+                } else {
+                    sourceX = u;
+                    sourceY = v;
+                }
+                pixels[y * targetWidth + x] = sampleBilinear(source, width, height, sourceX, sourceY);
+            }
+        }
+        return new RasterImage(targetWidth, targetHeight, pixels);
+    }
+
+    @Override
+    public void release(RasterImage image) {
+        //pixels are garbage collected
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Read the size of a PPM stream, the stream is left at the first pixel
+     *
+     * @param inputStream stream positioned at the start of the image
+     * @return width and height
+     * @throws IOException if the stream isn't a binary PPM
+     */
+    public static int[] readHeader(InputStream inputStream) throws IOException {
+        if (inputStream.read() != 'P' || inputStream.read() != '6')
+            throw new IOException("Not a binary PPM image");
+        int width = readHeaderValue(inputStream);
+        int height = readHeaderValue(inputStream);
+        int maxValue = readHeaderValue(inputStream);
+        if (maxValue != MAX_VALUE)
+            throw new IOException("Unsupported PPM max value " + maxValue);
+        return new int[]{width, height};
+    }
+
+    /**
+     * Write the image as binary PPM, alpha is dropped
+     *
+     * @param image        image to write
+     * @param outputStream destination, left open
+     * @throws IOException if the stream can't be written
+     */
+    public static void encode(RasterImage image, OutputStream outputStream) throws IOException {
+        int width = image.getWidth();
+        outputStream.write(("P6\n" + width + " " + image.getHeight() + "\n" + MAX_VALUE + "\n").getBytes("US-ASCII"));
+        byte[] row = new byte[width * 3];
+        int[] pixels = image.getPixels();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[y * width + x];
+                row[x * 3] = (byte) (pixel >> 16);
+                row[x * 3 + 1] = (byte) (pixel >> 8);
+                row[x * 3 + 2] = (byte) pixel;
+            }
+            outputStream.write(row);
+        }
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Read the next decimal header value, skipping whitespace and comments
+     */
+    private static int readHeaderValue(InputStream inputStream) throws IOException {
+        int c = inputStream.read();
+        while (c == '#' || Character.isWhitespace(c)) {
+            if (c == '#') {
+                while (c != '\n' && c != -1) c = inputStream.read();
+            }
+            c = inputStream.read();
+        }
+        if (c < '0' || c > '9') throw new IOException("Invalid PPM header");
+        int value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = inputStream.read();
+        }
+        //the single whitespace after the value has been consumed
+        return value;
+    }
+
+    private static void readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int read = inputStream.read(buffer, offset, buffer.length - offset);
+            if (read < 0) throw new EOFException("Truncated PPM image");
+            offset += read;
+        }
+    }
+
+    /**
+     * Bilinear sample of the stored image, positions outside are clamped to the edge
+     */
+    private static int sampleBilinear(int[] pixels, int width, int height, float x, float y) {
+        x = Math.max(0f, Math.min(x, width - 1));
+        y = Math.max(0f, Math.min(y, height - 1));
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+
+        int p00 = pixels[y0 * width + x0];
+        int p10 = pixels[y0 * width + x1];
+        int p01 = pixels[y1 * width + x0];
+        int p11 = pixels[y1 * width + x1];
+        return pack(lerp(p00 >> 16, p10 >> 16, p01 >> 16, p11 >> 16, fx, fy),
+                lerp(p00 >> 8, p10 >> 8, p01 >> 8, p11 >> 8, fx, fy),
+                lerp(p00, p10, p01, p11, fx, fy));
+    }
+
+    /**
+     * Bilinear interpolation of one 8 bit channel
+     */
+    private static int lerp(int c00, int c10, int c01, int c11, float fx, float fy) {
+        float top = (c00 & 0xFF) + ((c10 & 0xFF) - (c00 & 0xFF)) * fx;
+        float bottom = (c01 & 0xFF) + ((c11 & 0xFF) - (c01 & 0xFF)) * fx;
+        return Math.round(top + (bottom - top) * fy);
+    }
+
+    private static int pack(int red, int green, int blue) {
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+    //endregion
+}
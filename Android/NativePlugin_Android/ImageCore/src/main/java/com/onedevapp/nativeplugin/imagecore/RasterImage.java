@@ -0,0 +1,69 @@
+package com.onedevapp.nativeplugin.imagecore;
+
+/**
+ * Image of the pure java backend, packed ARGB pixels row by row.
+ */
+public final class RasterImage {
+
+    // region Declarations
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mPixels;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Creates an image with every pixel transparent, 0 in every channel
+     *
+     * @param width  width in pixels
+     * @param height height in pixels
+     */
+    public RasterImage(int width, int height) {
+        this(width, height, new int[width * height]);
+    }
+
+    /**
+     * Wraps existing pixels
+     *
+     * @param width  width in pixels
+     * @param height height in pixels
+     * @param pixels ARGB pixels, at least width * height
+     */
+    public RasterImage(int width, int height, int[] pixels) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height)
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mPixels = pixels;
+    }
+    //endregion
+
+    /**
+     * Width in pixels
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Height in pixels
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * ARGB pixels, row by row
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    /**
+     * Pixel at the position
+     */
+    public int getPixel(int x, int y) {
+        return mPixels[y * mWidth + x];
+    }
+}
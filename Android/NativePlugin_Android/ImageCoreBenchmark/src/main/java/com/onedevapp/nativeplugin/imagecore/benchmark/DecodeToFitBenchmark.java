@@ -0,0 +1,86 @@
+package com.onedevapp.nativeplugin.imagecore.benchmark;
+
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+import com.onedevapp.nativeplugin.imagecore.ImagePipeline;
+import com.onedevapp.nativeplugin.imagecore.RasterCodec;
+import com.onedevapp.nativeplugin.imagecore.RasterImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the image pipeline per source image, with the plugin's default 612x816 target.
+ * Run with the gc profiler (the jmh task does) to get the bytes allocated per image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DecodeToFitBenchmark {
+
+    // region Declarations
+    private static final int REQ_WIDTH = 612;
+    private static final int REQ_HEIGHT = 816;
+
+    //VGA, 2 MP and 12 MP sources
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    //as stored and rotated by exif
+    @Param({"1", "6"})
+    public int orientation;
+
+    private final RasterCodec mCodec = new RasterCodec();
+    private byte[] mEncoded;
+    private int mWidth;
+    private int mHeight;
+    private RasterImage mSampled;
+    private int[] mTargetSize;
+    //endregion
+
+    @Setup
+    public void setup() throws IOException {
+        mEncoded = SampleCorpus.load(size);
+        int[] header = RasterCodec.readHeader(new ByteArrayInputStream(mEncoded));
+        mWidth = header[0];
+        mHeight = header[1];
+
+        //input of the transform benchmark: the decoder output before rotation and fitting
+        int sampleSize = ImageGeometry.calculateInSampleSize(mWidth, mHeight, REQ_WIDTH, REQ_HEIGHT);
+        mSampled = mCodec.decode(new ByteArrayInputStream(mEncoded), mWidth, mHeight, sampleSize);
+        boolean swapped = ImageGeometry.isSwapped(ImageGeometry.getRotationDegrees(orientation));
+        mTargetSize = ImageGeometry.calculateTargetSize(swapped ? mSampled.getHeight() : mSampled.getWidth(),
+                swapped ? mSampled.getWidth() : mSampled.getHeight(), REQ_WIDTH, REQ_HEIGHT);
+    }
+
+    /**
+     * Whole pipeline: header to upright fitted image
+     */
+    @Benchmark
+    public RasterImage decodeToFit() throws IOException {
+        return ImagePipeline.decodeToFit(mCodec, new ByteArrayInputStream(mEncoded), mWidth, mHeight, orientation, REQ_WIDTH, REQ_HEIGHT);
+    }
+
+    /**
+     * Rotation and resampling of an already sampled image
+     */
+    @Benchmark
+    public RasterImage transform() {
+        return mCodec.transform(mSampled, ImageGeometry.getRotationDegrees(orientation), mTargetSize[0], mTargetSize[1]);
+    }
+}
@@ -0,0 +1,101 @@
+package com.onedevapp.nativeplugin.imagecore.benchmark;
+
+import com.onedevapp.nativeplugin.imagecore.AreaResampler;
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+import com.onedevapp.nativeplugin.imagecore.RasterCodec;
+import com.onedevapp.nativeplugin.imagecore.RasterImage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the non power of two downscale to the plugin's default 612x816 target:
+ * the current single bilinear pass against the area resampler, on one thread and in row bands.
+ * The sampled stage is what follows the decoder's power of two reduction, the full stage resamples the whole source.
+ * {@link ResampleQuality} reports the quality of the same paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResampleBenchmark {
+
+    // region Declarations
+    private static final int REQ_WIDTH = 612;
+    private static final int REQ_HEIGHT = 816;
+
+    //2 MP and 12 MP sources
+    @Param({"1920x1080", "4000x3000"})
+    public String size;
+
+    @Param({"sampled", "full"})
+    public String stage;
+
+    private final RasterCodec mCodec = new RasterCodec();
+    private RasterImage mSource;
+    private int[] mTarget;
+    private int[] mTargetSize;
+    private ForkJoinPool mPool;
+    //endregion
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] encoded = SampleCorpus.load(size);
+        int[] header = RasterCodec.readHeader(new ByteArrayInputStream(encoded));
+        int sampleSize = "full".equals(stage) ? 1 : ImageGeometry.calculateInSampleSize(header[0], header[1], REQ_WIDTH, REQ_HEIGHT);
+        mSource = mCodec.decode(new ByteArrayInputStream(encoded), header[0], header[1], sampleSize);
+        mTargetSize = ImageGeometry.calculateTargetSize(mSource.getWidth(), mSource.getHeight(), REQ_WIDTH, REQ_HEIGHT);
+        mTarget = new int[mTargetSize[0] * mTargetSize[1]];
+        mPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    /**
+     * Current path: one bilinear sample per target pixel
+     */
+    @Benchmark
+    public RasterImage bilinear() {
+        return mCodec.transform(mSource, 0, mTargetSize[0], mTargetSize[1]);
+    }
+
+    /**
+     * Area average on the calling thread, weights included
+     */
+    @Benchmark
+    public int[] area() {
+        new AreaResampler(mSource.getWidth(), mSource.getHeight(), mTargetSize[0], mTargetSize[1])
+                .resample(mSource.getPixels(), mTarget);
+        return mTarget;
+    }
+
+    /**
+     * Area average in row bands on a pool with one worker per core, weights included
+     */
+    @Benchmark
+    public int[] areaParallel() {
+        new AreaResampler(mSource.getWidth(), mSource.getHeight(), mTargetSize[0], mTargetSize[1])
+                .resample(mSource.getPixels(), mTarget, mPool);
+        return mTarget;
+    }
+}
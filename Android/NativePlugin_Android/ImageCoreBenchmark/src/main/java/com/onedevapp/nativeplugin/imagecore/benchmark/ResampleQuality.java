@@ -0,0 +1,159 @@
+package com.onedevapp.nativeplugin.imagecore.benchmark;
+
+import com.onedevapp.nativeplugin.imagecore.AreaResampler;
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+import com.onedevapp.nativeplugin.imagecore.RasterCodec;
+import com.onedevapp.nativeplugin.imagecore.RasterImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Quality side of {@link ResampleBenchmark}, run with: ./gradlew :ImageCoreBenchmark:resampleQuality
+ * Every path is scored by PSNR against a reference which integrates the bilinear source surface
+ * with 8x8 samples per target pixel, higher is closer. The zone plate has frequencies up to the source
+ * Nyquist limit, so it shows the aliasing of skipped source pixels.
+ */
+public final class ResampleQuality {
+
+    // region Declarations
+    private static final int REQ_WIDTH = 612;
+    private static final int REQ_HEIGHT = 816;
+    private static final int REFERENCE_SAMPLES = 8;     //per axis and target pixel
+    private static final String[] IMAGES = {"1920x1080", "4000x3000", "zoneplate"};
+    private static final int ZONE_PLATE_SIZE = 3000;
+    //endregion
+
+    private ResampleQuality() {
+
+    }
+
+    public static void main(String[] args) throws IOException {
+        RasterCodec codec = new RasterCodec();
+        System.out.println(String.format("%-12s %-24s %10s", "image", "path", "PSNR (dB)"));
+        for (String name : IMAGES) {
+            byte[] encoded = "zoneplate".equals(name) ? encode(generateZonePlate(ZONE_PLATE_SIZE)) : SampleCorpus.load(name);
+            int[] header = RasterCodec.readHeader(new ByteArrayInputStream(encoded));
+            RasterImage full = codec.decode(new ByteArrayInputStream(encoded), header[0], header[1], 1);
+            int sampleSize = ImageGeometry.calculateInSampleSize(header[0], header[1], REQ_WIDTH, REQ_HEIGHT);
+            RasterImage sampled = codec.decode(new ByteArrayInputStream(encoded), header[0], header[1], sampleSize);
+
+            //the fitted size of the sampled image, which every path produces
+            int[] target = ImageGeometry.calculateTargetSize(sampled.getWidth(), sampled.getHeight(), REQ_WIDTH, REQ_HEIGHT);
+            RasterImage reference = reference(full, target[0], target[1]);
+
+            print(name, "sampled + bilinear", reference, codec.transform(sampled, 0, target[0], target[1]));
+            print(name, "sampled + area", reference, area(sampled, target[0], target[1]));
+            print(name, "full + bilinear", reference, codec.transform(full, 0, target[0], target[1]));
+            print(name, "full + area", reference, area(full, target[0], target[1]));
+        }
+    }
+
+    // region private functions
+
+    private static RasterImage area(RasterImage source, int width, int height) {
+        int[] pixels = new int[width * height];
+        new AreaResampler(source.getWidth(), source.getHeight(), width, height).resample(source.getPixels(), pixels);
+        return new RasterImage(width, height, pixels);
+    }
+
+    /**
+     * Average of REFERENCE_SAMPLES x REFERENCE_SAMPLES bilinear samples spread over each target pixel
+     */
+    private static RasterImage reference(RasterImage source, int width, int height) {
+        double scaleX = (double) source.getWidth() / width;
+        double scaleY = (double) source.getHeight() / height;
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double red = 0, green = 0, blue = 0;
+                for (int sy = 0; sy < REFERENCE_SAMPLES; sy++) {
+                    double v = (y + (sy + 0.5) / REFERENCE_SAMPLES) * scaleY - 0.5;
+                    for (int sx = 0; sx < REFERENCE_SAMPLES; sx++) {
+                        double u = (x + (sx + 0.5) / REFERENCE_SAMPLES) * scaleX - 0.5;
+                        double[] sample = sampleBilinear(source, u, v);
+                        red += sample[0];
+                        green += sample[1];
+                        blue += sample[2];
+                    }
+                }
+                int count = REFERENCE_SAMPLES * REFERENCE_SAMPLES;
+                pixels[y * width + x] = pack((int) Math.round(red / count), (int) Math.round(green / count), (int) Math.round(blue / count));
+            }
+        }
+        return new RasterImage(width, height, pixels);
+    }
+
+    private static double[] sampleBilinear(RasterImage image, double x, double y) {
+        x = Math.max(0, Math.min(x, image.getWidth() - 1));
+        y = Math.max(0, Math.min(y, image.getHeight() - 1));
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, image.getWidth() - 1);
+        int y1 = Math.min(y0 + 1, image.getHeight() - 1);
+        double fx = x - x0;
+        double fy = y - y0;
+        double[] channels = new double[3];
+        for (int c = 0; c < 3; c++) {
+            int shift = 16 - c * 8;
+            double top = channel(image.getPixel(x0, y0), shift) * (1 - fx) + channel(image.getPixel(x1, y0), shift) * fx;
+            double bottom = channel(image.getPixel(x0, y1), shift) * (1 - fx) + channel(image.getPixel(x1, y1), shift) * fx;
+            channels[c] = top * (1 - fy) + bottom * fy;
+        }
+        return channels;
+    }
+
+    private static void print(String name, String path, RasterImage reference, RasterImage image) {
+        System.out.println(String.format("%-12s %-24s %10.2f", name, path, psnr(reference, image)));
+    }
+
+    /**
+     * Peak signal to noise ratio over the RGB channels
+     */
+    private static double psnr(RasterImage reference, RasterImage image) {
+        double squaredError = 0;
+        int[] expected = reference.getPixels();
+        int[] actual = image.getPixels();
+        for (int i = 0; i < reference.getWidth() * reference.getHeight(); i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = channel(expected[i], shift) - channel(actual[i], shift);
+                squaredError += difference * difference;
+            }
+        }
+        double meanSquaredError = squaredError / (reference.getWidth() * reference.getHeight() * 3.0);
+        return meanSquaredError == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / meanSquaredError);
+    }
+
+    /**
+     * Concentric rings whose frequency grows linearly up to the Nyquist limit at the corners
+     */
+    private static RasterImage generateZonePlate(int size) {
+        int[] pixels = new int[size * size];
+        double k = Math.PI / (2.0 * size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double dx = x - size / 2.0;
+                double dy = y - size / 2.0;
+                int value = (int) Math.round(127.5 + 127.5 * Math.cos(k * (dx * dx + dy * dy)));
+                pixels[y * size + x] = pack(value, value, value);
+            }
+        }
+        return new RasterImage(size, size, pixels);
+    }
+
+    private static byte[] encode(RasterImage image) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(image.getWidth() * image.getHeight() * 3 + 32);
+        RasterCodec.encode(image, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static int channel(int pixel, int shift) {
+        return (pixel >> shift) & 0xFF;
+    }
+
+    private static int pack(int red, int green, int blue) {
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+    //endregion
+}
@@ -0,0 +1,72 @@
+package com.onedevapp.nativeplugin.imagecore.benchmark;
+
+import com.onedevapp.nativeplugin.imagecore.RasterCodec;
+import com.onedevapp.nativeplugin.imagecore.RasterImage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Sample images of the benchmarks, encoded as binary PPM.
+ * Names are either "WIDTHxHEIGHT", generated with photo like content (gradients, edges and sensor noise),
+ * or file names inside the directory given by the imagecore.corpusDir system property.
+ */
+final class SampleCorpus {
+
+    // region Declarations
+    static final String CORPUS_DIR_PROPERTY = "imagecore.corpusDir";
+    private static final long SEED = 0x5EED;    //same pixels on every run
+    //endregion
+
+    private SampleCorpus() {
+
+    }
+
+    /**
+     * Returns the encoded image of the name
+     *
+     * @param name "WIDTHxHEIGHT" or a file name of the corpus directory
+     * @return PPM bytes
+     * @throws IOException if the corpus file can't be read
+     */
+    static byte[] load(String name) throws IOException {
+        String corpusDir = System.getProperty(CORPUS_DIR_PROPERTY);
+        if (corpusDir != null && !corpusDir.isEmpty()) {
+            return Files.readAllBytes(new File(corpusDir, name).toPath());
+        }
+
+        String[] size = name.split("x");
+        return encode(generate(Integer.parseInt(size[0]), Integer.parseInt(size[1])));
+    }
+
+    /**
+     * Photo like content, smooth gradients with a few hard edges and noise, so sampling and filtering do real work
+     */
+    private static RasterImage generate(int width, int height) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = x * 255 / width;
+                int green = y * 255 / height;
+                int blue = ((x / 64 + y / 64) % 2 == 0) ? 200 : 60;
+                int noise = random.nextInt(17) - 8;
+                pixels[y * width + x] = 0xFF000000 | (clamp(red + noise) << 16) | (clamp(green + noise) << 8) | clamp(blue + noise);
+            }
+        }
+        return new RasterImage(width, height, pixels);
+    }
+
+    private static byte[] encode(RasterImage image) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(image.getWidth() * image.getHeight() * 3 + 32);
+        RasterCodec.encode(image, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
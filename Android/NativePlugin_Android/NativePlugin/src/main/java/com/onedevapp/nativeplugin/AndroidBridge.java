@@ -174,7 +174,7 @@ public class AndroidBridge {
                 }
             });
         } catch (Exception localException) {
-            Constants.WriteLog(localException.toString());
+            PluginLog.w("{}", localException);
         } finally {
             mActivityWeakReference = null;
         }
@@ -323,7 +323,7 @@ public class AndroidBridge {
                     intent.setData(uri);
                     activity.startActivity(intent);
                 } catch (NullPointerException e) {
-                    Constants.WriteLog("Exception (resume) : " + e.toString());
+                    PluginLog.w("Exception (resume) : {}", e);
                 }
             }
         });
@@ -347,7 +347,7 @@ public class AndroidBridge {
                     intent.setData(uri);
                     activity.startActivityForResult(intent, Constants.REQUEST_CODE_OPEN_SETTINGS);
                 } catch (NullPointerException e) {
-                    Constants.WriteLog("Exception (resume) : " + e.toString());
+                    PluginLog.w("Exception (resume) : {}", e);
                 }
             }
         });
@@ -402,7 +402,7 @@ public class AndroidBridge {
                 }
             });
         } else {
-            Constants.WriteLog("ACCESS_FINE_LOCATION permission not granted");
+            PluginLog.w("ACCESS_FINE_LOCATION permission not granted");
         }
     }
 
@@ -429,17 +429,17 @@ public class AndroidBridge {
         if (activeNetworkInfo != null) { // connected to the internet
             if (activeNetworkInfo.getType() == ConnectivityManager.TYPE_WIFI) {
                 // connected to wifi
-                Constants.WriteLog("Active network is wifi");
+                PluginLog.d("Active network is wifi");
                 return true;
             } else if (activeNetworkInfo.getType() == ConnectivityManager.TYPE_MOBILE) {
                 // connected to the mobile provider's data plan
-                Constants.WriteLog("Active network is mobile");
+                PluginLog.d("Active network is mobile");
                 return true;
             } else {
                 return false;
             }
         } else {
-            Constants.WriteLog("No active network found");
+            PluginLog.w("No active network found");
             return false;
         }
     }
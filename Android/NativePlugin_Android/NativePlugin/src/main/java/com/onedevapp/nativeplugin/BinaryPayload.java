@@ -0,0 +1,111 @@
+package com.onedevapp.nativeplugin;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * BinaryPayload is a callback result written with a fixed field layout into a reusable direct buffer,
+ * so Unity reads it in place instead of building and parsing a json string per callback.
+ * A payload starts with an 8 bytes header: version (u8), kind (u8), reserved (u16) and total length (i32), all in the buffer order.
+ * Fields follow in a fixed order and new ones are only ever appended, so a reader skips what it doesn't know by the length
+ * and an older payload simply ends before the fields it doesn't have.
+ * Strings are written as their UTF-8 length (i32, -1 for null) followed by the bytes.
+ */
+public abstract class BinaryPayload {
+
+    // region Declarations
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 8;
+
+    //payload kinds
+    public static final int KIND_IMAGE = 1;
+    public static final int KIND_STRINGS = 2;
+    public static final int KIND_METRICS = 3;
+    //endregion
+
+    /**
+     * Write the payload at the position of the buffer
+     *
+     * @param buffer buffer to write into, its position is moved past the payload
+     * @return true if written, false when it doesn't fit and the position is left unchanged
+     */
+    public final boolean writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        try {
+            buffer.put((byte) VERSION);
+            buffer.put((byte) getKind());
+            buffer.putShort((short) 0);
+            buffer.putInt(0);
+            writeFields(buffer);
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            return false;
+        }
+        buffer.putInt(start + 4, buffer.position() - start);
+        return true;
+    }
+
+    /**
+     * Returns the kind written in the header
+     */
+    public abstract int getKind();
+
+    /**
+     * The same result as text, for listeners which asked for json or when the payload is too large for the buffer
+     */
+    public abstract String toText();
+
+    /**
+     * Write the fields after the header
+     *
+     * @param buffer buffer to write into
+     * @throws BufferOverflowException when the buffer is full
+     */
+    protected abstract void writeFields(ByteBuffer buffer);
+
+    /**
+     * Write a string as UTF-8 without allocating
+     *
+     * @param buffer buffer to write into
+     * @param value  string, null is written with a length of -1
+     * @throws BufferOverflowException when the buffer is full
+     */
+    protected static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                //unpaired surrogate, replaced as String.getBytes would
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+    }
+
+    /**
+     * Write a boolean as one byte
+     */
+    protected static void putBoolean(ByteBuffer buffer, boolean value) {
+        buffer.put((byte) (value ? 1 : 0));
+    }
+}
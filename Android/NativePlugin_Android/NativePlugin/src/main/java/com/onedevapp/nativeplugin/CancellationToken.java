@@ -0,0 +1,63 @@
+package com.onedevapp.nativeplugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * CancellationToken cancels every task submitted with it to the {@link TaskScheduler} at once.
+ * Queued tasks are dropped from their queue, running ones are interrupted and should check {@link #isCancelled()} between steps.
+ * A token can't be reset, use a new one for the next request.
+ */
+public class CancellationToken {
+
+    // region Declarations
+    private volatile boolean mCancelled;
+    private final List<Future<?>> mTasks = new ArrayList<>();   //tasks not yet done, guarded by itself
+    //endregion
+
+    /**
+     * Cancel the token and the tasks submitted with it, does nothing when already cancelled
+     */
+    public void cancel() {
+        List<Future<?>> tasks;
+        synchronized (mTasks) {
+            if (mCancelled) return;
+            mCancelled = true;
+            tasks = new ArrayList<>(mTasks);
+            mTasks.clear();
+        }
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Returns whether the token is cancelled
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Track a task, cancelled right away when the token already is
+     */
+    void register(Future<?> task) {
+        synchronized (mTasks) {
+            if (!mCancelled) {
+                mTasks.add(task);
+                return;
+            }
+        }
+        task.cancel(true);
+    }
+
+    /**
+     * Stop tracking a task once it is done
+     */
+    void unregister(Future<?> task) {
+        synchronized (mTasks) {
+            mTasks.remove(task);
+        }
+    }
+}
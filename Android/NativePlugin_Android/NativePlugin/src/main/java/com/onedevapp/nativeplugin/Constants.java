@@ -1,7 +1,5 @@
 package com.onedevapp.nativeplugin;
 
-import android.util.Log;
-
 import com.unity3d.player.UnityPlayer;
 
 /**
@@ -31,6 +29,10 @@ public class Constants {
     public static final int EC_IMAGE_PICKER_INTERNAL_ERROR = 4;
     public static final int EC_IMAGE_PICKER_FILE_CANT_CREATE = 5;
 
+    public static final int IMAGE_RESULT_FILE = 0;  //image picker result as a cache file path
+    public static final int IMAGE_RESULT_RAW_PIXELS = 1;    //image picker result as RGBA32 pixels in a direct buffer
+    public static final int IMAGE_RESULT_BYTES = 2;    //image picker result as a cache file whose bytes are pulled in chunks
+
 
     public static final String UNITY_GAME_OBJECT = "MobileNativeManager";
     public static final String UNITY_IMAGE_PICKER_RESULT = "OnImagePickedResult";
@@ -45,9 +47,11 @@ public class Constants {
      * Can toggle on/off with enableLog boolean at any time
      *
      * @param message Log Message
+     * @deprecated use {@link PluginLog}, which only formats messages of enabled levels and keeps the last ones for crash reports
      */
+    @Deprecated
     public static void WriteLog(String message) {
-        if (enableLog) Log.d("NativePlugin", message);
+        PluginLog.d(message);
     }
 
 
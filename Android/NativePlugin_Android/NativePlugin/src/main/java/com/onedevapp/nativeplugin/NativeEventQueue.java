@@ -0,0 +1,386 @@
+package com.onedevapp.nativeplugin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * NativeEventQueue collects plugin callbacks from any thread as compact records in a lock-free ring buffer,
+ * so Unity drains every pending event with a single JNI call per frame instead of one proxy invocation per event.
+ * Producers claim a slot with a compare-and-set and publish it with its sequence number, the single consumer is {@link #drain()}.
+ * Events are never dropped and keep their order: download progress holds a single record per request, filled with its latest value
+ * when drained, and once the ring is full every event waits in an overflow list until the ring and the list are drained.
+ * A record is 40 bytes in native order: type, request id, two longs, two ints, the index of its text and the offset of its payload,
+ * both -1 when it has none.
+ * Payloads ({@link BinaryPayload}) are written after the records in the same buffer, so they are read in place.
+ * Texts (messages, json) stay java strings and are read with {@link #getText(int)} until the next drain.
+ */
+public class NativeEventQueue {
+
+    // region Declarations
+    //event types
+    public static final int UPDATE_VERSION_CODE = 1;    //first: version code
+    public static final int UPDATE_STALENESS_DAYS = 2;  //first: days
+    public static final int UPDATE_AVAILABLE = 3;   //third: available, fourth: type allowed
+    public static final int UPDATE_INSTALL_STATE = 4;   //third: install state
+    public static final int UPDATE_DOWNLOADING = 5; //first and second as reported by the update
+    public static final int UPDATE_ERROR = 6;   //third: error code, text: error
+    public static final int PERMISSION_GRANTED = 10;    //third: all granted, payload: permissions, or text: permissions separated by new lines
+    public static final int PERMISSION_DENIED = 11; //payload: permissions, or text: permissions separated by new lines
+    public static final int PERMISSION_ERROR = 12;  //text: error
+    public static final int IMAGE_SELECTED = 20;    //third: status, fourth: error code, payload: image, or text: image json or error
+    public static final int IMAGE_PREVIEW = 21; //payload: image, or text: preview json
+    public static final int IMAGE_ITEM_SELECTED = 22;   //first: index, second: total, third: status, fourth: error code, payload: image, or text: image json or error
+    public static final int IMAGES_COMPLETED = 23;  //first: total, second: failed
+
+    public static final int RECORD_BYTES = 40;
+    private static final int CAPACITY = 4096;   //power of 2
+    private static final int MAX_DRAINED = 1024;    //records returned by one drain, the rest wait for the next
+    private static final int PAYLOAD_BYTES = 256 * 1024;   //payloads of one drain, the records which don't fit wait for the next
+    private static final int PAYLOAD_ALIGNMENT = 8;
+    private static final long OVERFLOWING = Long.MIN_VALUE;    //tail flag, set while events wait in the overflow list
+
+    private static NativeEventQueue instance;
+
+    private final int mMask = CAPACITY - 1;
+    private final AtomicLongArray mSequences = new AtomicLongArray(CAPACITY);  //slot is free for position p at p, readable at p + 1
+    private final int[] mTypes = new int[CAPACITY];
+    private final int[] mRequestIds = new int[CAPACITY];
+    private final long[] mFirst = new long[CAPACITY];
+    private final long[] mSecond = new long[CAPACITY];
+    private final int[] mThird = new int[CAPACITY];
+    private final int[] mFourth = new int[CAPACITY];
+    private final String[] mTexts = new String[CAPACITY];
+    private final BinaryPayload[] mPayloads = new BinaryPayload[CAPACITY];
+    private final long[] mOfferNanos = new long[CAPACITY];
+    private final AtomicLong mTail = new AtomicLong();  //next position, with OVERFLOWING once the ring was full
+    private final ConcurrentHashMap<Integer, Event> mProgress = new ConcurrentHashMap<>();  //latest download progress by request id
+    private final ArrayDeque<Event> mOverflow = new ArrayDeque<>();   //events which didn't fit the ring, in order, guarded by itself
+    private final AtomicLong mOverflowed = new AtomicLong();
+
+    //consumer side, guarded by drain
+    private long mHead;
+    private final ByteBuffer mDrainBuffer;
+    private final ByteBuffer mPayloadBuffer;    //view of the drain buffer past the records
+    private final ArrayList<String> mDrainedTexts = new ArrayList<>();
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared queue
+     *
+     * @return the {@link NativeEventQueue} instance
+     */
+    public static synchronized NativeEventQueue getInstance() {
+        if (instance == null) {
+            instance = new NativeEventQueue();
+        }
+        return instance;
+    }
+
+    //Private constructor marking every slot free for its first position
+    private NativeEventQueue() {
+        for (int i = 0; i < CAPACITY; i++) {
+            mSequences.set(i, i);
+        }
+        mDrainBuffer = ByteBuffer.allocateDirect(MAX_DRAINED * RECORD_BYTES + PAYLOAD_BYTES);
+        mDrainBuffer.order(ByteOrder.nativeOrder());
+        mPayloadBuffer = mDrainBuffer.duplicate();
+        mPayloadBuffer.order(ByteOrder.nativeOrder());
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Add an event from any thread without blocking, the event overflows to a list when the ring is full
+     *
+     * @param type      event type
+     * @param requestId id of the request the event belongs to
+     * @param first     first long field
+     * @param second    second long field
+     * @param third     first int field
+     * @param fourth    second int field
+     * @param text      text of the event, null when it has none
+     * @return true if queued in the ring, false if it overflowed
+     */
+    public boolean offer(int type, int requestId, long first, long second, int third, int fourth, String text) {
+        return offer(type, requestId, first, second, third, fourth, text, null);
+    }
+
+    /**
+     * Add an event with a binary payload from any thread without blocking, the event overflows to a list when the ring is full.
+     * Download progress replaces the pending progress of the same request, it is queued only when none is pending
+     *
+     * @param type      event type
+     * @param requestId id of the request the event belongs to
+     * @param first     first long field
+     * @param second    second long field
+     * @param third     first int field
+     * @param fourth    second int field
+     * @param text      text of the event, null when it has none
+     * @param payload   payload of the event, written when drained, null when it has none
+     * @return true if queued in the ring, false if it overflowed
+     */
+    public boolean offer(int type, int requestId, long first, long second, int third, int fourth, String text, BinaryPayload payload) {
+        if (type == UPDATE_DOWNLOADING) {
+            //only the latest progress matters, the queued record of the request takes it when drained
+            if (mProgress.put(requestId, new Event(type, requestId, first, second, third, fourth, text, payload)) != null) return true;
+            text = null;
+            payload = null;
+        }
+        if (offerToRing(type, requestId, first, second, third, fourth, text, payload)) return true;
+
+        synchronized (mOverflow) {
+            //from now on every producer overflows until the list is drained, so no later event passes this one in the ring
+            long tail;
+            do {
+                tail = mTail.get();
+            } while ((tail & OVERFLOWING) == 0 && !mTail.compareAndSet(tail, tail | OVERFLOWING));
+            mOverflow.add(new Event(type, requestId, first, second, third, fourth, text, payload));
+        }
+        if (mOverflowed.incrementAndGet() == 1)
+            PluginLog.w("NativeEventQueue full, events overflow until drained");
+        return false;
+    }
+
+    /**
+     * Move the pending events into the drain buffer, called once per frame by Unity.
+     * The ring comes first, the overflowed events follow once every event claimed in the ring before them is drained.
+     * Texts and payloads of the previous drain are released
+     *
+     * @return number of records in the drain buffer, {@link #getDrainBuffer()} holds up to 1024 of them
+     */
+    public synchronized int drain() {
+        mDrainBuffer.clear();
+        mDrainedTexts.clear();
+        mPayloadBuffer.clear();
+        mPayloadBuffer.position(MAX_DRAINED * RECORD_BYTES);
+        long now = System.nanoTime();
+        int count = 0;
+        while (count < MAX_DRAINED) {
+            int index = (int) (mHead & mMask);
+            if (mSequences.get(index) != mHead + 1) break;
+
+            if (mTypes[index] == UPDATE_DOWNLOADING) {
+                count = writeProgress(count, mRequestIds[index], now);
+            } else {
+                if (!writeRecord(count, mTypes[index], mRequestIds[index], mFirst[index], mSecond[index], mThird[index], mFourth[index],
+                        mTexts[index], mPayloads[index], now - mOfferNanos[index])) return count;
+                count++;
+            }
+            mTexts[index] = null;
+            mPayloads[index] = null;
+            //frees the slot for the position one lap later
+            mSequences.set(index, mHead + CAPACITY);
+            mHead++;
+        }
+        if (count == MAX_DRAINED) return count;
+
+        synchronized (mOverflow) {
+            //the flag is only set under this lock and the tail doesn't move while it is set,
+            //a slot claimed before the overflow may not be published yet, the overflowed events wait for it
+            long tail = mTail.get();
+            if ((tail & OVERFLOWING) == 0 || mHead != (tail & ~OVERFLOWING)) return count;
+
+            Event event;
+            while (count < MAX_DRAINED && (event = mOverflow.peek()) != null) {
+                if (event.mType == UPDATE_DOWNLOADING) {
+                    count = writeProgress(count, event.mRequestId, now);
+                } else {
+                    if (!writeRecord(count, event, now)) break;
+                    count++;
+                }
+                mOverflow.poll();
+            }
+            if (mOverflow.isEmpty()) mTail.set(mHead);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the direct buffer the records and payloads are drained into, it is allocated once so its address can be kept.
+     * A payload offset of a record is relative to the start of this buffer
+     *
+     * @return the drain buffer
+     */
+    public ByteBuffer getDrainBuffer() {
+        return mDrainBuffer;
+    }
+
+    /**
+     * Returns a text of the last drain
+     *
+     * @param textIndex text index of a record
+     * @return the text, null when unknown
+     */
+    public synchronized String getText(int textIndex) {
+        return (textIndex >= 0 && textIndex < mDrainedTexts.size()) ? mDrainedTexts.get(textIndex) : null;
+    }
+
+    /**
+     * Returns the number of events which overflowed because the ring was full
+     */
+    public long getOverflowedCount() {
+        return mOverflowed.get();
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Claim a ring slot and publish the event in it
+     *
+     * @return false when the ring is full or events wait in the overflow list
+     */
+    private boolean offerToRing(int type, int requestId, long first, long second, int third, int fourth, String text, BinaryPayload payload) {
+        long position;
+        int index;
+        while (true) {
+            position = mTail.get();
+            if ((position & OVERFLOWING) != 0) return false;
+            index = (int) (position & mMask);
+            long sequence = mSequences.get(index);
+            if (sequence == position) {
+                if (mTail.compareAndSet(position, position + 1)) break;
+            } else if (sequence < position) {
+                //the consumer hasn't freed this slot yet
+                return false;
+            }
+            //else another producer took the position, try the next one
+        }
+        mTypes[index] = type;
+        mRequestIds[index] = requestId;
+        mFirst[index] = first;
+        mSecond[index] = second;
+        mThird[index] = third;
+        mFourth[index] = fourth;
+        mTexts[index] = text;
+        mPayloads[index] = payload;
+        mOfferNanos[index] = System.nanoTime();
+        //publishes the fields written above to the consumer
+        mSequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Write the latest progress of a request in place of its queued record, progress has no payload so it always fits
+     *
+     * @return records in the drain buffer afterwards
+     */
+    private int writeProgress(int count, int requestId, long now) {
+        Event progress = mProgress.remove(requestId);
+        if (progress == null) return count;
+        writeRecord(count, progress, now);
+        return count + 1;
+    }
+
+    private boolean writeRecord(int count, Event event, long now) {
+        return writeRecord(count, event.mType, event.mRequestId, event.mFirst, event.mSecond, event.mThird, event.mFourth,
+                event.mText, event.mPayload, now - event.mOfferNanos);
+    }
+
+    /**
+     * Write a record to the drain buffer and its payload after the records
+     *
+     * @param count     records already in the drain buffer
+     * @param waitNanos time the event waited in the queue
+     * @return false when the payload region is too full for the payload, the event then waits for the next drain
+     */
+    private boolean writeRecord(int count, int type, int requestId, long first, long second, int third, int fourth, String text,
+                                BinaryPayload payload, long waitNanos) {
+        int payloadOffset = -1;
+        if (payload != null) {
+            int start = mPayloadBuffer.position();
+            if (payload.writeTo(mPayloadBuffer)) {
+                payloadOffset = start;
+                mPayloadBuffer.position(Math.min(mPayloadBuffer.limit(),
+                        (mPayloadBuffer.position() + PAYLOAD_ALIGNMENT - 1) & -PAYLOAD_ALIGNMENT));
+            } else if (start > MAX_DRAINED * RECORD_BYTES) {
+                //the payload region is full, the event waits for the next drain
+                return false;
+            } else {
+                //larger than the whole region, sent as text instead
+                PluginLog.w("NativeEventQueue payload too large, sent as text");
+                if (text == null) text = payload.toText();
+            }
+        }
+
+        int textIndex = -1;
+        if (text != null) {
+            textIndex = mDrainedTexts.size();
+            mDrainedTexts.add(text);
+        }
+        mDrainBuffer.position(count * RECORD_BYTES);
+        mDrainBuffer.putInt(type);
+        mDrainBuffer.putInt(requestId);
+        mDrainBuffer.putLong(first);
+        mDrainBuffer.putLong(second);
+        mDrainBuffer.putInt(third);
+        mDrainBuffer.putInt(fourth);
+        mDrainBuffer.putInt(textIndex);
+        mDrainBuffer.putInt(payloadOffset);
+        PluginMetrics.recordNanos(PluginMetrics.CALLBACK_DELIVERY, waitNanos, true);
+        return true;
+    }
+    //endregion
+
+    // region Static functions called by Unity
+
+    /**
+     * Drain the shared queue
+     *
+     * @return number of records in the drain buffer
+     */
+    public static int drainEvents() {
+        return getInstance().drain();
+    }
+
+    /**
+     * Returns the drain buffer of the shared queue
+     */
+    public static ByteBuffer getEventBuffer() {
+        return getInstance().getDrainBuffer();
+    }
+
+    /**
+     * Returns a text of the last drain of the shared queue
+     *
+     * @param textIndex text index of a record
+     */
+    public static String getEventText(int textIndex) {
+        return getInstance().getText(textIndex);
+    }
+    //endregion
+
+    /**
+     * An event kept outside the ring, download progress or overflowed
+     */
+    private static final class Event {
+        final int mType;
+        final int mRequestId;
+        final long mFirst;
+        final long mSecond;
+        final int mThird;
+        final int mFourth;
+        final String mText;
+        final BinaryPayload mPayload;
+        final long mOfferNanos = System.nanoTime();
+
+        Event(int type, int requestId, long first, long second, int third, int fourth, String text, BinaryPayload payload) {
+            this.mType = type;
+            this.mRequestId = requestId;
+            this.mFirst = first;
+            this.mSecond = second;
+            this.mThird = third;
+            this.mFourth = fourth;
+            this.mText = text;
+            this.mPayload = payload;
+        }
+    }
+}
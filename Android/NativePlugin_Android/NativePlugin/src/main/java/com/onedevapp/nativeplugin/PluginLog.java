@@ -0,0 +1,390 @@
+package com.onedevapp.nativeplugin;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * PluginLog writes the plugin messages with a level and a message pattern whose "{}" are replaced by the arguments,
+ * so a message is only formatted when its level is enabled.
+ * Entries at or above the ring level (INFO by default) are kept in a fixed ring of the last 256 entries, claimed with an atomic
+ * increment and published as one immutable entry per slot, so writers never lock and readers never see half an entry.
+ * With {@link Constants#enableLog} on, DEBUG and above also go to logcat as before.
+ * Persistence, when enabled, copies each entry into a memory-mapped file in the cache dir, which the system keeps if the app crashes,
+ * and the file of the previous session is kept for crash reports.
+ */
+public class PluginLog {
+
+    // region Declarations
+    public static final int DEBUG = Log.DEBUG;
+    public static final int INFO = Log.INFO;
+    public static final int WARN = Log.WARN;
+    public static final int ERROR = Log.ERROR;
+
+    private static final String TAG = "NativePlugin";
+    private static final int CAPACITY = 256;    //power of 2
+    private static final int MASK = CAPACITY - 1;
+    private static final String LOG_FILE = "nativeplugin.log";
+    private static final String PREVIOUS_LOG_FILE = "nativeplugin.prev.log";
+    private static final int FILE_HEADER_BYTES = 8;    //write position (i32) and wrapped flag (i32)
+    private static final int DEFAULT_FILE_BYTES = 256 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static volatile int mRingLevel = INFO;
+
+    //ring of the last entries, the entry of position p is in slot p & MASK until a later lap replaces it
+    private static final AtomicReferenceArray<Entry> mEntries = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong mTail = new AtomicLong();
+
+    //persistence, copied by whichever writer wins mFlushing
+    private static volatile MappedByteBuffer mMappedFile;
+    private static final AtomicBoolean mFlushing = new AtomicBoolean(false);
+    private static long mFlushed;   //next position to persist, guarded by mFlushing
+    //endregion
+
+    //Private constructor, static calls only
+    private PluginLog() {
+
+    }
+
+    // region Levels
+
+    /**
+     * Set the lowest level kept in the ring, ERROR + 1 keeps nothing
+     *
+     * @param level one of DEBUG, INFO, WARN or ERROR
+     */
+    public static void setRingLevel(int level) {
+        mRingLevel = level;
+    }
+
+    /**
+     * Returns whether a message of the level would be written anywhere, to guard arguments which are costly to build
+     */
+    public static boolean isLoggable(int level) {
+        return level >= mRingLevel || (Constants.enableLog && level >= DEBUG);
+    }
+    //endregion
+
+    // region Logging
+
+    public static void d(String pattern) {
+        if (isLoggable(DEBUG)) write(DEBUG, pattern);
+    }
+
+    public static void d(String pattern, Object arg) {
+        if (isLoggable(DEBUG)) write(DEBUG, format(pattern, arg, null, null, 1));
+    }
+
+    public static void d(String pattern, Object arg1, Object arg2) {
+        if (isLoggable(DEBUG)) write(DEBUG, format(pattern, arg1, arg2, null, 2));
+    }
+
+    public static void d(String pattern, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(DEBUG)) write(DEBUG, format(pattern, arg1, arg2, arg3, 3));
+    }
+
+    public static void i(String pattern) {
+        if (isLoggable(INFO)) write(INFO, pattern);
+    }
+
+    public static void i(String pattern, Object arg) {
+        if (isLoggable(INFO)) write(INFO, format(pattern, arg, null, null, 1));
+    }
+
+    public static void i(String pattern, Object arg1, Object arg2) {
+        if (isLoggable(INFO)) write(INFO, format(pattern, arg1, arg2, null, 2));
+    }
+
+    public static void w(String pattern) {
+        if (isLoggable(WARN)) write(WARN, pattern);
+    }
+
+    public static void w(String pattern, Object arg) {
+        if (isLoggable(WARN)) write(WARN, format(pattern, arg, null, null, 1));
+    }
+
+    public static void w(String pattern, Object arg1, Object arg2) {
+        if (isLoggable(WARN)) write(WARN, format(pattern, arg1, arg2, null, 2));
+    }
+
+    public static void e(String pattern) {
+        if (isLoggable(ERROR)) write(ERROR, pattern);
+    }
+
+    public static void e(String pattern, Object arg) {
+        if (isLoggable(ERROR)) write(ERROR, format(pattern, arg, null, null, 1));
+    }
+
+    public static void e(String pattern, Object arg1, Object arg2) {
+        if (isLoggable(ERROR)) write(ERROR, format(pattern, arg1, arg2, null, 2));
+    }
+
+    /**
+     * Replace the "{}" of the pattern by the arguments in order, extra "{}" are left as they are
+     */
+    private static String format(String pattern, Object arg1, Object arg2, Object arg3, int argCount) {
+        StringBuilder builder = new StringBuilder(pattern.length() + 32);
+        int start = 0;
+        int arg = 0;
+        int index;
+        while (arg < argCount && (index = pattern.indexOf("{}", start)) >= 0) {
+            builder.append(pattern, start, index);
+            builder.append(arg == 0 ? arg1 : arg == 1 ? arg2 : arg3);
+            start = index + 2;
+            arg++;
+        }
+        builder.append(pattern, start, pattern.length());
+        return builder.toString();
+    }
+
+    private static void write(int level, String message) {
+        if (Constants.enableLog) Log.println(level, TAG, message);
+        if (level < mRingLevel) return;
+
+        long position = mTail.getAndIncrement();
+        int index = (int) (position & MASK);
+        Entry entry = new Entry(position, System.currentTimeMillis(), level, message);
+        Entry current;
+        do {
+            current = mEntries.get(index);
+            //a writer one lap later got there first, its entry is the one to keep
+            if (current != null && current.mPosition > position) break;
+        } while (!mEntries.compareAndSet(index, current, entry));
+
+        if (mMappedFile != null) flush();
+    }
+    //endregion
+
+    // region Reading
+
+    /**
+     * Returns the last entries of the ring, oldest first, one per line as "time level message"
+     *
+     * @param count max number of entries
+     * @return the entries separated by new lines, empty when there is none
+     */
+    public static String getLastEntries(int count) {
+        long tail = mTail.get();
+        long first = Math.max(0, tail - Math.min(count, CAPACITY));
+        StringBuilder builder = new StringBuilder();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        for (long position = first; position < tail; position++) {
+            String entry = readEntry(position, dateFormat);
+            if (entry == null) continue;
+            if (builder.length() > 0) builder.append('\n');
+            builder.append(entry);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Entry at a position of the ring, null when it was overwritten or is still being written
+     */
+    private static String readEntry(long position, SimpleDateFormat dateFormat) {
+        Entry entry = mEntries.get((int) (position & MASK));
+        if (entry == null || entry.mPosition != position) return null;
+        return dateFormat.format(new Date(entry.mTime)) + " " + getLevelName(entry.mLevel) + " " + entry.mMessage;
+    }
+
+    /**
+     * Whether the entry of a position is not in the ring yet, its slot still holds an older one
+     */
+    private static boolean isPending(long position) {
+        Entry entry = mEntries.get((int) (position & MASK));
+        return entry == null || entry.mPosition < position;
+    }
+
+    private static String getLevelName(int level) {
+        switch (level) {
+            case DEBUG:
+                return "D";
+            case INFO:
+                return "I";
+            case WARN:
+                return "W";
+            default:
+                return "E";
+        }
+    }
+    //endregion
+
+    // region Persistence
+
+    /**
+     * Copy every entry kept in the ring into a memory-mapped file of the cache dir from now on.
+     * The file of the previous session is moved aside first, see {@link #getPreviousSessionLog(Context)}
+     *
+     * @param context current Context
+     * @param bytes   size of the file, it is written round
+     * @return true if enabled
+     */
+    public static synchronized boolean enablePersistence(Context context, int bytes) {
+        if (mMappedFile != null) return true;
+        File file = new File(context.getCacheDir(), LOG_FILE);
+        File previous = new File(context.getCacheDir(), PREVIOUS_LOG_FILE);
+        if (file.exists() && (!previous.exists() || previous.delete()) && !file.renameTo(previous))
+            Log.w(TAG, "Unable to keep the previous log");
+
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            MappedByteBuffer mappedFile = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(4096, bytes));
+            mappedFile.putInt(0, 0);
+            mappedFile.putInt(4, 0);
+            mFlushed = mTail.get();
+            mMappedFile = mappedFile;   //the mapping stays valid once the file is closed
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Log persistence error: " + e.toString());
+            return false;
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    /**
+     * Copy the entries written since the last flush into the mapped file, skipped when another thread is already copying
+     */
+    private static void flush() {
+        do {
+            if (!mFlushing.compareAndSet(false, true)) return;
+            try {
+                MappedByteBuffer mappedFile = mMappedFile;
+                long tail = mTail.get();
+                if (mFlushed < tail - CAPACITY) mFlushed = tail - CAPACITY;
+                SimpleDateFormat dateFormat = null;
+                for (; mFlushed < tail; mFlushed++) {
+                    if (dateFormat == null) dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+                    String entry = readEntry(mFlushed, dateFormat);
+                    if (entry == null) {
+                        //still being written, copied by the next flush
+                        if (isPending(mFlushed)) break;
+                        continue;
+                    }
+                    append(mappedFile, (entry + "\n").getBytes(UTF_8));
+                }
+            } finally {
+                mFlushing.set(false);
+            }
+            //an entry published while copying is picked up here instead of waiting for the next one
+        } while (mFlushed < mTail.get() && !isPending(mFlushed));
+    }
+
+    /**
+     * Append bytes to the data of the mapped file, wrapping at its end
+     */
+    private static void append(MappedByteBuffer mappedFile, byte[] bytes) {
+        int dataBytes = mappedFile.capacity() - FILE_HEADER_BYTES;
+        int position = mappedFile.getInt(0);
+        int offset = Math.max(0, bytes.length - dataBytes);
+        while (offset < bytes.length) {
+            int length = Math.min(bytes.length - offset, dataBytes - position);
+            ByteBuffer target = mappedFile.duplicate();
+            target.position(FILE_HEADER_BYTES + position);
+            target.put(bytes, offset, length);
+            offset += length;
+            position += length;
+            if (position == dataBytes) {
+                position = 0;
+                mappedFile.putInt(4, 1);
+            }
+        }
+        mappedFile.putInt(0, position);
+    }
+
+    /**
+     * Returns the log persisted by the previous session, e.g. to attach it to a crash report
+     *
+     * @param context current Context
+     * @return entries one per line, oldest first, empty when there is none
+     */
+    public static String getPreviousSessionLog(Context context) {
+        File file = new File(context.getCacheDir(), PREVIOUS_LOG_FILE);
+        if (!file.exists()) return "";
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            int dataBytes = (int) randomAccessFile.length() - FILE_HEADER_BYTES;
+            //the header is written in the default order of the mapped buffer, big endian like readInt
+            int position = randomAccessFile.readInt();
+            boolean wrapped = randomAccessFile.readInt() != 0;
+            if (dataBytes <= 0 || position < 0 || position > dataBytes) return "";
+            byte[] data = new byte[wrapped ? dataBytes : position];
+            if (wrapped) {
+                randomAccessFile.seek(FILE_HEADER_BYTES + position);
+                randomAccessFile.readFully(data, 0, dataBytes - position);
+                randomAccessFile.seek(FILE_HEADER_BYTES);
+                randomAccessFile.readFully(data, dataBytes - position, position);
+            } else {
+                randomAccessFile.readFully(data);
+            }
+            String text = new String(data, UTF_8);
+            //the oldest line of a wrapped file is cut
+            if (wrapped && text.indexOf('\n') >= 0) text = text.substring(text.indexOf('\n') + 1);
+            return text;
+        } catch (IOException e) {
+            Log.w(TAG, "Previous log read error: " + e.toString());
+            return "";
+        } finally {
+            closeQuietly(randomAccessFile);
+        }
+    }
+
+    private static void closeQuietly(RandomAccessFile randomAccessFile) {
+        if (randomAccessFile == null) return;
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+        }
+    }
+    //endregion
+
+    // region Static functions called by Unity
+
+    /**
+     * Set the lowest level kept in the ring, see {@link #setRingLevel(int)}
+     */
+    public static void setLogLevel(int level) {
+        setRingLevel(level);
+    }
+
+    /**
+     * Persist the log to the cache dir with the default size, see {@link #enablePersistence(Context, int)}
+     */
+    public static boolean enableLogPersistence(Context context) {
+        return enablePersistence(context, DEFAULT_FILE_BYTES);
+    }
+    //endregion
+
+    /**
+     * One entry of the ring, never changed once written
+     */
+    private static final class Entry {
+        final long mPosition;
+        final long mTime;
+        final int mLevel;
+        final String mMessage;
+
+        Entry(long position, long time, int level, String message) {
+            this.mPosition = position;
+            this.mTime = time;
+            this.mLevel = level;
+            this.mMessage = message;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.onedevapp.nativeplugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * PluginMetrics counts the calls, errors and latencies of every operation and phase of the plugin, so they can be shipped with telemetry.
+ * Each metric has a count, an error count, a total and max latency and a histogram of 20 power of 2 buckets starting below 128 us.
+ * Recording only updates atomics in place, it never allocates or locks, and works whether logging is enabled or not.
+ * A snapshot is read as json or as a {@link BinaryPayload}, optionally resetting the numbers it read.
+ */
+public class PluginMetrics extends BinaryPayload {
+
+    // region Declarations
+    //metrics, in snapshot order
+    public static final int PERMISSION_WAIT = 0;    //permission request until the user answered
+    public static final int IMAGE_PICK_WAIT = 1;    //picker opened until the camera or gallery returned, errors are cancels
+    public static final int IMAGE_PROCESS = 2;  //picked image until its result is posted
+    public static final int IMAGE_DECODE = 3;   //source decoded to the bitmap
+    public static final int IMAGE_ENCODE = 4;   //bitmap encoded to the temp file
+    public static final int CACHE_WRITE = 5;    //output committed to the disk cache, or the source copied there as it is
+    public static final int REGION_DECODE = 6;  //region decoded and written to the cache
+    public static final int CALLBACK_DELIVERY = 7;  //event queued until Unity drained it
+    public static final int SHARE = 8;  //share intent built and started
+    public static final int UPDATE_CHECK = 9;   //update check until its result
+    public static final int IO_QUEUE_WAIT = 10; //task queued on the TaskScheduler IO queue until a worker took it
+    public static final int CPU_QUEUE_WAIT = 11;    //task queued on the TaskScheduler CPU queue until a worker took it
+
+    private static final String[] NAMES = {"permissionWait", "imagePickWait", "imageProcess", "imageDecode", "imageEncode",
+            "cacheWrite", "regionDecode", "callbackDelivery", "share", "updateCheck", "ioQueueWait", "cpuQueueWait"};
+    public static final int METRIC_COUNT = 12;
+
+    public static final int BUCKET_COUNT = 20;
+    public static final int FIRST_BUCKET_MICROS = 128;  //bucket i counts latencies below 128 us << i, the last one the rest
+    private static final int FIRST_BUCKET_SHIFT = 7;
+
+    //slots of a metric
+    private static final int COUNT = 0;
+    private static final int ERRORS = 1;
+    private static final int TOTAL_NANOS = 2;
+    private static final int MAX_NANOS = 3;
+    private static final int FIRST_BUCKET = 4;
+    private static final int STRIDE = FIRST_BUCKET + BUCKET_COUNT;
+
+    private static final AtomicLongArray mSlots = new AtomicLongArray(METRIC_COUNT * STRIDE);
+    private static final AtomicLong mSinceNanos = new AtomicLong(System.nanoTime());
+
+    private final long[] mValues;   //slots of a snapshot
+    private final long mPeriodNanos;
+    //endregion
+
+    //Private constructor of a snapshot
+    private PluginMetrics(long[] values, long periodNanos) {
+        this.mValues = values;
+        this.mPeriodNanos = periodNanos;
+    }
+
+    // region Recording
+
+    /**
+     * Record an operation which started at startNanos and ends now
+     *
+     * @param metric     one of the metrics
+     * @param startNanos System.nanoTime() when the operation started
+     * @param success    false to count it as an error
+     */
+    public static void record(int metric, long startNanos, boolean success) {
+        recordNanos(metric, System.nanoTime() - startNanos, success);
+    }
+
+    /**
+     * Record an operation of a known duration
+     *
+     * @param metric  one of the metrics
+     * @param nanos   duration of the operation
+     * @param success false to count it as an error
+     */
+    public static void recordNanos(int metric, long nanos, boolean success) {
+        if (metric < 0 || metric >= METRIC_COUNT) return;
+        if (nanos < 0) nanos = 0;
+        int base = metric * STRIDE;
+        mSlots.incrementAndGet(base + COUNT);
+        if (!success) mSlots.incrementAndGet(base + ERRORS);
+        mSlots.addAndGet(base + TOTAL_NANOS, nanos);
+        long max;
+        while (nanos > (max = mSlots.get(base + MAX_NANOS))) {
+            if (mSlots.compareAndSet(base + MAX_NANOS, max, nanos)) break;
+        }
+        mSlots.incrementAndGet(base + FIRST_BUCKET + getBucket(nanos));
+    }
+
+    /**
+     * Histogram bucket of a latency
+     */
+    private static int getBucket(long nanos) {
+        long scaled = (nanos / 1000) >> FIRST_BUCKET_SHIFT;
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(scaled));
+    }
+    //endregion
+
+    // region Snapshot
+
+    /**
+     * Read the numbers recorded so far
+     *
+     * @param reset true to start over from zero, the numbers read are taken out so none is counted twice or lost
+     * @return the snapshot
+     */
+    public static PluginMetrics snapshot(boolean reset) {
+        long now = System.nanoTime();
+        long periodNanos = now - (reset ? mSinceNanos.getAndSet(now) : mSinceNanos.get());
+        long[] values = new long[METRIC_COUNT * STRIDE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = reset ? mSlots.getAndSet(i, 0) : mSlots.get(i);
+        }
+        return new PluginMetrics(values, periodNanos);
+    }
+
+    /**
+     * Start over from zero
+     */
+    public static void reset() {
+        snapshot(true);
+    }
+
+    /**
+     * Returns the name of a metric as used in the json
+     */
+    public static String getName(int metric) {
+        return NAMES[metric];
+    }
+
+    /**
+     * Returns the count of a metric in this snapshot
+     */
+    public long getCount(int metric) {
+        return mValues[metric * STRIDE + COUNT];
+    }
+
+    /**
+     * Returns the error count of a metric in this snapshot
+     */
+    public long getErrors(int metric) {
+        return mValues[metric * STRIDE + ERRORS];
+    }
+
+    /**
+     * Snapshot as json: periodMs, bucket bounds and each metric with a count by name, metrics never recorded are left out
+     *
+     * @return json object of the snapshot
+     * @throws JSONException JSONException when a value can't be written
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject jso = new JSONObject();
+        jso.put("periodMs", mPeriodNanos / 1000000L);
+        jso.put("firstBucketMicros", FIRST_BUCKET_MICROS);
+        JSONObject metrics = new JSONObject();
+        for (int metric = 0; metric < METRIC_COUNT; metric++) {
+            int base = metric * STRIDE;
+            long count = mValues[base + COUNT];
+            if (count == 0) continue;
+            JSONObject jsoMetric = new JSONObject();
+            jsoMetric.put("count", count);
+            jsoMetric.put("errors", mValues[base + ERRORS]);
+            jsoMetric.put("meanMicros", mValues[base + TOTAL_NANOS] / count / 1000L);
+            jsoMetric.put("maxMicros", mValues[base + MAX_NANOS] / 1000L);
+            JSONArray buckets = new JSONArray();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.put(mValues[base + FIRST_BUCKET + i]);
+            }
+            jsoMetric.put("buckets", buckets);
+            metrics.put(NAMES[metric], jsoMetric);
+        }
+        jso.put("metrics", metrics);
+        return jso;
+    }
+    //endregion
+
+    // region BinaryPayload
+
+    @Override
+    public int getKind() {
+        return KIND_METRICS;
+    }
+
+    @Override
+    public String toText() {
+        try {
+            return toJson().toString();
+        } catch (JSONException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Fields of version 1: periodNanos (i64), metric count (i32), bucket count (i32), first bucket micros (i32), reserved (i32),
+     * then each metric in order: count (i64), errors (i64), totalNanos (i64), maxNanos (i64) and each bucket (i32)
+     */
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putLong(mPeriodNanos);
+        buffer.putInt(METRIC_COUNT);
+        buffer.putInt(BUCKET_COUNT);
+        buffer.putInt(FIRST_BUCKET_MICROS);
+        buffer.putInt(0);
+        for (int metric = 0; metric < METRIC_COUNT; metric++) {
+            int base = metric * STRIDE;
+            buffer.putLong(mValues[base + COUNT]);
+            buffer.putLong(mValues[base + ERRORS]);
+            buffer.putLong(mValues[base + TOTAL_NANOS]);
+            buffer.putLong(mValues[base + MAX_NANOS]);
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buffer.putInt((int) Math.min(Integer.MAX_VALUE, mValues[base + FIRST_BUCKET + i]));
+            }
+        }
+    }
+
+    /**
+     * Bytes of the binary snapshot
+     */
+    private static int getPayloadBytes() {
+        return HEADER_BYTES + 24 + METRIC_COUNT * (32 + BUCKET_COUNT * 4);
+    }
+    //endregion
+
+    // region Static functions called by Unity
+
+    /**
+     * Snapshot as json text
+     *
+     * @param reset true to start over from zero
+     */
+    public static String getMetricsSnapshot(boolean reset) {
+        return snapshot(reset).toText();
+    }
+
+    /**
+     * Snapshot as a {@link BinaryPayload} in a new direct buffer of its exact size, in native order
+     *
+     * @param reset true to start over from zero
+     */
+    public static ByteBuffer getMetricsBuffer(boolean reset) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(getPayloadBytes());
+        buffer.order(ByteOrder.nativeOrder());
+        snapshot(reset).writeTo(buffer);
+        return buffer;
+    }
+    //endregion
+}
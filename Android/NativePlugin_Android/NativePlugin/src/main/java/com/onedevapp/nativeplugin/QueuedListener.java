@@ -0,0 +1,155 @@
+package com.onedevapp.nativeplugin;
+
+import com.onedevapp.nativeplugin.imagepicker.ImageResult;
+import com.onedevapp.nativeplugin.imagepicker.OnImagePreviewListener;
+import com.onedevapp.nativeplugin.imagepicker.OnImageResultListener;
+import com.onedevapp.nativeplugin.imagepicker.OnImageSelectedListener;
+import com.onedevapp.nativeplugin.imagepicker.OnImagesSelectedListener;
+import com.onedevapp.nativeplugin.inappupdate.OnUpdateListener;
+import com.onedevapp.nativeplugin.rt_permissions.OnPermissionListener;
+
+/**
+ * QueuedListener turns update, permission and image picker callbacks into records of the {@link NativeEventQueue},
+ * so Unity passes it as handler instead of a proxy and reads the events once per frame.
+ * Images and permission lists are queued as {@link BinaryPayload} unless json results are requested.
+ */
+public class QueuedListener implements OnUpdateListener, OnPermissionListener, OnImageSelectedListener, OnImagesSelectedListener,
+        OnImagePreviewListener, OnImageResultListener {
+
+    // region Declarations
+    private final int mRequestId;
+    private final boolean mJsonResults;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Creates a listener whose events carry the request id
+     *
+     * @param requestId id of the request, reported with each event
+     */
+    public QueuedListener(int requestId) {
+        this(requestId, false);
+    }
+
+    /**
+     * Creates a listener whose events carry the request id
+     *
+     * @param requestId   id of the request, reported with each event
+     * @param jsonResults true to queue images as json and permissions as text instead of binary payloads
+     */
+    public QueuedListener(int requestId, boolean jsonResults) {
+        this.mRequestId = requestId;
+        this.mJsonResults = jsonResults;
+    }
+    //endregion
+
+    // region OnUpdateListener
+
+    @Override
+    public void onUpdateVersionCode(int versionCode) {
+        offer(NativeEventQueue.UPDATE_VERSION_CODE, versionCode, 0, 0, 0, null);
+    }
+
+    @Override
+    public void onUpdateStalenessDays(int days) {
+        offer(NativeEventQueue.UPDATE_STALENESS_DAYS, days, 0, 0, 0, null);
+    }
+
+    @Override
+    public void onUpdateAvailable(boolean isUpdateAvailable, boolean isUpdateTypeAllowed) {
+        offer(NativeEventQueue.UPDATE_AVAILABLE, 0, 0, isUpdateAvailable ? 1 : 0, isUpdateTypeAllowed ? 1 : 0, null);
+    }
+
+    @Override
+    public void onUpdateInstallState(int state) {
+        offer(NativeEventQueue.UPDATE_INSTALL_STATE, 0, 0, state, 0, null);
+    }
+
+    @Override
+    public void onUpdateDownloading(long totalBytesToDownload, long bytesDownloaded) {
+        offer(NativeEventQueue.UPDATE_DOWNLOADING, totalBytesToDownload, bytesDownloaded, 0, 0, null);
+    }
+
+    @Override
+    public void onUpdateError(int code, String error) {
+        offer(NativeEventQueue.UPDATE_ERROR, 0, 0, code, 0, error);
+    }
+    //endregion
+
+    // region OnPermissionListener
+
+    @Override
+    public void onPermissionGranted(String[] grantPermissions, boolean all) {
+        offerPayload(NativeEventQueue.PERMISSION_GRANTED, 0, 0, all ? 1 : 0, 0, new StringsPayload(grantPermissions));
+    }
+
+    @Override
+    public void onPermissionDenied(String[] deniedPermissions) {
+        offerPayload(NativeEventQueue.PERMISSION_DENIED, 0, 0, 0, 0, new StringsPayload(deniedPermissions));
+    }
+
+    @Override
+    public void onPermissionError(String errorMessage) {
+        offer(NativeEventQueue.PERMISSION_ERROR, 0, 0, 0, 0, errorMessage);
+    }
+    //endregion
+
+    // region OnImageSelectedListener
+
+    @Override
+    public void onImageSelected(boolean status, String message, int errorCode) {
+        offer(NativeEventQueue.IMAGE_SELECTED, 0, 0, status ? 1 : 0, errorCode, message);
+    }
+    //endregion
+
+    // region OnImagePreviewListener
+
+    @Override
+    public void onImagePreview(String message) {
+        offer(NativeEventQueue.IMAGE_PREVIEW, 0, 0, 0, 0, message);
+    }
+    //endregion
+
+    // region OnImagesSelectedListener
+
+    @Override
+    public void onImageItemSelected(int index, int total, boolean status, String message, int errorCode) {
+        offer(NativeEventQueue.IMAGE_ITEM_SELECTED, index, total, status ? 1 : 0, errorCode, message);
+    }
+
+    @Override
+    public void onImagesCompleted(int total, int failed) {
+        offer(NativeEventQueue.IMAGES_COMPLETED, total, failed, 0, 0, null);
+    }
+    //endregion
+
+    // region OnImageResultListener
+
+    @Override
+    public void onImageResult(ImageResult result) {
+        offerPayload(NativeEventQueue.IMAGE_SELECTED, 0, 0, 1, 0, result);
+    }
+
+    @Override
+    public void onImagePreviewResult(ImageResult result) {
+        offerPayload(NativeEventQueue.IMAGE_PREVIEW, 0, 0, 0, 0, result);
+    }
+
+    @Override
+    public void onImageItemResult(int index, int total, ImageResult result) {
+        offerPayload(NativeEventQueue.IMAGE_ITEM_SELECTED, index, total, 1, 0, result);
+    }
+    //endregion
+
+    private void offer(int type, long first, long second, int third, int fourth, String text) {
+        NativeEventQueue.getInstance().offer(type, mRequestId, first, second, third, fourth, text);
+    }
+
+    private void offerPayload(int type, long first, long second, int third, int fourth, BinaryPayload payload) {
+        if (mJsonResults)
+            NativeEventQueue.getInstance().offer(type, mRequestId, first, second, third, fourth, payload.toText());
+        else
+            NativeEventQueue.getInstance().offer(type, mRequestId, first, second, third, fourth, null, payload);
+    }
+}
@@ -0,0 +1,46 @@
+package com.onedevapp.nativeplugin;
+
+import android.text.TextUtils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * StringsPayload is a list of strings, e.g. the permissions of a permission callback.
+ * Fields: count (i32) then each string.
+ */
+public class StringsPayload extends BinaryPayload {
+
+    // region Declarations
+    private final String[] mValues;
+    //endregion
+
+    /**
+     * Creates a payload of the strings, the array is not copied
+     *
+     * @param values strings, null is written as an empty list
+     */
+    public StringsPayload(String[] values) {
+        this.mValues = (values != null) ? values : new String[0];
+    }
+
+    @Override
+    public int getKind() {
+        return KIND_STRINGS;
+    }
+
+    /**
+     * The strings separated by new lines
+     */
+    @Override
+    public String toText() {
+        return TextUtils.join("\n", mValues);
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(mValues.length);
+        for (String value : mValues) {
+            putString(buffer, value);
+        }
+    }
+}
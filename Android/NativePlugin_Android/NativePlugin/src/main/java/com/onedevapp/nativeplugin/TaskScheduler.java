@@ -0,0 +1,379 @@
+package com.onedevapp.nativeplugin;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TaskScheduler runs the background work of the whole plugin on two bounded pools of low priority threads,
+ * IO for blocking file, network and system service calls and CPU for decoding and encoding,
+ * so the plugin never takes more threads than its budget away from Unity's main, render and job threads.
+ * Tasks run by priority, then in submission order, and a queue rejects new tasks once it holds its max depth.
+ * Depths, counts and the time tasks waited in a queue are kept for telemetry.
+ */
+public class TaskScheduler {
+
+    // region Declarations
+    //queues
+    public static final int QUEUE_IO = 0;
+    public static final int QUEUE_CPU = 1;
+
+    //priorities, higher ones are taken first
+    public static final int PRIORITY_HIGH = 0;      //a caller or the user waits on it
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_LOW = 2;       //polling and housekeeping
+
+    private static final int MAX_QUEUED_TASKS = 64; //tasks waiting in a queue before new ones are rejected
+    private static final int IO_WORKERS = 3;        //IO tasks mostly block, a few threads are enough
+    private static final int MIN_CPU_WORKERS = 2;   //a pick is not stuck behind a single long decode
+    private static final int MAX_CPU_WORKERS = 4;
+    private static final int KEEP_ALIVE_SECONDS = 30;   //idle workers are released after this time
+
+    private static TaskScheduler instance;
+
+    private final WorkQueue[] mQueues;
+    private final AtomicLong mNextSequence = new AtomicLong();  //keeps tasks of equal priority in submission order
+    private final Handler mMainHandler; //holds delayed tasks until they are due
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared scheduler
+     *
+     * @return the {@link TaskScheduler} instance
+     */
+    public static synchronized TaskScheduler getInstance() {
+        if (instance == null) {
+            instance = new TaskScheduler();
+        }
+        return instance;
+    }
+
+    //Private constructor
+    private TaskScheduler() {
+        mQueues = new WorkQueue[]{
+                new WorkQueue("io", IO_WORKERS, PluginMetrics.IO_QUEUE_WAIT),
+                new WorkQueue("cpu", getDefaultCpuWorkers(), PluginMetrics.CPU_QUEUE_WAIT)};
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Leave at least half of the cores to Unity, above the minimum of workers
+     */
+    private static int getDefaultCpuWorkers() {
+        return Math.max(MIN_CPU_WORKERS, Math.min(MAX_CPU_WORKERS, Runtime.getRuntime().availableProcessors() / 2));
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Run a task on a queue at normal priority
+     *
+     * @param queue    QUEUE_IO or QUEUE_CPU
+     * @param runnable the work
+     * @return future of the work
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public Future<?> submit(int queue, Runnable runnable) {
+        return submit(queue, PRIORITY_NORMAL, null, runnable);
+    }
+
+    /**
+     * Run a task on a queue
+     *
+     * @param queue    QUEUE_IO or QUEUE_CPU
+     * @param priority PRIORITY_HIGH, PRIORITY_NORMAL or PRIORITY_LOW
+     * @param token    token cancelling the task, may be null
+     * @param runnable the work
+     * @return future of the work
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public Future<?> submit(int queue, int priority, CancellationToken token, Runnable runnable) {
+        ScheduledTask task = new ScheduledTask(getQueue(queue), priority, token, runnable);
+        task.enqueue();
+        return task;
+    }
+
+    /**
+     * Run a task on a queue once the delay has passed, the queue depth is checked then and a full queue drops the task
+     *
+     * @param queue       QUEUE_IO or QUEUE_CPU
+     * @param priority    PRIORITY_HIGH, PRIORITY_NORMAL or PRIORITY_LOW
+     * @param token       token cancelling the task, may be null
+     * @param runnable    the work
+     * @param delayMillis delay before the task is queued
+     * @return future of the work, cancelled when the task is dropped
+     */
+    public Future<?> schedule(int queue, int priority, CancellationToken token, Runnable runnable, long delayMillis) {
+        final ScheduledTask task = new ScheduledTask(getQueue(queue), priority, token, runnable);
+        mMainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (task.isCancelled()) return;
+                try {
+                    task.enqueue();
+                } catch (RejectedExecutionException e) {
+                    PluginLog.w("Delayed task dropped: {}", e.getMessage());
+                    task.cancel(false);
+                }
+            }
+        }, Math.max(0, delayMillis));
+        return task;
+    }
+
+    /**
+     * Returns the number of threads a queue may run at once
+     *
+     * @param queue QUEUE_IO or QUEUE_CPU
+     */
+    public int getWorkerCount(int queue) {
+        return getQueue(queue).mExecutor.getMaximumPoolSize();
+    }
+
+    /**
+     * Change the number of threads a queue may run at once, running tasks finish before extra threads are released
+     *
+     * @param queue   QUEUE_IO or QUEUE_CPU
+     * @param workers threads allowed, at least 1
+     */
+    public void setWorkerCount(int queue, int workers) {
+        ThreadPoolExecutor executor = getQueue(queue).mExecutor;
+        workers = Math.max(1, workers);
+        synchronized (executor) {
+            if (workers > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(workers);
+                executor.setCorePoolSize(workers);
+            } else {
+                executor.setCorePoolSize(workers);
+                executor.setMaximumPoolSize(workers);
+            }
+        }
+        PluginLog.i("Scheduler {} workers set to {}", getQueue(queue).mName, workers);
+    }
+
+    /**
+     * Returns the number of tasks waiting in a queue
+     *
+     * @param queue QUEUE_IO or QUEUE_CPU
+     */
+    public int getQueueDepth(int queue) {
+        return getQueue(queue).mDepth.get();
+    }
+
+    /**
+     * Queues as json, each with its workers, active, depth, peakDepth, maxDepth, submitted, completed, failed, cancelled and rejected counts
+     *
+     * @param resetPeaks true to start the peak depths over from the current depths
+     * @return json object of the queues
+     * @throws JSONException JSONException when a value can't be written
+     */
+    public JSONObject toJson(boolean resetPeaks) throws JSONException {
+        JSONObject jso = new JSONObject();
+        for (WorkQueue queue : mQueues) {
+            JSONObject jsoQueue = new JSONObject();
+            jsoQueue.put("workers", queue.mExecutor.getMaximumPoolSize());
+            jsoQueue.put("active", queue.mExecutor.getActiveCount());
+            jsoQueue.put("depth", queue.mDepth.get());
+            jsoQueue.put("peakDepth", resetPeaks ? queue.mPeakDepth.getAndSet(queue.mDepth.get()) : queue.mPeakDepth.get());
+            jsoQueue.put("maxDepth", MAX_QUEUED_TASKS);
+            jsoQueue.put("submitted", queue.mSubmitted.get());
+            jsoQueue.put("completed", queue.mCompleted.get());
+            jsoQueue.put("failed", queue.mFailed.get());
+            jsoQueue.put("cancelled", queue.mCancelled.get());
+            jsoQueue.put("rejected", queue.mRejected.get());
+            jso.put(queue.mName, jsoQueue);
+        }
+        return jso;
+    }
+    //endregion
+
+    // region helper functions
+
+    private WorkQueue getQueue(int queue) {
+        if (queue < 0 || queue >= mQueues.length) throw new IllegalArgumentException("Unknown queue " + queue);
+        return mQueues[queue];
+    }
+    //endregion
+
+    // region Static functions called by Unity
+
+    /**
+     * Queues as json text
+     *
+     * @param resetPeaks true to start the peak depths over
+     */
+    public static String getSchedulerSnapshot(boolean resetPeaks) {
+        try {
+            return getInstance().toJson(resetPeaks).toString();
+        } catch (JSONException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Cap the threads of a queue, see {@link #setWorkerCount(int, int)}
+     *
+     * @param queue   QUEUE_IO or QUEUE_CPU
+     * @param workers threads allowed, at least 1
+     */
+    public static void setWorkerLimit(int queue, int workers) {
+        getInstance().setWorkerCount(queue, workers);
+    }
+    //endregion
+
+    /**
+     * A bounded pool with its own priority queue and counts
+     */
+    private static class WorkQueue {
+
+        // region Declarations
+        private final String mName;
+        private final int mWaitMetric;  //PluginMetrics of the time waited in the queue
+        private final ThreadPoolExecutor mExecutor;
+        private final AtomicInteger mDepth = new AtomicInteger();
+        private final AtomicInteger mPeakDepth = new AtomicInteger();
+        private final AtomicLong mSubmitted = new AtomicLong();
+        private final AtomicLong mCompleted = new AtomicLong();
+        private final AtomicLong mFailed = new AtomicLong();
+        private final AtomicLong mCancelled = new AtomicLong();
+        private final AtomicLong mRejected = new AtomicLong();
+        //endregion
+
+        private WorkQueue(String name, int workers, int waitMetric) {
+            this.mName = name;
+            this.mWaitMetric = waitMetric;
+            //the queue itself is unbounded, the depth is bounded by enqueue() so a full queue is counted
+            mExecutor = new ThreadPoolExecutor(workers, workers, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new WorkerThreadFactory("NativePlugin-" + name + "-"));
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * A task ordered by priority, then by submission
+     */
+    private class ScheduledTask extends FutureTask<Void> implements Comparable<ScheduledTask> {
+
+        // region Declarations
+        private final WorkQueue mQueue;
+        private final int mPriority;
+        private final long mSequence;
+        private final CancellationToken mToken;
+        private final AtomicBoolean mQueued = new AtomicBoolean(false);   //counted in the queue depth
+        private long mEnqueueNanos;
+        //endregion
+
+        private ScheduledTask(WorkQueue queue, int priority, CancellationToken token, Runnable runnable) {
+            super(runnable, null);
+            this.mQueue = queue;
+            this.mPriority = priority;
+            this.mSequence = mNextSequence.getAndIncrement();
+            this.mToken = token;
+            if (token != null) token.register(this);
+        }
+
+        /**
+         * Add the task to its queue
+         *
+         * @throws RejectedExecutionException when the queue is full
+         */
+        private void enqueue() {
+            if (isCancelled()) return;
+            int depth = mQueue.mDepth.incrementAndGet();
+            if (depth > MAX_QUEUED_TASKS) {
+                mQueue.mDepth.decrementAndGet();
+                mQueue.mRejected.incrementAndGet();
+                if (mToken != null) mToken.unregister(this);
+                throw new RejectedExecutionException("Scheduler " + mQueue.mName + " queue is full");
+            }
+            int peak;
+            while (depth > (peak = mQueue.mPeakDepth.get())) {
+                if (mQueue.mPeakDepth.compareAndSet(peak, depth)) break;
+            }
+            mQueue.mSubmitted.incrementAndGet();
+            mEnqueueNanos = System.nanoTime();
+            mQueued.set(true);
+            mQueue.mExecutor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            if (mQueued.compareAndSet(true, false)) {
+                mQueue.mDepth.decrementAndGet();
+                PluginMetrics.record(mQueue.mWaitMetric, mEnqueueNanos, true);
+            }
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            if (mToken != null) mToken.unregister(this);
+            if (isCancelled()) {
+                mQueue.mCancelled.incrementAndGet();
+                //a task cancelled while waiting leaves the queue now instead of when a worker reaches it
+                if (mQueued.compareAndSet(true, false)) {
+                    mQueue.mDepth.decrementAndGet();
+                    mQueue.mExecutor.remove(this);
+                }
+                return;
+            }
+            try {
+                get();
+                mQueue.mCompleted.incrementAndGet();
+            } catch (ExecutionException e) {
+                mQueue.mFailed.incrementAndGet();
+                PluginLog.e("Scheduler {} task failed: {}", mQueue.mName, e.getCause());
+            } catch (CancellationException | InterruptedException e) {
+                mQueue.mCancelled.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            if (mPriority != other.mPriority) return mPriority < other.mPriority ? -1 : 1;
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Names the worker threads and keeps them below the UI and render threads
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+        private final String mNamePrefix;
+
+        WorkerThreadFactory(String namePrefix) {
+            this.mNamePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, mNamePrefix + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
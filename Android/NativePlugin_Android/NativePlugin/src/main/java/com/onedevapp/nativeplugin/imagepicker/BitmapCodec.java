@@ -0,0 +1,92 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+
+import com.onedevapp.nativeplugin.imagecore.ImageCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Android backend of the image pipeline, decodes with BitmapFactory into pooled bitmaps
+ */
+class BitmapCodec implements ImageCodec<Bitmap> {
+
+    static final BitmapCodec INSTANCE = new BitmapCodec(Bitmap.Config.ARGB_8888);
+    static final BitmapCodec RGB_565 = new BitmapCodec(Bitmap.Config.RGB_565);
+
+    private final Bitmap.Config mConfig;
+
+    private BitmapCodec(Bitmap.Config config) {
+        this.mConfig = config;
+    }
+
+    /**
+     * Returns the codec decoding into the config
+     */
+    static BitmapCodec forConfig(Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 ? RGB_565 : INSTANCE;
+    }
+
+    @Override
+    public Bitmap decode(InputStream inputStream, int width, int height, int sampleSize) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.outWidth = width;
+        options.outHeight = height;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = mConfig;
+        return ImageUtil.decodeStreamWithPool(inputStream, options);
+    }
+
+    @Override
+    public int getWidth(Bitmap image) {
+        return image.getWidth();
+    }
+
+    @Override
+    public int getHeight(Bitmap image) {
+        return image.getHeight();
+    }
+
+    @Override
+    public Bitmap transform(Bitmap image, int degrees, int targetWidth, int targetHeight) {
+        boolean swapped = degrees == 90 || degrees == 270;
+        int uprightWidth = swapped ? image.getHeight() : image.getWidth();
+        int uprightHeight = swapped ? image.getWidth() : image.getHeight();
+
+        //downscale with the area filter first, then the rotation is a lossless pixel move
+        int storedWidth = swapped ? targetHeight : targetWidth;
+        int storedHeight = swapped ? targetWidth : targetHeight;
+        if (BitmapResampler.canResample(image, storedWidth, storedHeight)) {
+            Bitmap resampled = BitmapResampler.resample(image, storedWidth, storedHeight);
+            if (degrees == 0) return resampled;
+            Bitmap rotated = ImageUtil.drawToPooledBitmap(resampled, getRotation(degrees, targetWidth, targetHeight), targetWidth, targetHeight);
+            release(resampled);
+            return rotated;
+        }
+
+        Matrix matrix = getRotation(degrees, uprightWidth, uprightHeight);
+        matrix.postScale((float) targetWidth / uprightWidth, (float) targetHeight / uprightHeight);
+        return ImageUtil.drawToPooledBitmap(image, matrix, targetWidth, targetHeight);
+    }
+
+    @Override
+    public void release(Bitmap image) {
+        BitmapPool.getInstance().put(image);
+    }
+
+    /**
+     * Clockwise rotation which keeps the rotated image at the origin
+     */
+    private static Matrix getRotation(int degrees, int uprightWidth, int uprightHeight) {
+        Matrix matrix = new Matrix();
+        if (degrees != 0) {
+            matrix.postRotate(degrees);
+            //move the rotated image back to the origin
+            matrix.postTranslate(degrees == 270 ? 0 : uprightWidth, degrees == 90 ? 0 : uprightHeight);
+        }
+        return matrix;
+    }
+}
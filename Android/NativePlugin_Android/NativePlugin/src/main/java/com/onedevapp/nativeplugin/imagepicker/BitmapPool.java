@@ -0,0 +1,256 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.graphics.Bitmap;
+
+import com.onedevapp.nativeplugin.PluginLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * BitmapPool keeps released bitmaps around so that repeated picks and compressions
+ * can decode into them (BitmapFactory.Options.inBitmap) instead of allocating new ones.
+ * Bitmaps are bucketed by config and allocation size, and the pool is capped in bytes with least recently released eviction.
+ */
+public class BitmapPool {
+
+    // region Declarations
+    private static final int MAX_SIZE_MULTIPLE = 2;   //a pooled bitmap is reused only when it is at most this many times larger than needed
+    private static final long DEFAULT_MAX_BYTES = 24L * 1024 * 1024;
+
+    private static BitmapPool instance;
+
+    private final Map<Bitmap.Config, TreeMap<Integer, ArrayDeque<Bitmap>>> mBuckets = new HashMap<>(); //bucket per config, keyed by allocation size
+    private final LinkedHashSet<Bitmap> mLruOrder = new LinkedHashSet<>();  //release order, oldest first
+    private long mMaxBytes;
+    private long mCurrentBytes;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mPutCount;
+    private long mEvictionCount;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared pool
+     *
+     * @return the {@link BitmapPool} instance
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (instance == null) {
+            instance = new BitmapPool(Math.min(DEFAULT_MAX_BYTES, Runtime.getRuntime().maxMemory() / 8));
+        }
+        return instance;
+    }
+
+    //Private constructor with the byte cap
+    private BitmapPool(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Set the max bytes held by the pool, trims immediately if needed
+     *
+     * @param maxBytes max bytes, 0 disables pooling
+     */
+    public synchronized void setMaxSize(long maxBytes) {
+        this.mMaxBytes = Math.max(0, maxBytes);
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Returns a bitmap which can be used as BitmapFactory.Options.inBitmap for the given size, or null.
+     * The returned bitmap is not cleared and must only be used as a decode target.
+     *
+     * @param width  width of the decoded image
+     * @param height height of the decoded image
+     * @param config bitmap config
+     * @return pooled bitmap or null
+     */
+    public synchronized Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        int requiredBytes = getBytesPerPixel(config) * width * height;
+        TreeMap<Integer, ArrayDeque<Bitmap>> bucket = mBuckets.get(config);
+        if (bucket != null) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> entry = bucket.ceilingEntry(requiredBytes);
+            if (entry != null && entry.getKey() <= requiredBytes * MAX_SIZE_MULTIPLE) {
+                Bitmap bitmap = entry.getValue().pollFirst();
+                if (entry.getValue().isEmpty()) bucket.remove(entry.getKey());
+                if (bitmap != null) {
+                    mLruOrder.remove(bitmap);
+                    mCurrentBytes -= bitmap.getAllocationByteCount();
+                    mHitCount++;
+                    return bitmap;
+                }
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /**
+     * Returns a transparent bitmap of exactly the given size, from the pool if possible
+     *
+     * @param width  width of the bitmap
+     * @param height height of the bitmap
+     * @param config bitmap config
+     * @return bitmap with the given size
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = getDirty(width, height, config);
+        if (bitmap != null) {
+            try {
+                bitmap.reconfigure(width, height, config);
+                bitmap.eraseColor(0);
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                PluginLog.w("BitmapPool reconfigure error: {}", e);
+                put(bitmap);
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Release a bitmap to the pool, the caller must not use it afterwards.
+     * Bitmaps which can't be reused are recycled.
+     *
+     * @param bitmap bitmap to release
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || size > mMaxBytes / 2 || mLruOrder.contains(bitmap)) {
+            if (!mLruOrder.contains(bitmap)) bitmap.recycle();
+            return;
+        }
+
+        TreeMap<Integer, ArrayDeque<Bitmap>> bucket = mBuckets.get(bitmap.getConfig());
+        if (bucket == null) {
+            bucket = new TreeMap<>();
+            mBuckets.put(bitmap.getConfig(), bucket);
+        }
+        ArrayDeque<Bitmap> bitmaps = bucket.get(size);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            bucket.put(size, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        mLruOrder.add(bitmap);
+        mCurrentBytes += size;
+        mPutCount++;
+
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Recycle every pooled bitmap
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Number of requests served from the pool
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of requests which had to allocate
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Number of bitmaps evicted to stay under the cap
+     */
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Bytes currently held by the pool
+     */
+    public synchronized long getCurrentSize() {
+        return mCurrentBytes;
+    }
+
+    /**
+     * Max bytes the pool may hold
+     */
+    public synchronized long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    /**
+     * All pool counters as json
+     *
+     * @return json string of the counters
+     */
+    public synchronized String getStats() {
+        JSONObject jso = new JSONObject();
+        try {
+            jso.put("hitCount", mHitCount);
+            jso.put("missCount", mMissCount);
+            jso.put("putCount", mPutCount);
+            jso.put("evictionCount", mEvictionCount);
+            jso.put("currentBytes", mCurrentBytes);
+            jso.put("maxBytes", mMaxBytes);
+        } catch (JSONException e) {
+            PluginLog.w("BitmapPool stats error: {}", e);
+        }
+        return jso.toString();
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Evict the least recently released bitmaps until the pool fits in maxBytes
+     */
+    private void trimToSize(long maxBytes) {
+        Iterator<Bitmap> iterator = mLruOrder.iterator();
+        while (mCurrentBytes > maxBytes && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+
+            int size = bitmap.getAllocationByteCount();
+            TreeMap<Integer, ArrayDeque<Bitmap>> bucket = mBuckets.get(bitmap.getConfig());
+            if (bucket != null) {
+                ArrayDeque<Bitmap> bitmaps = bucket.get(size);
+                if (bitmaps != null) {
+                    bitmaps.remove(bitmap);
+                    if (bitmaps.isEmpty()) bucket.remove(size);
+                }
+            }
+            mCurrentBytes -= size;
+            mEvictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Bytes per pixel of the config
+     */
+    static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) return 1;
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) return 2;
+        return 4;
+    }
+    //endregion
+}
@@ -0,0 +1,158 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import com.onedevapp.nativeplugin.imagecore.AreaResampler;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * BitmapResampler downscales bitmaps to an exact size with the area-average filter of {@link AreaResampler},
+ * instead of a single bilinear Matrix draw which skips source pixels once the ratio is above 2.
+ * The target is resampled in bands of rows, only the source rows of a band are read out of the bitmap at once,
+ * so the pixel buffers stay small and are kept per thread between calls. Large targets run their bands on a fork-join pool (API 21+).
+ */
+final class BitmapResampler {
+
+    // region Declarations
+    private static final int MIN_PARALLEL_PIXELS = 256 * 256;   //smaller targets are resampled on the calling thread
+    private static final int BAND_ROWS = 32;    //target rows resampled from one read of the source
+    private static final int MAX_RETAINED_PIXELS = 2 * 1024 * 1024;   //larger pixel buffers are not kept between calls
+
+    private static final ThreadLocal<int[]> sSourcePixels = new ThreadLocal<>();
+    private static final ThreadLocal<int[]> sTargetPixels = new ThreadLocal<>();
+    //endregion
+
+    private BitmapResampler() {
+
+    }
+
+    // region Public functions
+
+    /**
+     * Returns whether the size is a downscale of the bitmap, the only case the resampler handles
+     *
+     * @param source bitmap to resample
+     * @param width  width of the target
+     * @param height height of the target
+     * @return true if neither side grows and at least one shrinks
+     */
+    static boolean canResample(Bitmap source, int width, int height) {
+        return width > 0 && height > 0 && width <= source.getWidth() && height <= source.getHeight()
+                && (width < source.getWidth() || height < source.getHeight());
+    }
+
+    /**
+     * Downscale the bitmap into a pooled bitmap of exactly the given size
+     *
+     * @param source bitmap to resample, left untouched
+     * @param width  width of the target, at most the source width
+     * @param height height of the target, at most the source height
+     * @return the resampled bitmap
+     */
+    static Bitmap resample(Bitmap source, int width, int height) {
+        AreaResampler resampler = new AreaResampler(source.getWidth(), source.getHeight(), width, height);
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap target = BitmapPool.getInstance().get(width, height, config);
+
+        int bandCount = (height + BAND_ROWS - 1) / BAND_ROWS;
+        if (bandCount > 1 && width * height >= MIN_PARALLEL_PIXELS && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            ParallelBands.run(resampler, source, target, bandCount);
+        } else {
+            for (int band = 0; band < bandCount; band++) {
+                resampleBand(resampler, source, target, band);
+            }
+        }
+        return target;
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Read the source rows of a band, resample them and write the target rows
+     */
+    private static void resampleBand(AreaResampler resampler, Bitmap source, Bitmap target, int band) {
+        int rowStart = band * BAND_ROWS;
+        int rowEnd = Math.min(target.getHeight(), rowStart + BAND_ROWS);
+        int sourceWidth = source.getWidth();
+        int sourceRowStart = resampler.getSourceRowStart(rowStart);
+        int sourceRows = resampler.getSourceRowEnd(rowEnd - 1) - sourceRowStart;
+        int width = target.getWidth();
+
+        int[] sourcePixels = getBuffer(sSourcePixels, sourceRows * sourceWidth);
+        int[] targetPixels = getBuffer(sTargetPixels, (rowEnd - rowStart) * width);
+        source.getPixels(sourcePixels, 0, sourceWidth, 0, sourceRowStart, sourceWidth, sourceRows);
+        resampler.resampleRows(sourcePixels, sourceRowStart, targetPixels, rowStart, rowStart, rowEnd);
+        //bands write disjoint rows, but the bitmap itself is not safe for concurrent writes
+        synchronized (target) {
+            target.setPixels(targetPixels, 0, width, 0, rowStart, width, rowEnd - rowStart);
+        }
+    }
+
+    /**
+     * Returns the pixel buffer of the calling thread, at least the given size
+     */
+    private static int[] getBuffer(ThreadLocal<int[]> buffers, int size) {
+        int[] buffer = buffers.get();
+        if (buffer != null && buffer.length >= size) return buffer;
+
+        buffer = new int[size];
+        //a buffer too large to keep replaces the retained one for this call only
+        if (size <= MAX_RETAINED_PIXELS) buffers.set(buffer);
+        return buffer;
+    }
+    //endregion
+
+    /**
+     * Bands run on a shared fork-join pool, one worker per core. ForkJoinPool only exists from API 21
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    private static final class ParallelBands extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static ForkJoinPool sPool;
+
+        private final transient AreaResampler mResampler;
+        private final transient Bitmap mSource;
+        private final transient Bitmap mTarget;
+        private final int mBandStart;
+        private final int mBandEnd;
+
+        private ParallelBands(AreaResampler resampler, Bitmap source, Bitmap target, int bandStart, int bandEnd) {
+            this.mResampler = resampler;
+            this.mSource = source;
+            this.mTarget = target;
+            this.mBandStart = bandStart;
+            this.mBandEnd = bandEnd;
+        }
+
+        /**
+         * Resample every band on the pool, the calling thread waits and helps until every band is done
+         */
+        static void run(AreaResampler resampler, Bitmap source, Bitmap target, int bandCount) {
+            getSharedPool().invoke(new ParallelBands(resampler, source, target, 0, bandCount));
+        }
+
+        private static synchronized ForkJoinPool getSharedPool() {
+            if (sPool == null) {
+                sPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+            }
+            return sPool;
+        }
+
+        @Override
+        protected void compute() {
+            if (mBandEnd - mBandStart == 1) {
+                resampleBand(mResampler, mSource, mTarget, mBandStart);
+                return;
+            }
+            int middle = (mBandStart + mBandEnd) >>> 1;
+            invokeAll(new ParallelBands(mResampler, mSource, mTarget, mBandStart, middle),
+                    new ParallelBands(mResampler, mSource, mTarget, middle, mBandEnd));
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import com.onedevapp.nativeplugin.PluginLog;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ChunkedTransfer keeps encoded images in direct buffers until Unity has pulled them in chunks,
+ * so a large image never crosses JNI as a single String or array.
+ * Each transfer has an id, chunks are read by offset and the buffer goes back to the {@link PixelBufferPool}
+ * once the last chunk is acknowledged or the transfer is released. A buffer whose chunks were handed out as views
+ * is only recycled then, never when transfers are dropped past the max count.
+ */
+public class ChunkedTransfer {
+
+    // region Declarations
+    private static final int MAX_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_TRANSFERS = 8;    //transfers never read by Unity are dropped oldest first past this count
+
+    private static ChunkedTransfer instance;
+
+    private final LinkedHashMap<Integer, Transfer> mTransfers = new LinkedHashMap<>();
+    private int mNextId = 1;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared transfers
+     *
+     * @return the {@link ChunkedTransfer} instance
+     */
+    public static synchronized ChunkedTransfer getInstance() {
+        if (instance == null) {
+            instance = new ChunkedTransfer();
+        }
+        return instance;
+    }
+
+    //Private constructor
+    private ChunkedTransfer() {
+
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Load the file into a direct buffer and start a transfer of its bytes
+     *
+     * @param file encoded image
+     * @return id of the transfer
+     * @throws IOException IOException when the file cant be read
+     */
+    public int open(File file) throws IOException {
+        long length = file.length();
+        if (length <= 0 || length > Integer.MAX_VALUE)
+            throw new IOException("Unable to transfer " + file + " of " + length + " bytes");
+
+        ByteBuffer buffer = PixelBufferPool.getInstance().acquire((int) length);
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new EOFException("Unexpected end of " + file);
+            }
+        } catch (IOException e) {
+            PixelBufferPool.getInstance().release(buffer);
+            throw e;
+        } finally {
+            inputStream.close();
+        }
+        buffer.flip();
+
+        synchronized (this) {
+            int id = mNextId++;
+            mTransfers.put(id, new Transfer(buffer));
+            trimToCount();
+            return id;
+        }
+    }
+
+    /**
+     * Returns the size of the transfer in bytes
+     *
+     * @param id id of the transfer
+     * @return size in bytes, -1 when the transfer is unknown
+     */
+    public synchronized int getSize(int id) {
+        Transfer transfer = mTransfers.get(id);
+        return transfer != null ? transfer.mBuffer.limit() : -1;
+    }
+
+    /**
+     * Returns a chunk as a direct buffer view of the transfer, nothing is copied.
+     * The view must not be read once the chunk is acknowledged
+     *
+     * @param id     id of the transfer
+     * @param offset offset of the chunk
+     * @param length bytes wanted, fewer are returned at the end of the transfer
+     * @return direct buffer of the chunk, null when the transfer or offset is unknown
+     */
+    public synchronized ByteBuffer getChunkBuffer(int id, int offset, int length) {
+        ByteBuffer chunk = sliceChunk(id, offset, length);
+        //the view may be read at any time until the transfer is acknowledged or released
+        if (chunk != null) mTransfers.get(id).mHandedOut = true;
+        return chunk;
+    }
+
+    /**
+     * Returns a copy of a chunk, for callers which can't read direct buffers
+     *
+     * @param id     id of the transfer
+     * @param offset offset of the chunk
+     * @param length bytes wanted, fewer are returned at the end of the transfer
+     * @return bytes of the chunk, null when the transfer or offset is unknown
+     */
+    public synchronized byte[] getChunk(int id, int offset, int length) {
+        ByteBuffer chunk = sliceChunk(id, offset, length);
+        if (chunk == null) return null;
+
+        byte[] bytes = new byte[chunk.remaining()];
+        chunk.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Acknowledge a chunk once it has been copied, the transfer is freed with its last chunk
+     *
+     * @param id     id of the transfer
+     * @param offset offset of the chunk
+     * @param length bytes received
+     * @return true if this was the last chunk and the transfer is freed
+     */
+    public synchronized boolean acknowledge(int id, int offset, int length) {
+        Transfer transfer = mTransfers.get(id);
+        if (transfer == null || (long) offset + length < transfer.mBuffer.limit()) return false;
+
+        release(id);
+        return true;
+    }
+
+    /**
+     * Free the transfer before its last chunk, e.g. when Unity no longer needs the image
+     *
+     * @param id id of the transfer
+     */
+    public synchronized void release(int id) {
+        Transfer transfer = mTransfers.remove(id);
+        if (transfer != null) PixelBufferPool.getInstance().release(transfer.mBuffer);
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Returns a view of a chunk of the transfer
+     */
+    private ByteBuffer sliceChunk(int id, int offset, int length) {
+        Transfer transfer = mTransfers.get(id);
+        if (transfer == null) return null;
+        ByteBuffer buffer = transfer.mBuffer;
+        if (offset < 0 || offset >= buffer.limit() || length <= 0) return null;
+
+        ByteBuffer chunk = buffer.duplicate();
+        chunk.position(offset);
+        chunk.limit(offset + Math.min(Math.min(length, MAX_CHUNK_SIZE), buffer.limit() - offset));
+        return chunk.slice();
+    }
+
+    /**
+     * Drop the oldest unread transfers beyond the max count, their ids become unknown.
+     * Transfers being read are kept until acknowledged or released, Unity may still hold views of them
+     */
+    private void trimToCount() {
+        Iterator<Map.Entry<Integer, Transfer>> iterator = mTransfers.entrySet().iterator();
+        while (mTransfers.size() > MAX_TRANSFERS && iterator.hasNext()) {
+            Map.Entry<Integer, Transfer> entry = iterator.next();
+            if (entry.getValue().mHandedOut) continue;
+            PluginLog.w("ChunkedTransfer dropping unread transfer {}", entry.getKey());
+            iterator.remove();
+            PixelBufferPool.getInstance().release(entry.getValue().mBuffer);
+        }
+    }
+    //endregion
+
+    /**
+     * Buffer of a transfer and whether views of it were handed out
+     */
+    private static final class Transfer {
+        final ByteBuffer mBuffer;
+        boolean mHandedOut;     //guarded by the ChunkedTransfer
+
+        Transfer(ByteBuffer buffer) {
+            this.mBuffer = buffer;
+        }
+    }
+}
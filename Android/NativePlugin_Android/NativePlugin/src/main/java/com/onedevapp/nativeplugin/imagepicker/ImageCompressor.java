@@ -2,9 +2,18 @@ package com.onedevapp.nativeplugin.imagepicker;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Helper functions used in Image Compression by AndroidWave
@@ -19,6 +28,10 @@ public class ImageCompressor {
     private int maxHeight = 816;
     private Bitmap.CompressFormat compressFormat = Bitmap.CompressFormat.JPEG;
     private int quality = 80;
+    private long maxFileSize = 0;   //0 keeps the fixed quality
+    private int previewSize = 0;    //0 disables the preview
+    private boolean lazyOrientation = false;    //keep the stored orientation and report it instead
+    private final List<Rendition> renditions = new ArrayList<>();  //extra outputs of the same decode
     private String destinationDirectoryPath;
 
     /**
@@ -29,6 +42,22 @@ public class ImageCompressor {
         destinationDirectoryPath = context.getCacheDir().getPath() + File.separator + "images";
     }
 
+    /**
+     * Copy constructor, the copy doesn't change with the original
+     * @param other compressor to copy
+     */
+    public ImageCompressor(ImageCompressor other) {
+        maxWidth = other.maxWidth;
+        maxHeight = other.maxHeight;
+        compressFormat = other.compressFormat;
+        quality = other.quality;
+        maxFileSize = other.maxFileSize;
+        previewSize = other.previewSize;
+        lazyOrientation = other.lazyOrientation;
+        renditions.addAll(other.getRenditions());
+        destinationDirectoryPath = other.destinationDirectoryPath;
+    }
+
     /**
      * set Max Width
      * @param maxWidth compression max width
@@ -69,6 +98,61 @@ public class ImageCompressor {
         return this;
     }
 
+    /**
+     * set Max File Size, quality becomes the highest quality tried and the image is scaled down
+     * further when even the lowest quality doesn't fit
+     * @param maxFileSize max size of the compressed file in bytes, 0 to use the fixed quality
+     * @return ImageCompressor itself
+     */
+    public ImageCompressor setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = Math.max(0, maxFileSize);
+        return this;
+    }
+
+    /**
+     * set Preview Size, a small preview is delivered before the final image when set
+     * @param previewSize max side of the preview in pixels, 0 to disable it
+     * @return ImageCompressor itself
+     */
+    public ImageCompressor setPreviewSize(int previewSize) {
+        this.previewSize = Math.max(0, previewSize);
+        return this;
+    }
+
+    /**
+     * set Lazy Orientation, the pixels are kept in their stored orientation and the exif orientation is reported instead,
+     * so the caller rotates and mirrors when displaying, saving a full copy of rotated images
+     * @param lazyOrientation true to skip the rotation of the pixels
+     * @return ImageCompressor itself
+     */
+    public ImageCompressor setLazyOrientation(boolean lazyOrientation) {
+        this.lazyOrientation = lazyOrientation;
+        return this;
+    }
+
+    /**
+     * add Rendition, an extra output derived from the same decode and encoded in parallel with the main one
+     * @param rendition max size, format and quality of the output
+     * @return ImageCompressor itself
+     */
+    public ImageCompressor addRendition(Rendition rendition) {
+        synchronized (renditions) {
+            renditions.add(rendition);
+        }
+        return this;
+    }
+
+    /**
+     * clear Renditions, only the main output is produced afterwards
+     * @return ImageCompressor itself
+     */
+    public ImageCompressor clearRenditions() {
+        synchronized (renditions) {
+            renditions.clear();
+        }
+        return this;
+    }
+
     /**
      * set Destination Directory Path
      * @param destinationDirectoryPath path to save file
@@ -79,6 +163,128 @@ public class ImageCompressor {
         return this;
     }
 
+    /**
+     * get Max Width
+     * @return compression max width
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * get Max Height
+     * @return compression max height
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * get Compress Format
+     * @return Bitmap.CompressFormat
+     */
+    public Bitmap.CompressFormat getCompressFormat() {
+        return compressFormat;
+    }
+
+    /**
+     * get Quality
+     * @return compression quality
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * get Max File Size
+     * @return max size of the compressed file in bytes, 0 when the fixed quality is used
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * get Preview Size
+     * @return max side of the preview in pixels, 0 when disabled
+     */
+    public int getPreviewSize() {
+        return previewSize;
+    }
+
+    /**
+     * is Lazy Orientation
+     * @return true when the pixels keep their stored orientation
+     */
+    public boolean isLazyOrientation() {
+        return lazyOrientation;
+    }
+
+    /**
+     * get Renditions
+     * @return copy of the extra outputs, empty when there are none
+     */
+    public List<Rendition> getRenditions() {
+        synchronized (renditions) {
+            return renditions.isEmpty() ? Collections.<Rendition>emptyList() : new ArrayList<>(renditions);
+        }
+    }
+
+    /**
+     * Parameters which change the processed output, part of the disk cache key
+     * @return parameters as a string
+     */
+    public String getCacheKeyParams() {
+        return maxWidth + "x" + maxHeight + "|" + compressFormat.name() + "|" + quality + (maxFileSize > 0 ? "|" + maxFileSize : "")
+                + (lazyOrientation ? "|lazy" : "");
+    }
+
+    /**
+     * Encode the bitmap into the file, searching quality and size when a max file size is set
+     * @param bitmap bitmap to encode, left untouched
+     * @param file destination file
+     * @return quality, byte size and dimensions of the written image
+     * @throws IOException IOException when file cant be written
+     */
+    TargetSizeEncoder.Result encodeToFile(Bitmap bitmap, File file) throws IOException {
+        return encodeToFile(bitmap, compressFormat, quality, maxFileSize, file);
+    }
+
+    /**
+     * Encode the bitmap into the file of a rendition
+     * @param bitmap bitmap to encode, left untouched
+     * @param rendition format and quality of the output
+     * @param file destination file
+     * @return quality, byte size and dimensions of the written image
+     * @throws IOException IOException when file cant be written
+     */
+    static TargetSizeEncoder.Result encodeToFile(Bitmap bitmap, Rendition rendition, File file) throws IOException {
+        return encodeToFile(bitmap, rendition.getCompressFormat(), rendition.getQuality(), rendition.getMaxFileSize(), file);
+    }
+
+    private static TargetSizeEncoder.Result encodeToFile(Bitmap bitmap, Bitmap.CompressFormat compressFormat, int quality,
+                                                         long maxFileSize, File file) throws IOException {
+        if (maxFileSize > 0) {
+            return TargetSizeEncoder.encode(bitmap, compressFormat, quality, maxFileSize, file);
+        }
+        ImageUtil.writeBitmap(bitmap, compressFormat, quality, file);
+        return new TargetSizeEncoder.Result(bitmap.getWidth(), bitmap.getHeight(), quality, file.length());
+    }
+
+    /**
+     * Whether the source can be used as it is, it already fits the max size and has the requested format
+     * @param metadata source bounds and mime type
+     * @param orientation source exif orientation, rotated sources need their pixels rotated unless the orientation is lazy
+     * @return true if no decoding or encoding is needed
+     */
+    public boolean canPassthrough(BitmapFactory.Options metadata, int orientation) {
+        boolean swapped = lazyOrientation && ImageGeometry.isSwapped(ImageGeometry.getDisplayRotationDegrees(orientation));
+        return metadata.outWidth > 0 && metadata.outHeight > 0
+                && metadata.outWidth <= (swapped ? maxHeight : maxWidth) && metadata.outHeight <= (swapped ? maxWidth : maxHeight)
+                && ImageUtil.getMimeType(compressFormat).equals(metadata.outMimeType)
+                && (lazyOrientation || orientation == 0 || orientation == 1)
+                && getRenditions().isEmpty();   //renditions need the decoded pixels
+    }
+
     /**
      * compress To File
      * @param imageFile file to compress
@@ -111,6 +317,54 @@ public class ImageCompressor {
         return ImageUtil.decodeSampledBitmapFromFile(imageFile, maxWidth, maxHeight);
     }
 
+    /**
+     * compress To Bitmap from uri, downscaled while decoding
+     * @param context current Context
+     * @param imageUri uri to compress
+     * @return new compressed bitmap
+     * @throws IOException IOException when uri cant be read
+     */
+    public Bitmap compressToBitmap(Context context, Uri imageUri) throws IOException {
+        return ImageUtil.decodeSampledBitmapFromUri(context, imageUri, maxWidth, maxHeight);
+    }
+
+    /**
+     * compress To Bitmap from an already open source, as planned by the {@link MemoryGovernor}
+     * @param context current Context
+     * @param source file path or content uri of the source, decoded by tiles when the plan says so
+     * @param inputStream seekable source stream, left open
+     * @param metadata metadata read from the stream
+     * @param plan decode plan of the source
+     * @param reqWidth max width of the bitmap, the largest of the outputs
+     * @param reqHeight max height of the bitmap, the largest of the outputs
+     * @return new compressed bitmap, rotated upright unless the plan keeps the stored orientation
+     * @throws IOException IOException when the source cant be read
+     */
+    Bitmap compressToBitmap(Context context, String source, FileInputStream inputStream, ImageMetadata metadata,
+                            MemoryGovernor.DecodePlan plan, int reqWidth, int reqHeight) throws IOException {
+        if (plan.isTiled())
+            return ImageUtil.decodeTiledBitmap(context, source, metadata, reqWidth, reqHeight, plan.getConfig(), plan.isRotated());
+        //ImageDecoder applies the target size while decoding, but always rotates upright, so lazy orientation stays on BitmapFactory.
+        //it only reads an open descriptor from Android 10, before that BitmapFactory decodes the open stream
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && plan.isRotated())
+            return ImageUtil.decodeWithImageDecoder(inputStream, reqWidth, reqHeight, plan.getConfig(), plan.getSampleSize());
+        return ImageUtil.decodeSampledBitmap(inputStream, metadata, reqWidth, reqHeight, plan);
+    }
+
+    /**
+     * compress To Bitmap from uri, with the config and sample size planned by the {@link MemoryGovernor}
+     * @param context current Context
+     * @param imageUri uri to compress
+     * @param plan sampled decode plan of the source
+     * @param reqWidth max width of the bitmap, the largest of the outputs
+     * @param reqHeight max height of the bitmap, the largest of the outputs
+     * @return new compressed bitmap
+     * @throws IOException IOException when uri cant be read
+     */
+    Bitmap compressToBitmap(Context context, Uri imageUri, MemoryGovernor.DecodePlan plan, int reqWidth, int reqHeight) throws IOException {
+        return ImageUtil.decodeSampledBitmapFromUri(context, imageUri, reqWidth, reqHeight, plan.getConfig(), plan.getSampleSize());
+    }
+
     /**
      * compress To Bitmap from bitmap
      * @param mBitmap bitmap to compress
@@ -0,0 +1,496 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.content.Context;
+import android.os.Build;
+
+import com.onedevapp.nativeplugin.PluginLog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * ImageDiskCache is a size capped, content addressed cache of processed images in the OneCache directory.
+ * Entries are keyed by the source and the processing parameters, evicted least recently used first,
+ * written atomically (temp file and rename) and tracked in a journal so the cache survives restarts.
+ * Entries returned by {@link #get} and {@link #commit} are handed out to Unity, so they are pinned against eviction
+ * until {@link #release} is called with their file, or until the most recent pins push them out.
+ */
+public class ImageDiskCache {
+
+    // region Declarations
+    private static final String CHILD_DIR = "OneCache";
+    private static final String CAPTURE_DIR = "capture";
+    private static final long STALE_CAPTURE_MILLIS = 24L * 60 * 60 * 1000;  //captures left behind by a killed process
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    private static final String JOURNAL_HEADER = "OneCache.journal 1";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String CLEAN = "CLEAN";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+    private static final int MAX_REDUNDANT_OPS = 1000; //journal is compacted once this many lines are obsolete
+    private static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+    private static final int MAX_PINNED_ENTRIES = 256; //pins never released by the caller are dropped oldest first past this
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static ImageDiskCache instance;
+
+    private final File mDirectory;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);   //access ordered
+    private final LinkedHashSet<String> mPinned = new LinkedHashSet<>();  //keys handed out and not released, oldest first
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private long mCurrentBytes;
+    private Writer mJournalWriter;
+    private int mRedundantOps;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared cache, opening it on first use. Reads the journal, so call it off the main thread.
+     *
+     * @param context current Context
+     * @return the {@link ImageDiskCache} instance
+     */
+    public static synchronized ImageDiskCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageDiskCache(new File(context.getCacheDir(), CHILD_DIR));
+            deleteStaleCaptures(getCaptureDir(context));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the directory camera captures are written to until they are processed, so originals never reach the gallery.
+     * Below Android N the camera gets a file uri, which it can only write on external storage.
+     *
+     * @param context current Context
+     * @return the capture directory
+     */
+    public static File getCaptureDir(Context context) {
+        File root = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) ? context.getCacheDir() : context.getExternalCacheDir();
+        if (root == null) root = context.getCacheDir();
+        File directory = new File(new File(root, CHILD_DIR), CAPTURE_DIR);
+        directory.mkdirs();
+        return directory;
+    }
+
+    //Private constructor with the cache directory
+    private ImageDiskCache(File directory) {
+        this.mDirectory = directory;
+        mDirectory.mkdirs();
+        try {
+            readJournal();
+            deleteUntrackedFiles();
+            if (mRedundantOps >= MAX_REDUNDANT_OPS) rebuildJournal();
+            else openJournalWriter();
+        } catch (IOException e) {
+            PluginLog.w("ImageDiskCache journal error, starting empty: {}", e);
+            mEntries.clear();
+            mCurrentBytes = 0;
+            deleteUntrackedFiles();
+            try {
+                rebuildJournal();
+            } catch (IOException ex) {
+                PluginLog.w("ImageDiskCache rebuild error: {}", ex);
+            }
+        }
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Build the key of a processed image
+     *
+     * @param source       source path or uri
+     * @param lastModified source last modified time
+     * @param size         source size in bytes
+     * @param params       processing parameters
+     * @return key of the entry
+     */
+    public static String buildKey(String source, long lastModified, long size, String params) {
+        String value = source + "|" + lastModified + "|" + size + "|" + params;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(value.getBytes(UTF_8));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(value.hashCode()) + Long.toHexString(value.length());
+        }
+    }
+
+    /**
+     * Set the max bytes on disk, trims immediately if needed
+     *
+     * @param maxBytes max bytes
+     */
+    public synchronized void setMaxSize(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+        trimToSize();
+    }
+
+    /**
+     * Returns the cached entry for the key, or null. The entry is pinned until released
+     *
+     * @param key key of the entry
+     * @return the entry
+     */
+    public synchronized Entry get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) return null;
+
+        if (!entry.getFile().exists()) {
+            remove(key);
+            return null;
+        }
+        journal(READ + " " + key);
+        pin(key);
+        return entry;
+    }
+
+    /**
+     * Returns a temp file to write a new entry into, pass it to {@link #commit} once written
+     *
+     * @param key key of the entry
+     * @return the temp file
+     */
+    public File newTempFile(String key) {
+        return new File(mDirectory, key + "." + Thread.currentThread().getId() + TEMP_EXTENSION);
+    }
+
+    /**
+     * Publish a written temp file as the entry of the key
+     *
+     * @param key       key of the entry
+     * @param tempFile  file returned by {@link #newTempFile}
+     * @param extension extension of the image, with dot
+     * @param width     width of the image
+     * @param height    height of the image
+     * @return the entry
+     * @throws IOException IOException when the file cant be moved
+     */
+    public synchronized Entry commit(String key, File tempFile, String extension, int width, int height) throws IOException {
+        return commit(key, tempFile, extension, width, height, 0);
+    }
+
+    /**
+     * Publish a written temp file as the entry of the key, with the exif orientation of its pixels.
+     * The entry is pinned until released
+     *
+     * @param key         key of the entry
+     * @param tempFile    file returned by {@link #newTempFile}
+     * @param extension   file extension including the dot
+     * @param width       width of the image
+     * @param height      height of the image
+     * @param orientation exif orientation of the stored pixels, 0 when they are upright
+     * @return the entry
+     * @throws IOException IOException when the file cant be moved
+     */
+    public synchronized Entry commit(String key, File tempFile, String extension, int width, int height, int orientation) throws IOException {
+        Entry entry = new Entry(key, extension, tempFile.length(), width, height, orientation);
+        File file = entry.getFile();
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Unable to move " + tempFile + " to " + file);
+        }
+
+        Entry previous = mEntries.put(key, entry);
+        if (previous != null) {
+            mCurrentBytes -= previous.mSize;
+            if (!previous.mExtension.equals(extension)) previous.getFile().delete();
+        }
+        mCurrentBytes += entry.mSize;
+        journal(entry.toJournalLine());
+        pin(key);
+        trimToSize();
+        return entry;
+    }
+
+    /**
+     * Release a file handed out by the cache once it was read or copied, so it can be evicted again
+     *
+     * @param file file of an entry, e.g. the cacheFilePath of a result
+     */
+    public synchronized void release(File file) {
+        if (!mDirectory.equals(file.getParentFile())) return;
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        if (mPinned.remove(dot > 0 ? name.substring(0, dot) : name)) trimToSize();
+    }
+
+    /**
+     * Drop a temp file which won't be committed
+     *
+     * @param tempFile file returned by {@link #newTempFile}
+     */
+    public void abort(File tempFile) {
+        if (tempFile != null) tempFile.delete();
+    }
+
+    /**
+     * Remove the entry of the key
+     *
+     * @param key key of the entry
+     */
+    public synchronized void remove(String key) {
+        Entry entry = mEntries.remove(key);
+        mPinned.remove(key);
+        if (entry != null) {
+            mCurrentBytes -= entry.mSize;
+            entry.getFile().delete();
+            journal(REMOVE + " " + key);
+        }
+    }
+
+    /**
+     * Bytes currently on disk
+     */
+    public synchronized long getCurrentSize() {
+        return mCurrentBytes;
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Replay the journal into the entries
+     */
+    private void readJournal() throws IOException {
+        File journal = new File(mDirectory, JOURNAL_FILE);
+        if (!journal.exists()) return;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), UTF_8));
+        try {
+            if (!JOURNAL_HEADER.equals(reader.readLine())) throw new IOException("Unexpected journal header");
+
+            String line;
+            int lineCount = 0;
+            while ((line = reader.readLine()) != null) {
+                lineCount++;
+                String[] parts = line.split(" ");
+                if (CLEAN.equals(parts[0]) && (parts.length == 6 || parts.length == 7)) {
+                    //the orientation is only written for entries which keep the stored orientation
+                    Entry entry = new Entry(parts[1], parts[2], Long.parseLong(parts[3]), Integer.parseInt(parts[4]), Integer.parseInt(parts[5]),
+                            parts.length == 7 ? Integer.parseInt(parts[6]) : 0);
+                    Entry previous = mEntries.put(entry.mKey, entry);
+                    if (previous != null) mCurrentBytes -= previous.mSize;
+                    mCurrentBytes += entry.mSize;
+                } else if (REMOVE.equals(parts[0]) && parts.length == 2) {
+                    Entry previous = mEntries.remove(parts[1]);
+                    if (previous != null) mCurrentBytes -= previous.mSize;
+                } else if (READ.equals(parts[0]) && parts.length == 2) {
+                    mEntries.get(parts[1]);
+                } else {
+                    //a torn last line after a crash, everything before it is valid
+                    PluginLog.d("ImageDiskCache ignoring journal line: {}", line);
+                }
+            }
+            mRedundantOps = lineCount - mEntries.size();
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt journal: " + e.toString());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Delete captures which were never processed, recent ones may still be open in the camera
+     */
+    private static void deleteStaleCaptures(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (file.isFile() && now - file.lastModified() > STALE_CAPTURE_MILLIS) file.delete();
+        }
+    }
+
+    /**
+     * Delete files that are not tracked and entries whose file is missing
+     */
+    private void deleteUntrackedFiles() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (!entry.getFile().exists()) {
+                mCurrentBytes -= entry.mSize;
+                iterator.remove();
+            }
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            if (!file.isFile() || name.equals(JOURNAL_FILE)) continue;
+            int dot = name.indexOf('.');
+            Entry entry = mEntries.get(dot > 0 ? name.substring(0, dot) : name);
+            if (entry == null || !entry.getFile().getName().equals(name)) file.delete();
+        }
+    }
+
+    /**
+     * Write a compact journal with only the live entries and swap it in atomically
+     */
+    private void rebuildJournal() throws IOException {
+        if (mJournalWriter != null) mJournalWriter.close();
+
+        File journalTemp = new File(mDirectory, JOURNAL_FILE_TEMP);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalTemp), UTF_8));
+        try {
+            writer.write(JOURNAL_HEADER);
+            writer.write('\n');
+            //iterating the map in LRU order keeps the access order on replay
+            for (Entry entry : mEntries.values()) {
+                writer.write(entry.toJournalLine());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!journalTemp.renameTo(new File(mDirectory, JOURNAL_FILE)))
+            throw new IOException("Unable to replace journal");
+
+        mRedundantOps = 0;
+        openJournalWriter();
+    }
+
+    /**
+     * Open the journal for appending, writing the header for a new journal
+     */
+    private void openJournalWriter() throws IOException {
+        File journal = new File(mDirectory, JOURNAL_FILE);
+        boolean isNew = !journal.exists();
+        mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), UTF_8));
+        if (isNew) {
+            mJournalWriter.write(JOURNAL_HEADER);
+            mJournalWriter.write('\n');
+            mJournalWriter.flush();
+        }
+    }
+
+    /**
+     * Append a line to the journal, compacting it when it has grown too much
+     */
+    private void journal(String line) {
+        try {
+            if (mJournalWriter == null) openJournalWriter();
+            mJournalWriter.write(line);
+            mJournalWriter.write('\n');
+            mJournalWriter.flush();
+            mRedundantOps++;
+            if (mRedundantOps >= MAX_REDUNDANT_OPS && mRedundantOps >= mEntries.size()) rebuildJournal();
+        } catch (IOException e) {
+            PluginLog.w("ImageDiskCache journal write error: {}", e);
+        }
+    }
+
+    /**
+     * Pin a key handed out to a caller, dropping the oldest pin once there are too many
+     */
+    private void pin(String key) {
+        mPinned.remove(key);
+        mPinned.add(key);
+        if (mPinned.size() > MAX_PINNED_ENTRIES) {
+            Iterator<String> iterator = mPinned.iterator();
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Evict least recently used entries until the cache fits the quota.
+     * Pinned entries are kept even above the quota, they were handed out and may not be read yet
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mCurrentBytes > mMaxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (mPinned.contains(entry.mKey)) continue;
+            iterator.remove();
+            mCurrentBytes -= entry.mSize;
+            entry.getFile().delete();
+            journal(REMOVE + " " + entry.mKey);
+        }
+    }
+    //endregion
+
+    /**
+     * A processed image in the cache
+     */
+    public class Entry {
+        private final String mKey;
+        private final String mExtension;
+        private final long mSize;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mOrientation;
+
+        private Entry(String key, String extension, long size, int width, int height, int orientation) {
+            this.mKey = key;
+            this.mExtension = extension;
+            this.mSize = size;
+            this.mWidth = width;
+            this.mHeight = height;
+            this.mOrientation = orientation;
+        }
+
+        /**
+         * Returns the cached image file
+         */
+        public File getFile() {
+            return new File(mDirectory, mKey + mExtension);
+        }
+
+        /**
+         * Returns the width of the cached image
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * Returns the height of the cached image
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * Returns the exif orientation of the cached pixels, 0 when they are upright
+         */
+        public int getOrientation() {
+            return mOrientation;
+        }
+
+        /**
+         * Returns the size of the cached image in bytes
+         */
+        public long getSize() {
+            return mSize;
+        }
+
+        private String toJournalLine() {
+            return CLEAN + " " + mKey + " " + mExtension + " " + mSize + " " + mWidth + " " + mHeight + (mOrientation != 0 ? " " + mOrientation : "");
+        }
+    }
+}
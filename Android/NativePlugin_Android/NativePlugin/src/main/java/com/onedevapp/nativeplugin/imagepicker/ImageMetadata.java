@@ -0,0 +1,201 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ImageMetadata holds the header details of a source image: dimensions, mime type, exif orientation and capture date.
+ * They are read in one pass over an already open source, so the decoder can reuse them instead of opening the source again.
+ */
+public class ImageMetadata {
+
+    // region Declarations
+    private static final String TAG_DATETIME_ORIGINAL = "DateTimeOriginal";
+
+    private final int mWidth;
+    private final int mHeight;
+    private final String mMimeType;
+    private final int mOrientation;
+    private final String mCaptureDate;
+    //endregion
+
+    //region Constructor
+    private ImageMetadata(int width, int height, String mimeType, int orientation, String captureDate) {
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mMimeType = mimeType;
+        this.mOrientation = orientation;
+        this.mCaptureDate = captureDate;
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Read the metadata of the image file
+     *
+     * @param imageFile image file
+     * @return the metadata
+     * @throws IOException if the file can't be read
+     */
+    public static ImageMetadata read(File imageFile) throws IOException {
+        FileInputStream inputStream = new FileInputStream(imageFile);
+        try {
+            return read(inputStream, imageFile);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Read the metadata of the image uri
+     *
+     * @param context  current Context
+     * @param imageUri image uri
+     * @return the metadata
+     * @throws IOException if the uri can't be read
+     */
+    public static ImageMetadata read(Context context, Uri imageUri) throws IOException {
+        FileInputStream inputStream = ImageUtil.openSourceStream(context, imageUri);
+        if (inputStream != null) {
+            try {
+                return read(inputStream, null);
+            } finally {
+                inputStream.close();
+            }
+        }
+
+        //the provider only hands out a stream, so the header has to be read twice
+        BitmapFactory.Options options = ImageUtil.GetImageMetadata(context, imageUri);
+        int orientation = 0;
+        String captureDate = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            InputStream stream = context.getContentResolver().openInputStream(imageUri);
+            if (stream != null) {
+                try {
+                    ExifInterface exif = new ExifInterface(stream);
+                    orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
+                    captureDate = getCaptureDate(exif);
+                } finally {
+                    stream.close();
+                }
+            }
+        }
+        return new ImageMetadata(options.outWidth, options.outHeight, options.outMimeType, orientation, captureDate);
+    }
+
+    /**
+     * Width of the stored image in pixels, before orientation is applied
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Height of the stored image in pixels, before orientation is applied
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Mime type of the image, null if unknown
+     */
+    public String getMimeType() {
+        return mMimeType;
+    }
+
+    /**
+     * Exif orientation of the image, 0 if undefined
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * Exif capture date as "yyyy:MM:dd HH:mm:ss", null if not present
+     */
+    public String getCaptureDate() {
+        return mCaptureDate;
+    }
+
+    /**
+     * Clockwise rotation needed to display the image upright
+     *
+     * @return 0, 90, 180 or 270
+     */
+    public int getRotationDegrees() {
+        return ImageGeometry.getRotationDegrees(mOrientation);
+    }
+
+    /**
+     * Bounds as BitmapFactory.Options, ready for the sample size to be set
+     *
+     * @return options with the size and mime type filled in
+     */
+    public BitmapFactory.Options toOptions() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.outWidth = mWidth;
+        options.outHeight = mHeight;
+        options.outMimeType = mMimeType;
+        return options;
+    }
+    //endregion
+
+    // region helper functions
+
+    /**
+     * Read the metadata from a seekable stream, the stream is left open at an undefined position
+     *
+     * @param inputStream open source stream
+     * @param imageFile   file of the stream, used for exif below Android 7, may be null
+     * @return the metadata
+     * @throws IOException if the stream can't be read
+     */
+    static ImageMetadata read(FileInputStream inputStream, File imageFile) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        ImageUtil.rewind(inputStream);
+        BitmapFactory.decodeStream(inputStream, null, options);
+
+        int orientation = 0;
+        String captureDate = null;
+        try {
+            ExifInterface exif = null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                ImageUtil.rewind(inputStream);
+                exif = new ExifInterface(inputStream);
+            } else if (imageFile != null) {
+                exif = new ExifInterface(imageFile.getAbsolutePath());
+            }
+            if (exif != null) {
+                orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
+                captureDate = getCaptureDate(exif);
+            }
+        } catch (Exception e) {
+            //images without readable exif are shown as stored
+            PluginLog.w("ImageMetadata exif error: {}", e);
+        }
+        return new ImageMetadata(options.outWidth, options.outHeight, options.outMimeType, orientation, captureDate);
+    }
+
+    /**
+     * Original capture date, falls back to the last modified date of the exif
+     */
+    private static String getCaptureDate(ExifInterface exif) {
+        String captureDate = exif.getAttribute(TAG_DATETIME_ORIGINAL);
+        return captureDate != null ? captureDate : exif.getAttribute(ExifInterface.TAG_DATETIME);
+    }
+    //endregion
+}
@@ -0,0 +1,127 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.app.Activity;
+
+import com.onedevapp.nativeplugin.QueuedListener;
+
+import java.io.File;
+
+/**
+ * ImagePickerBridge configures the image picker in a single static call taking primitives and arrays,
+ * so Unity calls it through a cached method id instead of a chain of reflective builder calls on {@link ImagePickerManager}.
+ * Each call works on its own {@link ImagePickerManager#newRequest(Activity)}, so calls from several threads don't share options.
+ */
+public class ImagePickerBridge {
+
+    // region Declarations
+    public static final int RENDITION_FIELDS = 4;   //max width, max height, format and quality of each rendition in the packed array
+    //endregion
+
+    //Private constructor, static calls only
+    private ImagePickerBridge() {
+
+    }
+
+    /**
+     * Configure a picker request
+     *
+     * @param activity              the activity
+     * @param requestId             id reported with the events of this request
+     * @param jsonResults           true to queue results as json instead of binary payloads
+     * @param pickerType            choice = 0, camera = 1 or gallery = 2
+     * @param maxImages             max images to pick, more than 1 enables multiple selection
+     * @param maxWidth              max width of the image
+     * @param maxHeight             max height of the image
+     * @param quality               compression quality
+     * @param format                jpeg = 0, png = 1 or webp = 2
+     * @param maxFileSize           max size of the image in bytes, 0 to use the quality as it is
+     * @param resultMode            file = 0, raw pixels = 1 or bytes = 2
+     * @param previewSize           max side of the preview, 0 to disable it
+     * @param lazyOrientation       true to keep the stored orientation of the pixels
+     * @param renditions            renditions packed by {@link #RENDITION_FIELDS}, null when none
+     * @param renditionMaxFileSizes max file size of each rendition, null for none
+     * @param pixelsListener        raw pixels handler, null unless raw pixels are requested
+     * @return the configured {@link ImagePickerManager} of this request
+     */
+    public static ImagePickerManager configure(Activity activity, int requestId, boolean jsonResults, int pickerType, int maxImages,
+                                               int maxWidth, int maxHeight, int quality, int format, long maxFileSize, int resultMode,
+                                               int previewSize, boolean lazyOrientation, int[] renditions, long[] renditionMaxFileSizes,
+                                               OnImagePixelsListener pixelsListener) {
+        QueuedListener listener = new QueuedListener(requestId, jsonResults);
+        ImagePickerManager manager = ImagePickerManager.newRequest(activity)
+                .setPickerType(pickerType)
+                .setMaxImages(maxImages)
+                .setMaxWidth(maxWidth)
+                .setMaxHeight(maxHeight)
+                .setQuality(quality)
+                .setCompressFormat(format)
+                .setMaxFileSize(maxFileSize)
+                .setResultMode(resultMode)
+                .setPreviewSize(previewSize)
+                .setLazyOrientation(lazyOrientation)
+                .handler(listener)
+                .imagesHandler(listener)
+                .pixelsHandler(pixelsListener);
+        if (renditions != null) {
+            for (int i = 0; i + RENDITION_FIELDS <= renditions.length; i += RENDITION_FIELDS) {
+                int index = i / RENDITION_FIELDS;
+                long renditionMaxFileSize = (renditionMaxFileSizes != null && index < renditionMaxFileSizes.length) ? renditionMaxFileSizes[index] : 0;
+                manager.addRendition(renditions[i], renditions[i + 1], renditions[i + 2], renditions[i + 3], renditionMaxFileSize);
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Configure and open the image picker, see {@link #configure}
+     */
+    public static void openImagePicker(Activity activity, int requestId, boolean jsonResults, int pickerType, int maxImages,
+                                       int maxWidth, int maxHeight, int quality, int format, long maxFileSize, int resultMode,
+                                       int previewSize, boolean lazyOrientation, int[] renditions, long[] renditionMaxFileSizes,
+                                       OnImagePixelsListener pixelsListener) {
+        configure(activity, requestId, jsonResults, pickerType, maxImages, maxWidth, maxHeight, quality, format, maxFileSize,
+                resultMode, previewSize, lazyOrientation, renditions, renditionMaxFileSizes, pixelsListener).openImagePicker();
+    }
+
+    /**
+     * Decode a region of a large image, see {@link ImagePickerManager#decodeImageRegion}
+     *
+     * @param activity    the activity
+     * @param requestId   id reported with the result
+     * @param jsonResults true to queue the result as json
+     * @param source      file path or content uri of the image
+     * @param left        left of the region in source pixels
+     * @param top         top of the region in source pixels
+     * @param width       width of the region in source pixels
+     * @param height      height of the region in source pixels
+     * @param outWidth    width of the output image
+     * @param outHeight   height of the output image
+     * @param quality     compression quality
+     * @param format      jpeg = 0, png = 1 or webp = 2
+     */
+    public static void decodeImageRegion(Activity activity, int requestId, boolean jsonResults, String source, int left, int top,
+                                         int width, int height, int outWidth, int outHeight, int quality, int format) {
+        ImagePickerManager.newRequest(activity)
+                .setQuality(quality)
+                .setCompressFormat(format)
+                .decodeImageRegion(source, left, top, width, height, outWidth, outHeight, new QueuedListener(requestId, jsonResults));
+    }
+
+    /**
+     * Set the share of the app's memory a single image decode may use, see {@link ImagePickerManager#setMemoryBudget(float)}
+     */
+    public static void setMemoryBudget(Activity activity, float share) {
+        ImagePickerManager.Builder(activity).setMemoryBudget(share);
+    }
+
+    /**
+     * Release a cache file of a result once Unity read or copied it, see {@link ImageDiskCache#release(File)}
+     *
+     * @param activity      the activity
+     * @param cacheFilePath cacheFilePath of the result
+     */
+    public static void releaseCacheFile(Activity activity, String cacheFilePath) {
+        if (cacheFilePath == null || cacheFilePath.isEmpty()) return;
+        ImageDiskCache.getInstance(activity).release(new File(cacheFilePath));
+    }
+}
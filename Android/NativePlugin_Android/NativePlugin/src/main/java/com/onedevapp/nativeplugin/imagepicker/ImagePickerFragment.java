@@ -5,10 +5,9 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Fragment;
+import android.content.ClipData;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Looper;
@@ -18,14 +17,15 @@ import androidx.annotation.Nullable;
 
 import com.onedevapp.nativeplugin.AndroidBridge;
 import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.PluginMetrics;
 import com.onedevapp.nativeplugin.rt_permissions.OnPermissionListener;
 import com.onedevapp.nativeplugin.rt_permissions.PermissionManager;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static android.app.Activity.RESULT_OK;
 
@@ -34,14 +34,24 @@ public class ImagePickerFragment extends Fragment {
     // region Declarations
     File mPhotoFile;
     boolean createTempFile = true;
+    int resultMode = Constants.IMAGE_RESULT_FILE;
+    int maxImages = 1;
     ImageCompressor mCompressor;
+    ImageProcessor mProcessor;
+    ImageProcessor.ProcessingTask mProcessingTask;
+    ImageProcessor.BatchTask mBatchTask;
     OnImageSelectedListener selectedListener;
+    OnImagePixelsListener pixelsListener;
+    OnImagesSelectedListener imagesListener;
+    long mRequestNanos;  //when the picker was opened, for PluginMetrics
 
     /**
      * Set the Listener
      */
-    private void setListener(OnImageSelectedListener selectedListener) {
+    private void setListener(OnImageSelectedListener selectedListener, OnImagePixelsListener pixelsListener, OnImagesSelectedListener imagesListener) {
         this.selectedListener = selectedListener;
+        this.pixelsListener = pixelsListener;
+        this.imagesListener = imagesListener;
     }
 
     /**
@@ -54,16 +64,28 @@ public class ImagePickerFragment extends Fragment {
             this.mCompressor = mCompressor;
     }
 
+    /**
+     * Set the Image Processor
+     */
+    private void setProcessor(ImageProcessor mProcessor) {
+        if (mProcessor == null)
+            this.mProcessor = ImageProcessor.getInstance();
+        else
+            this.mProcessor = mProcessor;
+    }
+
     /**
      * Fragment builder
      *
      * @param bundle arguments for the fragments
      * @return InvisibleFragment instance
      */
-    public static ImagePickerFragment build(OnImageSelectedListener selectedListener, ImageCompressor mCompressor, Bundle bundle) {
+    public static ImagePickerFragment build(OnImageSelectedListener selectedListener, OnImagePixelsListener pixelsListener, OnImagesSelectedListener imagesListener,
+                                            ImageCompressor mCompressor, ImageProcessor mProcessor, Bundle bundle) {
         ImagePickerFragment fragment = new ImagePickerFragment();
-        fragment.setListener(selectedListener);
+        fragment.setListener(selectedListener, pixelsListener, imagesListener);
         fragment.setCompressor(mCompressor);
+        fragment.setProcessor(mProcessor);
         fragment.setArguments(bundle);
         return fragment;
     }
@@ -78,6 +100,7 @@ public class ImagePickerFragment extends Fragment {
             if (Looper.getMainLooper() != Looper.myLooper()) {
                 throw new RuntimeException("you must request file picker in main thread!!");
             }
+            mRequestNanos = System.nanoTime();
 
             activity.getFragmentManager().beginTransaction().add(this, activity.getClass().getName()).commit();
 
@@ -96,6 +119,8 @@ public class ImagePickerFragment extends Fragment {
         if (bundle != null) {
             int pickerType = bundle.getInt("pickerType", 0);
             createTempFile = bundle.getBoolean("createTempFile", true);
+            resultMode = bundle.getInt("resultMode", Constants.IMAGE_RESULT_FILE);
+            maxImages = bundle.getInt("maxImages", 1);
             if (pickerType == 0) selectImage();
             else if (pickerType == 1) requestStoragePermission(true);
             else if (pickerType == 2) requestStoragePermission(false);
@@ -164,6 +189,15 @@ public class ImagePickerFragment extends Fragment {
      * Select image fro gallery
      */
     private void dispatchGalleryIntent() {
+        if (isMultipleSelection()) {
+            Intent pickPhotos = new Intent(Intent.ACTION_GET_CONTENT);
+            pickPhotos.setType("image/*");
+            pickPhotos.addCategory(Intent.CATEGORY_OPENABLE);
+            pickPhotos.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+            pickPhotos.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startActivityForResult(pickPhotos, Constants.REQUEST_GALLERY_PHOTO);
+            return;
+        }
         Intent pickPhoto = new Intent(Intent.ACTION_PICK,
                 MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
         pickPhoto.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
@@ -177,7 +211,7 @@ public class ImagePickerFragment extends Fragment {
      */
     private void requestStoragePermission(final boolean isCamera) {
 
-        PermissionManager.Builder(getActivity())
+        PermissionManager.newRequest(getActivity())
                 .handler(new OnPermissionListener() {
                     @Override
                     public void onPermissionGranted(String[] grantPermissions, boolean all) {
@@ -217,57 +251,78 @@ public class ImagePickerFragment extends Fragment {
 
         // super, because overridden method will make the handler null, and we don't want that.
         super.onActivityResult(requestCode, resultCode, data);
+        PluginMetrics.record(PluginMetrics.IMAGE_PICK_WAIT, mRequestNanos, resultCode == RESULT_OK);
 
         if (resultCode == RESULT_OK) {
-            Bitmap mPhotoBitmap = null;
-
-            Uri selectedImage = null;
-            try {
-                if (requestCode == Constants.REQUEST_TAKE_PHOTO) {
-                    mPhotoBitmap = mCompressor.compressToBitmap(mPhotoFile);
-                    selectedImage = ImageUtil.getUriFromFile(getActivity(), mPhotoFile);
-                } else if (requestCode == Constants.REQUEST_GALLERY_PHOTO) {
-                    assert data != null;
-                    selectedImage = data.getData();
-                    //mPhotoBitmap = mCompressor.compressToBitmap(new File(Utils.getRealPathFromUri(getActivity(), selectedImage)));
-                    mPhotoBitmap = mCompressor.compressToBitmap(ImageUtil.loadFromUri(getActivity(), selectedImage));
+            if (requestCode == Constants.REQUEST_TAKE_PHOTO) {
+                //a temporary capture is processed in place and removed by the processor
+                mProcessingTask = mProcessor.submit(getActivity(), mPhotoFile, null, mCompressor, resultMode, createTempFile,
+                        selectedListener, pixelsListener);
+            } else if (requestCode == Constants.REQUEST_GALLERY_PHOTO && isMultipleSelection()) {
+                List<Uri> photoUris = getSelectedUris(data);
+                if (photoUris.isEmpty()) {
+                    reportUpdateError(Constants.EC_IMAGE_PICKER_FILE_NOT_READABLE, "No image returned from gallery");
+                    return;
                 }
-
-                /*ByteArrayOutputStream stream = new ByteArrayOutputStream();
-
-                assert mPhotoBitmap != null;
-                mPhotoBitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-                byte[] byteArray = stream.toByteArray();
-                String temp = Base64.encodeToString(byteArray, Base64.DEFAULT);*/
-
-                JSONObject jso = new JSONObject();
-                try {
-                    File cacheFile = ImageUtil.saveImgToCache(getActivity(), mPhotoBitmap);
-                    BitmapFactory.Options imageMetaData = ImageUtil.GetImageMetadata(cacheFile);
-                    int orientation = ImageUtil.GetImageOrientation(cacheFile);
-
-                    assert mPhotoBitmap != null;
-                    jso.put("width", imageMetaData.outWidth);
-                    jso.put("height", imageMetaData.outHeight);
-                    jso.put("mimeType", imageMetaData.outMimeType);
-                    jso.put("orientation", orientation);
-                    assert selectedImage != null;
-                    jso.put("uri", selectedImage.toString());
-                    jso.put("path", (mPhotoFile != null) ? mPhotoFile.getAbsolutePath() : "");
-                    jso.put("cacheFilePath", cacheFile.getAbsolutePath());
-                    //jso.put("imageBase64", temp);
-                    selectedListener.onImageSelected(true, jso.toString(), 0);
-
-                } catch (JSONException e) {
-
-                    reportUpdateError(Constants.EC_IMAGE_PICKER_INTERNAL_ERROR, e.toString());
+                mBatchTask = mProcessor.submitBatch(getActivity(), photoUris, mCompressor, imagesListener);
+            } else if (requestCode == Constants.REQUEST_GALLERY_PHOTO) {
+                if (data == null || data.getData() == null) {
+                    reportUpdateError(Constants.EC_IMAGE_PICKER_FILE_NOT_READABLE, "No image returned from gallery");
+                    return;
                 }
-            } catch (Exception e) {
-
-                reportUpdateError(Constants.EC_IMAGE_PICKER_FILE_NOT_READABLE, e.toString());
+                mProcessingTask = mProcessor.submit(getActivity(), null, data.getData(), mCompressor, resultMode, selectedListener, pixelsListener);
             }
+        } else if (requestCode == Constants.REQUEST_TAKE_PHOTO && createTempFile && mPhotoFile != null) {
+            //capture cancelled, drop the empty file created for the camera
+            mPhotoFile.delete();
+            mPhotoFile = null;
+        }
+
+    }
+
+    /**
+     * Cancel any pending image processing when the fragment is removed
+     */
+    @Override
+    public void onDestroy() {
+        if (mProcessingTask != null) {
+            mProcessingTask.cancel();
+            mProcessingTask = null;
+        }
+        if (mBatchTask != null) {
+            mBatchTask.cancel();
+            mBatchTask = null;
         }
+        super.onDestroy();
+    }
 
+    /**
+     * Returns whether multiple images are picked from gallery
+     */
+    private boolean isMultipleSelection() {
+        return maxImages > 1 && imagesListener != null;
+    }
+
+    /**
+     * Collect the picked uris, in selection order, up to the max images requested
+     *
+     * @param data gallery result
+     * @return list of uris, empty when nothing was picked
+     */
+    private List<Uri> getSelectedUris(Intent data) {
+        List<Uri> photoUris = new ArrayList<>();
+        if (data == null) return photoUris;
+
+        ClipData clipData = data.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount() && photoUris.size() < maxImages; i++) {
+                Uri uri = clipData.getItemAt(i).getUri();
+                if (uri != null) photoUris.add(uri);
+            }
+        } else if (data.getData() != null) {
+            photoUris.add(data.getData());
+        }
+        return photoUris;
     }
 
     protected void removeFragment() {
@@ -279,7 +334,7 @@ public class ImagePickerFragment extends Fragment {
             resumeUnityActivity.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
             getActivity().startActivityIfNeeded(resumeUnityActivity, 0);
         } catch (Exception e) {
-            Constants.WriteLog("errorCode::" + e.toString() + "::error::" + Constants.EC_IMAGE_PICKER_INTERNAL_ERROR);
+            PluginLog.w("Unable to resume the activity, error {}: {}", Constants.EC_IMAGE_PICKER_INTERNAL_ERROR, e);
             //reportUpdateError(Constants.EC_IMAGE_PICKER_INTERNAL_ERROR, e.toString());
         }
     }
@@ -291,7 +346,12 @@ public class ImagePickerFragment extends Fragment {
      * @param error     error message
      */
     protected void reportUpdateError(int errorCode, String error) {
-        Constants.WriteLog("errorCode::" + errorCode + "::error::" + error);
+        PluginLog.e("Image picker error {}: {}", errorCode, error);
+        if (isMultipleSelection()) {
+            imagesListener.onImageItemSelected(0, 0, false, error, errorCode);
+            imagesListener.onImagesCompleted(0, 0);
+            return;
+        }
         selectedListener.onImageSelected(false, error, errorCode);
     }
 }
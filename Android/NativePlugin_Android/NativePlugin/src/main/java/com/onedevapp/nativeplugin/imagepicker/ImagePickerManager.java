@@ -1,9 +1,14 @@
 package com.onedevapp.nativeplugin.imagepicker;
 
 import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Bundle;
 
+import com.onedevapp.nativeplugin.Constants;
+
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 
 /**
  * ImagePickerManager is the responsible class to capture or pick image from gallery.
@@ -16,9 +21,14 @@ public class ImagePickerManager {
 
     //The result returned from this plugin
     private OnImageSelectedListener mOnImageSelectedListener; //Callback listener
+    private OnImagePixelsListener mOnImagePixelsListener; //Callback listener for raw pixels result
+    private OnImagesSelectedListener mOnImagesSelectedListener; //Callback listener for multiple selection
     private int mPickerType = 0;
+    private int mResultMode = Constants.IMAGE_RESULT_FILE;
+    private int mMaxImages = 1;
     private boolean mTempFile = true;
     private ImageCompressor mCompressor = null;
+    private final ImageProcessor mProcessor;  //worker pool which decodes and compresses off the UI thread
     //endregion
 
     //region Constructor
@@ -29,17 +39,29 @@ public class ImagePickerManager {
      * @param activity the activity
      * @return a new {@link ImagePickerManager} instance
      */
-    public static ImagePickerManager Builder(Activity activity) {
+    public static synchronized ImagePickerManager Builder(Activity activity) {
         if (instance == null) {
             instance = new ImagePickerManager(activity);
         }
         return instance;
     }
 
+    /**
+     * Creates a manager for a single request, with its own options, handlers and activity,
+     * so it can run alongside other requests instead of sharing the state of {@link #Builder(Activity)}
+     *
+     * @param activity the activity
+     * @return a new {@link ImagePickerManager} instance
+     */
+    public static ImagePickerManager newRequest(Activity activity) {
+        return new ImagePickerManager(activity);
+    }
+
     //Private constructor with activity
     private ImagePickerManager(Activity activity) {
         this.mActivityWeakReference = new WeakReference<>(activity);
         mCompressor = new ImageCompressor(activity);
+        mProcessor = ImageProcessor.getInstance();
     }
     //endregion
 
@@ -55,7 +77,7 @@ public class ImagePickerManager {
         }
 
         this.mPickerType = pickerType;
-        return instance;
+        return this;
     }
 
     /**
@@ -66,7 +88,19 @@ public class ImagePickerManager {
      */
     public ImagePickerManager setMaxWidth(int maxWidth) {
         mCompressor.setMaxWidth(maxWidth);
-        return instance;
+        return this;
+    }
+
+    /**
+     * Set the preview size, a preview of at most this side is sent to OnImagePreviewListener.onImagePreview
+     * while the final image is still being processed. Raw pixel results get no preview
+     *
+     * @param previewSize max side of the preview in pixels, 0 to disable it
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager setPreviewSize(int previewSize) {
+        mCompressor.setPreviewSize(previewSize);
+        return this;
     }
 
     /**
@@ -77,7 +111,7 @@ public class ImagePickerManager {
      */
     public ImagePickerManager setMaxHeight(int maxHeight) {
         mCompressor.setMaxHeight(maxHeight);
-        return instance;
+        return this;
     }
 
 
@@ -89,23 +123,117 @@ public class ImagePickerManager {
      */
     public ImagePickerManager setQuality(int quality) {
         mCompressor.setQuality(quality);
-        return instance;
+        return this;
+    }
+
+    /**
+     * Set the image format either jpeg = 0, png = 1 or webp = 2
+     *
+     * @param format format of the compressed image
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager setCompressFormat(int format) {
+        if (format == 1) mCompressor.setCompressFormat(Bitmap.CompressFormat.PNG);
+        else if (format == 2) mCompressor.setCompressFormat(ImageUtil.getWebpFormat());
+        else mCompressor.setCompressFormat(Bitmap.CompressFormat.JPEG);
+        return this;
+    }
+
+    /**
+     * Set the max size of the compressed image in bytes, quality is then searched downwards from the image quality
+     * and the image is scaled down further if needed. 0 uses the image quality as it is
+     *
+     * @param maxFileSize max size in bytes
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager setMaxFileSize(long maxFileSize) {
+        mCompressor.setMaxFileSize(maxFileSize);
+        return this;
+    }
+
+    /**
+     * Keep the pixels in their stored orientation and report the exif orientation, rotation and mirroring in the result,
+     * so the caller can display rotated images with texture coordinates instead of a rotated copy
+     *
+     * @param lazyOrientation true to skip the rotation of the pixels
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager setLazyOrientation(boolean lazyOrientation) {
+        mCompressor.setLazyOrientation(lazyOrientation);
+        return this;
+    }
+
+    /**
+     * Add an extra output of the picked image, derived from the same decode and encoded in parallel with the main one.
+     * Renditions are kept until cleared and only apply to file results
+     *
+     * @param maxWidth       max width of the output
+     * @param maxHeight      max height of the output
+     * @param format         0 for JPEG, 1 for PNG, 2 for WEBP
+     * @param quality        compression quality
+     * @param maxFileSize    max size of the output in bytes, 0 to use the quality as it is
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager addRendition(int maxWidth, int maxHeight, int format, int quality, long maxFileSize) {
+        Bitmap.CompressFormat compressFormat = Bitmap.CompressFormat.JPEG;
+        if (format == 1) compressFormat = Bitmap.CompressFormat.PNG;
+        else if (format == 2) compressFormat = ImageUtil.getWebpFormat();
+        mCompressor.addRendition(new Rendition(maxWidth, maxHeight, compressFormat, quality, maxFileSize));
+        return this;
     }
 
     /**
-     * To create temp file while capturing image
+     * Remove every rendition, only the main output is produced afterwards
      *
-     * @param isTempFile create file as temp
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager clearRenditions() {
+        mCompressor.clearRenditions();
+        return this;
+    }
+
+    /**
+     * To create temp file while capturing image, the capture is written into the cache and deleted once processed
+     *
+     * @param isTempFile create file as temp, false keeps the original in the app's Pictures directory
      * @return ImagePickerManager itself
      */
     public ImagePickerManager createImageAsTemp(boolean isTempFile) {
         this.mTempFile = isTempFile;
-        return instance;
+        return this;
     }
 
     /**
-     * Set the callback handler
+     * Set the result mode either file = 0, raw pixels = 1 or bytes = 2
+     * Raw pixels skips the cache file and returns the image through OnImagePixelsListener,
+     * bytes also loads the cache file for a chunked transfer, see {@link #getTransferChunk(int, int, int)}
      *
+     * @param resultMode mode of the result
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager setResultMode(int resultMode) {
+        if (resultMode != Constants.IMAGE_RESULT_RAW_PIXELS && resultMode != Constants.IMAGE_RESULT_BYTES) {
+            resultMode = Constants.IMAGE_RESULT_FILE;
+        }
+
+        this.mResultMode = resultMode;
+        return this;
+    }
+
+    /**
+     * Set the max images which can be picked from gallery, more than 1 enables multiple selection
+     * which reports through OnImagesSelectedListener. Capped to ImageProcessor.getMaxBatchImages()
+     *
+     * @param maxImages max images to pick
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager setMaxImages(int maxImages) {
+        this.mMaxImages = Math.max(1, Math.min(maxImages, ImageProcessor.getMaxBatchImages()));
+        return this;
+    }
+
+    /**
+     * Set the callback handler
      * @param mOnImageSelectedListener the handler
      * @return the update manager instance
      */
@@ -114,6 +242,122 @@ public class ImagePickerManager {
         return this;
     }
 
+    /**
+     * Set the callback handler for raw pixels result, errors are still reported to OnImageSelectedListener
+     *
+     * @param mOnImagePixelsListener the handler
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager pixelsHandler(OnImagePixelsListener mOnImagePixelsListener) {
+        this.mOnImagePixelsListener = mOnImagePixelsListener;
+        return this;
+    }
+
+    /**
+     * Set the callback handler for multiple selection
+     *
+     * @param mOnImagesSelectedListener the handler
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager imagesHandler(OnImagesSelectedListener mOnImagesSelectedListener) {
+        this.mOnImagesSelectedListener = mOnImagesSelectedListener;
+        return this;
+    }
+
+    /**
+     * Decode a region of a large image at full resolution and save it to the cache, with the current quality.
+     * Coordinates are in the stored pixel orientation of the source
+     *
+     * @param source    file path or content uri of the image
+     * @param left      left of the region in source pixels
+     * @param top       top of the region in source pixels
+     * @param width     width of the region in source pixels
+     * @param height    height of the region in source pixels
+     * @param outWidth  width of the output image
+     * @param outHeight height of the output image
+     * @param listener  callback handler with image details json
+     */
+    public void decodeImageRegion(String source, int left, int top, int width, int height, int outWidth, int outHeight,
+                                  OnImageSelectedListener listener) {
+        ImageRegionDecoder.getInstance().decodeRegionToCache(getActivity(), source, new Rect(left, top, left + width, top + height),
+                outWidth, outHeight, mCompressor.getCompressFormat(), mCompressor.getQuality(), listener);
+    }
+
+    /**
+     * Set the share of the app's memory a single image decode may use, larger images are decoded to RGB_565,
+     * by tiles or with a larger sample size to stay within it
+     *
+     * @param share share from 0.05 to 1, 0.25 by default and 0.15 on low RAM devices
+     * @return ImagePickerManager itself
+     */
+    public ImagePickerManager setMemoryBudget(float share) {
+        MemoryGovernor.getInstance(getActivity()).setBudgetShare(share);
+        return this;
+    }
+
+    /**
+     * Release the pixel buffer received in OnImagePixelsListener once uploaded
+     *
+     * @param buffer the buffer
+     */
+    public static void releasePixelBuffer(ByteBuffer buffer) {
+        PixelBufferPool.getInstance().release(buffer);
+    }
+
+    /**
+     * Returns a chunk of a bytes result as a direct buffer, valid until the chunk is acknowledged
+     *
+     * @param transferId id of the transfer in the result
+     * @param offset     offset of the chunk
+     * @param length     bytes wanted, fewer are returned at the end of the image
+     * @return the chunk, null when the transfer is unknown
+     */
+    public static ByteBuffer getTransferChunk(int transferId, int offset, int length) {
+        return ChunkedTransfer.getInstance().getChunkBuffer(transferId, offset, length);
+    }
+
+    /**
+     * Returns a copy of a chunk of a bytes result
+     *
+     * @param transferId id of the transfer in the result
+     * @param offset     offset of the chunk
+     * @param length     bytes wanted, fewer are returned at the end of the image
+     * @return the chunk, null when the transfer is unknown
+     */
+    public static byte[] getTransferChunkBytes(int transferId, int offset, int length) {
+        return ChunkedTransfer.getInstance().getChunk(transferId, offset, length);
+    }
+
+    /**
+     * Acknowledge a chunk once copied, the transfer is freed with its last chunk
+     *
+     * @param transferId id of the transfer in the result
+     * @param offset     offset of the chunk
+     * @param length     bytes received
+     * @return true if the transfer is complete and freed
+     */
+    public static boolean acknowledgeTransferChunk(int transferId, int offset, int length) {
+        return ChunkedTransfer.getInstance().acknowledge(transferId, offset, length);
+    }
+
+    /**
+     * Free a transfer which won't be read to the end
+     *
+     * @param transferId id of the transfer in the result
+     */
+    public static void releaseTransfer(int transferId) {
+        ChunkedTransfer.getInstance().release(transferId);
+    }
+
+    /**
+     * Returns the bitmap pool counters
+     *
+     * @return json with hit, miss, eviction and byte counters
+     */
+    public static String getBitmapPoolStats() {
+        return BitmapPool.getInstance().getStats();
+    }
+
     // region helper functions
 
     /**
@@ -123,14 +367,25 @@ public class ImagePickerManager {
         return mActivityWeakReference.get();
     }
 
+    /**
+     * Open the picker, the options and handlers are taken as they are now so later changes don't reach this pick
+     */
     public void openImagePicker() {
-        getActivity().runOnUiThread(new Runnable() {
+        final Activity activity = getActivity();
+        final Bundle bundle = new Bundle();
+        bundle.putInt("pickerType", mPickerType);
+        bundle.putBoolean("createTempFile", mTempFile);
+        bundle.putInt("resultMode", mResultMode);
+        bundle.putInt("maxImages", mMaxImages);
+        final OnImageSelectedListener selectedListener = mOnImageSelectedListener;
+        final OnImagePixelsListener pixelsListener = mOnImagePixelsListener;
+        final OnImagesSelectedListener imagesListener = mOnImagesSelectedListener;
+        final ImageCompressor compressor = new ImageCompressor(mCompressor);
+        activity.runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                Bundle bundle = new Bundle();
-                bundle.putInt("pickerType", mPickerType);
-                bundle.putBoolean("createTempFile", mTempFile);
-                ImagePickerFragment.build(mOnImageSelectedListener, mCompressor, bundle).requestNow(getActivity());
+                ImagePickerFragment.build(selectedListener, pixelsListener, imagesListener,
+                        compressor, mProcessor, bundle).requestNow(activity);
             }
         });
     }
@@ -0,0 +1,971 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.Size;
+
+import com.onedevapp.nativeplugin.CancellationToken;
+import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.PluginMetrics;
+import com.onedevapp.nativeplugin.TaskScheduler;
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ImageProcessor runs the decode, compress and cache work of a picked image on the CPU queue of the {@link TaskScheduler},
+ * so that the UI thread (and Unity's frame loop) never waits on it.
+ * Only the final result is posted back to the main thread.
+ */
+public class ImageProcessor {
+
+    // region Declarations
+    private static final int MAX_QUEUED_JOBS = 8;   //single images waiting for a worker before new ones are rejected
+    private static final int MAX_BATCH_IMAGES = 30; //images allowed in a multiple selection
+    private static final int DECODE_BYTES_MULTIPLE = 5; //a sampled decode holds up to 4x the target pixels, plus the scaled target
+    private static final int PREVIEW_QUALITY = 70;
+
+    private static ImageProcessor instance;
+
+    private final TaskScheduler mScheduler;
+    private final Handler mMainHandler; //posts results back to the main thread
+    private final AtomicInteger mQueuedJobs = new AtomicInteger();  //single images submitted and not started or cancelled yet
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared processor
+     *
+     * @return the {@link ImageProcessor} instance
+     */
+    public static synchronized ImageProcessor getInstance() {
+        if (instance == null) {
+            instance = new ImageProcessor();
+        }
+        return instance;
+    }
+
+    //Private constructor
+    private ImageProcessor() {
+        mScheduler = TaskScheduler.getInstance();
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Images of a multiple selection are decoded at the requested size, so run as many as the CPU workers
+     * allow while the decodes in flight stay within half of the free heap
+     */
+    private int getBatchParallelism(ImageCompressor compressor) {
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long bytesPerImage = (long) compressor.getMaxWidth() * compressor.getMaxHeight() * 4 * DECODE_BYTES_MULTIPLE;
+        long byMemory = (freeHeap / 2) / Math.max(1, bytesPerImage);
+        return (int) Math.max(1, Math.min(mScheduler.getWorkerCount(TaskScheduler.QUEUE_CPU), byMemory));
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Process an image on the CPU queue
+     *
+     * @param context    current Context
+     * @param photoFile  captured photo file, null when picked from gallery
+     * @param photoUri   picked image uri, null when captured from camera
+     * @param compressor     compressor holding the requested size and quality
+     * @param resultMode     Constants.IMAGE_RESULT_FILE, IMAGE_RESULT_RAW_PIXELS or IMAGE_RESULT_BYTES
+     * @param listener       callback handler, invoked once on the main thread
+     * @param pixelsListener callback handler for raw pixels result
+     * @return the task which can be used to cancel the processing
+     */
+    public ProcessingTask submit(Context context, File photoFile, Uri photoUri, ImageCompressor compressor, int resultMode,
+                                 OnImageSelectedListener listener, OnImagePixelsListener pixelsListener) {
+        return submit(context, photoFile, photoUri, compressor, resultMode, false, listener, pixelsListener);
+    }
+
+    /**
+     * Process an image on the CPU queue, ahead of multiple selections
+     *
+     * @param context         current Context
+     * @param photoFile       captured photo file, null when picked from gallery
+     * @param photoUri        picked image uri, null when captured from camera
+     * @param compressor      compressor holding the requested size and quality
+     * @param resultMode      Constants.IMAGE_RESULT_FILE, IMAGE_RESULT_RAW_PIXELS or IMAGE_RESULT_BYTES
+     * @param deletePhotoFile true if the photo file is a temporary capture, moved into the cache or deleted once processed
+     * @param listener        callback handler, invoked once on the main thread
+     * @param pixelsListener  callback handler for raw pixels result
+     * @return the task which can be used to cancel the processing
+     */
+    public ProcessingTask submit(Context context, File photoFile, Uri photoUri, ImageCompressor compressor, int resultMode,
+                                 boolean deletePhotoFile, OnImageSelectedListener listener, OnImagePixelsListener pixelsListener) {
+        ProcessingTask task = new ProcessingTask(context.getApplicationContext(), photoFile, photoUri, compressor, resultMode,
+                deletePhotoFile, listener, pixelsListener);
+        if (mQueuedJobs.incrementAndGet() > MAX_QUEUED_JOBS) {
+            mQueuedJobs.decrementAndGet();
+            task.postError(Constants.EC_IMAGE_PICKER_INTERNAL_ERROR, "Image processor is busy, try again later");
+            return task;
+        }
+        task.mQueued.set(true);
+        try {
+            mScheduler.submit(TaskScheduler.QUEUE_CPU, TaskScheduler.PRIORITY_HIGH, task.mToken, task);
+        } catch (RejectedExecutionException e) {
+            task.leaveQueue();
+            task.postError(Constants.EC_IMAGE_PICKER_INTERNAL_ERROR, "Image processor is busy, try again later");
+        }
+        return task;
+    }
+
+    /**
+     * Process the images of a multiple selection concurrently, each result is reported as soon as it is ready
+     * followed by a single completion callback. Images beyond {@link #getMaxBatchImages()} are ignored.
+     *
+     * @param context    current Context
+     * @param photoUris  picked image uris, in selection order
+     * @param compressor compressor holding the requested size and quality
+     * @param listener   callback handler, invoked on the main thread
+     * @return the task which can be used to cancel the processing
+     */
+    public BatchTask submitBatch(Context context, List<Uri> photoUris, ImageCompressor compressor, OnImagesSelectedListener listener) {
+        int total = Math.min(photoUris.size(), MAX_BATCH_IMAGES);
+        BatchTask batch = new BatchTask(context.getApplicationContext(), photoUris.subList(0, total), compressor, listener);
+        batch.start(getBatchParallelism(compressor));
+        return batch;
+    }
+
+    /**
+     * Returns the max number of images processed from a multiple selection
+     */
+    public static int getMaxBatchImages() {
+        return MAX_BATCH_IMAGES;
+    }
+    //endregion
+
+    /**
+     * A multiple selection request.
+     * Images are started in selection order and only a limited number are in flight at once,
+     * the next one starts when a worker finishes, so memory use doesn't grow with the selection size.
+     */
+    public class BatchTask {
+
+        // region Declarations
+        private final Context mContext;
+        private final List<Uri> mPhotoUris;
+        private final ImageCompressor mCompressor;
+        private final OnImagesSelectedListener mListener;
+        private final AtomicReferenceArray<ProcessingTask> mTasks;
+        private final AtomicInteger mNextIndex = new AtomicInteger(0);
+        private final AtomicBoolean mCancelled = new AtomicBoolean(false);
+        private int mReportedCount; //main thread only
+        private int mFailedCount;   //main thread only
+        //endregion
+
+        private BatchTask(Context context, List<Uri> photoUris, ImageCompressor compressor, OnImagesSelectedListener listener) {
+            this.mContext = context;
+            this.mPhotoUris = photoUris;
+            this.mCompressor = compressor;
+            this.mListener = listener;
+            this.mTasks = new AtomicReferenceArray<>(photoUris.size());
+        }
+
+        /**
+         * Cancel the remaining images, the listener will not be invoked afterwards
+         */
+        public void cancel() {
+            if (!mCancelled.compareAndSet(false, true)) return;
+            for (int i = 0; i < mTasks.length(); i++) {
+                ProcessingTask task = mTasks.get(i);
+                if (task != null) task.cancel();
+            }
+        }
+
+        /**
+         * Returns whether the processing is cancelled
+         */
+        public boolean isCancelled() {
+            return mCancelled.get();
+        }
+
+        /**
+         * Start the first images, one per allowed worker
+         */
+        private void start(int parallelism) {
+            if (mPhotoUris.isEmpty()) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isCancelled() && mListener != null) mListener.onImagesCompleted(0, 0);
+                    }
+                });
+                return;
+            }
+            for (int i = 0; i < Math.min(parallelism, mPhotoUris.size()); i++) {
+                dispatchNext();
+            }
+        }
+
+        /**
+         * Start the next image of the selection, if any
+         */
+        private void dispatchNext() {
+            if (isCancelled()) return;
+            int index = mNextIndex.getAndIncrement();
+            if (index >= mPhotoUris.size()) return;
+
+            final ProcessingTask task = new ProcessingTask(mContext, null, mPhotoUris.get(index), mCompressor,
+                    Constants.IMAGE_RESULT_FILE, false,
+                    (mListener instanceof OnImageResultListener) ? new ResultItemListener(index) : new ItemListener(index), null);
+            mTasks.set(index, task);
+            if (isCancelled()) task.cancel();
+            try {
+                mScheduler.submit(TaskScheduler.QUEUE_CPU, TaskScheduler.PRIORITY_NORMAL, task.mToken, new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            task.run();
+                        } finally {
+                            dispatchNext();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                task.postError(Constants.EC_IMAGE_PICKER_INTERNAL_ERROR, "Image processor is busy, try again later");
+                dispatchNext();
+            }
+        }
+
+        /**
+         * Forwards the result of one image with its index and reports completion after the last one
+         */
+        private class ItemListener implements OnImageSelectedListener {
+            final int mIndex;
+
+            private ItemListener(int index) {
+                this.mIndex = index;
+            }
+
+            @Override
+            public void onImageSelected(boolean status, String message, int errorCode) {
+                if (isCancelled() || mListener == null) return;
+                mListener.onImageItemSelected(mIndex, mPhotoUris.size(), status, message, errorCode);
+                onItemReported(status);
+            }
+
+            /**
+             * Count the reported image and report completion after the last one
+             */
+            void onItemReported(boolean status) {
+                int total = mPhotoUris.size();
+                mReportedCount++;
+                if (!status) mFailedCount++;
+                if (mReportedCount == total) mListener.onImagesCompleted(total, mFailedCount);
+            }
+        }
+
+        /**
+         * Forwards the result of one image as an {@link ImageResult} to a listener which takes results
+         */
+        private class ResultItemListener extends ItemListener implements OnImageResultListener {
+
+            private ResultItemListener(int index) {
+                super(index);
+            }
+
+            @Override
+            public void onImageResult(ImageResult result) {
+                if (isCancelled() || mListener == null) return;
+                ((OnImageResultListener) mListener).onImageItemResult(mIndex, mPhotoUris.size(), result);
+                onItemReported(true);
+            }
+
+            @Override
+            public void onImagePreviewResult(ImageResult result) {
+                //previews are not requested for multiple selection
+            }
+
+            @Override
+            public void onImageItemResult(int index, int total, ImageResult result) {
+                //only the batch listener receives items
+            }
+        }
+    }
+
+    /**
+     * Disk cache key of a rendition, derived from the key of the main output
+     */
+    private static String getRenditionKey(String cacheKey, Rendition rendition) {
+        return ImageDiskCache.buildKey(cacheKey, 0, 0, "rendition|" + rendition.getCacheKeyParams());
+    }
+
+    /**
+     * A single image processing request
+     */
+    public class ProcessingTask implements Runnable {
+
+        // region Declarations
+        private final Context mContext;
+        private final File mPhotoFile;
+        private final Uri mPhotoUri;
+        private final ImageCompressor mCompressor;
+        private final int mResultMode;
+        private final boolean mDeletePhotoFile;
+        private final List<Rendition> mRenditions;  //extra outputs, file results only
+        private final OnImageSelectedListener mListener;
+        private final OnImageResultListener mResultListener;  //the listener when it takes results, else null
+        private final OnImagePixelsListener mPixelsListener;
+        private final CancellationToken mToken = new CancellationToken();  //cancels the task and its rendition helpers
+        private final AtomicBoolean mQueued = new AtomicBoolean();   //counted in mQueuedJobs until it starts or is cancelled
+        private long mSourceSize;   //worker thread only, 0 when unknown
+        private volatile boolean mResultPosted;     //a preview still pending afterwards is dropped
+        //endregion
+
+        private ProcessingTask(Context context, File photoFile, Uri photoUri, ImageCompressor compressor, int resultMode,
+                               boolean deletePhotoFile, OnImageSelectedListener listener, OnImagePixelsListener pixelsListener) {
+            this.mContext = context;
+            this.mPhotoFile = photoFile;
+            this.mPhotoUri = photoUri;
+            this.mCompressor = compressor;
+            this.mResultMode = resultMode;
+            this.mDeletePhotoFile = deletePhotoFile && photoFile != null;
+            this.mRenditions = (resultMode != Constants.IMAGE_RESULT_RAW_PIXELS) ? compressor.getRenditions() : Collections.<Rendition>emptyList();
+            this.mListener = listener;
+            this.mResultListener = (listener instanceof OnImageResultListener) ? (OnImageResultListener) listener : null;
+            this.mPixelsListener = pixelsListener;
+        }
+
+        /**
+         * Cancel the processing, the listener will not be invoked afterwards
+         */
+        public void cancel() {
+            mToken.cancel();
+            leaveQueue();
+        }
+
+        /**
+         * Returns whether the processing is cancelled
+         */
+        public boolean isCancelled() {
+            return mToken.isCancelled();
+        }
+
+        /**
+         * Stop counting the task as waiting, once it starts or is cancelled
+         */
+        private void leaveQueue() {
+            if (mQueued.compareAndSet(true, false)) mQueuedJobs.decrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            leaveQueue();
+            ImageDiskCache diskCache = null;
+            String cacheKey = null;
+            String sourceKey = null;    //the cache key when the source can be identified, else null
+            File tempFile = null;
+            FileInputStream sourceStream = null;
+            long startNanos = System.nanoTime();
+            int phase = -1;     //PluginMetrics phase in progress, charged with the error if it throws
+            long phaseNanos = 0;
+            boolean failed = false;
+            try {
+                Uri selectedImage = (mPhotoFile != null) ? ImageUtil.getUriFromFile(mContext, mPhotoFile) : mPhotoUri;
+
+                if (mResultMode != Constants.IMAGE_RESULT_RAW_PIXELS) {
+                    diskCache = ImageDiskCache.getInstance(mContext);
+                    cacheKey = buildCacheKey();
+                    sourceKey = cacheKey;
+                    ImageDiskCache.Entry entry = (cacheKey != null) ? diskCache.get(cacheKey) : null;
+                    List<ImageResult.RenditionResult> cachedRenditions = (entry != null) ? getCachedRenditions(diskCache, cacheKey) : null;
+                    if (cachedRenditions != null) {
+                        //same source, same parameters: nothing to decode
+                        ImageResult result = buildResult(entry.getWidth(), entry.getHeight(), entry.getOrientation(), selectedImage, entry.getFile());
+                        result.addFlags(ImageResult.FLAG_CACHED);
+                        if (!mRenditions.isEmpty()) result.setRenditions(cachedRenditions);
+                        postResult(result);
+                        return;
+                    }
+                    if (cacheKey == null) {
+                        //source can't be identified, keep the output under the cache quota but never look it up
+                        cacheKey = ImageDiskCache.buildKey(String.valueOf(selectedImage), System.nanoTime(), 0, mCompressor.getCacheKeyParams());
+                    }
+                    tempFile = diskCache.newTempFile(cacheKey);
+                }
+
+                //one open for the header and the pixels, the metadata read here is reused by the decoder
+                sourceStream = ImageUtil.openSourceStream(mContext, mPhotoFile, mPhotoUri);
+                ImageMetadata metadata = (sourceStream != null) ? ImageMetadata.read(sourceStream, mPhotoFile)
+                        : ImageMetadata.read(mContext, mPhotoUri);
+                if (mResultMode != Constants.IMAGE_RESULT_RAW_PIXELS
+                        && passthrough(diskCache, cacheKey, tempFile, selectedImage, sourceStream, metadata)) return;
+                if (isCancelled()) return;
+                //a preview is cached under the source key, without one (e.g. raw pixels) there is none
+                if (mCompressor.getPreviewSize() > 0 && sourceKey != null
+                        && (mResultListener != null || mListener instanceof OnImagePreviewListener))
+                    submitPreview(sourceStream != null, metadata, selectedImage, sourceKey);
+
+                //decode once at the largest size any output needs
+                int decodeWidth = mCompressor.getMaxWidth();
+                int decodeHeight = mCompressor.getMaxHeight();
+                for (Rendition rendition : mRenditions) {
+                    decodeWidth = Math.max(decodeWidth, rendition.getMaxWidth());
+                    decodeHeight = Math.max(decodeHeight, rendition.getMaxHeight());
+                }
+
+                //a seekable source can keep its stored orientation and have it reported instead, the other decoders rotate on their own
+                int orientation = (mCompressor.isLazyOrientation() && sourceStream != null) ? metadata.getOrientation() : 0;
+
+                //raw pixels are handed over as RGBA32, only a seekable source can be decoded by tiles
+                MemoryGovernor.DecodePlan plan = MemoryGovernor.getInstance(mContext).plan(metadata, decodeWidth,
+                        decodeHeight, mResultMode != Constants.IMAGE_RESULT_RAW_PIXELS, sourceStream != null, orientation == 0);
+                Bitmap mPhotoBitmap;
+                phase = PluginMetrics.IMAGE_DECODE;
+                phaseNanos = System.nanoTime();
+                if (sourceStream != null) {
+                    String source = (mPhotoFile != null) ? mPhotoFile.getAbsolutePath() : mPhotoUri.toString();
+                    mPhotoBitmap = mCompressor.compressToBitmap(mContext, source, sourceStream, metadata, plan, decodeWidth, decodeHeight);
+                } else {
+                    mPhotoBitmap = mCompressor.compressToBitmap(mContext, selectedImage, plan, decodeWidth, decodeHeight);
+                }
+                PluginMetrics.record(phase, phaseNanos, true);
+                phase = -1;
+                sourceStream = closeQuietly(sourceStream);
+                if (isCancelled()) return;
+
+                if (mResultMode == Constants.IMAGE_RESULT_RAW_PIXELS) {
+                    deliverPixels(mPhotoBitmap, selectedImage, orientation, plan);
+                    return;
+                }
+
+                //renditions are derived from the decoded bitmap by pool helpers while this thread encodes the main output
+                RenditionJob renditionJob = null;
+                if (!mRenditions.isEmpty()) {
+                    renditionJob = new RenditionJob(mPhotoBitmap, orientation, diskCache, cacheKey);
+                    renditionJob.start();
+                }
+                Bitmap mainBitmap = fitStoredBitmap(mPhotoBitmap, mCompressor.getMaxWidth(), mCompressor.getMaxHeight(), orientation);
+                TargetSizeEncoder.Result encoded;
+                phase = PluginMetrics.IMAGE_ENCODE;
+                phaseNanos = System.nanoTime();
+                try {
+                    encoded = mCompressor.encodeToFile(mainBitmap, tempFile);
+                    PluginMetrics.record(phase, phaseNanos, true);
+                    phase = -1;
+                } finally {
+                    if (mainBitmap != mPhotoBitmap) BitmapPool.getInstance().put(mainBitmap);
+                    //the decoded bitmap is shared with the helpers until every rendition is done
+                    if (renditionJob != null) renditionJob.await();
+                    BitmapPool.getInstance().put(mPhotoBitmap);
+                }
+                if (isCancelled()) return;
+
+                phase = PluginMetrics.CACHE_WRITE;
+                phaseNanos = System.nanoTime();
+                ImageDiskCache.Entry entry = diskCache.commit(cacheKey, tempFile,
+                        ImageUtil.getFileExtension(mCompressor.getCompressFormat()), encoded.width, encoded.height, orientation);
+                tempFile = null;
+                PluginMetrics.record(phase, phaseNanos, true);
+                phase = -1;
+
+                ImageResult result = buildResult(encoded.width, encoded.height, orientation, selectedImage, entry.getFile());
+                result.setQuality(encoded.quality);
+                result.setCaptureDate(metadata.getCaptureDate() != null ? metadata.getCaptureDate() : "");
+                result.setMemoryPlan(plan);
+                if (renditionJob != null) result.setRenditions(renditionJob.getResults());
+                postResult(result);
+            } catch (Exception e) {
+                failed = true;
+                if (phase >= 0) PluginMetrics.record(phase, phaseNanos, false);
+                postError(Constants.EC_IMAGE_PICKER_FILE_NOT_READABLE, e.toString());
+            } finally {
+                PluginMetrics.record(PluginMetrics.IMAGE_PROCESS, startNanos, !failed);
+                closeQuietly(sourceStream);
+                if (diskCache != null) diskCache.abort(tempFile);
+                //the temporary capture is either in the cache now or no longer needed
+                if (mDeletePhotoFile && mPhotoFile.exists() && !mPhotoFile.delete())
+                    PluginLog.w("Unable to delete capture {}", mPhotoFile);
+            }
+        }
+
+        /**
+         * Returns the results of every rendition from the cache
+         *
+         * @return results in rendition order, null when one of them is missing
+         */
+        private List<ImageResult.RenditionResult> getCachedRenditions(ImageDiskCache diskCache, String cacheKey) {
+            List<ImageResult.RenditionResult> results = new ArrayList<>(mRenditions.size());
+            for (Rendition rendition : mRenditions) {
+                ImageDiskCache.Entry entry = diskCache.get(getRenditionKey(cacheKey, rendition));
+                if (entry == null) return null;
+                results.add(buildRenditionResult(rendition, entry, 0));
+            }
+            return results;
+        }
+
+        /**
+         * Result of one rendition
+         *
+         * @param quality quality it was encoded with, 0 when unknown
+         */
+        private ImageResult.RenditionResult buildRenditionResult(Rendition rendition, ImageDiskCache.Entry entry, int quality) {
+            return new ImageResult.RenditionResult(entry.getWidth(), entry.getHeight(), entry.getOrientation(), rendition.getCompressFormat(),
+                    quality, entry.getSize(), entry.getFile().getAbsolutePath());
+        }
+
+        /**
+         * Fit the bitmap into the max size, which is turned with the pixels when they are stored rotated by 90 or 270 degrees
+         *
+         * @param orientation exif orientation of the pixels, 0 when upright
+         */
+        private Bitmap fitStoredBitmap(Bitmap bitmap, int maxWidth, int maxHeight, int orientation) {
+            if (ImageGeometry.isSwapped(ImageGeometry.getDisplayRotationDegrees(orientation)))
+                return ImageUtil.fitBitmap(bitmap, maxHeight, maxWidth);
+            return ImageUtil.fitBitmap(bitmap, maxWidth, maxHeight);
+        }
+
+        /**
+         * Close the source stream, errors are ignored
+         *
+         * @return null, to clear the reference
+         */
+        private FileInputStream closeQuietly(FileInputStream sourceStream) {
+            if (sourceStream != null) {
+                try {
+                    sourceStream.close();
+                } catch (IOException e) {
+                    PluginLog.w("Source close error: {}", e);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Build the disk cache key from the source identity and the processing parameters
+         *
+         * @return the key, null when the source can't be identified
+         */
+        private String buildCacheKey() {
+            String source;
+            long size;
+            long lastModified;
+            if (mPhotoFile != null) {
+                source = mPhotoFile.getAbsolutePath();
+                size = mPhotoFile.length();
+                lastModified = mPhotoFile.lastModified();
+            } else {
+                long[] stats = ImageUtil.GetSourceStats(mContext, mPhotoUri);
+                source = mPhotoUri.toString();
+                size = stats[0];
+                lastModified = stats[1];
+            }
+            mSourceSize = size;
+            if (size <= 0) return null;
+            return ImageDiskCache.buildKey(source, lastModified, size, mCompressor.getCacheKeyParams());
+        }
+
+        /**
+         * Copy the source into the cache as it is when it already fits the requested size and format
+         *
+         * @return true if the result was delivered
+         */
+        private boolean passthrough(ImageDiskCache diskCache, String cacheKey, File tempFile, Uri selectedImage,
+                                    FileInputStream sourceStream, ImageMetadata metadata) throws IOException {
+            if (!mCompressor.canPassthrough(metadata.toOptions(), metadata.getOrientation())) return false;
+            //a source of unknown size may not fit the max file size
+            if (mCompressor.getMaxFileSize() > 0 && (mSourceSize <= 0 || mSourceSize > mCompressor.getMaxFileSize())) return false;
+
+            //a temporary capture on the same storage is moved into the cache instead of copied
+            long copyNanos = System.nanoTime();
+            if (!mDeletePhotoFile || !mPhotoFile.renameTo(tempFile)) {
+                if (sourceStream != null) ImageUtil.copyImg(sourceStream, tempFile);
+                else ImageUtil.copyImg(mContext, mPhotoUri, tempFile);
+            }
+            if (isCancelled()) return true;
+
+            //an untouched source keeps its exif orientation
+            ImageDiskCache.Entry entry = diskCache.commit(cacheKey, tempFile,
+                    ImageUtil.getFileExtension(mCompressor.getCompressFormat()), metadata.getWidth(), metadata.getHeight(), metadata.getOrientation());
+            PluginMetrics.record(PluginMetrics.CACHE_WRITE, copyNanos, true);
+
+            ImageResult result = buildResult(metadata.getWidth(), metadata.getHeight(), metadata.getOrientation(), selectedImage, entry.getFile());
+            result.addFlags(ImageResult.FLAG_PASSTHROUGH);
+            result.setCaptureDate(metadata.getCaptureDate() != null ? metadata.getCaptureDate() : "");
+            postResult(result);
+            return true;
+        }
+
+        /**
+         * Renditions of one decode, taken in turn by the worker and by CPU queue helpers.
+         * The worker waits for the renditions rather than for the helpers, so a helper which never starts can't block it
+         */
+        private class RenditionJob implements Runnable {
+
+            // region Declarations
+            private final Bitmap mSource;
+            private final int mOrientation;     //exif orientation of the source pixels, kept by every rendition
+            private final ImageDiskCache mDiskCache;
+            private final String mCacheKey;
+            private final AtomicInteger mNextIndex = new AtomicInteger();
+            private final CountDownLatch mDone;
+            private final ImageDiskCache.Entry[] mEntries;  //published to the worker by mDone
+            private final int[] mQualities;
+            private final List<Future<?>> mHelpers = new ArrayList<>();  //worker thread only
+            private volatile Exception mError;
+            //endregion
+
+            private RenditionJob(Bitmap source, int orientation, ImageDiskCache diskCache, String cacheKey) {
+                this.mSource = source;
+                this.mOrientation = orientation;
+                this.mDiskCache = diskCache;
+                this.mCacheKey = cacheKey;
+                this.mDone = new CountDownLatch(mRenditions.size());
+                this.mEntries = new ImageDiskCache.Entry[mRenditions.size()];
+                this.mQualities = new int[mRenditions.size()];
+            }
+
+            /**
+             * Hand the job to one helper per remaining rendition, the worker joins once its own output is encoded
+             */
+            private void start() {
+                for (int i = 0; i < mRenditions.size(); i++) {
+                    try {
+                        mHelpers.add(mScheduler.submit(TaskScheduler.QUEUE_CPU, TaskScheduler.PRIORITY_HIGH, mToken, this));
+                    } catch (RejectedExecutionException e) {
+                        break;
+                    }
+                }
+            }
+
+            @Override
+            public void run() {
+                int index;
+                while ((index = mNextIndex.getAndIncrement()) < mRenditions.size()) {
+                    try {
+                        encode(index);
+                    } catch (Exception e) {
+                        mError = e;
+                    } finally {
+                        mDone.countDown();
+                    }
+                }
+            }
+
+            /**
+             * Help with the remaining renditions, then wait for the ones taken by helpers.
+             * Helpers still queued have nothing left to take, they are cancelled so they leave the CPU queue
+             */
+            private void await() {
+                run();
+                try {
+                    mDone.await();
+                } catch (InterruptedException e) {
+                    mError = e;
+                    Thread.currentThread().interrupt();
+                }
+                for (Future<?> helper : mHelpers) {
+                    helper.cancel(false);
+                }
+            }
+
+            /**
+             * Results in rendition order
+             *
+             * @return results of the renditions
+             * @throws IOException if a rendition failed
+             */
+            private List<ImageResult.RenditionResult> getResults() throws IOException {
+                if (mError != null) throw new IOException("Rendition failed: " + mError.toString());
+                List<ImageResult.RenditionResult> results = new ArrayList<>(mEntries.length);
+                for (int i = 0; i < mEntries.length; i++) {
+                    results.add(buildRenditionResult(mRenditions.get(i), mEntries[i], mQualities[i]));
+                }
+                return results;
+            }
+
+            private void encode(int index) throws IOException {
+                if (isCancelled()) return;
+                Rendition rendition = mRenditions.get(index);
+                String key = getRenditionKey(mCacheKey, rendition);
+                Bitmap bitmap = fitStoredBitmap(mSource, rendition.getMaxWidth(), rendition.getMaxHeight(), mOrientation);
+                File tempFile = mDiskCache.newTempFile(key);
+                try {
+                    TargetSizeEncoder.Result encoded = ImageCompressor.encodeToFile(bitmap, rendition, tempFile);
+                    mEntries[index] = mDiskCache.commit(key, tempFile, ImageUtil.getFileExtension(rendition.getCompressFormat()),
+                            encoded.width, encoded.height, mOrientation);
+                    mQualities[index] = encoded.quality;
+                    tempFile = null;
+                } finally {
+                    if (bitmap != mSource) BitmapPool.getInstance().put(bitmap);
+                    mDiskCache.abort(tempFile);
+                }
+            }
+        }
+
+        /**
+         * Decode a small preview on its own task, so the final decode doesn't wait for it.
+         * The preview is optional, with the CPU queue full there is none
+         */
+        private void submitPreview(final boolean seekable, final ImageMetadata metadata, final Uri selectedImage, final String sourceKey) {
+            try {
+                mScheduler.submit(TaskScheduler.QUEUE_CPU, TaskScheduler.PRIORITY_HIGH, mToken, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isCancelled() || mResultPosted) return;
+                        deliverPreview(seekable, metadata, selectedImage, sourceKey);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                PluginLog.w("Preview skipped: {}", e);
+            }
+        }
+
+        /**
+         * Decode a small preview, save it to the cache and post it ahead of the final result.
+         * A failed preview is only logged, the final result still follows
+         */
+        private void deliverPreview(boolean seekable, ImageMetadata metadata, Uri selectedImage, String sourceKey) {
+            int previewSize = mCompressor.getPreviewSize();
+            ImageDiskCache diskCache = ImageDiskCache.getInstance(mContext);
+            String previewKey = ImageDiskCache.buildKey(sourceKey, 0, 0, "preview|" + previewSize);
+            FileInputStream sourceStream = null;
+            File tempFile = null;
+            Bitmap preview = null;
+            try {
+                ImageDiskCache.Entry entry = diskCache.get(previewKey);
+                File previewFile;
+                int width, height;
+                if (entry != null) {
+                    previewFile = entry.getFile();
+                    width = entry.getWidth();
+                    height = entry.getHeight();
+                } else {
+                    //the task's own stream, the processing one keeps its position
+                    if (seekable) sourceStream = ImageUtil.openSourceStream(mContext, mPhotoFile, mPhotoUri);
+                    preview = decodePreview(sourceStream, metadata, selectedImage, previewSize);
+                    if (isCancelled()) return;
+                    tempFile = diskCache.newTempFile(previewKey);
+                    ImageUtil.writeBitmap(preview, Bitmap.CompressFormat.JPEG, PREVIEW_QUALITY, tempFile);
+                    width = preview.getWidth();
+                    height = preview.getHeight();
+                    previewFile = diskCache.commit(previewKey, tempFile, ImageUtil.getFileExtension(Bitmap.CompressFormat.JPEG),
+                            width, height).getFile();
+                    tempFile = null;
+                }
+
+                ImageResult result = new ImageResult();
+                result.setSize(width, height);
+                result.setCompressFormat(Bitmap.CompressFormat.JPEG);
+                result.setFile(previewFile.getAbsolutePath(), previewFile.length());
+                result.addFlags(ImageResult.FLAG_PREVIEW);
+                postPreview(result);
+            } catch (Exception e) {
+                PluginLog.w("Preview error: {}", e);
+            } finally {
+                closeQuietly(sourceStream);
+                BitmapPool.getInstance().put(preview);
+                diskCache.abort(tempFile);
+            }
+        }
+
+        /**
+         * Decode the preview from the MediaStore thumbnail when there is one, else sampled from the source
+         */
+        private Bitmap decodePreview(FileInputStream sourceStream, ImageMetadata metadata, Uri selectedImage, int previewSize) throws IOException {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mPhotoUri != null
+                    && MediaStore.AUTHORITY.equals(mPhotoUri.getAuthority())) {
+                try {
+                    //upright and usually already cached by the gallery
+                    Bitmap thumbnail = mContext.getContentResolver().loadThumbnail(mPhotoUri, new Size(previewSize, previewSize), null);
+                    int[] targetSize = ImageGeometry.calculateTargetSize(thumbnail.getWidth(), thumbnail.getHeight(), previewSize, previewSize);
+                    if (targetSize[0] == thumbnail.getWidth() && targetSize[1] == thumbnail.getHeight()) return thumbnail;
+                    Bitmap scaled = ImageUtil.resizeBitmap(thumbnail, targetSize[0], targetSize[1]);
+                    BitmapPool.getInstance().put(thumbnail);
+                    return scaled;
+                } catch (IOException e) {
+                    PluginLog.w("Preview thumbnail error: {}", e);
+                }
+            }
+            //the large sample size keeps this decode to a few milliseconds
+            if (sourceStream != null) return ImageUtil.decodeSampledBitmap(sourceStream, metadata, previewSize, previewSize);
+            return ImageUtil.decodeSampledBitmapFromUri(mContext, selectedImage, previewSize, previewSize);
+        }
+
+        /**
+         * Post the preview to the main thread unless cancelled in the meantime
+         */
+        private void postPreview(final ImageResult result) {
+            if (isCancelled() || mResultPosted || mListener == null) return;
+            //the json is only built for listeners which don't take results, and off the main thread
+            final String message = (mResultListener == null) ? result.toText() : null;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    //the final result may have been posted first from another worker
+                    if (isCancelled() || mResultPosted) return;
+                    if (mResultListener != null)
+                        mResultListener.onImagePreviewResult(result);
+                    else
+                        ((OnImagePreviewListener) mListener).onImagePreview(message);
+                }
+            });
+        }
+
+        /**
+         * Report the exif orientation of the pixels with the rotation and mirroring which display them upright
+         */
+        private void putOrientation(JSONObject jso, int orientation) throws JSONException {
+            jso.put("orientation", orientation);
+            jso.put("rotation", ImageGeometry.getDisplayRotationDegrees(orientation));
+            jso.put("mirrored", ImageGeometry.isMirrored(orientation));
+        }
+
+        /**
+         * Build the result of a cache file, its bytes are loaded for a chunked transfer when requested
+         */
+        private ImageResult buildResult(int width, int height, int orientation, Uri selectedImage, File cacheFile) throws IOException {
+            ImageResult result = new ImageResult();
+            result.setSize(width, height);
+            result.setCompressFormat(mCompressor.getCompressFormat());
+            result.setOrientation(orientation);
+            if (mDeletePhotoFile) {
+                //the capture is gone once processed, point at the cache file instead
+                Uri cacheUri = ImageUtil.getUriFromFile(mContext, cacheFile);
+                result.setSource(cacheUri != null ? cacheUri.toString() : "", cacheFile.getAbsolutePath());
+            } else {
+                result.setSource(selectedImage != null ? selectedImage.toString() : "", (mPhotoFile != null) ? mPhotoFile.getAbsolutePath() : "");
+            }
+            result.setFile(cacheFile.getAbsolutePath(), cacheFile.length());
+            if (mResultMode == Constants.IMAGE_RESULT_BYTES) {
+                //never turned into a string, Unity pulls the bytes by id
+                int transferId = ChunkedTransfer.getInstance().open(cacheFile);
+                result.setTransfer(transferId, ChunkedTransfer.getInstance().getSize(transferId));
+            }
+            return result;
+        }
+
+        /**
+         * Copy the bitmap once into a pooled direct buffer and hand it to the pixels listener
+         *
+         * @param bitmap        final bitmap, released to the pool afterwards
+         * @param selectedImage uri of the source image
+         * @param orientation   exif orientation of the pixels, 0 when upright
+         * @param plan          decode plan, reported with the pixels
+         */
+        private void deliverPixels(Bitmap bitmap, Uri selectedImage, int orientation, MemoryGovernor.DecodePlan plan) throws JSONException {
+            if (mPixelsListener == null) {
+                BitmapPool.getInstance().put(bitmap);
+                postError(Constants.EC_IMAGE_PICKER_INTERNAL_ERROR, "The pixels listener callback interface must be implemented");
+                return;
+            }
+
+            if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                BitmapPool.getInstance().put(bitmap);
+                bitmap = converted;
+            }
+
+            final int width = bitmap.getWidth();
+            final int height = bitmap.getHeight();
+            final int stride = bitmap.getRowBytes();
+            final ByteBuffer buffer = PixelBufferPool.getInstance().acquire(stride * height);
+            //ARGB_8888 is stored as premultiplied RGBA bytes, so this is a single copy straight into Unity's RGBA32 layout,
+            //straight alpha is restored in place for images with transparency
+            bitmap.copyPixelsToBuffer(buffer);
+            buffer.rewind();
+            if (bitmap.hasAlpha()) ImageUtil.unpremultiply(buffer, width, height, stride);
+            BitmapPool.getInstance().put(bitmap);
+
+            JSONObject jso = new JSONObject();
+            jso.put("width", width);
+            jso.put("height", height);
+            jso.put("stride", stride);
+            jso.put("format", "RGBA32");
+            putOrientation(jso, orientation);
+            //a temporary capture is deleted once processed, so it has no source to point at
+            jso.put("uri", (selectedImage != null && !mDeletePhotoFile) ? selectedImage.toString() : "");
+            jso.put("path", (mPhotoFile != null && !mDeletePhotoFile) ? mPhotoFile.getAbsolutePath() : "");
+            jso.put("memory", plan.toJson());
+            final String message = jso.toString();
+
+            if (isCancelled()) {
+                PixelBufferPool.getInstance().release(buffer);
+                return;
+            }
+            mResultPosted = true;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isCancelled())
+                        PixelBufferPool.getInstance().release(buffer);
+                    else
+                        mPixelsListener.onImagePixels(buffer, width, height, stride, message);
+                }
+            });
+        }
+
+        /**
+         * Common functions to report error to users
+         *
+         * @param errorCode error code
+         * @param error     error message
+         */
+        private void postError(int errorCode, String error) {
+            PluginLog.e("Image processing error {}: {}", errorCode, error);
+            postResult(false, error, errorCode);
+        }
+
+        /**
+         * Post a successful result to the main thread, as json unless the listener takes results
+         */
+        private void postResult(final ImageResult result) {
+            if (isCancelled() || mListener == null) return;
+            mResultPosted = true;
+            if (mResultListener == null) {
+                postResult(true, result.toText(), 0);
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled())
+                        mResultListener.onImageResult(result);
+                }
+            });
+        }
+
+        /**
+         * Post the result to the main thread unless cancelled in the meantime
+         */
+        private void postResult(final boolean status, final String message, final int errorCode) {
+            if (isCancelled() || mListener == null) return;
+            mResultPosted = true;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled())
+                        mListener.onImageSelected(status, message, errorCode);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+
+import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.PluginMetrics;
+import com.onedevapp.nativeplugin.TaskScheduler;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ImageRegionDecoder decodes a rectangle of a very large image at full resolution (or the smallest
+ * power of two downsample which still covers the output size) without decoding the rest of the image.
+ * The region is decoded in tiles on several threads and drawn into the output bitmap, so memory use is
+ * bounded by the tile size and the output size, not by the source size.
+ * Region coordinates are in the stored pixel orientation of the source, the orientation is reported in the result.
+ */
+public class ImageRegionDecoder {
+
+    // region Declarations
+    private static final int TILE_SIZE = 512;  //max decoded tile side in pixels
+    private static final int MAX_CACHED_SOURCES = 4;    //sources which keep their decoders open
+
+    private static ImageRegionDecoder instance;
+
+    private final Map<String, DecoderSet> mDecoders = new LinkedHashMap<>(MAX_CACHED_SOURCES, 0.75f, true);
+    private final TaskScheduler mScheduler; //its CPU workers help the calling thread with tiles
+    private final Handler mMainHandler; //posts results back to the main thread
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared region decoder
+     *
+     * @return the {@link ImageRegionDecoder} instance
+     */
+    public static synchronized ImageRegionDecoder getInstance() {
+        if (instance == null) {
+            instance = new ImageRegionDecoder();
+        }
+        return instance;
+    }
+
+    //Private constructor
+    private ImageRegionDecoder() {
+        mScheduler = TaskScheduler.getInstance();
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Decode a region of the image, must not be called on the main thread
+     *
+     * @param context   current Context
+     * @param source    file path or content uri of the image
+     * @param region    rectangle to decode in source pixels, clipped to the image bounds
+     * @param outWidth  width of the returned bitmap
+     * @param outHeight height of the returned bitmap
+     * @return bitmap of outWidth x outHeight, release it to {@link BitmapPool} once done
+     * @throws IOException if the source can't be read or the region is empty
+     */
+    public Bitmap decodeRegion(Context context, String source, Rect region, int outWidth, int outHeight) throws IOException {
+        return decodeRegion(context, source, region, outWidth, outHeight, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Decode a region of the image into a bitmap of the given config, must not be called on the main thread
+     *
+     * @param context   current Context
+     * @param source    file path or content uri of the image
+     * @param region    rectangle to decode in source pixels, clipped to the image bounds
+     * @param outWidth  width of the returned bitmap
+     * @param outHeight height of the returned bitmap
+     * @param config    config of the returned bitmap
+     * @return bitmap of outWidth x outHeight, release it to {@link BitmapPool} once done
+     * @throws IOException if the source can't be read or the region is empty
+     */
+    public Bitmap decodeRegion(Context context, String source, Rect region, int outWidth, int outHeight, Bitmap.Config config) throws IOException {
+        if (outWidth <= 0 || outHeight <= 0) throw new IOException("Invalid output size " + outWidth + "x" + outHeight);
+
+        DecoderSet decoders = getDecoders(context, source);
+        final Rect crop = new Rect(region);
+        if (!crop.intersect(0, 0, decoders.mWidth, decoders.mHeight) || crop.isEmpty()) {
+            throw new IOException("Region " + region.toShortString() + " is outside of the image");
+        }
+
+        final int sampleSize = calculateSampleSize(crop.width(), crop.height(), outWidth, outHeight);
+        final int sourceTileSize = TILE_SIZE * sampleSize;
+        final int columns = (crop.width() + sourceTileSize - 1) / sourceTileSize;
+        final int tileCount = columns * ((crop.height() + sourceTileSize - 1) / sourceTileSize);
+
+        final Bitmap output = BitmapPool.getInstance().get(outWidth, outHeight, config);
+        final TileJob job = new TileJob(decoders, crop, output, sampleSize, sourceTileSize, columns, tileCount);
+
+        //the calling thread decodes tiles as well, helpers only join when there is more than one tile
+        int helpers = Math.min(mScheduler.getWorkerCount(TaskScheduler.QUEUE_CPU), tileCount - 1);
+        final CountDownLatch done = new CountDownLatch(helpers);
+        final AtomicBoolean[] started = new AtomicBoolean[helpers];
+        final Future<?>[] futures = new Future<?>[helpers];
+        for (int i = 0; i < helpers; i++) {
+            final AtomicBoolean helperStarted = started[i] = new AtomicBoolean(false);
+            try {
+                futures[i] = mScheduler.submit(TaskScheduler.QUEUE_CPU, TaskScheduler.PRIORITY_HIGH, null, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!helperStarted.compareAndSet(false, true)) return;
+                        try {
+                            job.run();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                helperStarted.set(true);
+                done.countDown();
+            }
+        }
+        job.run();
+        //every tile is taken now, so helpers which have not started are not waited for, they may be queued behind this very thread.
+        //they are cancelled too, so they leave the CPU queue instead of holding its depth
+        for (int i = 0; i < helpers; i++) {
+            if (started[i].compareAndSet(false, true)) {
+                done.countDown();
+                futures[i].cancel(false);
+            }
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            job.mError.compareAndSet(null, new IOException("Region decode interrupted"));
+            Thread.currentThread().interrupt();
+        }
+
+        if (job.mError.get() != null) {
+            BitmapPool.getInstance().put(output);
+            throw job.mError.get();
+        }
+        return output;
+    }
+
+    /**
+     * Decode a region of the image on the CPU queue and save it to the image cache.
+     * Same region and output of an unchanged source is served from the cache.
+     *
+     * @param context        current Context
+     * @param source         file path or content uri of the image
+     * @param region         rectangle to decode in source pixels
+     * @param outWidth       width of the output image
+     * @param outHeight      height of the output image
+     * @param compressFormat format of the output image
+     * @param quality        quality of the output image
+     * @param listener       callback handler, invoked once on the main thread with image details json
+     */
+    public void decodeRegionToCache(Context context, final String source, final Rect region, final int outWidth, final int outHeight,
+                                    final Bitmap.CompressFormat compressFormat, final int quality, final OnImageSelectedListener listener) {
+        final Context appContext = context.getApplicationContext();
+        try {
+            mScheduler.submit(TaskScheduler.QUEUE_CPU, new Runnable() {
+                @Override
+                public void run() {
+                    ImageDiskCache diskCache = ImageDiskCache.getInstance(appContext);
+                    File tempFile = null;
+                    long startNanos = System.nanoTime();
+                    boolean failed = true;
+                    try {
+                        long[] stats = getSourceStats(appContext, source);
+                        String cacheKey = ImageDiskCache.buildKey(source, stats[1], stats[0], "region|" + region.flattenToString()
+                                + "|" + outWidth + "x" + outHeight + "|" + compressFormat.name() + "|" + quality);
+
+                        ImageDiskCache.Entry entry = diskCache.get(cacheKey);
+                        if (entry == null) {
+                            Bitmap bitmap = decodeRegion(appContext, source, region, outWidth, outHeight);
+                            tempFile = diskCache.newTempFile(cacheKey);
+                            ImageUtil.writeBitmap(bitmap, compressFormat, quality, tempFile);
+                            BitmapPool.getInstance().put(bitmap);
+                            entry = diskCache.commit(cacheKey, tempFile, ImageUtil.getFileExtension(compressFormat), outWidth, outHeight);
+                            tempFile = null;
+                        }
+
+                        JSONObject jso = new JSONObject();
+                        jso.put("width", entry.getWidth());
+                        jso.put("height", entry.getHeight());
+                        jso.put("mimeType", ImageUtil.getMimeType(compressFormat));
+                        jso.put("orientation", getSourceOrientation(appContext, source));
+                        jso.put("uri", isFilePath(source) ? "" : source);
+                        jso.put("path", isFilePath(source) ? source : "");
+                        jso.put("cacheFilePath", entry.getFile().getAbsolutePath());
+                        failed = false;
+                        postResult(listener, true, jso.toString(), 0);
+                    } catch (JSONException e) {
+                        postResult(listener, false, e.toString(), Constants.EC_IMAGE_PICKER_INTERNAL_ERROR);
+                    } catch (Exception e) {
+                        postResult(listener, false, e.toString(), Constants.EC_IMAGE_PICKER_FILE_NOT_READABLE);
+                    } finally {
+                        PluginMetrics.record(PluginMetrics.REGION_DECODE, startNanos, !failed);
+                        diskCache.abort(tempFile);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            postResult(listener, false, "Image processor is busy, try again later", Constants.EC_IMAGE_PICKER_INTERNAL_ERROR);
+        }
+    }
+
+    /**
+     * Close the cached decoders of the source, e.g. before it is deleted
+     *
+     * @param source file path or content uri of the image
+     */
+    public void close(String source) {
+        synchronized (mDecoders) {
+            Iterator<Map.Entry<String, DecoderSet>> iterator = mDecoders.entrySet().iterator();
+            while (iterator.hasNext()) {
+                DecoderSet decoders = iterator.next().getValue();
+                if (decoders.mSource.equals(source)) {
+                    decoders.close();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the cached decoders of every source
+     */
+    public void clear() {
+        synchronized (mDecoders) {
+            for (DecoderSet decoders : mDecoders.values()) {
+                decoders.close();
+            }
+            mDecoders.clear();
+        }
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Returns the cached decoders of the source, opening it if needed
+     */
+    private DecoderSet getDecoders(Context context, String source) throws IOException {
+        long[] stats = getSourceStats(context, source);
+        String key = source + "|" + stats[0] + "|" + stats[1];
+        synchronized (mDecoders) {
+            DecoderSet decoders = mDecoders.get(key);
+            if (decoders != null) return decoders;
+        }
+
+        DecoderSet decoders = new DecoderSet(context.getApplicationContext(), source, mScheduler.getWorkerCount(TaskScheduler.QUEUE_CPU) + 1);
+        decoders.release(decoders.acquire());   //opens the first decoder and reads the image size
+        synchronized (mDecoders) {
+            DecoderSet existing = mDecoders.get(key);
+            if (existing != null) {
+                decoders.close();
+                return existing;
+            }
+            mDecoders.put(key, decoders);
+            Iterator<Map.Entry<String, DecoderSet>> iterator = mDecoders.entrySet().iterator();
+            while (mDecoders.size() > MAX_CACHED_SOURCES && iterator.hasNext()) {
+                iterator.next().getValue().close();
+                iterator.remove();
+            }
+        }
+        return decoders;
+    }
+
+    /**
+     * Largest power of two downsample which still keeps the region at least as large as the output
+     */
+    private static int calculateSampleSize(int width, int height, int outWidth, int outHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= outWidth && height / (sampleSize * 2) >= outHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns whether the source is a file path rather than a uri
+     */
+    private static boolean isFilePath(String source) {
+        return source.startsWith("/");
+    }
+
+    /**
+     * Returns size and last modified time of the source
+     */
+    private static long[] getSourceStats(Context context, String source) {
+        if (isFilePath(source)) {
+            File file = new File(source);
+            return new long[]{file.length(), file.lastModified()};
+        }
+        return ImageUtil.GetSourceStats(context, Uri.parse(source));
+    }
+
+    /**
+     * Returns the exif orientation of the source, -1 if unknown
+     */
+    private static int getSourceOrientation(Context context, String source) {
+        try {
+            if (isFilePath(source)) return ImageUtil.GetImageOrientation(new File(source));
+            return ImageUtil.GetImageOrientation(context, Uri.parse(source));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Post the result to the main thread
+     */
+    private void postResult(final OnImageSelectedListener listener, final boolean status, final String message, final int errorCode) {
+        if (!status) PluginLog.e("Region decode error {}: {}", errorCode, message);
+        if (listener == null) return;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onImageSelected(status, message, errorCode);
+            }
+        });
+    }
+    //endregion
+
+    /**
+     * Tiles of one region decode, shared by the calling thread and the helpers.
+     * Each thread takes the next tile index until none is left, with its own decoder since a decoder decodes one region at a time.
+     */
+    private static class TileJob implements Runnable {
+
+        // region Declarations
+        private final DecoderSet mDecoders;
+        private final Rect mCrop;
+        private final Bitmap mOutput;
+        private final Canvas mCanvas;
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private final float mScaleX;
+        private final float mScaleY;
+        private final int mSampleSize;
+        private final int mSourceTileSize;
+        private final int mColumns;
+        private final int mTileCount;
+        private final AtomicInteger mNextTile = new AtomicInteger(0);
+        private final AtomicReference<IOException> mError = new AtomicReference<>();
+        //endregion
+
+        private TileJob(DecoderSet decoders, Rect crop, Bitmap output, int sampleSize, int sourceTileSize, int columns, int tileCount) {
+            this.mDecoders = decoders;
+            this.mCrop = crop;
+            this.mOutput = output;
+            this.mCanvas = new Canvas(output);
+            this.mScaleX = (float) output.getWidth() / crop.width();
+            this.mScaleY = (float) output.getHeight() / crop.height();
+            this.mSampleSize = sampleSize;
+            this.mSourceTileSize = sourceTileSize;
+            this.mColumns = columns;
+            this.mTileCount = tileCount;
+        }
+
+        @Override
+        public void run() {
+            BitmapRegionDecoder decoder = null;
+            try {
+                decoder = mDecoders.acquire();
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = mSampleSize;
+                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+                Rect tile = new Rect();
+                Rect source = new Rect();
+                Rect destination = new Rect();
+                int index;
+                while (mError.get() == null && (index = mNextTile.getAndIncrement()) < mTileCount) {
+                    int left = mCrop.left + (index % mColumns) * mSourceTileSize;
+                    int top = mCrop.top + (index / mColumns) * mSourceTileSize;
+                    tile.set(left, top, Math.min(left + mSourceTileSize, mCrop.right), Math.min(top + mSourceTileSize, mCrop.bottom));
+
+                    Bitmap bitmap = decodeTile(decoder, tile, options);
+                    source.set(0, 0, Math.min(bitmap.getWidth(), (tile.width() + mSampleSize - 1) / mSampleSize),
+                            Math.min(bitmap.getHeight(), (tile.height() + mSampleSize - 1) / mSampleSize));
+                    //edges are rounded the same way for neighbouring tiles, so there are no seams
+                    destination.set(Math.round((tile.left - mCrop.left) * mScaleX), Math.round((tile.top - mCrop.top) * mScaleY),
+                            Math.round((tile.right - mCrop.left) * mScaleX), Math.round((tile.bottom - mCrop.top) * mScaleY));
+                    synchronized (mOutput) {
+                        mCanvas.drawBitmap(bitmap, source, destination, mPaint);
+                    }
+                    BitmapPool.getInstance().put(bitmap);
+                }
+            } catch (IOException e) {
+                mError.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                mError.compareAndSet(null, new IOException(e.toString()));
+            } finally {
+                mDecoders.release(decoder);
+            }
+        }
+
+        /**
+         * Decode a tile into a pooled bitmap if one fits
+         */
+        private Bitmap decodeTile(BitmapRegionDecoder decoder, Rect tile, BitmapFactory.Options options) throws IOException {
+            int width = (tile.width() + mSampleSize - 1) / mSampleSize;
+            int height = (tile.height() + mSampleSize - 1) / mSampleSize;
+            options.inBitmap = BitmapPool.getInstance().getDirty(width, height, Bitmap.Config.ARGB_8888);
+            options.inMutable = true;
+            if (options.inBitmap != null) {
+                //the region decoder keeps the size of inBitmap, so it has to match the tile
+                try {
+                    options.inBitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                } catch (IllegalArgumentException e) {
+                    BitmapPool.getInstance().put(options.inBitmap);
+                    options.inBitmap = null;
+                }
+            }
+            Bitmap bitmap;
+            try {
+                bitmap = decoder.decodeRegion(tile, options);
+            } catch (IllegalArgumentException e) {
+                //pooled bitmap can't be reused for this tile
+                BitmapPool.getInstance().put(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = decoder.decodeRegion(tile, options);
+            }
+            options.inBitmap = null;
+            if (bitmap == null) throw new IOException("Failed to decode region " + tile.toShortString());
+            return bitmap;
+        }
+    }
+
+    /**
+     * Open decoders of one source, a decoder decodes one region at a time so each tile thread uses its own
+     */
+    private static class DecoderSet {
+
+        // region Declarations
+        private final Context mContext;
+        private final String mSource;
+        private final int mMaxIdle;
+        private final ArrayDeque<BitmapRegionDecoder> mIdle = new ArrayDeque<>();
+        private final Map<BitmapRegionDecoder, ParcelFileDescriptor> mDescriptors = new LinkedHashMap<>();
+        private boolean mClosed;
+        private int mWidth;
+        private int mHeight;
+        //endregion
+
+        private DecoderSet(Context context, String source, int maxIdle) {
+            this.mContext = context;
+            this.mSource = source;
+            this.mMaxIdle = maxIdle;
+        }
+
+        /**
+         * Returns an idle decoder or opens a new one
+         */
+        private BitmapRegionDecoder acquire() throws IOException {
+            synchronized (this) {
+                BitmapRegionDecoder decoder = mIdle.pollFirst();
+                if (decoder != null) return decoder;
+            }
+
+            BitmapRegionDecoder decoder;
+            ParcelFileDescriptor descriptor = null;
+            if (isFilePath(mSource)) {
+                decoder = BitmapRegionDecoder.newInstance(mSource, false);
+            } else {
+                descriptor = mContext.getContentResolver().openFileDescriptor(Uri.parse(mSource), "r");
+                if (descriptor == null) throw new IOException("Unable to open " + mSource);
+                try {
+                    decoder = BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+                } catch (IOException e) {
+                    descriptor.close();
+                    throw e;
+                }
+            }
+            if (decoder == null) throw new IOException("Unsupported image " + mSource);
+
+            synchronized (this) {
+                mWidth = decoder.getWidth();
+                mHeight = decoder.getHeight();
+                if (descriptor != null) mDescriptors.put(decoder, descriptor);
+            }
+            return decoder;
+        }
+
+        /**
+         * Return the decoder for reuse, extra decoders and decoders of a closed set are closed
+         */
+        private void release(BitmapRegionDecoder decoder) {
+            if (decoder == null) return;
+            synchronized (this) {
+                if (!mClosed && mIdle.size() < mMaxIdle) {
+                    mIdle.addLast(decoder);
+                    return;
+                }
+            }
+            closeDecoder(decoder);
+        }
+
+        /**
+         * Close the idle decoders, decoders in use are closed when released
+         */
+        private void close() {
+            ArrayDeque<BitmapRegionDecoder> idle;
+            synchronized (this) {
+                mClosed = true;
+                idle = new ArrayDeque<>(mIdle);
+                mIdle.clear();
+            }
+            for (BitmapRegionDecoder decoder : idle) {
+                closeDecoder(decoder);
+            }
+        }
+
+        private void closeDecoder(BitmapRegionDecoder decoder) {
+            decoder.recycle();
+            ParcelFileDescriptor descriptor;
+            synchronized (this) {
+                descriptor = mDescriptors.remove(decoder);
+            }
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException e) {
+                    PluginLog.w("ImageRegionDecoder close error: {}", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.graphics.Bitmap;
+
+import com.onedevapp.nativeplugin.BinaryPayload;
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ImageResult holds the details of a processed image, written either as a {@link BinaryPayload} or as the image json.
+ * Fields of version 1, in order:
+ * width (i32), height (i32), orientation (i32), rotation (i32), mirrored (u8), flags (u8: 1 cached, 2 passthrough, 4 preview, 8 memory),
+ * format (u8: 0 jpeg, 1 png, 2 webp), reserved (u8), quality (i32, 0 when unknown), fileSize (i64), transferId (i32), transferSize (i32),
+ * uri, path, cacheFilePath and captureDate (strings),
+ * then when flagged the memory plan: sampleSize (i32), tiled (u8), rotated (u8), lowRamDevice (u8), reserved (u8), estimatedBytes (i64),
+ * budgetBytes (i64), config (string),
+ * then the rendition count (i32) and each rendition as its length (i32), width (i32), height (i32), format (u8), quality (i32),
+ * fileSize (i64), cacheFilePath (string), orientation (i32), rotation (i32) and mirrored (u8).
+ */
+public class ImageResult extends BinaryPayload {
+
+    // region Declarations
+    public static final int FLAG_CACHED = 1;
+    public static final int FLAG_PASSTHROUGH = 2;
+    public static final int FLAG_PREVIEW = 4;
+    private static final int FLAG_MEMORY = 8;
+
+    private int mWidth;
+    private int mHeight;
+    private int mOrientation;
+    private int mFlags;
+    private Bitmap.CompressFormat mCompressFormat = Bitmap.CompressFormat.JPEG;
+    private int mQuality;
+    private long mFileSize;
+    private int mTransferId;
+    private int mTransferSize;
+    private String mUri;
+    private String mPath;
+    private String mCacheFilePath;
+    private String mCaptureDate;
+    private MemoryGovernor.DecodePlan mPlan;
+    private List<RenditionResult> mRenditions;
+    //endregion
+
+    // region Setters, filled by the processor
+
+    void setSize(int width, int height) {
+        this.mWidth = width;
+        this.mHeight = height;
+    }
+
+    void setOrientation(int orientation) {
+        this.mOrientation = orientation;
+    }
+
+    void addFlags(int flags) {
+        this.mFlags |= flags;
+    }
+
+    void setCompressFormat(Bitmap.CompressFormat compressFormat) {
+        this.mCompressFormat = compressFormat;
+    }
+
+    void setQuality(int quality) {
+        this.mQuality = quality;
+    }
+
+    void setFile(String cacheFilePath, long fileSize) {
+        this.mCacheFilePath = cacheFilePath;
+        this.mFileSize = fileSize;
+    }
+
+    void setSource(String uri, String path) {
+        this.mUri = uri;
+        this.mPath = path;
+    }
+
+    void setTransfer(int transferId, int transferSize) {
+        this.mTransferId = transferId;
+        this.mTransferSize = transferSize;
+    }
+
+    void setCaptureDate(String captureDate) {
+        this.mCaptureDate = captureDate;
+    }
+
+    void setMemoryPlan(MemoryGovernor.DecodePlan plan) {
+        this.mPlan = plan;
+    }
+
+    void setRenditions(List<RenditionResult> renditions) {
+        this.mRenditions = renditions;
+    }
+    //endregion
+
+    // region Getters
+
+    /**
+     * Width of the image
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Height of the image
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Exif orientation of the pixels, 0 when upright
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * Whether the flag is set, one of FLAG_CACHED, FLAG_PASSTHROUGH or FLAG_PREVIEW
+     */
+    public boolean hasFlag(int flag) {
+        return (mFlags & flag) != 0;
+    }
+
+    /**
+     * Bitmap.CompressFormat of the image
+     */
+    public Bitmap.CompressFormat getCompressFormat() {
+        return mCompressFormat;
+    }
+
+    /**
+     * Quality the image was encoded with, 0 when unknown
+     */
+    public int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * Size of the cache file in bytes
+     */
+    public long getFileSize() {
+        return mFileSize;
+    }
+
+    /**
+     * Id of the chunked transfer of the bytes, 0 when there is none
+     */
+    public int getTransferId() {
+        return mTransferId;
+    }
+
+    /**
+     * Uri of the image, null when it has none
+     */
+    public String getUri() {
+        return mUri;
+    }
+
+    /**
+     * Path of the image, null when it has none
+     */
+    public String getPath() {
+        return mPath;
+    }
+
+    /**
+     * Path of the cache file
+     */
+    public String getCacheFilePath() {
+        return mCacheFilePath;
+    }
+
+    /**
+     * Renditions in request order, empty when none were requested
+     */
+    public List<RenditionResult> getRenditions() {
+        return (mRenditions != null) ? mRenditions : new ArrayList<RenditionResult>(0);
+    }
+    //endregion
+
+    // region BinaryPayload
+
+    @Override
+    public int getKind() {
+        return KIND_IMAGE;
+    }
+
+    /**
+     * The image json, as posted to listeners which don't take results
+     */
+    @Override
+    public String toText() {
+        try {
+            return toJson().toString();
+        } catch (JSONException e) {
+            return "";
+        }
+    }
+
+    @Override
+    protected void writeFields(ByteBuffer buffer) {
+        buffer.putInt(mWidth);
+        buffer.putInt(mHeight);
+        buffer.putInt(mOrientation);
+        buffer.putInt(ImageGeometry.getDisplayRotationDegrees(mOrientation));
+        putBoolean(buffer, ImageGeometry.isMirrored(mOrientation));
+        buffer.put((byte) (mFlags | (mPlan != null ? FLAG_MEMORY : 0)));
+        buffer.put((byte) getFormatIndex(mCompressFormat));
+        buffer.put((byte) 0);
+        buffer.putInt(mQuality);
+        buffer.putLong(mFileSize);
+        buffer.putInt(mTransferId);
+        buffer.putInt(mTransferSize);
+        putString(buffer, mUri);
+        putString(buffer, mPath);
+        putString(buffer, mCacheFilePath);
+        putString(buffer, mCaptureDate);
+
+        if (mPlan != null) {
+            buffer.putInt(mPlan.getSampleSize());
+            putBoolean(buffer, mPlan.isTiled());
+            putBoolean(buffer, mPlan.isRotated());
+            putBoolean(buffer, mPlan.isLowRamDevice());
+            buffer.put((byte) 0);
+            buffer.putLong(mPlan.getEstimatedBytes());
+            buffer.putLong(mPlan.getBudgetBytes());
+            putString(buffer, mPlan.getConfig().name());
+        }
+
+        int count = (mRenditions != null) ? mRenditions.size() : 0;
+        buffer.putInt(count);
+        for (int i = 0; i < count; i++) {
+            RenditionResult rendition = mRenditions.get(i);
+            int start = buffer.position();
+            buffer.putInt(0);
+            buffer.putInt(rendition.mWidth);
+            buffer.putInt(rendition.mHeight);
+            buffer.put((byte) getFormatIndex(rendition.mCompressFormat));
+            buffer.putInt(rendition.mQuality);
+            buffer.putLong(rendition.mFileSize);
+            putString(buffer, rendition.mCacheFilePath);
+            buffer.putInt(rendition.mOrientation);
+            buffer.putInt(ImageGeometry.getDisplayRotationDegrees(rendition.mOrientation));
+            putBoolean(buffer, ImageGeometry.isMirrored(rendition.mOrientation));
+            buffer.putInt(start, buffer.position() - start);
+        }
+    }
+    //endregion
+
+    /**
+     * Details as the image json
+     *
+     * @return json object of the image
+     * @throws JSONException JSONException when a value can't be written
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject jso = new JSONObject();
+        jso.put("width", mWidth);
+        jso.put("height", mHeight);
+        jso.put("mimeType", ImageUtil.getMimeType(mCompressFormat));
+        jso.put("orientation", mOrientation);
+        jso.put("rotation", ImageGeometry.getDisplayRotationDegrees(mOrientation));
+        jso.put("mirrored", ImageGeometry.isMirrored(mOrientation));
+        if (mUri != null) jso.put("uri", mUri);
+        if (mPath != null) jso.put("path", mPath);
+        jso.put("cacheFilePath", mCacheFilePath);
+        jso.put("fileSize", mFileSize);
+        if (mTransferId > 0) {
+            jso.put("transferId", mTransferId);
+            jso.put("transferSize", mTransferSize);
+        }
+        if (mQuality > 0) jso.put("quality", mQuality);
+        if (mCaptureDate != null) jso.put("captureDate", mCaptureDate);
+        if (hasFlag(FLAG_CACHED)) jso.put("cached", true);
+        if (hasFlag(FLAG_PASSTHROUGH)) jso.put("passthrough", true);
+        if (hasFlag(FLAG_PREVIEW)) jso.put("preview", true);
+        if (mPlan != null) jso.put("memory", mPlan.toJson());
+        if (mRenditions != null) {
+            JSONArray renditions = new JSONArray();
+            for (RenditionResult rendition : mRenditions) {
+                renditions.put(rendition.toJson());
+            }
+            jso.put("renditions", renditions);
+        }
+        return jso;
+    }
+
+    /**
+     * Index of the format as used by Unity's ImageFormat, 0 for JPEG, 1 for PNG, 2 for WEBP
+     */
+    private static int getFormatIndex(Bitmap.CompressFormat compressFormat) {
+        if (compressFormat == Bitmap.CompressFormat.JPEG) return 0;
+        if (compressFormat == Bitmap.CompressFormat.PNG) return 1;
+        return 2;
+    }
+
+    /**
+     * Details of one rendition of the image
+     */
+    public static class RenditionResult {
+
+        private final int mWidth;
+        private final int mHeight;
+        private final int mOrientation;
+        private final Bitmap.CompressFormat mCompressFormat;
+        private final int mQuality;
+        private final long mFileSize;
+        private final String mCacheFilePath;
+
+        RenditionResult(int width, int height, int orientation, Bitmap.CompressFormat compressFormat, int quality, long fileSize,
+                        String cacheFilePath) {
+            this.mWidth = width;
+            this.mHeight = height;
+            this.mOrientation = orientation;
+            this.mCompressFormat = compressFormat;
+            this.mQuality = quality;
+            this.mFileSize = fileSize;
+            this.mCacheFilePath = cacheFilePath;
+        }
+
+        /**
+         * Width of the rendition
+         */
+        public int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * Height of the rendition
+         */
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * Exif orientation of the stored pixels of the rendition, 0 when upright
+         */
+        public int getOrientation() {
+            return mOrientation;
+        }
+
+        /**
+         * Path of the cache file of the rendition
+         */
+        public String getCacheFilePath() {
+            return mCacheFilePath;
+        }
+
+        private JSONObject toJson() throws JSONException {
+            JSONObject jso = new JSONObject();
+            jso.put("width", mWidth);
+            jso.put("height", mHeight);
+            jso.put("mimeType", ImageUtil.getMimeType(mCompressFormat));
+            jso.put("orientation", mOrientation);
+            jso.put("rotation", ImageGeometry.getDisplayRotationDegrees(mOrientation));
+            jso.put("mirrored", ImageGeometry.isMirrored(mOrientation));
+            jso.put("cacheFilePath", mCacheFilePath);
+            jso.put("fileSize", mFileSize);
+            if (mQuality > 0) jso.put("quality", mQuality);
+            return jso;
+        }
+    }
+}
@@ -1,29 +1,45 @@
 package com.onedevapp.nativeplugin.imagepicker;
 
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
 import android.graphics.ImageDecoder;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.media.ExifInterface;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
+import android.provider.OpenableColumns;
 import android.text.TextUtils;
 
 import androidx.annotation.Nullable;
 import androidx.core.content.FileProvider;
 
-import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+import com.onedevapp.nativeplugin.imagecore.ImagePipeline;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.Callable;
 
 /**
  * Helper functions used in Image Compression by AndroidWave
@@ -34,9 +50,7 @@ import java.util.Date;
  */
 public class ImageUtil {
 
-    private static final String CHILD_DIR = "OneCache";
     private static final String FILE_NAME = "JPEG_";
-    private static final String TEMP_FILE_NAME = "img";
     private static final String FILE_EXTENSION = ".jpg";
     public static final String IMAGE_FILE_DATE_FORMAT = "yyyyMMddHHmmss";
 
@@ -67,7 +81,9 @@ public class ImageUtil {
         try {
             fileOutputStream = new FileOutputStream(destinationPath);
             // write the compressed bitmap at the destination specified by destinationPath.
-            decodeSampledBitmapFromFile(imageFile, reqWidth, reqHeight).compress(compressFormat, quality, fileOutputStream);
+            Bitmap bitmap = decodeSampledBitmapFromFile(imageFile, reqWidth, reqHeight);
+            bitmap.compress(compressFormat, quality, fileOutputStream);
+            BitmapPool.getInstance().put(bitmap);
         } finally {
             if (fileOutputStream != null) {
                 fileOutputStream.flush();
@@ -82,7 +98,8 @@ public class ImageUtil {
     /**
      * Create file with current timestamp name
      *
-     * @param context current Context
+     * @param context    current Context
+     * @param isTempFile true to capture into the cache, the file is deleted once processed
      * @return New Image file
      * @throws IOException If a file could not be created
      */
@@ -90,37 +107,240 @@ public class ImageUtil {
         // Create an image file name
         String timeStamp = new SimpleDateFormat(IMAGE_FILE_DATE_FORMAT).format(new Date());
         String mFileName = FILE_NAME+ "_" + timeStamp;
-        File storageDir = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
         if (isTempFile)
-            return File.createTempFile(mFileName, FILE_EXTENSION, storageDir);
-        else
-            // Return the file target for the photo based on filename
-            return new File(storageDir.getPath() + File.separator + mFileName);
+            return File.createTempFile(mFileName, FILE_EXTENSION, ImageDiskCache.getCaptureDir(context));
+
+        // Return the file target for the photo based on filename
+        File storageDir = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+        return new File(storageDir.getPath() + File.separator + mFileName);
     }
 
     /**
-     * Save image to the App cache
+     * Save image to the App cache, as an entry of the {@link ImageDiskCache} pinned until released
      *
      * @param bitmap to save to the cache
      * @return file dir when file was saved
      */
     public static File saveImgToCache(Context context, Bitmap bitmap) {
-        File cacheFile = null;
-        String timeStamp = new SimpleDateFormat(IMAGE_FILE_DATE_FORMAT).format(new Date());
-        String fileName = TEMP_FILE_NAME+ "_" + timeStamp;
+        ImageDiskCache diskCache = ImageDiskCache.getInstance(context);
+        //a bitmap has no source to look it up by, the key only has to be unique
+        String key = ImageDiskCache.buildKey(String.valueOf(bitmap), System.nanoTime(), bitmap.getByteCount(), "png");
+        File tempFile = diskCache.newTempFile(key);
+        try {
+            writeBitmap(bitmap, Bitmap.CompressFormat.PNG, COMPRESS_QUALITY, tempFile);
+            File cacheFile = diskCache.commit(key, tempFile, getFileExtension(Bitmap.CompressFormat.PNG),
+                    bitmap.getWidth(), bitmap.getHeight()).getFile();
+            tempFile = null;
+            return cacheFile;
+        } catch (IOException e) {
+            PluginLog.w("saveImgToCache error: {}::{}", bitmap, e);
+            return null;
+        } finally {
+            diskCache.abort(tempFile);
+        }
+    }
+
+    /**
+     * Copy an already open source to the destination
+     *
+     * @param inputStream seekable source stream, left open
+     * @param destination file to write
+     * @throws IOException IOException when file cant be read or written
+     */
+    static void copyImg(FileInputStream inputStream, File destination) throws IOException {
+        rewind(inputStream);
+        transferTo(inputStream.getChannel(), destination);
+    }
 
+    /**
+     * Open the image for seekable reading, so the header and the pixels can be read from one open
+     *
+     * @param context   current Context
+     * @param photoFile image file, null when the uri is used
+     * @param photoUri  image uri
+     * @return the stream, or null when the provider doesn't hand out a seekable file
+     * @throws IOException if the file can't be opened
+     */
+    static FileInputStream openSourceStream(Context context, File photoFile, Uri photoUri) throws IOException {
+        if (photoFile != null) return new FileInputStream(photoFile);
+        return openSourceStream(context, photoUri);
+    }
+
+    /**
+     * Open the image uri for seekable reading
+     *
+     * @param context  current Context
+     * @param photoUri image uri
+     * @return the stream, or null when the provider doesn't hand out a seekable file
+     */
+    static FileInputStream openSourceStream(Context context, Uri photoUri) {
+        ParcelFileDescriptor fileDescriptor;
         try {
-            cacheFile = new File(context.getCacheDir(), CHILD_DIR );
-            cacheFile.mkdirs();
+            fileDescriptor = context.getContentResolver().openFileDescriptor(photoUri, "r");
+        } catch (FileNotFoundException e) {
+            PluginLog.d("openSourceStream no file descriptor: {}", e);
+            return null;
+        }
+        if (fileDescriptor == null) return null;
+
+        FileInputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(fileDescriptor);
+        try {
+            //pipes can't be rewound
+            rewind(inputStream);
+            return inputStream;
+        } catch (IOException e) {
+            try {
+                inputStream.close();
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Move the stream back to the start of the image
+     */
+    static void rewind(FileInputStream inputStream) throws IOException {
+        inputStream.getChannel().position(0);
+    }
+
+    /**
+     * Copy an image URI as it is
+     */
+    static void copyImg(Context context, Uri imageUri, File destination) throws IOException {
+        ParcelFileDescriptor fileDescriptor = null;
+        try {
+            fileDescriptor = context.getContentResolver().openFileDescriptor(imageUri, "r");
+        } catch (FileNotFoundException e) {
+            PluginLog.d("copyImg no file descriptor: {}", e);
+        }
+
+        if (fileDescriptor != null) {
+            // kernel to kernel copy when the provider hands out a real file
+            FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+            try {
+                transferTo(inputStream.getChannel(), destination);
+            } finally {
+                inputStream.close();
+                fileDescriptor.close();
+            }
+        } else {
+            InputStream inputStream = openInputStream(context.getContentResolver(), imageUri);
+            try {
+                copyStream(inputStream, destination);
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+    /**
+     * Copy the stream to its end into the file
+     *
+     * @return bytes copied
+     */
+    private static long copyStream(InputStream inputStream, File destination) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(destination);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            long copied = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                copied += read;
+            }
+            return copied;
+        } finally {
+            outputStream.close();
+        }
+    }
 
-            FileOutputStream stream = new FileOutputStream(cacheFile + File.separator + fileName + FILE_EXTENSION );
-            bitmap.compress(Bitmap.CompressFormat.PNG, COMPRESS_QUALITY, stream);
+    /**
+     * Encode the bitmap to the file
+     */
+    static void writeBitmap(Bitmap bitmap, Bitmap.CompressFormat compressFormat, int quality, File file) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            bitmap.compress(compressFormat, quality, stream);
+        } finally {
             stream.close();
+        }
+    }
+
+    /**
+     * Copy the whole channel to the file, kernel to kernel when its size is known.
+     * Pipes handed out by content providers report no size, they are read to their end instead
+     *
+     * @throws IOException IOException when nothing or less than the size was copied
+     */
+    private static void transferTo(FileChannel source, File destination) throws IOException {
+        long size;
+        try {
+            size = source.size();
         } catch (IOException e) {
-            Constants.WriteLog("saveImgToCache error: " + bitmap + "::" + e.toString());
+            size = 0;
+        }
+
+        long position = 0;
+        if (size > 0) {
+            FileOutputStream outputStream = new FileOutputStream(destination);
+            try {
+                FileChannel target = outputStream.getChannel();
+                while (position < size) {
+                    long transferred = source.transferTo(position, size - position, target);
+                    if (transferred <= 0) break;
+                    position += transferred;
+                }
+            } finally {
+                outputStream.close();
+            }
+            if (position < size) throw new IOException("Copied " + position + " of " + size + " bytes");
+        } else {
+            position = copyStream(Channels.newInputStream(source), destination);
+            if (position == 0) throw new IOException("Source is empty");
         }
-        //return cacheFile;
-        return new File(cacheFile.getPath() + File.separator + fileName + FILE_EXTENSION );
+    }
+
+    /**
+     * Returns the file extension of the format
+     *
+     * @param compressFormat Bitmap.CompressFormat
+     * @return extension with dot
+     */
+    public static String getFileExtension(Bitmap.CompressFormat compressFormat) {
+        if (compressFormat == Bitmap.CompressFormat.JPEG) return ".jpg";
+        if (compressFormat == Bitmap.CompressFormat.PNG) return ".png";
+        return ".webp";
+    }
+
+    /**
+     * Returns the WebP format, lossy as the legacy format encodes below quality 100
+     *
+     * @return Bitmap.CompressFormat.WEBP_LOSSY from Android 11, else Bitmap.CompressFormat.WEBP
+     */
+    public static Bitmap.CompressFormat getWebpFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) return Bitmap.CompressFormat.WEBP_LOSSY;
+        return getLegacyWebpFormat();
+    }
+
+    /**
+     * Returns the WebP format of Android 10 and below, lossless at quality 100
+     */
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getLegacyWebpFormat() {
+        return Bitmap.CompressFormat.WEBP;
+    }
+
+    /**
+     * Returns the mime type of the format
+     *
+     * @param compressFormat Bitmap.CompressFormat
+     * @return mime type
+     */
+    public static String getMimeType(Bitmap.CompressFormat compressFormat) {
+        if (compressFormat == Bitmap.CompressFormat.JPEG) return "image/jpeg";
+        if (compressFormat == Bitmap.CompressFormat.PNG) return "image/png";
+        return "image/webp";
     }
 
     /**
@@ -156,7 +376,7 @@ public class ImageUtil {
                 return FileProvider.getUriForFile(context, context.getApplicationContext().getPackageName() + ".native_plugin-file-provider", file);
 
             } catch (Exception e) {
-                Constants.WriteLog("getUriFromFile error: " + e.toString());
+                PluginLog.w("getUriFromFile error: {}", e);
                 return null;
             }
         } else {
@@ -185,11 +405,149 @@ public class ImageUtil {
                 image = MediaStore.Images.Media.getBitmap(context.getContentResolver(), photoUri);
             }
         } catch (IOException e) {
-            Constants.WriteLog("loadFromUri error: " + e.toString());
+            PluginLog.w("loadFromUri error: {}", e);
         }
         return image;
     }
 
+    /**
+     * Decodes image URI to a bitmap which fits within the requested size.
+     * The source is streamed and downscaled while decoding, so memory scales with the output size rather than the source size.
+     *
+     * @param context   current Context
+     * @param photoUri  file URI
+     * @param reqWidth  max width of the decoded image
+     * @param reqHeight max height of the decoded image
+     * @return Bitmap of file URI
+     * @throws IOException IOException when file cant be opened or decoded
+     */
+    static Bitmap decodeSampledBitmapFromUri(Context context, Uri photoUri, final int reqWidth, final int reqHeight) throws IOException {
+        return decodeSampledBitmapFromUri(context, photoUri, reqWidth, reqHeight, Bitmap.Config.ARGB_8888, 1);
+    }
+
+    /**
+     * Converts image URI to a bitmap which fits the requested size, with the config and min sample size planned by the {@link MemoryGovernor}
+     *
+     * @param context       current Context
+     * @param photoUri      file URI
+     * @param reqWidth      max width of the decoded image
+     * @param reqHeight     max height of the decoded image
+     * @param config        config of the decoded image
+     * @param minSampleSize sample size applied at least, a larger one makes the image smaller than requested
+     * @return Bitmap of file URI
+     * @throws IOException IOException when file cant be opened or decoded
+     */
+    static Bitmap decodeSampledBitmapFromUri(Context context, Uri photoUri, final int reqWidth, final int reqHeight,
+                                             final Bitmap.Config config, final int minSampleSize) throws IOException {
+        final ContentResolver contentResolver = context.getContentResolver();
+        Bitmap bitmap;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            bitmap = decodeWithImageDecoder(ImageDecoder.createSource(contentResolver, photoUri), reqWidth, reqHeight, config, minSampleSize);
+        } else {
+            // First decode with inJustDecodeBounds=true to check dimensions
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            InputStream inputStream = openInputStream(contentResolver, photoUri);
+            try {
+                BitmapFactory.decodeStream(inputStream, null, options);
+            } finally {
+                inputStream.close();
+            }
+
+            // Decode bitmap with inSampleSize set, from a seekable stream when the provider hands one out so the pool can be used
+            options.inSampleSize = Math.max(minSampleSize, calculateInSampleSize(options, reqWidth, reqHeight));
+            options.inPreferredConfig = config;
+            options.inJustDecodeBounds = false;
+            inputStream = openSourceStream(context, photoUri);
+            if (inputStream == null) inputStream = openInputStream(contentResolver, photoUri);
+            try {
+                bitmap = decodeStreamWithPool(inputStream, options);
+            } finally {
+                inputStream.close();
+            }
+            if (bitmap == null)
+                throw new IOException("Unable to decode image: " + photoUri);
+
+            //inSampleSize only reduces by power of two, scale the rest to fit
+            int[] targetSize = calculateTargetSize(bitmap.getWidth(), bitmap.getHeight(), reqWidth, reqHeight);
+            if (targetSize[0] != bitmap.getWidth() || targetSize[1] != bitmap.getHeight()) {
+                Bitmap scaledBitmap = resizeBitmap(bitmap, targetSize[0], targetSize[1]);
+                BitmapPool.getInstance().put(bitmap);
+                bitmap = scaledBitmap;
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decode an already open source upright with ImageDecoder, from Android 10 only.
+     * The decoder reads a duplicate of the stream's descriptor, so the source is not opened again
+     *
+     * @param inputStream   seekable source stream, left open
+     * @param reqWidth      max width of the decoded image
+     * @param reqHeight     max height of the decoded image
+     * @param config        config of the decoded image
+     * @param minSampleSize sample size applied at least
+     * @return upright bitmap which fits reqWidth x reqHeight
+     * @throws IOException IOException when the source cant be decoded
+     */
+    static Bitmap decodeWithImageDecoder(FileInputStream inputStream, int reqWidth, int reqHeight,
+                                         Bitmap.Config config, int minSampleSize) throws IOException {
+        rewind(inputStream);
+        //the duplicate shares the position of the stream and is closed by the decoder
+        final ParcelFileDescriptor descriptor = ParcelFileDescriptor.dup(inputStream.getFD());
+        ImageDecoder.Source decoderSource = ImageDecoder.createSource(new Callable<AssetFileDescriptor>() {
+            @Override
+            public AssetFileDescriptor call() {
+                return new AssetFileDescriptor(descriptor, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+            }
+        });
+        return decodeWithImageDecoder(decoderSource, reqWidth, reqHeight, config, minSampleSize);
+    }
+
+    /**
+     * ImageDecoder reads the header first, so the target size is applied by the decoder itself
+     */
+    private static Bitmap decodeWithImageDecoder(ImageDecoder.Source source, final int reqWidth, final int reqHeight,
+                                                 final Bitmap.Config config, final int minSampleSize) throws IOException {
+        return ImageDecoder.decodeBitmap(source, new ImageDecoder.OnHeaderDecodedListener() {
+            @Override
+            public void onHeaderDecoded(ImageDecoder decoder, ImageDecoder.ImageInfo info, ImageDecoder.Source source) {
+                int[] targetSize = calculateTargetSize(info.getSize().getWidth() / minSampleSize, info.getSize().getHeight() / minSampleSize, reqWidth, reqHeight);
+                decoder.setTargetSize(targetSize[0], targetSize[1]);
+                //Software bitmaps can be encoded and read back without a GPU copy
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+                //opaque images are decoded to RGB_565 under this policy
+                if (config == Bitmap.Config.RGB_565)
+                    decoder.setMemorySizePolicy(ImageDecoder.MEMORY_POLICY_LOW_RAM);
+            }
+        });
+    }
+
+    /**
+     * Open an input stream for the URI
+     */
+    private static InputStream openInputStream(ContentResolver contentResolver, Uri photoUri) throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(photoUri);
+        if (inputStream == null)
+            throw new FileNotFoundException("Unable to open image: " + photoUri);
+        return inputStream;
+    }
+
+    /**
+     * calculate the largest size that fits within the requested size keeping the aspect ratio, never upscales
+     *
+     * @param width     actual width of the image
+     * @param height    actual height of the image
+     * @param reqWidth  max width
+     * @param reqHeight max height
+     * @return target width and height
+     */
+    private static int[] calculateTargetSize(int width, int height, int reqWidth, int reqHeight) {
+        return ImageGeometry.calculateTargetSize(width, height, reqWidth, reqHeight);
+    }
+
     /**
      * Get Image Orientation
      *
@@ -203,6 +561,78 @@ public class ImageUtil {
         return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
     }
 
+    /**
+     * Get the size and last modified time of the uri, used to tell apart versions of the same source
+     *
+     * @param context  current Context
+     * @param imageUri image uri
+     * @return size and last modified time, 0 when unknown
+     */
+    public static long[] GetSourceStats(Context context, Uri imageUri) {
+        long[] stats = new long[2];
+        if (ContentResolver.SCHEME_FILE.equals(imageUri.getScheme()) && imageUri.getPath() != null) {
+            File file = new File(imageUri.getPath());
+            stats[0] = file.length();
+            stats[1] = file.lastModified();
+            return stats;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(imageUri, null, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+                int modifiedIndex = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+                if (sizeIndex >= 0 && !cursor.isNull(sizeIndex)) stats[0] = cursor.getLong(sizeIndex);
+                if (modifiedIndex >= 0 && !cursor.isNull(modifiedIndex)) stats[1] = cursor.getLong(modifiedIndex);
+            }
+        } catch (Exception e) {
+            PluginLog.w("GetSourceStats error: {}", e);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return stats;
+    }
+
+    /**
+     * Get Image Orientation from uri
+     *
+     * @param context  current Context
+     * @param imageUri image uri to read orientation
+     * @return orientation, -1 when it can't be read on this device
+     * @throws IOException IOException when uri cant read
+     */
+    public static int GetImageOrientation(Context context, Uri imageUri) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return -1;
+
+        InputStream inputStream = openInputStream(context.getContentResolver(), imageUri);
+        try {
+            return new ExifInterface(inputStream).getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Get Image Metadata from uri
+     *
+     * @param context  current Context
+     * @param imageUri image uri to read Metadata
+     * @return Metadata
+     * @throws IOException IOException when uri cant read
+     */
+    public static BitmapFactory.Options GetImageMetadata(Context context, Uri imageUri) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream inputStream = openInputStream(context.getContentResolver(), imageUri);
+        try {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
+        }
+        return options;
+    }
+
     /**
      * Get Image Metadata from file
      *
@@ -227,30 +657,87 @@ public class ImageUtil {
      * @throws IOException IOException when file cant create or read
      */
     static Bitmap decodeSampledBitmapFromFile(File imageFile, int reqWidth, int reqHeight) throws IOException {
-        // First decode with inJustDecodeBounds=true to check dimensions
-        BitmapFactory.Options options = GetImageMetadata(imageFile);
-
-        // Calculate inSampleSize
-        options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
-
-        // Decode bitmap with inSampleSize set
-        options.inJustDecodeBounds = false;
+        FileInputStream inputStream = new FileInputStream(imageFile);
+        try {
+            return decodeSampledBitmap(inputStream, ImageMetadata.read(inputStream, imageFile), reqWidth, reqHeight);
+        } finally {
+            inputStream.close();
+        }
+    }
 
-        Bitmap scaledBitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
+    /**
+     * Decode an already open source with the metadata read from it, so the header is not parsed again.
+     * The bitmap is sampled while decoding, then rotated upright and scaled to fit in a single draw
+     *
+     * @param inputStream seekable source stream, left open
+     * @param metadata    metadata of the source
+     * @param reqWidth    width to compress image
+     * @param reqHeight   height to compress image
+     * @return upright bitmap which fits reqWidth x reqHeight
+     * @throws IOException if the image can't be decoded
+     */
+    static Bitmap decodeSampledBitmap(FileInputStream inputStream, ImageMetadata metadata, int reqWidth, int reqHeight) throws IOException {
+        rewind(inputStream);
+        return ImagePipeline.decodeToFit(BitmapCodec.INSTANCE, inputStream, metadata.getWidth(), metadata.getHeight(),
+                metadata.getOrientation(), reqWidth, reqHeight);
+    }
 
-        //check the rotation of the image and display it properly
+    /**
+     * Decode an already open source with the config and sample size planned by the {@link MemoryGovernor}
+     *
+     * @param inputStream seekable source stream, left open
+     * @param metadata    metadata of the source
+     * @param reqWidth    width to compress image
+     * @param reqHeight   height to compress image
+     * @param plan        sampled decode plan
+     * @return bitmap which fits reqWidth x reqHeight once upright, in the stored orientation when the plan doesn't rotate
+     * @throws IOException if the image can't be decoded
+     */
+    static Bitmap decodeSampledBitmap(FileInputStream inputStream, ImageMetadata metadata, int reqWidth, int reqHeight,
+                                      MemoryGovernor.DecodePlan plan) throws IOException {
+        rewind(inputStream);
+        if (!plan.isRotated())
+            return ImagePipeline.decodeStoredToFit(BitmapCodec.forConfig(plan.getConfig()), inputStream, metadata.getWidth(), metadata.getHeight(),
+                    metadata.getOrientation(), reqWidth, reqHeight, plan.getSampleSize());
+        return ImagePipeline.decodeToFit(BitmapCodec.forConfig(plan.getConfig()), inputStream, metadata.getWidth(), metadata.getHeight(),
+                metadata.getOrientation(), reqWidth, reqHeight, plan.getSampleSize());
+    }
 
-        int orientation = GetImageOrientation(imageFile);
-        Matrix matrix = new Matrix();
-        if (orientation == 6) {
-            matrix.postRotate(90);
-        } else if (orientation == 3) {
-            matrix.postRotate(180);
-        } else if (orientation == 8) {
-            matrix.postRotate(270);
+    /**
+     * Decode the whole source by tiles straight to the fitted size, then rotate it upright unless asked not to.
+     * Only the fitted bitmap and a tile per thread are held, instead of a sampled bitmap up to 4 times larger
+     *
+     * @param context   current Context
+     * @param source    file path or content uri of the image
+     * @param metadata  metadata of the source
+     * @param reqWidth  width to compress image
+     * @param reqHeight height to compress image
+     * @param config    config of the result
+     * @param rotate    false to keep the stored orientation
+     * @return bitmap which fits reqWidth x reqHeight once upright
+     * @throws IOException if the image can't be decoded
+     */
+    static Bitmap decodeTiledBitmap(Context context, String source, ImageMetadata metadata, int reqWidth, int reqHeight,
+                                    Bitmap.Config config, boolean rotate) throws IOException {
+        int degrees = rotate ? ImageGeometry.getRotationDegrees(metadata.getOrientation()) : 0;
+        boolean swapped = ImageGeometry.isSwapped(rotate ? degrees : ImageGeometry.getDisplayRotationDegrees(metadata.getOrientation()));
+        int[] targetSize = ImageGeometry.calculateTargetSize(metadata.getWidth(), metadata.getHeight(),
+                swapped ? reqHeight : reqWidth, swapped ? reqWidth : reqHeight);
+
+        ImageRegionDecoder regionDecoder = ImageRegionDecoder.getInstance();
+        Bitmap bitmap;
+        try {
+            bitmap = regionDecoder.decodeRegion(context, source, new Rect(0, 0, metadata.getWidth(), metadata.getHeight()),
+                    targetSize[0], targetSize[1], config);
+        } finally {
+            //a picked source is decoded once, don't keep it open
+            regionDecoder.close(source);
         }
-        scaledBitmap = Bitmap.createBitmap(scaledBitmap, 0, 0, scaledBitmap.getWidth(), scaledBitmap.getHeight(), matrix, true);
-        return scaledBitmap;
+        if (degrees == 0) return bitmap;
+
+        Bitmap upright = BitmapCodec.INSTANCE.transform(bitmap, degrees, swapped ? targetSize[1] : targetSize[0], swapped ? targetSize[0] : targetSize[1]);
+        BitmapPool.getInstance().put(bitmap);
+        return upright;
     }
 
 
@@ -263,13 +750,141 @@ public class ImageUtil {
      * @return compressed bitmap
      */
     static Bitmap decodeSampledBitmapFromBitmap(Bitmap mBitmap, int reqWidth, int reqHeight) {
-        float scale = Math.min(((float) reqHeight / mBitmap.getWidth()), ((float) reqWidth / mBitmap.getHeight()));
+        float scale = ImageGeometry.calculateBitmapScale(mBitmap.getWidth(), mBitmap.getHeight(), reqWidth, reqHeight);
+        return scaleBitmap(mBitmap, scale);
+    }
+
+    /**
+     * Scale the bitmap by the factor into a pooled bitmap
+     *
+     * @param mBitmap image bitmap to scale, left untouched
+     * @param scale   scale factor
+     * @return scaled bitmap
+     */
+    static Bitmap scaleBitmap(Bitmap mBitmap, float scale) {
+        return resizeBitmap(mBitmap, Math.max(1, Math.round(mBitmap.getWidth() * scale)), Math.max(1, Math.round(mBitmap.getHeight() * scale)));
+    }
+
+    /**
+     * Fit the bitmap in the requested size, it is never enlarged
+     *
+     * @param mBitmap   image bitmap to fit, left untouched
+     * @param reqWidth  max width of the result
+     * @param reqHeight max height of the result
+     * @return the bitmap itself when it already fits, else a resized pooled bitmap
+     */
+    static Bitmap fitBitmap(Bitmap mBitmap, int reqWidth, int reqHeight) {
+        int[] targetSize = ImageGeometry.calculateTargetSize(mBitmap.getWidth(), mBitmap.getHeight(), reqWidth, reqHeight);
+        if (targetSize[0] == mBitmap.getWidth() && targetSize[1] == mBitmap.getHeight()) return mBitmap;
+        return resizeBitmap(mBitmap, targetSize[0], targetSize[1]);
+    }
+
+    /**
+     * Resize the bitmap to exactly the given size into a pooled bitmap,
+     * downscales go through the area filter of {@link BitmapResampler}, anything else is drawn bilinearly
+     *
+     * @param mBitmap image bitmap to resize, left untouched
+     * @param width   width of the result
+     * @param height  height of the result
+     * @return resized bitmap
+     */
+    static Bitmap resizeBitmap(Bitmap mBitmap, int width, int height) {
+        if (BitmapResampler.canResample(mBitmap, width, height))
+            return BitmapResampler.resample(mBitmap, width, height);
 
         Matrix matrix = new Matrix();
-        matrix.postScale(scale, scale);
+        matrix.setScale((float) width / mBitmap.getWidth(), (float) height / mBitmap.getHeight());
+        return drawToPooledBitmap(mBitmap, matrix, width, height);
+    }
 
-        //Bitmap scaledBitmap = Bitmap.createScaledBitmap(mBitmap, reqWidth, reqHeight, true);
-        return Bitmap.createBitmap(mBitmap, 0, 0, mBitmap.getWidth(), mBitmap.getHeight(), matrix, true);
+    /**
+     * Decode a stream into a pooled bitmap when one fits, falls back to a new allocation.
+     * A rejected pooled bitmap needs the image read again, so only a seekable file stream is decoded into the pool,
+     * it is rewound instead of buffering the whole compressed image
+     *
+     * @param inputStream stream positioned at the start of the image
+     * @param options     BitmapFactory.Options with the size already read and inSampleSize set
+     * @return decoded bitmap or null
+     */
+    static Bitmap decodeStreamWithPool(InputStream inputStream, BitmapFactory.Options options) throws IOException {
+        BitmapPool pool = BitmapPool.getInstance();
+        int sampleSize = Math.max(1, options.inSampleSize);
+        //decoders round the sampled size up, so ask for the larger one
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+
+        long start = getStreamPosition(inputStream);
+        if (start < 0)
+            return BitmapFactory.decodeStream(inputStream, null, options);
+
+        options.inMutable = true;
+        options.inBitmap = pool.getDirty(width, height, options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888);
+        if (options.inBitmap == null)
+            return BitmapFactory.decodeStream(inputStream, null, options);
+
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } catch (IllegalArgumentException e) {
+            PluginLog.w("decodeStreamWithPool inBitmap rejected: {}", e);
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            ((FileInputStream) inputStream).getChannel().position(start);
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        }
+    }
+
+    /**
+     * Returns the position of a seekable file stream, -1 for any other stream
+     */
+    private static long getStreamPosition(InputStream inputStream) {
+        if (!(inputStream instanceof FileInputStream)) return -1;
+        try {
+            return ((FileInputStream) inputStream).getChannel().position();
+        } catch (IOException e) {
+            //pipes have no position
+            return -1;
+        }
+    }
+
+    /**
+     * Convert premultiplied RGBA bytes to straight alpha in place, as Unity's RGBA32 expects
+     *
+     * @param buffer pixels copied from an ARGB_8888 bitmap, positioned at the first pixel
+     * @param width  width in pixels
+     * @param height height in rows
+     * @param stride bytes per row
+     */
+    static void unpremultiply(ByteBuffer buffer, int width, int height, int stride) {
+        int start = buffer.position();
+        for (int y = 0; y < height; y++) {
+            int offset = start + y * stride;
+            for (int end = offset + width * 4; offset < end; offset += 4) {
+                int alpha = buffer.get(offset + 3) & 0xFF;
+                if (alpha == 0xFF || alpha == 0) continue;
+                for (int channel = offset; channel < offset + 3; channel++) {
+                    //rounded, a premultiplied channel is never above its alpha
+                    int value = ((buffer.get(channel) & 0xFF) * 0xFF + alpha / 2) / alpha;
+                    buffer.put(channel, (byte) Math.min(0xFF, value));
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw the bitmap with the given matrix into a pooled bitmap of the given size
+     *
+     * @param source source bitmap, left untouched
+     * @param matrix transformation from source to target
+     * @param width  width of the target
+     * @param height height of the target
+     * @return the target bitmap
+     */
+    static Bitmap drawToPooledBitmap(Bitmap source, Matrix matrix, int width, int height) {
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap target = BitmapPool.getInstance().get(width, height, config);
+        Canvas canvas = new Canvas(target);
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return target;
     }
 
     /**
@@ -281,23 +896,6 @@ public class ImageUtil {
      * @return SampleSize in int
      */
     private static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        // Raw height and width of image
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-
-        if (height > reqHeight || width > reqWidth) {
-
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-
-            // Calculate the largest inSampleSize value that is a power of 2 and keeps both
-            // height and width larger than the requested height and width.
-            while ((halfHeight / inSampleSize) >= reqHeight && (halfWidth / inSampleSize) >= reqWidth) {
-                inSampleSize *= 2;
-            }
-        }
-
-        return inSampleSize;
+        return ImageGeometry.calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
     }
 }
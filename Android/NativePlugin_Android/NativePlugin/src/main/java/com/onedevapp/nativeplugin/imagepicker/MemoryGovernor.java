@@ -0,0 +1,294 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.imagecore.ImageGeometry;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * MemoryGovernor plans every decode of the picker against a memory budget, so it doesn't run out of heap next to Unity.
+ * The budget is a share of the app's memory class (capped by Runtime.maxMemory) and of the heap free at the time of the decode.
+ * A plan steps down, in order, to RGB_565 for opaque sources, to tiled decoding, then to larger sample sizes until its
+ * estimated peak fits. From Android O bitmap pixels live outside the java heap, so the budget is a conservative proxy there.
+ */
+public class MemoryGovernor {
+
+    // region Declarations
+    private static final float DEFAULT_BUDGET_SHARE = 0.25f;
+    private static final float LOW_RAM_BUDGET_SHARE = 0.15f;
+    private static final float FREE_HEAP_SHARE = 0.5f;  //at most this share of the free heap, the rest is left to the app
+    private static final int TILE_BYTES = 512 * 512 * 4;    //tile decoded by each region decoder thread
+    private static final int MIN_SAMPLED_SIDE = 64; //sample size is not raised past this side
+
+    private static MemoryGovernor instance;
+
+    private final long mMemoryClassBytes;
+    private final boolean mLowRamDevice;
+    private volatile float mBudgetShare;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared governor
+     *
+     * @param context current Context
+     * @return the {@link MemoryGovernor} instance
+     */
+    public static synchronized MemoryGovernor getInstance(Context context) {
+        if (instance == null) {
+            instance = new MemoryGovernor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    //Private constructor reading the device memory class
+    private MemoryGovernor(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        //largeHeap apps get the large memory class, maxMemory tells which one applies
+        long memoryClass = activityManager.getMemoryClass() * 1024L * 1024L;
+        long largeMemoryClass = activityManager.getLargeMemoryClass() * 1024L * 1024L;
+        mMemoryClassBytes = Runtime.getRuntime().maxMemory() > memoryClass ? largeMemoryClass : memoryClass;
+        mLowRamDevice = activityManager.isLowRamDevice();
+        mBudgetShare = mLowRamDevice ? LOW_RAM_BUDGET_SHARE : DEFAULT_BUDGET_SHARE;
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Set the share of the app's memory a single decode may use
+     *
+     * @param share share from 0.05 to 1, 0.25 by default and 0.15 on low RAM devices
+     */
+    public void setBudgetShare(float share) {
+        this.mBudgetShare = Math.max(0.05f, Math.min(1f, share));
+    }
+
+    /**
+     * Returns whether the device reports itself as low RAM
+     */
+    public boolean isLowRamDevice() {
+        return mLowRamDevice;
+    }
+
+    /**
+     * Bytes a decode may use right now: the budget share of the memory class, capped by the free heap
+     */
+    public long getBudgetBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        long maxMemory = runtime.maxMemory();
+        long freeHeap = maxMemory - (runtime.totalMemory() - runtime.freeMemory());
+        long budget = (long) (Math.min(mMemoryClassBytes, maxMemory) * mBudgetShare);
+        return Math.max(0, Math.min(budget, (long) (freeHeap * FREE_HEAP_SHARE)));
+    }
+
+    /**
+     * Plan the decode of a source to fit reqWidth x reqHeight
+     *
+     * @param metadata   metadata of the source
+     * @param reqWidth   max width of the result
+     * @param reqHeight  max height of the result
+     * @param allowRgb565 false when the result must keep 32 bit pixels, e.g. for raw pixels
+     * @param canTile    true if the source can be decoded by regions
+     * @param rotate     false when the result keeps the stored orientation, see {@link ImageCompressor#setLazyOrientation(boolean)}
+     * @return the plan
+     */
+    public DecodePlan plan(ImageMetadata metadata, int reqWidth, int reqHeight, boolean allowRgb565, boolean canTile, boolean rotate) {
+        int width = metadata.getWidth();
+        int height = metadata.getHeight();
+        int degrees = rotate ? ImageGeometry.getRotationDegrees(metadata.getOrientation()) : 0;
+        boolean swapped = ImageGeometry.isSwapped(rotate ? degrees : ImageGeometry.getDisplayRotationDegrees(metadata.getOrientation()));
+        //size decisions are made against the stored orientation
+        int storedReqWidth = swapped ? reqHeight : reqWidth;
+        int storedReqHeight = swapped ? reqWidth : reqHeight;
+
+        long budget = getBudgetBytes();
+        boolean opaque = allowRgb565 && isOpaque(metadata.getMimeType());
+        Bitmap.Config config = (opaque && mLowRamDevice) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        int sampleSize = ImageGeometry.calculateInSampleSize(width, height, storedReqWidth, storedReqHeight);
+
+        long estimate = estimateDecode(width, height, storedReqWidth, storedReqHeight, sampleSize, degrees, config);
+        if (estimate > budget && opaque && config != Bitmap.Config.RGB_565) {
+            config = Bitmap.Config.RGB_565;
+            estimate = estimateDecode(width, height, storedReqWidth, storedReqHeight, sampleSize, degrees, config);
+        }
+        if (estimate > budget && canTile && isTileable(metadata.getMimeType())) {
+            long tiledEstimate = estimateTiled(width, height, storedReqWidth, storedReqHeight, degrees, config);
+            if (tiledEstimate <= budget) {
+                return log(new DecodePlan(config, 0, true, rotate, tiledEstimate, budget, mLowRamDevice));
+            }
+        }
+        //the result will be smaller than requested, better than running out of memory
+        while (estimate > budget && Math.min(width, height) / (sampleSize * 2) >= MIN_SAMPLED_SIDE) {
+            sampleSize *= 2;
+            estimate = estimateDecode(width, height, storedReqWidth, storedReqHeight, sampleSize, degrees, config);
+        }
+        return log(new DecodePlan(config, sampleSize, false, rotate, estimate, budget, mLowRamDevice));
+    }
+    //endregion
+
+    // region private functions
+
+    /**
+     * Peak of a sampled decode: the sampled bitmap, the resampler buffers and the fitted bitmap, plus a copy to rotate if any
+     */
+    private static long estimateDecode(int width, int height, int reqWidth, int reqHeight, int sampleSize, int degrees, Bitmap.Config config) {
+        long sampledWidth = (width + sampleSize - 1) / sampleSize;
+        long sampledHeight = (height + sampleSize - 1) / sampleSize;
+        int[] target = ImageGeometry.calculateTargetSize((int) sampledWidth, (int) sampledHeight, reqWidth, reqHeight);
+        long sampledPixels = sampledWidth * sampledHeight;
+        long targetPixels = (long) target[0] * target[1];
+        int bytesPerPixel = getBytesPerPixel(config);
+
+        long peak = (sampledPixels + targetPixels) * bytesPerPixel;
+        if (targetPixels < sampledPixels) peak += (sampledPixels + targetPixels) * 4;   //int pixels of the resampler
+        if (degrees != 0) peak += targetPixels * bytesPerPixel;
+        return peak;
+    }
+
+    /**
+     * Peak of a tiled decode: the fitted bitmap and a tile per decoder thread, plus a copy to rotate
+     */
+    private static long estimateTiled(int width, int height, int reqWidth, int reqHeight, int degrees, Bitmap.Config config) {
+        int[] target = ImageGeometry.calculateTargetSize(width, height, reqWidth, reqHeight);
+        long targetBytes = (long) target[0] * target[1] * getBytesPerPixel(config);
+        long peak = targetBytes + (long) Runtime.getRuntime().availableProcessors() * TILE_BYTES;
+        if (degrees != 0) peak += targetBytes;
+        return peak;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 ? 2 : 4;
+    }
+
+    /**
+     * Only JPEG is known to have no alpha before decoding
+     */
+    private static boolean isOpaque(String mimeType) {
+        return "image/jpeg".equals(mimeType);
+    }
+
+    /**
+     * Formats supported by BitmapRegionDecoder
+     */
+    private static boolean isTileable(String mimeType) {
+        return "image/jpeg".equals(mimeType) || "image/png".equals(mimeType) || "image/webp".equals(mimeType);
+    }
+
+    private static DecodePlan log(DecodePlan plan) {
+        PluginLog.d("MemoryGovernor plan: {}", plan);
+        return plan;
+    }
+    //endregion
+
+    /**
+     * Decisions of the governor for one decode
+     */
+    public static class DecodePlan {
+
+        private final Bitmap.Config mConfig;
+        private final int mSampleSize;
+        private final boolean mTiled;
+        private final boolean mRotate;
+        private final long mEstimatedBytes;
+        private final long mBudgetBytes;
+        private final boolean mLowRamDevice;
+
+        private DecodePlan(Bitmap.Config config, int sampleSize, boolean tiled, boolean rotate, long estimatedBytes, long budgetBytes,
+                           boolean lowRamDevice) {
+            this.mConfig = config;
+            this.mSampleSize = sampleSize;
+            this.mTiled = tiled;
+            this.mRotate = rotate;
+            this.mEstimatedBytes = estimatedBytes;
+            this.mBudgetBytes = budgetBytes;
+            this.mLowRamDevice = lowRamDevice;
+        }
+
+        /**
+         * Bitmap config to decode into
+         */
+        public Bitmap.Config getConfig() {
+            return mConfig;
+        }
+
+        /**
+         * Sample size of a sampled decode, 0 when tiled
+         */
+        public int getSampleSize() {
+            return mSampleSize;
+        }
+
+        /**
+         * Whether the source is decoded by regions straight to the fitted size
+         */
+        public boolean isTiled() {
+            return mTiled;
+        }
+
+        /**
+         * Whether the pixels are rotated upright, false when the stored orientation is kept
+         */
+        public boolean isRotated() {
+            return mRotate;
+        }
+
+        /**
+         * Whether the estimated peak fits in the budget
+         */
+        public boolean fitsBudget() {
+            return mEstimatedBytes <= mBudgetBytes;
+        }
+
+        /**
+         * Estimated peak of the decode in bytes
+         */
+        public long getEstimatedBytes() {
+            return mEstimatedBytes;
+        }
+
+        /**
+         * Budget the decode was planned against in bytes
+         */
+        public long getBudgetBytes() {
+            return mBudgetBytes;
+        }
+
+        /**
+         * Whether the device reports itself as low on RAM
+         */
+        public boolean isLowRamDevice() {
+            return mLowRamDevice;
+        }
+
+        /**
+         * Decisions as reported in the result metadata
+         *
+         * @return json object of the plan
+         * @throws JSONException JSONException when a value can't be written
+         */
+        public JSONObject toJson() throws JSONException {
+            JSONObject jso = new JSONObject();
+            jso.put("config", mConfig.name());
+            jso.put("sampleSize", mSampleSize);
+            jso.put("tiled", mTiled);
+            jso.put("rotated", mRotate);
+            jso.put("estimatedBytes", mEstimatedBytes);
+            jso.put("budgetBytes", mBudgetBytes);
+            jso.put("lowRamDevice", mLowRamDevice);
+            return jso;
+        }
+
+        @Override
+        public String toString() {
+            return mConfig.name() + " sample " + mSampleSize + (mTiled ? " tiled" : "") + (mRotate ? "" : " stored orientation")
+                    + " estimate " + mEstimatedBytes + "/" + mBudgetBytes;
+        }
+    }
+}
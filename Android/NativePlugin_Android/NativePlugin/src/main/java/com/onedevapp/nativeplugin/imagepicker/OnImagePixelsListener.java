@@ -0,0 +1,22 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback method when an image has been selected or captured with the raw pixels result mode.
+ */
+public interface OnImagePixelsListener {
+
+    /**
+     * Raw pixels of the image selected
+     * The buffer is a direct buffer holding RGBA32 pixels, rows top to bottom, and must be released with
+     * ImagePickerManager.releasePixelBuffer once uploaded.
+     *
+     * @param buffer  direct buffer with the pixels
+     * @param width   width of the image in pixels
+     * @param height  height of the image in pixels
+     * @param stride  bytes per row
+     * @param message image details json
+     */
+    void onImagePixels(ByteBuffer buffer, int width, int height, int stride, String message);
+}
@@ -0,0 +1,16 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+/**
+ * Optional callback method for a small preview of the image.
+ * When the image listener implements it, the preview arrives before {@link OnImageSelectedListener#onImageSelected(boolean, String, int)}
+ * once a preview size is set.
+ */
+public interface OnImagePreviewListener {
+
+    /**
+     * Small preview of the image, delivered before onImageSelected when a preview size is set.
+     * It is skipped when the final image is ready first, e.g. from the cache
+     * @param message preview details json, cacheFilePath points to a small JPEG
+     */
+    void onImagePreview(String message);
+}
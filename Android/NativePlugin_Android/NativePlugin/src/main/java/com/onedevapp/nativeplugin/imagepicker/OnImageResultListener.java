@@ -0,0 +1,29 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+/**
+ * Optional callback methods taking the processed image as an {@link ImageResult} instead of its json.
+ * When the image listener implements it, successful results skip the json and errors still arrive as messages
+ * on {@link OnImageSelectedListener} or {@link OnImagesSelectedListener}.
+ */
+public interface OnImageResultListener {
+
+    /**
+     * Details of the image selected
+     * @param result details of the image
+     */
+    void onImageResult(ImageResult result);
+
+    /**
+     * Small preview of the image, see {@link OnImagePreviewListener#onImagePreview(String)}
+     * @param result details of the preview
+     */
+    void onImagePreviewResult(ImageResult result);
+
+    /**
+     * Details of one image of a multiple selection, see {@link OnImagesSelectedListener#onImageItemSelected(int, int, boolean, String, int)}
+     * @param index index of the image in the selection
+     * @param total number of images selected
+     * @param result details of the image
+     */
+    void onImageItemResult(int index, int total, ImageResult result);
+}
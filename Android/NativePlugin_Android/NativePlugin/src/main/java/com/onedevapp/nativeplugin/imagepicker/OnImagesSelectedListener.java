@@ -0,0 +1,24 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+/**
+ * Callback methods when multiple images have been selected from gallery.
+ */
+public interface OnImagesSelectedListener {
+
+    /**
+     * Details of one selected image, invoked as soon as that image is processed, so not necessarily in selection order
+     * @param index index of the image in the selection
+     * @param total number of images selected
+     * @param status boolean whether processing the image is success or failure
+     * @param message if status is true then message will be image details json else error details
+     * @param errorCode type of an error
+     */
+    void onImageItemSelected(int index, int total, boolean status, String message, int errorCode);
+
+    /**
+     * Invoked once after every image of the selection has been reported
+     * @param total number of images selected
+     * @param failed number of images which failed
+     */
+    void onImagesCompleted(int total, int failed);
+}
@@ -0,0 +1,102 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * PixelBufferPool hands out direct ByteBuffers which hold raw RGBA pixels for Unity.
+ * Buffers are returned with {@link #release(ByteBuffer)} once Unity has uploaded them, and reused for later picks.
+ */
+public class PixelBufferPool {
+
+    // region Declarations
+    private static final int MAX_SIZE_MULTIPLE = 2;   //a pooled buffer is reused only when it is at most this many times larger than needed
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    private static PixelBufferPool instance;
+
+    private final TreeMap<Integer, ArrayDeque<ByteBuffer>> mBuffers = new TreeMap<>();  //keyed by capacity
+    private final long mMaxBytes;
+    private long mCurrentBytes;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Returns the shared pool
+     *
+     * @return the {@link PixelBufferPool} instance
+     */
+    public static synchronized PixelBufferPool getInstance() {
+        if (instance == null) {
+            instance = new PixelBufferPool(DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    //Private constructor with the byte cap
+    private PixelBufferPool(long maxBytes) {
+        this.mMaxBytes = maxBytes;
+    }
+    //endregion
+
+    // region Public functions
+
+    /**
+     * Returns a direct buffer in native order with position 0 and limit set to the requested size
+     *
+     * @param size bytes required
+     * @return the buffer
+     */
+    public synchronized ByteBuffer acquire(int size) {
+        Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry = mBuffers.ceilingEntry(size);
+        if (entry != null && entry.getKey() <= (long) size * MAX_SIZE_MULTIPLE) {
+            ByteBuffer buffer = entry.getValue().pollFirst();
+            if (entry.getValue().isEmpty()) mBuffers.remove(entry.getKey());
+            if (buffer != null) {
+                mCurrentBytes -= buffer.capacity();
+                buffer.clear();
+                buffer.limit(size);
+                return buffer;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    /**
+     * Release the buffer to the pool, it must not be read afterwards
+     *
+     * @param buffer buffer returned by {@link #acquire(int)}
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() > mMaxBytes) return;
+
+        ArrayDeque<ByteBuffer> buffers = mBuffers.get(buffer.capacity());
+        if (buffers == null) {
+            buffers = new ArrayDeque<>();
+            mBuffers.put(buffer.capacity(), buffers);
+        }
+        for (ByteBuffer pooled : buffers) {
+            if (pooled == buffer) return;
+        }
+        buffers.addLast(buffer);
+        mCurrentBytes += buffer.capacity();
+
+        //drop the smallest buffers first, large ones are the expensive ones to allocate
+        Iterator<Map.Entry<Integer, ArrayDeque<ByteBuffer>>> iterator = mBuffers.entrySet().iterator();
+        while (mCurrentBytes > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<Integer, ArrayDeque<ByteBuffer>> entry = iterator.next();
+            while (mCurrentBytes > mMaxBytes && !entry.getValue().isEmpty()) {
+                mCurrentBytes -= entry.getValue().pollFirst().capacity();
+            }
+            if (entry.getValue().isEmpty()) iterator.remove();
+        }
+    }
+    //endregion
+}
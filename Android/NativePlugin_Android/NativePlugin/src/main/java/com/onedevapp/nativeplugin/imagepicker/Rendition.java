@@ -0,0 +1,82 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.graphics.Bitmap;
+
+/**
+ * An extra output of a processed image, with its own max size, format and quality.
+ * Renditions are derived from the single decode of the source, see {@link ImageCompressor#addRendition(Rendition)}
+ */
+public class Rendition {
+
+    // region Declarations
+    private final int mMaxWidth;
+    private final int mMaxHeight;
+    private final Bitmap.CompressFormat mCompressFormat;
+    private final int mQuality;
+    private final long mMaxFileSize;
+    //endregion
+
+    //region Constructor
+
+    /**
+     * Creates a rendition
+     *
+     * @param maxWidth       max width of the output
+     * @param maxHeight      max height of the output
+     * @param compressFormat Bitmap.CompressFormat of the output
+     * @param quality        compression quality
+     * @param maxFileSize    max size of the output in bytes, 0 to use the fixed quality
+     */
+    public Rendition(int maxWidth, int maxHeight, Bitmap.CompressFormat compressFormat, int quality, long maxFileSize) {
+        if (maxWidth <= 0 || maxHeight <= 0)
+            throw new IllegalArgumentException("Invalid rendition size " + maxWidth + "x" + maxHeight);
+        this.mMaxWidth = maxWidth;
+        this.mMaxHeight = maxHeight;
+        this.mCompressFormat = compressFormat;
+        this.mQuality = quality;
+        this.mMaxFileSize = Math.max(0, maxFileSize);
+    }
+    //endregion
+
+    /**
+     * Max width of the output
+     */
+    public int getMaxWidth() {
+        return mMaxWidth;
+    }
+
+    /**
+     * Max height of the output
+     */
+    public int getMaxHeight() {
+        return mMaxHeight;
+    }
+
+    /**
+     * Bitmap.CompressFormat of the output
+     */
+    public Bitmap.CompressFormat getCompressFormat() {
+        return mCompressFormat;
+    }
+
+    /**
+     * Compression quality
+     */
+    public int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * Max size of the output in bytes, 0 when the fixed quality is used
+     */
+    public long getMaxFileSize() {
+        return mMaxFileSize;
+    }
+
+    /**
+     * Parameters which change the output, part of the disk cache key
+     */
+    String getCacheKeyParams() {
+        return mMaxWidth + "x" + mMaxHeight + "|" + mCompressFormat.name() + "|" + mQuality + (mMaxFileSize > 0 ? "|" + mMaxFileSize : "");
+    }
+}
@@ -0,0 +1,188 @@
+package com.onedevapp.nativeplugin.imagepicker;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * TargetSizeEncoder encodes a bitmap so that the output fits a max byte size.
+ * Quality is binary searched first (JPEG and WebP), then the bitmap is scaled down when even the lowest quality is too large.
+ * Every pass encodes into a reused in-memory buffer, and only the chosen pass is written to disk.
+ */
+final class TargetSizeEncoder {
+
+    // region Declarations
+    private static final int MIN_QUALITY = 10;  //lowest quality searched before scaling down
+    private static final int MAX_SCALE_STEPS = 3;   //scale downs allowed after the quality search fails
+    private static final float SCALE_MARGIN = 0.9f; //encoded size doesn't shrink exactly with the pixel count
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+    //one buffer per worker thread, kept between picks
+    private static final ThreadLocal<EncodeBuffer> sBuffers = new ThreadLocal<EncodeBuffer>() {
+        @Override
+        protected EncodeBuffer initialValue() {
+            return new EncodeBuffer(INITIAL_BUFFER_SIZE);
+        }
+    };
+    //endregion
+
+    private TargetSizeEncoder() {
+
+    }
+
+    /**
+     * Encode the bitmap into the file with the highest quality, up to maxQuality, which fits maxBytes.
+     * Uses at most 1 + log2(maxQuality - MIN_QUALITY) encode passes per size tried.
+     *
+     * @param bitmap         bitmap to encode, left untouched
+     * @param compressFormat Bitmap.CompressFormat, quality is searched for JPEG and WebP only
+     * @param maxQuality     quality used when it already fits
+     * @param maxBytes       max size of the output in bytes
+     * @param file           destination file
+     * @return details of the written image, it may still exceed maxBytes when no tried size fits
+     * @throws IOException if the file can't be written
+     */
+    static Result encode(Bitmap bitmap, Bitmap.CompressFormat compressFormat, int maxQuality, long maxBytes, File file) throws IOException {
+        EncodeBuffer buffer = sBuffers.get();
+        boolean searchQuality = compressFormat != Bitmap.CompressFormat.PNG && !isLosslessWebp(compressFormat);
+        int minQuality = searchQuality ? Math.min(MIN_QUALITY, maxQuality) : maxQuality;
+
+        Bitmap current = bitmap;
+        try {
+            for (int step = 0; ; step++) {
+                int quality;
+                if (searchQuality) {
+                    quality = findQuality(current, compressFormat, minQuality, maxQuality, maxBytes, buffer);
+                } else {
+                    quality = encode(current, compressFormat, maxQuality, buffer) <= maxBytes ? maxQuality : -1;
+                }
+                if (quality < 0) {
+                    //nothing fits at this size, scale down from the size of the smallest pass
+                    quality = minQuality;
+                    encode(current, compressFormat, quality, buffer);
+                    if (step >= MAX_SCALE_STEPS) break;
+
+                    float scale = (float) Math.sqrt((double) maxBytes / buffer.size()) * SCALE_MARGIN;
+                    Bitmap scaled = ImageUtil.scaleBitmap(current, Math.min(scale, SCALE_MARGIN));
+                    if (current != bitmap) BitmapPool.getInstance().put(current);
+                    current = scaled;
+                    continue;
+                }
+                return write(current, quality, buffer, file);
+            }
+            return write(current, minQuality, buffer, file);
+        } finally {
+            if (current != bitmap) BitmapPool.getInstance().put(current);
+            buffer.trim();
+        }
+    }
+
+    /**
+     * Binary search the highest quality which fits, the buffer is left holding the encoding of the returned quality
+     *
+     * @return the quality, or -1 when even minQuality doesn't fit
+     */
+    private static int findQuality(Bitmap bitmap, Bitmap.CompressFormat compressFormat, int minQuality, int maxQuality, long maxBytes, EncodeBuffer buffer) {
+        if (encode(bitmap, compressFormat, maxQuality, buffer) <= maxBytes) return maxQuality;
+
+        int low = minQuality;
+        int high = maxQuality - 1;
+        int best = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (encode(bitmap, compressFormat, mid, buffer) <= maxBytes) {
+                best = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        //the last pass may not be the chosen one
+        if (best >= 0 && buffer.mQuality != best) encode(bitmap, compressFormat, best, buffer);
+        return best;
+    }
+
+    /**
+     * Lossless WebP ignores the quality for the size, like PNG
+     */
+    private static boolean isLosslessWebp(Bitmap.CompressFormat compressFormat) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && compressFormat == Bitmap.CompressFormat.WEBP_LOSSLESS;
+    }
+
+    /**
+     * Encode into the buffer, skipped when the buffer already holds this pass
+     *
+     * @return encoded size in bytes
+     */
+    private static int encode(Bitmap bitmap, Bitmap.CompressFormat compressFormat, int quality, EncodeBuffer buffer) {
+        if (buffer.mBitmap == bitmap && buffer.mQuality == quality) return buffer.size();
+        buffer.reset();
+        bitmap.compress(compressFormat, quality, buffer);
+        buffer.mBitmap = bitmap;
+        buffer.mQuality = quality;
+        return buffer.size();
+    }
+
+    /**
+     * Write the buffer, which holds the chosen pass, to the file
+     */
+    private static Result write(Bitmap bitmap, int quality, EncodeBuffer buffer, File file) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            buffer.writeTo(stream);
+        } finally {
+            stream.close();
+        }
+        return new Result(bitmap.getWidth(), bitmap.getHeight(), quality, buffer.size());
+    }
+
+    /**
+     * Details of the written image
+     */
+    static class Result {
+        final int width;
+        final int height;
+        final int quality;
+        final long size;
+
+        Result(int width, int height, int quality, long size) {
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Byte array stream which remembers the pass it holds and keeps its array between encodes
+     */
+    private static class EncodeBuffer extends ByteArrayOutputStream {
+        private static final int MAX_RETAINED_SIZE = 8 * 1024 * 1024;   //larger arrays are dropped after use
+
+        private Bitmap mBitmap;
+        private int mQuality = -1;
+
+        private EncodeBuffer(int size) {
+            super(size);
+        }
+
+        @Override
+        public synchronized void reset() {
+            super.reset();
+            mBitmap = null;
+            mQuality = -1;
+        }
+
+        /**
+         * Forget the last pass and drop an oversized array
+         */
+        private void trim() {
+            reset();
+            if (buf.length > MAX_RETAINED_SIZE) buf = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+}
@@ -10,8 +10,10 @@ import com.google.android.play.core.install.InstallStateUpdatedListener;
 import com.google.android.play.core.install.model.AppUpdateType;
 import com.google.android.play.core.install.model.InstallStatus;
 import com.google.android.play.core.install.model.UpdateAvailability;
+import com.google.android.play.core.tasks.OnFailureListener;
 import com.google.android.play.core.tasks.OnSuccessListener;
 import com.google.android.play.core.tasks.Task;
+import com.onedevapp.nativeplugin.PluginLog;
 
 /**
  * PlayStoreUpdate is responsible for updating app playstore.
@@ -90,6 +92,7 @@ public class PlayStoreUpdate extends BaseUpdateClass {
             @Override
             public void onSuccess(AppUpdateInfo appUpdateInfo) {
 
+                mUpdateManager.reportCheckCompleted(true);
                 mAppUpdateInfo = appUpdateInfo;
 
                 if (mOnUpdateListener != null) {
@@ -112,6 +115,13 @@ public class PlayStoreUpdate extends BaseUpdateClass {
                 }
             }
         });
+        appUpdateInfoTask.addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                PluginLog.w("checkUpdate failed: {}", e);
+                mUpdateManager.reportCheckCompleted(false);
+            }
+        });
     }
 
     /**
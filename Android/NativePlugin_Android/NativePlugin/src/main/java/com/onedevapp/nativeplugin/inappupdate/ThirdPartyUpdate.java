@@ -11,7 +11,9 @@ import android.os.Environment;
 
 import com.google.android.play.core.install.model.InstallStatus;
 import com.onedevapp.nativeplugin.AndroidBridge;
-import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.CancellationToken;
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.TaskScheduler;
 
 /**
  * ThirdPartyUpdate is responsible for updating app from any third party URL provided
@@ -23,7 +25,9 @@ public class ThirdPartyUpdate extends BaseUpdateClass {
     private final String FILE_NAME = "app_release.apk";
     private final String MIME_TYPE = "application/vnd.android.package-archive";
     private final String APP_INSTALL_PATH = "\"application/vnd.android.package-archive\"";
-    private Uri apk_file_uri;
+    private static final long POLL_INTERVAL_MILLIS = 500;  //download progress is polled on the IO queue at this interval
+    private volatile Uri apk_file_uri;
+    private CancellationToken mDownloadToken;   //stops polling the previous download
     //endregion
 
     //region Constructor
@@ -60,6 +64,7 @@ public class ThirdPartyUpdate extends BaseUpdateClass {
             errorCode = -101;
         }
 
+        mUpdateManager.reportCheckCompleted(isPermissionAvailable);
         if (mOnUpdateListener != null) {
             mOnUpdateListener.onUpdateAvailable(isPermissionAvailable, true);
             if (!isPermissionAvailable)
@@ -78,7 +83,7 @@ public class ThirdPartyUpdate extends BaseUpdateClass {
             final Context context = mUpdateManager.getActivity();
             final String appName = context.getApplicationInfo().loadLabel(context.getPackageManager()).toString();
 
-            Constants.WriteLog("Downloading request on url :" + mUpdateLink);
+            PluginLog.i("Downloading request on url :{}", mUpdateLink);
 
             DownloadManager.Request request = new DownloadManager.Request(Uri.parse(mUpdateLink));
             request.setVisibleInDownloadsUi(false);
@@ -98,49 +103,64 @@ public class ThirdPartyUpdate extends BaseUpdateClass {
             if (mOnUpdateListener != null)
                 mOnUpdateListener.onUpdateInstallState(InstallStatus.DOWNLOADING);
 
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    boolean downloading = true;
-                    while (downloading) {
-                        DownloadManager.Query q = new DownloadManager.Query();
-                        q.setFilterById(downloadId);
-                        Cursor cursor = manager.query(q);
-
-                        if (cursor.moveToFirst()) {
-                            int status = cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_STATUS));
-
-                            if (status == DownloadManager.STATUS_FAILED) {
-                                if (mOnUpdateListener != null)
-                                    mUpdateManager.reportUpdateError(InstallStatus.FAILED, "Download failed, Try again later.");
-                            } else if (status == DownloadManager.STATUS_SUCCESSFUL) {
-                                apk_file_uri = manager.getUriForDownloadedFile(downloadId);
-                                if (mOnUpdateListener != null)
-                                    mOnUpdateListener.onUpdateInstallState(InstallStatus.DOWNLOADED);
-                            } else if (status == DownloadManager.STATUS_RUNNING) {
-                                final int bytes_downloaded = cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
-                                if (cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_STATUS)) == DownloadManager.STATUS_SUCCESSFUL) {
-                                    downloading = false;
-                                }
-                                int bytes_total = cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
-                                if (bytes_total != 0) {
-
-                                    if (mOnUpdateListener != null)
-                                        mOnUpdateListener.onUpdateDownloading(bytes_downloaded, bytes_total);
-                                }
-                            }
-                            cursor.close();
-                        }
-
-                    }
-                }
-            }).start();
+            if (mDownloadToken != null) mDownloadToken.cancel();
+            mDownloadToken = new CancellationToken();
+            pollDownload(manager, downloadId, mDownloadToken);
 
         } catch (Exception e) {
             mUpdateManager.reportUpdateError(-1, "startUpdate() : " + e.toString());
         }
     }
 
+    /**
+     * Poll the download status once it is due, again until it failed or succeeded
+     */
+    private void pollDownload(final DownloadManager manager, final long downloadId, final CancellationToken token) {
+        TaskScheduler.getInstance().schedule(TaskScheduler.QUEUE_IO, TaskScheduler.PRIORITY_LOW, token, new Runnable() {
+            @Override
+            public void run() {
+                DownloadManager.Query q = new DownloadManager.Query();
+                q.setFilterById(downloadId);
+                Cursor cursor = manager.query(q);
+                if (cursor == null) {
+                    mUpdateManager.reportUpdateError(InstallStatus.FAILED, "Download not found, Try again later.");
+                    return;
+                }
+
+                try {
+                    if (!cursor.moveToFirst()) {
+                        mUpdateManager.reportUpdateError(InstallStatus.FAILED, "Download not found, Try again later.");
+                        return;
+                    }
+                    int status = cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_STATUS));
+
+                    if (status == DownloadManager.STATUS_FAILED) {
+                        if (mOnUpdateListener != null)
+                            mUpdateManager.reportUpdateError(InstallStatus.FAILED, "Download failed, Try again later.");
+                        return;
+                    } else if (status == DownloadManager.STATUS_SUCCESSFUL) {
+                        apk_file_uri = manager.getUriForDownloadedFile(downloadId);
+                        if (mOnUpdateListener != null)
+                            mOnUpdateListener.onUpdateInstallState(InstallStatus.DOWNLOADED);
+                        return;
+                    } else if (status == DownloadManager.STATUS_RUNNING) {
+                        final int bytes_downloaded = cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR));
+                        int bytes_total = cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
+                        if (bytes_total != 0) {
+
+                            if (mOnUpdateListener != null)
+                                mOnUpdateListener.onUpdateDownloading(bytes_downloaded, bytes_total);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                if (!token.isCancelled()) pollDownload(manager, downloadId, token);
+            }
+        }, POLL_INTERVAL_MILLIS);
+    }
+
     /**
      * Complete update will delete the downloaded apk file
      */
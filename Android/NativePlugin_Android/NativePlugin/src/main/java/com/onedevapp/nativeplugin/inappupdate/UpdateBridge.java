@@ -0,0 +1,67 @@
+package com.onedevapp.nativeplugin.inappupdate;
+
+import android.app.Activity;
+
+import com.onedevapp.nativeplugin.QueuedListener;
+
+/**
+ * UpdateBridge checks and installs updates through static calls taking primitives,
+ * so Unity calls it through cached method ids instead of a chain of builder calls on {@link UpdateManager}.
+ * Each check gets its own {@link UpdateManager#newRequest(Activity)}, the manager of the last check is kept for the install calls which follow it.
+ */
+public class UpdateBridge {
+
+    // region Declarations
+    private static volatile UpdateManager mUpdateManager;    //manager of the last check
+    //endregion
+
+    //Private constructor, static calls only
+    private UpdateBridge() {
+
+    }
+
+    /**
+     * Check for an update
+     *
+     * @param activity    the activity
+     * @param requestId   id reported with the events of this request
+     * @param jsonResults true to queue results as text instead of binary payloads
+     * @param updateMode  play store = 0 or third party = 1
+     * @param updateType  flexible = 0 or immediate = 1
+     * @param updateLink  link of the third party update, empty for none
+     */
+    public static void checkUpdate(Activity activity, int requestId, boolean jsonResults, int updateMode, int updateType, String updateLink) {
+        UpdateManager updateManager = UpdateManager.newRequest(activity)
+                .updateMode(updateMode)
+                .handler(new QueuedListener(requestId, jsonResults))
+                .updateType(updateType);
+        if (updateLink != null && !updateLink.isEmpty())
+            updateManager.updateLink(updateLink);
+        mUpdateManager = updateManager;
+        updateManager.checkUpdate();
+    }
+
+    /**
+     * Start the update found by the last check
+     */
+    public static void startUpdate() {
+        UpdateManager updateManager = mUpdateManager;
+        if (updateManager != null) updateManager.startUpdate();
+    }
+
+    /**
+     * Complete the update started by {@link #startUpdate()}
+     */
+    public static void completeUpdate() {
+        UpdateManager updateManager = mUpdateManager;
+        if (updateManager != null) updateManager.completeUpdate();
+    }
+
+    /**
+     * Continue a pending update, called when the app resumes
+     */
+    public static void continueUpdate() {
+        UpdateManager updateManager = mUpdateManager;
+        if (updateManager != null) updateManager.continueUpdate();
+    }
+}
@@ -4,8 +4,11 @@ import android.app.Activity;
 
 import com.google.android.play.core.install.model.AppUpdateType;
 import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.PluginMetrics;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * UpdateManager is the responsible class updating the App either via PlayStore or from ThirdParty site.
@@ -19,6 +22,7 @@ public class UpdateManager {
     private final WeakReference<Activity> mActivityWeakReference; //Activity references
     private OnUpdateListener mOnUpdateListener; //Callback listener
     private BaseUpdateClass mUpdateApp; //Parent class for app update mode
+    private final AtomicLong mCheckNanos = new AtomicLong();    //when the pending check started, 0 when none
 
     //endregion
 
@@ -30,13 +34,24 @@ public class UpdateManager {
      * @param activity the activity
      * @return a new {@link UpdateManager} instance
      */
-    public static UpdateManager Builder(Activity activity) {
+    public static synchronized UpdateManager Builder(Activity activity) {
         if (instance == null) {
             instance = new UpdateManager(activity);
         }
         return instance;
     }
 
+    /**
+     * Creates a manager for a single request, with its own state and activity,
+     * so it can run alongside other requests instead of sharing the state of {@link #Builder(Activity)}
+     *
+     * @param activity the activity
+     * @return a new {@link UpdateManager} instance
+     */
+    public static UpdateManager newRequest(Activity activity) {
+        return new UpdateManager(activity);
+    }
+
     /**
      * Creates a builder
      *
@@ -44,7 +59,7 @@ public class UpdateManager {
      * @param requestCode the request code to later monitor this update request via onActivityResult()
      * @return a new {@link UpdateManager} instance
      */
-    public static UpdateManager Builder(Activity activity, int requestCode) {
+    public static synchronized UpdateManager Builder(Activity activity, int requestCode) {
         if (instance == null) {
             instance = new UpdateManager(activity, requestCode);
         }
@@ -81,7 +96,7 @@ public class UpdateManager {
         } else if (updateMode == Constants.THIRD_PARTY_UPDATE) {
             mUpdateApp = new ThirdPartyUpdate(this);
         } else {
-            Constants.WriteLog("Unknown Update mode");
+            PluginLog.w("Unknown Update mode");
         }
 
         return this;
@@ -100,7 +115,7 @@ public class UpdateManager {
         } else if (updateType == 1) {
             mUpdateApp.setUpdateType(AppUpdateType.IMMEDIATE);
         } else {
-            Constants.WriteLog("Unknown Update type");
+            PluginLog.w("Unknown Update type");
             if (mOnUpdateListener != null)
                 mOnUpdateListener.onUpdateError(-1, "Unknown Update type");
         }
@@ -130,7 +145,7 @@ public class UpdateManager {
         if (!mUpdateLink.isEmpty())
             mUpdateApp.setUpdateLink(mUpdateLink);
         else {
-            Constants.WriteLog("Update link can't be empty");
+            PluginLog.w("Update link can't be empty");
             if (mOnUpdateListener != null)
                 mOnUpdateListener.onUpdateError(-1, "Update link can't be empty");
         }
@@ -162,13 +177,24 @@ public class UpdateManager {
      * @param error
      */
     protected void reportUpdateError(int errorCode, String error) {
-        Constants.WriteLog("errorCode::" + errorCode);
-        Constants.WriteLog("error::" + error);
-        if (instance.mOnUpdateListener != null) {
-            instance.mOnUpdateListener.onUpdateError(errorCode, error);
+        reportCheckCompleted(false);
+        PluginLog.e("Update error {}: {}", errorCode, error);
+        if (mOnUpdateListener != null) {
+            mOnUpdateListener.onUpdateError(errorCode, error);
         }
     }
 
+
+    /**
+     * Record the pending check in PluginMetrics, only its first result counts
+     *
+     * @param success false when the check failed
+     */
+    protected void reportCheckCompleted(boolean success) {
+        long startNanos = mCheckNanos.getAndSet(0);
+        if (startNanos != 0) PluginMetrics.record(PluginMetrics.UPDATE_CHECK, startNanos, success);
+    }
+
     //endregion
 
     // region Public functions
@@ -177,6 +203,7 @@ public class UpdateManager {
      * Check Update
      */
     public void checkUpdate() {
+        mCheckNanos.set(System.nanoTime());
         try {
             mUpdateApp.checkUpdate();
         } catch (Exception e) {
@@ -0,0 +1,32 @@
+package com.onedevapp.nativeplugin.rt_permissions;
+
+import android.app.Activity;
+
+import com.onedevapp.nativeplugin.QueuedListener;
+
+/**
+ * PermissionBridge requests permissions in a single static call,
+ * so Unity calls it through a cached method id instead of a chain of builder calls on {@link PermissionManager}.
+ */
+public class PermissionBridge {
+
+    //Private constructor, static calls only
+    private PermissionBridge() {
+
+    }
+
+    /**
+     * Request the permissions
+     *
+     * @param activity    the activity
+     * @param requestId   id reported with the events of this request
+     * @param jsonResults true to queue the permissions as text instead of binary payloads
+     * @param permissions permissions to be requested
+     */
+    public static void requestPermissions(Activity activity, int requestId, boolean jsonResults, String[] permissions) {
+        PermissionManager.newRequest(activity)
+                .handler(new QueuedListener(requestId, jsonResults))
+                .addPermissions(permissions)
+                .requestPermission();
+    }
+}
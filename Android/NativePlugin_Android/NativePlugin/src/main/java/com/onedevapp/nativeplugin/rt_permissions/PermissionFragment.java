@@ -16,6 +16,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.PluginMetrics;
 
 import java.util.ArrayList;
 
@@ -28,7 +30,6 @@ import static com.onedevapp.nativeplugin.Constants.EXTRA_SETTINGS_NEGATIVE;
 import static com.onedevapp.nativeplugin.Constants.EXTRA_SETTINGS_POSITIVE;
 import static com.onedevapp.nativeplugin.Constants.REQUEST_CODE_OPEN_SETTINGS;
 import static com.onedevapp.nativeplugin.Constants.REQUEST_CODE_PERMISSION;
-import static com.onedevapp.nativeplugin.Constants.WriteLog;
 
 /**
  * Hidden Fragment to workaround permission
@@ -40,6 +41,7 @@ public class PermissionFragment extends Fragment {
     private ArrayList<String> mGrantedPermissionsList;  //holds granted permissions in the request permissions.
     private ArrayList<String> mDeniedPermissionsList;   //holds denied permissions in the request permissions.
     private String[] mPermissionsArray;
+    private long mRequestNanos;  //when the request started, for PluginMetrics
 
     //Rational dialog
     private String mRationalMessage;
@@ -89,6 +91,7 @@ public class PermissionFragment extends Fragment {
             if (Looper.getMainLooper() != Looper.myLooper()) {
                 throw new RuntimeException("you must request permission in main thread!!");
             }
+            mRequestNanos = System.nanoTime();
 
             activity.getFragmentManager().beginTransaction().add(this, activity.getClass().getName()).commit();
         } else {
@@ -162,7 +165,7 @@ public class PermissionFragment extends Fragment {
         if (requestCode == REQUEST_CODE_OPEN_SETTINGS && mOnPermissionListener != null) {
             checkPermissionAfterResult();
         } else {
-            Constants.WriteLog("mOnPermissionListener is null on result");
+            PluginLog.w("mOnPermissionListener is null on result");
             mOnPermissionListener.onPermissionError("mOnPermissionListener is null on result");
         }
         // super, because overridden method will make the handler null, and we don't want that.
@@ -195,7 +198,7 @@ public class PermissionFragment extends Fragment {
 
             // If all permissions are granted.
             if (mGrantedPermissionsList.size() == permissions.length) {
-                Constants.WriteLog("Yey, got all permissions.");
+                PluginLog.d("Yey, got all permissions.");
                 mOnPermissionListener.onPermissionGranted(mGrantedPermissionsList.toArray(new String[0]), true);
             } else { // If some or none permissions are denied.
                 mOnPermissionListener.onPermissionGranted(mGrantedPermissionsList.toArray(new String[0]), false);
@@ -232,7 +235,7 @@ public class PermissionFragment extends Fragment {
 
         // If all permissions are granted.
         if (mGrantedPermissionsList.size() == mPermissionsArray.length) {
-            WriteLog("Yey, got all permissions.");
+            PluginLog.d("Yey, got all permissions.");
             mOnPermissionListener.onPermissionGranted(mGrantedPermissionsList.toArray(new String[0]), true);
         } else { // If some or none permissions are denied.
             mOnPermissionListener.onPermissionGranted(mGrantedPermissionsList.toArray(new String[0]), false);
@@ -276,13 +279,13 @@ public class PermissionFragment extends Fragment {
 
         //If any permission is blocked, we'll show settings dialog to open
         if (anyBlockedPermission) {
-            WriteLog("Showing settings dialog");
+            PluginLog.d("Showing settings dialog");
             showSettingDialog();
         } else if (anyRationalePermission) {  //If any permission is requested but not granted, we'll show rationale dialog
-            WriteLog("Showing rationale dialog");
+            PluginLog.d("Showing rationale dialog");
             showRationaleDialog();
         } else {    //we'll request all permissions to grant
-            WriteLog("No rationale permission found.");
+            PluginLog.d("No rationale permission found.");
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                 requestPermissions(mPermissionsArray, REQUEST_CODE_PERMISSION);
             } else {
@@ -309,7 +312,7 @@ public class PermissionFragment extends Fragment {
                             intent.setData(uri);
                             startActivityForResult(intent, REQUEST_CODE_OPEN_SETTINGS);
                         } catch (NullPointerException e) {
-                            Constants.WriteLog("Exception (resume) : " + e.toString());
+                            PluginLog.w("Exception (resume) : {}", e);
                             mOnPermissionListener.onPermissionError(e.toString());
                         }
                     }
@@ -354,6 +357,7 @@ public class PermissionFragment extends Fragment {
 
 
     protected void removeFragment() {
+        PluginMetrics.record(PluginMetrics.PERMISSION_WAIT, mRequestNanos, true);
         //Remove this fragment when work is done
         getFragmentManager().beginTransaction().remove(this).commit();
 
@@ -5,6 +5,7 @@ import android.app.Fragment;
 import android.os.Bundle;
 
 import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -47,20 +48,31 @@ public class PermissionManager {
      * @param activity the current activity
      * @return a new {@link PermissionManager} instance
      */
-    public static PermissionManager Builder(Activity activity) {
+    public static synchronized PermissionManager Builder(Activity activity) {
         if (instance == null) {
             instance = new PermissionManager(activity);
         }
         return instance;
     }
 
+    /**
+     * Creates a manager for a single request, with its own state and activity,
+     * so it can run alongside other requests instead of sharing the state of {@link #Builder(Activity)}
+     *
+     * @param activity the activity
+     * @return a new {@link PermissionManager} instance
+     */
+    public static PermissionManager newRequest(Activity activity) {
+        return new PermissionManager(activity);
+    }
+
     /**
      * Creates a builder
      *
      * @param fragment the current fragment
      * @return a new {@link PermissionManager} instance
      */
-    public static PermissionManager Builder(Fragment fragment) {
+    public static synchronized PermissionManager Builder(Fragment fragment) {
         if (instance == null) {
             instance = new PermissionManager(fragment);
         }
@@ -187,7 +199,7 @@ public class PermissionManager {
             @Override
             public void run() {
                 if (mOnPermissionListener == null) {
-                    Constants.WriteLog("The permission listener callback interface must be implemented");
+                    PluginLog.w("The permission listener callback interface must be implemented");
                     return;
                 }
 
@@ -197,7 +209,7 @@ public class PermissionManager {
                 }
 
                 if (mPermissionsSet.isEmpty()) {
-                    Constants.WriteLog("The requested permission cannot be empty");
+                    PluginLog.w("The requested permission cannot be empty");
                     mOnPermissionListener.onPermissionGranted(null, true);
                     mOnPermissionListener.onPermissionError("The requested permission cannot be empty");
                     return;
@@ -214,7 +226,7 @@ public class PermissionManager {
                 if (failPermissions == null || failPermissions.isEmpty()) {
                     mOnPermissionListener.onPermissionGranted(null, true);
                     //mOnPermissionListener.onPermissionError("The requested permission has no denied permissions");
-                    Constants.WriteLog("The requested permission has no denied permissions");
+                    PluginLog.d("The requested permission has no denied permissions");
                     return;
                 }
 
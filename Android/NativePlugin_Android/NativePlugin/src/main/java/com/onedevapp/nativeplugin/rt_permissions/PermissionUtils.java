@@ -11,6 +11,7 @@ import android.os.Build;
 import androidx.core.app.ActivityCompat;
 
 import com.onedevapp.nativeplugin.Constants;
+import com.onedevapp.nativeplugin.PluginLog;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -97,12 +98,12 @@ public final class PermissionUtils {
         if (manifestPermissions != null && !manifestPermissions.isEmpty()) {
             for (String permission : requestPermissions) {
                 if (!manifestPermissions.contains(permission)) {
-                    Constants.WriteLog(permission + ": Permissions are not registered in the manifest file");
+                    PluginLog.w("{}: Permissions are not registered in the manifest file", permission);
                     return false;
                 }
             }
         } else {
-            Constants.WriteLog("No permissions are registered in the manifest file");
+            PluginLog.w("No permissions are registered in the manifest file");
             return false;
         }
         return true;
@@ -0,0 +1,110 @@
+package com.onedevapp.nativeplugin.share;
+
+import android.app.Activity;
+
+import com.onedevapp.nativeplugin.PluginLog;
+import com.onedevapp.nativeplugin.TaskScheduler;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * ShareBridge shares content in a single static call taking strings and arrays,
+ * so Unity calls it through a cached method id instead of a chain of builder calls on {@link ShareManager}.
+ */
+public class ShareBridge {
+
+    // region Declarations
+    //share targets
+    public static final int SHARE_TEXT = 0;
+    public static final int SHARE_FILE = 1;
+    public static final int SHARE_MULTIPLE_FILES = 2;
+    public static final int SHARE_WHATSAPP = 3;
+    public static final int SHARE_EMAIL = 4;
+    //endregion
+
+    //Private constructor, static calls only
+    private ShareBridge() {
+
+    }
+
+    /**
+     * Share the content on the IO queue of the {@link TaskScheduler}, so resolving the file uris doesn't hold the calling thread.
+     * Empty or null values are skipped
+     *
+     * @param activity   the activity
+     * @param target     one of the share targets
+     * @param message    message to be shared
+     * @param header     share chooser header text
+     * @param filePaths  paths of the files to be shared
+     * @param fileUris   uris of the files to be shared
+     * @param mobileNo   WhatsApp mobile no
+     * @param emailTo    email addresses
+     * @param emailCc    email cc addresses
+     * @param emailBcc   email bcc addresses
+     * @param subject    email subject
+     * @param isHtmlText whether the email message is html
+     */
+    public static void share(final Activity activity, final int target, final String message, final String header,
+                             final String[] filePaths, final String[] fileUris, final String mobileNo, final String[] emailTo,
+                             final String[] emailCc, final String[] emailBcc, final String subject, final boolean isHtmlText) {
+        try {
+            TaskScheduler.getInstance().submit(TaskScheduler.QUEUE_IO, TaskScheduler.PRIORITY_HIGH, null, new Runnable() {
+                @Override
+                public void run() {
+                    shareNow(activity, target, message, header, filePaths, fileUris, mobileNo, emailTo, emailCc, emailBcc, subject, isHtmlText);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            PluginLog.e("Share dropped: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Build the share request and start it
+     */
+    private static void shareNow(Activity activity, int target, String message, String header, String[] filePaths, String[] fileUris,
+                                 String mobileNo, String[] emailTo, String[] emailCc, String[] emailBcc, String subject, boolean isHtmlText) {
+        ShareManager shareManager = ShareManager.newRequest(activity).setMessage(message);
+        if (filePaths != null) {
+            for (String filePath : filePaths) {
+                if (!isEmpty(filePath)) shareManager.addFilePath(filePath);
+            }
+        }
+        if (fileUris != null) {
+            for (String fileUri : fileUris) {
+                if (!isEmpty(fileUri)) shareManager.addFileUri(fileUri);
+            }
+        }
+        if (!isEmpty(mobileNo)) shareManager.setWhatsAppMobileNo(mobileNo);
+        if (!isEmpty(emailTo)) shareManager.addMultipleEmailAddress(emailTo);
+        if (!isEmpty(emailCc)) shareManager.addMultipleEmailCcAddress(emailCc);
+        if (!isEmpty(emailBcc)) shareManager.addMultipleEmailBccAddress(emailBcc);
+        if (!isEmpty(header)) shareManager.setHeader(header);
+
+        switch (target) {
+            case SHARE_FILE:
+                shareManager.shareFileContent();
+                break;
+            case SHARE_MULTIPLE_FILES:
+                shareManager.shareMultipleFileContent();
+                break;
+            case SHARE_WHATSAPP:
+                shareManager.shareOnWhatsApp();
+                break;
+            case SHARE_EMAIL:
+                shareManager.shareOnEmail(subject, isHtmlText);
+                break;
+            default:
+                shareManager.shareTextContent();
+                break;
+        }
+    }
+
+    private static boolean isEmpty(String[] values) {
+        return values == null || values.length == 0;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
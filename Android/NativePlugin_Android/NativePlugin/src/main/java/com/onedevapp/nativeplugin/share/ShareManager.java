@@ -10,6 +10,7 @@ import android.text.TextUtils;
 
 import androidx.core.app.ShareCompat;
 
+import com.onedevapp.nativeplugin.PluginMetrics;
 import com.onedevapp.nativeplugin.Utils;
 import com.onedevapp.nativeplugin.imagepicker.ImageUtil;
 
@@ -36,6 +37,7 @@ public class ShareManager {
     private String mMessage;  //message content to share
     private String mMobileNo;  //for whats app, directly send to provided mobile no
     private String mShareHeader = "Share";  //title to display on share chooser header
+    private long mRequestNanos;   //when this share started to be built, for PluginMetrics
     private final WeakReference<Activity> mActivityWeakReference; //Activity references
 
     //region Constructor
@@ -47,20 +49,31 @@ public class ShareManager {
      * @param activity the current activity
      * @return a new {@link ShareManager} instance
      */
-    public static ShareManager Builder(Activity activity) {
+    public static synchronized ShareManager Builder(Activity activity) {
         if (instance == null) {
             instance = new ShareManager(activity);
         }
         return instance;
     }
 
+    /**
+     * Creates a manager for a single request, with its own state and activity,
+     * so it can run alongside other requests instead of sharing the state of {@link #Builder(Activity)}
+     *
+     * @param activity the activity
+     * @return a new {@link ShareManager} instance
+     */
+    public static ShareManager newRequest(Activity activity) {
+        return new ShareManager(activity);
+    }
+
     /**
      * Creates a builder
      *
      * @param fragment the current fragment
      * @return a new {@link ShareManager} instance
      */
-    public static ShareManager Builder(Fragment fragment) {
+    public static synchronized ShareManager Builder(Fragment fragment) {
         if (instance == null) {
             instance = new ShareManager(fragment);
         }
@@ -95,6 +108,17 @@ public class ShareManager {
         mMessage = "";
         mMobileNo = "";
         mShareHeader = "Share";
+        mRequestNanos = System.nanoTime();
+    }
+
+    /**
+     * Record the share in PluginMetrics and clear it for the next one
+     *
+     * @param success false when the share couldn't be started
+     */
+    private void shareCompleted(boolean success) {
+        PluginMetrics.record(PluginMetrics.SHARE, mRequestNanos, success);
+        clearData();
     }
 
     /**
@@ -303,7 +327,7 @@ public class ShareManager {
                 .setText(mMessage)
                 .setChooserTitle(mShareHeader)
                 .startChooser();
-        clearData();
+        shareCompleted(true);
     }
 
     /**
@@ -316,7 +340,7 @@ public class ShareManager {
         Intent shareIntent = Intent.createChooser(sendIntent, mShareHeader);
         shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
         getActivity().startActivity(shareIntent);
-        clearData();
+        shareCompleted(true);
     }
 
     /**
@@ -336,7 +360,7 @@ public class ShareManager {
             getActivity().grantUriPermission(packageName, ImageUtil.getUriFromFile(getActivity(), ), Intent.FLAG_GRANT_WRITE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
         }*/
         getActivity().startActivity(shareIntent);
-        clearData();
+        shareCompleted(true);
     }
 
     /**
@@ -354,8 +378,9 @@ public class ShareManager {
             sendIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
             sendIntent.addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
             Objects.requireNonNull(getActivity()).startActivity(sendIntent);
-            clearData();
+            shareCompleted(true);
         } catch (android.content.ActivityNotFoundException ex) {
+            shareCompleted(false);
             getActivity().startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse("http://play.google.com/store/apps/details?id=com.whatsapp")));
         }
     }
@@ -398,6 +423,6 @@ public class ShareManager {
                     .addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
 
         getActivity().startActivity(sendIntent);
-        clearData();
+        shareCompleted(true);
     }
 }
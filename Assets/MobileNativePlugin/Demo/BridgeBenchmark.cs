@@ -0,0 +1,101 @@
+﻿using System;
+using System.Diagnostics;
+using OneDevApp;
+using UnityEngine;
+using Debug = UnityEngine.Debug;
+
+/// <summary>
+/// Microbenchmark of the bridge call overhead: configuring the image picker through the builder chain
+/// against the single ImagePickerBridge call with a cached method id. Neither path opens the picker.
+/// Add it to an object of an Android build and read the calls per second in logcat
+/// </summary>
+public class BridgeBenchmark : MonoBehaviour
+{
+    [SerializeField]
+    private int iterations = 2000;
+    [SerializeField]
+    private int warmupIterations = 200;
+
+    private void Start()
+    {
+#if UNITY_ANDROID && !UNITY_EDITOR
+        using (AndroidJavaClass unityPlayer = new AndroidJavaClass("com.unity3d.player.UnityPlayer"))
+        using (AndroidJavaObject activity = unityPlayer.GetStatic<AndroidJavaObject>("currentActivity"))
+        {
+            JniStaticMethod configure = new JniStaticMethod("com.onedevapp.nativeplugin.imagepicker.ImagePickerBridge", "configure",
+                "(Landroid/app/Activity;IZIIIIIIJIIZ[I[JLcom/onedevapp/nativeplugin/imagepicker/OnImagePixelsListener;)" +
+                "Lcom/onedevapp/nativeplugin/imagepicker/ImagePickerManager;", 16);
+
+            Measure("builder chain", warmupIterations, () => ConfigureWithBuilderChain(activity));
+            Measure("bridge", warmupIterations, () => ConfigureWithBridge(configure, activity));
+            double builderChain = Measure("builder chain", iterations, () => ConfigureWithBuilderChain(activity));
+            double bridge = Measure("bridge", iterations, () => ConfigureWithBridge(configure, activity));
+            Debug.Log(string.Format("BridgeBenchmark bridge is {0:F1}x the builder chain", bridge / builderChain));
+        }
+#else
+        Debug.Log("BridgeBenchmark runs on Android devices only");
+#endif
+    }
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+    /// <summary>
+    /// The calls GetImageFromDevice made before the bridge, without opening the picker.
+    /// Every wrapper the chain returns holds a global reference, so each is disposed like the manager and the listener
+    /// </summary>
+    private static void ConfigureWithBuilderChain(AndroidJavaObject activity)
+    {
+        using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.imagepicker.ImagePickerManager"))
+        using (AndroidJavaObject listener = new AndroidJavaObject("com.onedevapp.nativeplugin.QueuedListener", 0, false))
+        using (AndroidJavaObject manager = jc.CallStatic<AndroidJavaObject>("Builder", activity))
+        {
+            CallBuilder(manager, "setPickerType", (int)ImagePickerType.GALLERY);
+            CallBuilder(manager, "setMaxWidth", 612);
+            CallBuilder(manager, "handler", listener);
+            CallBuilder(manager, "setMaxHeight", 816);
+            CallBuilder(manager, "setQuality", 80);
+            CallBuilder(manager, "setCompressFormat", (int)ImageFormat.JPEG);
+            CallBuilder(manager, "setMaxFileSize", 0L);
+            CallBuilder(manager, "setResultMode", (int)ImageResultMode.FILE);
+            CallBuilder(manager, "setMaxImages", 1);
+            CallBuilder(manager, "setPreviewSize", 0);
+            CallBuilder(manager, "setLazyOrientation", false);
+            CallBuilder(manager, "clearRenditions");
+        }
+    }
+
+    /// <summary>
+    /// Calls a builder setter and disposes the wrapper of the manager it returns
+    /// </summary>
+    private static void CallBuilder(AndroidJavaObject manager, string method, params object[] args)
+    {
+        using (manager.Call<AndroidJavaObject>(method, args))
+        {
+        }
+    }
+
+    /// <summary>
+    /// The same configuration as a single call
+    /// </summary>
+    private static void ConfigureWithBridge(JniStaticMethod configure, AndroidJavaObject activity)
+    {
+        IntPtr manager = configure.Begin().Object(activity).Int(0).Bool(false)
+            .Int((int)ImagePickerType.GALLERY).Int(1).Int(612).Int(816).Int(80).Int((int)ImageFormat.JPEG).Long(0)
+            .Int((int)ImageResultMode.FILE).Int(0).Bool(false).Array((int[])null).Array((long[])null).Proxy(null)
+            .CallObject();
+        AndroidJNI.DeleteLocalRef(manager);
+    }
+
+    private static double Measure(string name, int count, Action call)
+    {
+        GC.Collect();
+        Stopwatch stopwatch = Stopwatch.StartNew();
+        for (int i = 0; i < count; i++)
+            call();
+        stopwatch.Stop();
+
+        double callsPerSecond = count / stopwatch.Elapsed.TotalSeconds;
+        Debug.Log(string.Format("BridgeBenchmark {0}: {1} calls in {2} ms, {3:F0} calls/s", name, count, stopwatch.ElapsedMilliseconds, callsPerSecond));
+        return callsPerSecond;
+    }
+#endif
+}
@@ -335,7 +335,9 @@ public class NativePluginDemo : MonoBehaviour
 
                 Texture2D result = new Texture2D(w, h, format, true, false);
 
-                if (result.LoadImage(File.ReadAllBytes(imageData.cacheFilePath), true))
+                byte[] imageBytes = File.ReadAllBytes(imageData.cacheFilePath);
+                MobileNativeManager.Instance.ReleaseImageFile(imageData.cacheFilePath);
+                if (result.LoadImage(imageBytes, true))
                 {
                     Sprite newSprite = Sprite.Create(result as Texture2D, new Rect(0f, 0f, result.width, result.height), Vector2.zero);
                     selectedImage.sprite = newSprite;
@@ -0,0 +1,296 @@
+﻿using System;
+using System.Collections.Generic;
+using System.Threading;
+using UnityEngine;
+
+namespace OneDevApp
+{
+#if UNITY_ANDROID && !UNITY_EDITOR
+    /// <summary>
+    /// JniStaticMethod is a static java method whose class and method id are looked up once and kept,
+    /// so each call is a single JNI invocation without the reflective lookup of AndroidJavaClass.CallStatic.
+    /// Arguments are written into a reused array, strings and arrays are passed as local references freed after the call.
+    /// Thread safe: Begin takes the lock of the method and attaches the calling thread to the VM, the call releases the lock,
+    /// so a call must always be completed once begun. An argument which throws releases the lock and the references itself
+    /// </summary>
+    internal sealed class JniStaticMethod
+    {
+        private readonly AndroidJavaClass mJavaClass;   // keeps the global class reference alive
+        private readonly IntPtr mClass;
+        private readonly IntPtr mMethod;
+        private readonly string mName;
+        private readonly jvalue[] mArgs;
+        private readonly List<IntPtr> mLocalRefs = new List<IntPtr>();
+        private int mCount;
+
+        /// <summary>
+        /// Looks up the method
+        /// </summary>
+        /// <param name="className">java class name, e.g. com.onedevapp.nativeplugin.NativeEventQueue</param>
+        /// <param name="name">method name</param>
+        /// <param name="signature">JNI signature of the method</param>
+        /// <param name="argCount">number of parameters</param>
+        public JniStaticMethod(string className, string name, string signature, int argCount)
+        {
+            mJavaClass = new AndroidJavaClass(className);
+            mClass = mJavaClass.GetRawClass();
+            mMethod = AndroidJNI.GetStaticMethodID(mClass, name, signature);
+            mName = name;
+            mArgs = new jvalue[argCount];
+        }
+
+        /// <summary>
+        /// Starts a call, arguments are then added in order. Holds the lock of the method until the call
+        /// </summary>
+        public JniStaticMethod Begin()
+        {
+            Monitor.Enter(mArgs);
+            try
+            {
+                AndroidJNI.AttachCurrentThread();
+            }
+            catch
+            {
+                Monitor.Exit(mArgs);
+                throw;
+            }
+            mCount = 0;
+            return this;
+        }
+
+        public JniStaticMethod Int(int value)
+        {
+            Next().i = value;
+            return this;
+        }
+
+        public JniStaticMethod Long(long value)
+        {
+            Next().j = value;
+            return this;
+        }
+
+        public JniStaticMethod Bool(bool value)
+        {
+            Next().z = value;
+            return this;
+        }
+
+        public JniStaticMethod Float(float value)
+        {
+            Next().f = value;
+            return this;
+        }
+
+        /// <summary>
+        /// Adds a java object, e.g. the activity
+        /// </summary>
+        public JniStaticMethod Object(AndroidJavaObject value)
+        {
+            ref jvalue arg = ref Next();
+            try
+            {
+                arg.l = value != null ? value.GetRawObject() : IntPtr.Zero;
+            }
+            catch
+            {
+                Abort();
+                throw;
+            }
+            return this;
+        }
+
+        /// <summary>
+        /// Adds an interface implemented in C#
+        /// </summary>
+        public JniStaticMethod Proxy(AndroidJavaProxy value)
+        {
+            ref jvalue arg = ref Next();
+            try
+            {
+                arg.l = value != null ? Track(AndroidJNIHelper.CreateJavaProxy(value)) : IntPtr.Zero;
+            }
+            catch
+            {
+                Abort();
+                throw;
+            }
+            return this;
+        }
+
+        public JniStaticMethod String(string value)
+        {
+            ref jvalue arg = ref Next();
+            try
+            {
+                arg.l = value != null ? Track(AndroidJNI.NewStringUTF(value)) : IntPtr.Zero;
+            }
+            catch
+            {
+                Abort();
+                throw;
+            }
+            return this;
+        }
+
+        public JniStaticMethod Array(string[] values)
+        {
+            ref jvalue arg = ref Next();
+            try
+            {
+                arg.l = values != null ? Track(AndroidJNIHelper.ConvertToJNIArray(values)) : IntPtr.Zero;
+            }
+            catch
+            {
+                Abort();
+                throw;
+            }
+            return this;
+        }
+
+        public JniStaticMethod Array(int[] values)
+        {
+            ref jvalue arg = ref Next();
+            try
+            {
+                arg.l = values != null ? Track(AndroidJNI.ToIntArray(values)) : IntPtr.Zero;
+            }
+            catch
+            {
+                Abort();
+                throw;
+            }
+            return this;
+        }
+
+        public JniStaticMethod Array(long[] values)
+        {
+            ref jvalue arg = ref Next();
+            try
+            {
+                arg.l = values != null ? Track(AndroidJNI.ToLongArray(values)) : IntPtr.Zero;
+            }
+            catch
+            {
+                Abort();
+                throw;
+            }
+            return this;
+        }
+
+        public void CallVoid()
+        {
+            try
+            {
+                AndroidJNI.CallStaticVoidMethod(mClass, mMethod, mArgs);
+            }
+            finally
+            {
+                EndCall();
+            }
+        }
+
+        public bool CallBool()
+        {
+            try
+            {
+                return AndroidJNI.CallStaticBooleanMethod(mClass, mMethod, mArgs);
+            }
+            finally
+            {
+                EndCall();
+            }
+        }
+
+        public int CallInt()
+        {
+            try
+            {
+                return AndroidJNI.CallStaticIntMethod(mClass, mMethod, mArgs);
+            }
+            finally
+            {
+                EndCall();
+            }
+        }
+
+        /// <summary>
+        /// Calls a method returning an object
+        /// </summary>
+        /// <returns>local reference of the result, to be freed with AndroidJNI.DeleteLocalRef</returns>
+        public IntPtr CallObject()
+        {
+            try
+            {
+                return AndroidJNI.CallStaticObjectMethod(mClass, mMethod, mArgs);
+            }
+            finally
+            {
+                EndCall();
+            }
+        }
+
+        /// <summary>
+        /// Slot of the next argument, a call with more arguments than the method takes is aborted
+        /// </summary>
+        private ref jvalue Next()
+        {
+            if (mCount == mArgs.Length)
+            {
+                Abort();
+                throw new ArgumentException("Native call " + mName + " takes " + mArgs.Length + " arguments");
+            }
+            mArgs[mCount] = new jvalue();
+            return ref mArgs[mCount++];
+        }
+
+        private IntPtr Track(IntPtr localRef)
+        {
+            mLocalRefs.Add(localRef);
+            return localRef;
+        }
+
+        private void ReleaseLocalRefs()
+        {
+            for (int i = 0; i < mLocalRefs.Count; i++)
+                AndroidJNI.DeleteLocalRef(mLocalRefs[i]);
+            mLocalRefs.Clear();
+        }
+
+        /// <summary>
+        /// Releases the references and the lock of a call which can't be completed
+        /// </summary>
+        private void Abort()
+        {
+            try
+            {
+                ReleaseLocalRefs();
+            }
+            finally
+            {
+                Monitor.Exit(mArgs);
+            }
+        }
+
+        private void EndCall()
+        {
+            try
+            {
+                ReleaseLocalRefs();
+                IntPtr exception = AndroidJNI.ExceptionOccurred();
+                if (exception != IntPtr.Zero)
+                {
+                    AndroidJNI.ExceptionDescribe();
+                    AndroidJNI.ExceptionClear();
+                    AndroidJNI.DeleteLocalRef(exception);
+                    Debug.LogError("Native call " + mName + " failed, see logcat");
+                }
+            }
+            finally
+            {
+                Monitor.Exit(mArgs);
+            }
+        }
+    }
+#endif
+}
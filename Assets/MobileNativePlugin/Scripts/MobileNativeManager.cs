@@ -1,4 +1,8 @@
 ﻿using System;
+using System.Runtime.InteropServices;
+using System.Threading;
+using Unity.Collections;
+using Unity.Collections.LowLevel.Unsafe;
 using UnityEngine;
 
 namespace OneDevApp
@@ -52,6 +56,24 @@ namespace OneDevApp
         /// </summary>
         public static event Action<ImageData, string, ImagePickerErrorCode> OnImagePicked;
         /// <summary>
+        /// Event triggered with a small preview of the picked image while it is still being processed, when a preview size is requested.
+        /// ImageData.cacheFilePath points to a small JPEG, OnImagePicked or OnImagePixelsPicked follows with the final image
+        /// </summary>
+        public static event Action<ImageData> OnImagePreview;
+        /// <summary>
+        /// Event triggered with image picked as texture when ImageResultMode.RAW_PIXELS is requested,
+        /// rows are flipped while they are copied so the texture is upright in Unity's UV space
+        /// </summary>
+        public static event Action<Texture2D, ImageData> OnImagePixelsPicked;
+        /// <summary>
+        /// Event triggered for each image of a multiple selection as soon as it is ready, with its index and the selection count
+        /// </summary>
+        public static event Action<int, int, ImageData, string, ImagePickerErrorCode> OnImagesItemPicked;
+        /// <summary>
+        /// Event triggered once every image of a multiple selection is reported, with the selection count and failed count
+        /// </summary>
+        public static event Action<int, int> OnImagesPickCompleted;
+        /// <summary>
         /// Event triggered when dialog buttons are clicked
         /// </summary>
         public static event Action<bool> OnClickAction;
@@ -65,6 +87,12 @@ namespace OneDevApp
 
         public static MobileNativeManager Instance { get; private set; }
 
+        /// <summary>
+        /// Id of the request whose event is being raised, as returned by the call which started it,
+        /// so handlers tell overlapping requests apart. Only valid inside an event handler
+        /// </summary>
+        public static int EventRequestId { get; private set; }
+
 #pragma warning disable 0414
         /// <summary>
         /// UnityMainActivity current activity name or main activity name
@@ -74,6 +102,13 @@ namespace OneDevApp
         [SerializeField]
         private string m_unityMainActivity = "com.unity3d.player.UnityPlayer";
 
+        /// <summary>
+        /// Receive images as json and permissions as text instead of binary payloads read in place
+        /// </summary>
+        [Tooltip("Json results instead of binary payloads")]
+        [SerializeField]
+        private bool m_jsonResults = false;
+
         const string m_bridgePackageName = "com.onedevapp.nativeplugin.AndroidBridge";
         bool writeLog = false;
 
@@ -81,152 +116,90 @@ namespace OneDevApp
 
 #if UNITY_ANDROID && !UNITY_EDITOR
         private AndroidJavaObject mContext = null;
-        private AndroidJavaObject mUpdateManager = null;
-
-        class OnImageSelectedListener : AndroidJavaProxy
-        {
-            public OnImageSelectedListener() : base("com.onedevapp.nativeplugin.imagepicker.OnImageSelectedListener") { }
-
-            public void onImageSelected(bool status, string message, int errorCode)
-            {
-                if(OnImagePicked != null)
-                {	
-                
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-
-                        ImageData imageData = null;
-                        if (status)
-                        {
-                            Debug.Log("OnImagePicked::message::" + message);
-                            imageData = JsonUtility.FromJson<ImageData>(message);
-                            message = string.Empty;
-                        }
-
-                        OnImagePicked.Invoke(imageData, message, (ImagePickerErrorCode) errorCode);
-                    });
-                }
-            }
-        }
-
-        class OnUpdateListener : AndroidJavaProxy
+        private AndroidJavaClass mEventQueue = null;
+        private IntPtr mEventBuffer = IntPtr.Zero;
+        private int mNextRequestId = 0;
+        const int EventRecordBytes = 40;
+
+        // Bridge entry points taking primitives, looked up once in Awake
+        private JniStaticMethod mDrainEvents = null;
+        private JniStaticMethod mGetEventText = null;
+        private JniStaticMethod mCheckUpdate = null;
+        private JniStaticMethod mStartUpdate = null;
+        private JniStaticMethod mCompleteUpdate = null;
+        private JniStaticMethod mContinueUpdate = null;
+        private JniStaticMethod mRequestPermissions = null;
+        private JniStaticMethod mOpenImagePicker = null;
+        private JniStaticMethod mDecodeImageRegion = null;
+        private JniStaticMethod mSetMemoryBudget = null;
+        private JniStaticMethod mReleaseCacheFile = null;
+        private JniStaticMethod mGetTransferChunk = null;
+        private JniStaticMethod mAcknowledgeTransferChunk = null;
+        private JniStaticMethod mShare = null;
+        private JniStaticMethod mGetMetricsSnapshot = null;
+        private JniStaticMethod mGetMetricsBuffer = null;
+        private JniStaticMethod mGetLogEntries = null;
+        private JniStaticMethod mSetLogLevel = null;
+        private JniStaticMethod mEnableLogPersistence = null;
+        private JniStaticMethod mGetPreviousSessionLog = null;
+        private JniStaticMethod mGetSchedulerSnapshot = null;
+        private JniStaticMethod mSetSchedulerWorkerLimit = null;
+
+        // ShareBridge targets
+        const int ShareText = 0;
+        const int ShareFile = 1;
+        const int ShareMultipleFiles = 2;
+        const int ShareWhatsApp = 3;
+        const int ShareEmail = 4;
+
+        class OnImagePixelsListener : AndroidJavaProxy
         {
-            public OnUpdateListener() : base("com.onedevapp.nativeplugin.inappupdate.OnUpdateListener") { }
+            public OnImagePixelsListener() : base("com.onedevapp.nativeplugin.imagepicker.OnImagePixelsListener") { }
 
-            // Invoked when Google Play Services returns a response 
-            public void onUpdateAvailable(bool isUpdateAvailable, bool isUpdateTypeAllowed)
+            public void onImagePixels(AndroidJavaObject buffer, int width, int height, int stride, string message)
             {
-                if (isUpdateAvailable && isUpdateTypeAllowed)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
+                UnityMainThreadDispatcher.Instance().Enqueue(() => {
 
-                        if (OnUpdateAvailable != null)
-                        {
-                            OnUpdateAvailable.Invoke(true);
-                        }
-                    });
-                }
-                else
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
+                    Texture2D texture = null;
+                    ImageData imageData = JsonUtility.FromJson<ImageData>(message);
 
-                        if (OnUpdateAvailable != null)
+                    if (OnImagePixelsPicked != null)
+                    {
+                        texture = new Texture2D(width, height, TextureFormat.RGBA32, false);
+                        IntPtr address;
+                        unsafe
                         {
-                            OnUpdateAvailable.Invoke(false);
+                            address = (IntPtr)AndroidJNI.GetDirectBufferAddress(buffer.GetRawObject());
                         }
-                    });
-                }
-            }
-
-            // Invoked when the update is available with version code
-            public void onUpdateVersionCode(int versionCode)
-            {
-                if (OnUpdateVersionCode != null)
-                {
-
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnUpdateVersionCode.Invoke(versionCode);
-                    });
-                }
-            }
-
-            // Invoked when the update is available with staleness days
-            public void onUpdateStalenessDays(int days)
-            {
-                if (OnUpdateStalenessDays != null)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnUpdateStalenessDays.Invoke(days);
-                    });
-                }
-            }
-
-            // Invoked when install status of the update
-            public void onUpdateInstallState(int state)
-            {
-                if (OnUpdateInstallState != null)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnUpdateInstallState.Invoke((InstallStatus)state);
-                    });
-                }
-            }
-
-            // Invoked during downloading
-            public void onUpdateDownloading(long bytesDownloaded, long bytesTotal)
-            {
-                if (OnUpdateDownloading != null)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnUpdateDownloading.Invoke(bytesDownloaded, bytesTotal);
-                    });
-                }
-            }
-
-            // Invoked when the update encounter error
-            public void onUpdateError(int code, string error)
-            {
-                if (OnUpdateError != null)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnUpdateError.Invoke(code, error);
-                    });
-                }
+                        CopyPixelsFlipped(texture, address, width, height, stride);
+                        texture.Apply(false);
+                    }
+
+                    using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.imagepicker.ImagePickerManager"))
+                    {
+                        jc.CallStatic("releasePixelBuffer", buffer);
+                    }
+                    buffer.Dispose();
+
+                    if (OnImagePixelsPicked != null)
+                        OnImagePixelsPicked.Invoke(texture, imageData);
+                });
             }
         }
 
-        class OnPermissionListener : AndroidJavaProxy
+        /// <summary>
+        /// Copy RGBA rows of stride bytes into the texture, bottom row first as Unity expects,
+        /// skipping the padding at the end of each row when the stride is wider than the image
+        /// </summary>
+        static unsafe void CopyPixelsFlipped(Texture2D texture, IntPtr address, int width, int height, int stride)
         {
-            public OnPermissionListener() : base("com.onedevapp.nativeplugin.rt_permissions.OnPermissionListener") { }
-
-
-            public void onPermissionGranted(string[] grantPermissions, bool all)
+            NativeArray<byte> pixels = texture.GetRawTextureData<byte>();
+            byte* target = (byte*)NativeArrayUnsafeUtility.GetUnsafePtr(pixels);
+            byte* source = (byte*)address;
+            int rowBytes = width * 4;
+            for (int y = 0; y < height; y++)
             {
-                if (OnPermissionGranted != null)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnPermissionGranted.Invoke(grantPermissions, all);
-                    });
-                }
-            }
-
-            public void onPermissionDenied(string[] deniedPermissions)
-            {
-                if (OnPermissionDenied != null)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnPermissionDenied.Invoke(deniedPermissions);
-                    });
-                }
-            }
-
-            public void onPermissionError(string errorMessage)
-            {
-                if (OnPermissionError != null)
-                {
-                    UnityMainThreadDispatcher.Instance().Enqueue(() => {
-                        OnPermissionError.Invoke(errorMessage);
-                    });
-                }
+                Buffer.MemoryCopy(source + (long)y * stride, target + (long)(height - 1 - y) * rowBytes, rowBytes, rowBytes);
             }
         }
 
@@ -292,6 +265,17 @@ namespace OneDevApp
             if (Application.platform == RuntimePlatform.Android)
             {
                 mContext = new AndroidJavaClass(m_unityMainActivity).GetStatic<AndroidJavaObject>("currentActivity");
+
+                // Callbacks are queued natively and drained once per frame, the buffer is allocated once so its address is kept
+                mEventQueue = new AndroidJavaClass("com.onedevapp.nativeplugin.NativeEventQueue");
+                using (AndroidJavaObject buffer = mEventQueue.CallStatic<AndroidJavaObject>("getEventBuffer"))
+                {
+                    unsafe
+                    {
+                        mEventBuffer = (IntPtr)AndroidJNI.GetDirectBufferAddress(buffer.GetRawObject());
+                    }
+                }
+                CreateBridgeMethods();
             }
 #elif UNITY_EDITOR
             if(writeLog)
@@ -299,6 +283,209 @@ namespace OneDevApp
 #endif
         }
 
+        private void Update()
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            if (mEventQueue != null)
+                DrainNativeEvents();
+#endif
+        }
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+        /// <summary>
+        /// Looks up the static bridge entry points, each request is then a single JNI call with primitive arguments
+        /// instead of a chain of builder calls. Their native handler queues the callbacks for DrainNativeEvents
+        /// </summary>
+        private void CreateBridgeMethods()
+        {
+            const string eventQueue = "com.onedevapp.nativeplugin.NativeEventQueue";
+            const string updateBridge = "com.onedevapp.nativeplugin.inappupdate.UpdateBridge";
+            const string imagePickerBridge = "com.onedevapp.nativeplugin.imagepicker.ImagePickerBridge";
+            const string imagePickerManager = "com.onedevapp.nativeplugin.imagepicker.ImagePickerManager";
+            const string pluginMetrics = "com.onedevapp.nativeplugin.PluginMetrics";
+            const string pluginLog = "com.onedevapp.nativeplugin.PluginLog";
+            const string taskScheduler = "com.onedevapp.nativeplugin.TaskScheduler";
+
+            mDrainEvents = new JniStaticMethod(eventQueue, "drainEvents", "()I", 0);
+            mGetEventText = new JniStaticMethod(eventQueue, "getEventText", "(I)Ljava/lang/String;", 1);
+            mCheckUpdate = new JniStaticMethod(updateBridge, "checkUpdate", "(Landroid/app/Activity;IZIILjava/lang/String;)V", 6);
+            mStartUpdate = new JniStaticMethod(updateBridge, "startUpdate", "()V", 0);
+            mCompleteUpdate = new JniStaticMethod(updateBridge, "completeUpdate", "()V", 0);
+            mContinueUpdate = new JniStaticMethod(updateBridge, "continueUpdate", "()V", 0);
+            mRequestPermissions = new JniStaticMethod("com.onedevapp.nativeplugin.rt_permissions.PermissionBridge", "requestPermissions",
+                "(Landroid/app/Activity;IZ[Ljava/lang/String;)V", 4);
+            mOpenImagePicker = new JniStaticMethod(imagePickerBridge, "openImagePicker",
+                "(Landroid/app/Activity;IZIIIIIIJIIZ[I[JLcom/onedevapp/nativeplugin/imagepicker/OnImagePixelsListener;)V", 16);
+            mDecodeImageRegion = new JniStaticMethod(imagePickerBridge, "decodeImageRegion",
+                "(Landroid/app/Activity;IZLjava/lang/String;IIIIIIII)V", 12);
+            mSetMemoryBudget = new JniStaticMethod(imagePickerBridge, "setMemoryBudget", "(Landroid/app/Activity;F)V", 2);
+            mReleaseCacheFile = new JniStaticMethod(imagePickerBridge, "releaseCacheFile", "(Landroid/app/Activity;Ljava/lang/String;)V", 2);
+            mGetTransferChunk = new JniStaticMethod(imagePickerManager, "getTransferChunk", "(III)Ljava/nio/ByteBuffer;", 3);
+            mAcknowledgeTransferChunk = new JniStaticMethod(imagePickerManager, "acknowledgeTransferChunk", "(III)Z", 3);
+            mShare = new JniStaticMethod("com.onedevapp.nativeplugin.share.ShareBridge", "share",
+                "(Landroid/app/Activity;ILjava/lang/String;Ljava/lang/String;[Ljava/lang/String;[Ljava/lang/String;Ljava/lang/String;" +
+                "[Ljava/lang/String;[Ljava/lang/String;[Ljava/lang/String;Ljava/lang/String;Z)V", 12);
+            mGetMetricsSnapshot = new JniStaticMethod(pluginMetrics, "getMetricsSnapshot", "(Z)Ljava/lang/String;", 1);
+            mGetMetricsBuffer = new JniStaticMethod(pluginMetrics, "getMetricsBuffer", "(Z)Ljava/nio/ByteBuffer;", 1);
+            mGetLogEntries = new JniStaticMethod(pluginLog, "getLastEntries", "(I)Ljava/lang/String;", 1);
+            mSetLogLevel = new JniStaticMethod(pluginLog, "setLogLevel", "(I)V", 1);
+            mEnableLogPersistence = new JniStaticMethod(pluginLog, "enableLogPersistence", "(Landroid/content/Context;)Z", 1);
+            mGetPreviousSessionLog = new JniStaticMethod(pluginLog, "getPreviousSessionLog", "(Landroid/content/Context;)Ljava/lang/String;", 1);
+            mGetSchedulerSnapshot = new JniStaticMethod(taskScheduler, "getSchedulerSnapshot", "(Z)Ljava/lang/String;", 1);
+            mSetSchedulerWorkerLimit = new JniStaticMethod(taskScheduler, "setWorkerLimit", "(II)V", 2);
+        }
+
+        /// <summary>
+        /// Shares through ShareBridge, empty values are skipped natively
+        /// </summary>
+        private void Share(int target, string message, string header, string[] filePaths, string[] fileUris, string mobileNo = null,
+            string[] emailTo = null, string[] emailCc = null, string[] emailBcc = null, string subject = null, bool isHtmlText = false)
+        {
+            mShare.Begin().Object(mContext).Int(target).String(message).String(header).Array(filePaths).Array(fileUris).String(mobileNo)
+                .Array(emailTo).Array(emailCc).Array(emailBcc).String(subject).Bool(isHtmlText).CallVoid();
+        }
+
+        /// <summary>
+        /// Reads every pending native event with a single JNI call, payloads are read in place from the same buffer
+        /// and texts are fetched only for the events which have one.
+        /// An exception thrown by a handler is logged and the remaining events are still dispatched, they can't be drained again
+        /// </summary>
+        private void DrainNativeEvents()
+        {
+            int count = mDrainEvents.Begin().CallInt();
+            for (int i = 0; i < count; i++)
+            {
+                try
+                {
+                    IntPtr record = new IntPtr(mEventBuffer.ToInt64() + (long)i * EventRecordBytes);
+                    int textIndex = Marshal.ReadInt32(record, 32);
+                    string text = null;
+                    if (textIndex >= 0)
+                    {
+                        IntPtr javaText = mGetEventText.Begin().Int(textIndex).CallObject();
+                        text = AndroidJNI.GetStringUTFChars(javaText);
+                        AndroidJNI.DeleteLocalRef(javaText);
+                    }
+                    int payloadOffset = Marshal.ReadInt32(record, 36);
+                    IntPtr payload = payloadOffset >= 0 ? new IntPtr(mEventBuffer.ToInt64() + payloadOffset) : IntPtr.Zero;
+
+                    DispatchNativeEvent((NativeEventType)Marshal.ReadInt32(record, 0), Marshal.ReadInt32(record, 4),
+                        Marshal.ReadInt64(record, 8), Marshal.ReadInt64(record, 16), Marshal.ReadInt32(record, 24), Marshal.ReadInt32(record, 28), text, payload);
+                }
+                catch (Exception e)
+                {
+                    Debug.LogException(e);
+                }
+            }
+        }
+
+        /// <summary>
+        /// Raises the event of a native record, already on the main thread
+        /// </summary>
+        private void DispatchNativeEvent(NativeEventType type, int requestId, long first, long second, int third, int fourth, string text, IntPtr payload)
+        {
+            EventRequestId = requestId;
+            switch (type)
+            {
+                case NativeEventType.UPDATE_VERSION_CODE:
+                    if (OnUpdateVersionCode != null)
+                        OnUpdateVersionCode.Invoke((int)first);
+                    break;
+                case NativeEventType.UPDATE_STALENESS_DAYS:
+                    if (OnUpdateStalenessDays != null)
+                        OnUpdateStalenessDays.Invoke((int)first);
+                    break;
+                case NativeEventType.UPDATE_AVAILABLE:
+                    if (OnUpdateAvailable != null)
+                        OnUpdateAvailable.Invoke(third != 0 && fourth != 0);
+                    break;
+                case NativeEventType.UPDATE_INSTALL_STATE:
+                    if (OnUpdateInstallState != null)
+                        OnUpdateInstallState.Invoke((InstallStatus)third);
+                    break;
+                case NativeEventType.UPDATE_DOWNLOADING:
+                    if (OnUpdateDownloading != null)
+                        OnUpdateDownloading.Invoke(first, second);
+                    break;
+                case NativeEventType.UPDATE_ERROR:
+                    if (OnUpdateError != null)
+                        OnUpdateError.Invoke(third, text);
+                    break;
+                case NativeEventType.PERMISSION_GRANTED:
+                    if (OnPermissionGranted != null)
+                        OnPermissionGranted.Invoke(ReadStrings(payload, text), third != 0);
+                    break;
+                case NativeEventType.PERMISSION_DENIED:
+                    if (OnPermissionDenied != null)
+                        OnPermissionDenied.Invoke(ReadStrings(payload, text));
+                    break;
+                case NativeEventType.PERMISSION_ERROR:
+                    if (OnPermissionError != null)
+                        OnPermissionError.Invoke(text);
+                    break;
+                case NativeEventType.IMAGE_SELECTED:
+                    if (OnImagePicked != null)
+                    {
+                        if (third != 0)
+                        {
+                            if(writeLog)
+                                Debug.Log("OnImagePicked::message::" + text);
+                            OnImagePicked.Invoke(ReadImageData(payload, text, requestId), string.Empty, (ImagePickerErrorCode)fourth);
+                        }
+                        else
+                            OnImagePicked.Invoke(null, text, (ImagePickerErrorCode)fourth);
+                    }
+                    break;
+                case NativeEventType.IMAGE_PREVIEW:
+                    if (OnImagePreview != null)
+                        OnImagePreview.Invoke(ReadImageData(payload, text, requestId));
+                    break;
+                case NativeEventType.IMAGE_ITEM_SELECTED:
+                    if (OnImagesItemPicked != null)
+                    {
+                        if (third != 0)
+                            OnImagesItemPicked.Invoke((int)first, (int)second, ReadImageData(payload, text, requestId), string.Empty, (ImagePickerErrorCode)fourth);
+                        else
+                            OnImagesItemPicked.Invoke((int)first, (int)second, null, text, (ImagePickerErrorCode)fourth);
+                    }
+                    break;
+                case NativeEventType.IMAGES_COMPLETED:
+                    if (OnImagesPickCompleted != null)
+                        OnImagesPickCompleted.Invoke((int)first, (int)second);
+                    break;
+            }
+        }
+
+        /// <summary>
+        /// Image of an event, from its payload or else its json
+        /// </summary>
+        private static ImageData ReadImageData(IntPtr payload, string text, int requestId)
+        {
+            ImageData imageData = payload != IntPtr.Zero ? NativeResultReader.ReadImageData(payload) : JsonUtility.FromJson<ImageData>(text);
+            if (imageData != null)
+                imageData.requestId = requestId;
+            return imageData;
+        }
+
+        /// <summary>
+        /// Id of a new request, requests may be started from any thread
+        /// </summary>
+        private int NextRequestId()
+        {
+            return Interlocked.Increment(ref mNextRequestId);
+        }
+
+        /// <summary>
+        /// Strings of an event, from its payload or else its text separated by new lines
+        /// </summary>
+        private static string[] ReadStrings(IntPtr payload, string text)
+        {
+            if (payload != IntPtr.Zero)
+                return NativeResultReader.ReadStrings(payload);
+            return string.IsNullOrEmpty(text) ? new string[0] : text.Split('\n');
+        }
+#endif
+
 
         #region App Update
         /// <summary>
@@ -307,26 +494,19 @@ namespace OneDevApp
         /// <param name="updateMode">update mode</param>
         /// <param name="updatetype">update type</param>
         /// <param name="apkLink">new apk link</param>
-        public void CheckForUpdate(UpdateMode updateMode = UpdateMode.PLAY_STORE, UpdateType updateType = UpdateType.FLEXIBLE, string thirdPartyLink = "")
+        /// <returns>id of the request, see EventRequestId</returns>
+        public int CheckForUpdate(UpdateMode updateMode = UpdateMode.PLAY_STORE, UpdateType updateType = UpdateType.FLEXIBLE, string thirdPartyLink = "")
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Update Manager
-
-            var manager = new AndroidJavaClass("com.onedevapp.nativeplugin.inappupdate.UpdateManager");
-
-            var mUpdateManager = manager.CallStatic<AndroidJavaObject>("Builder", mContext);
-
-            mUpdateManager.Call<AndroidJavaObject>("updateMode", (int)updateMode)
-                .Call<AndroidJavaObject>("handler", new OnUpdateListener())
-                .Call<AndroidJavaObject>("updateType", (int)updateType);
-
-            if (!string.IsNullOrEmpty(thirdPartyLink))
-                mUpdateManager.Call<AndroidJavaObject>("updateLink", thirdPartyLink);
-
-            mUpdateManager.Call("checkUpdate");
-#elif UNITY_EDITOR
+            int requestId = NextRequestId();
+            // The native side keeps the update manager for StartUpdate, CompleteUpdate and ContinueUpdate
+            mCheckUpdate.Begin().Object(mContext).Int(requestId).Bool(m_jsonResults)
+                .Int((int)updateMode).Int((int)updateType).String(thirdPartyLink).CallVoid();
+            return requestId;
+#else
             if(writeLog)                
                 Debug.Log("Platform not supported");
+            return 0;
 #endif
         }
 
@@ -337,8 +517,7 @@ namespace OneDevApp
         public void StartUpdate()
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            if (mUpdateManager != null)
-                mUpdateManager.Call("startUpdate");
+            mStartUpdate.Begin().CallVoid();
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -352,8 +531,7 @@ namespace OneDevApp
         public void CompleteUpdate()
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            if (mUpdateManager != null)
-                mUpdateManager.Call("completeUpdate");
+            mCompleteUpdate.Begin().CallVoid();
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -366,8 +544,7 @@ namespace OneDevApp
         public void ContinueUpdate()
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            if (mUpdateManager != null)
-                mUpdateManager.Call("continueUpdate");
+            mContinueUpdate.Begin().CallVoid();
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -381,22 +558,18 @@ namespace OneDevApp
         /// Check for permission and returns status in OnPermissionListener.onPermissionGranted()
         /// </summary>
         /// <param name="permissions">Array of requested permissions</param>
-        public void RequestPermission(params string[] permissions)
+        /// <returns>id of the request, see EventRequestId</returns>
+        public int RequestPermission(params string[] permissions)
         {
 
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Permission Manager
-            using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.rt_permissions.PermissionManager"))
-            {
-                var mPermissionManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-                mPermissionManager
-                    .Call<AndroidJavaObject>("handler", new OnPermissionListener())
-                    .Call<AndroidJavaObject>("addPermissions", javaArrayFromCS(permissions))
-                    .Call("requestPermission");
-            }
-#elif UNITY_EDITOR
+            int requestId = NextRequestId();
+            mRequestPermissions.Begin().Object(mContext).Int(requestId).Bool(m_jsonResults).Array(permissions).CallVoid();
+            return requestId;
+#else
             if(writeLog)
                 Debug.Log("Platform not supported");
+            return 0;
 #endif
         }
 
@@ -404,22 +577,18 @@ namespace OneDevApp
         /// Check for permission and returns status in OnPermissionListener.onPermissionGranted()
         /// </summary>
         /// <param name="permissions">Array of requested permissions</param>
-        public void RequestPermission(string permission)
+        /// <returns>id of the request, see EventRequestId</returns>
+        public int RequestPermission(string permission)
         {
 
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Permission Manager
-            using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.rt_permissions.PermissionManager"))
-            {
-                var mPermissionManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-                mPermissionManager
-                    .Call<AndroidJavaObject>("handler", new OnPermissionListener())
-                    .Call<AndroidJavaObject>("addPermission", permission)
-                    .Call("requestPermission");
-            }
-#elif UNITY_EDITOR
+            int requestId = NextRequestId();
+            mRequestPermissions.Begin().Object(mContext).Int(requestId).Bool(m_jsonResults).Array(new string[] { permission }).CallVoid();
+            return requestId;
+#else
             if(writeLog)
                 Debug.Log("Platform not supported");
+            return 0;
 #endif
         }
 
@@ -466,22 +635,182 @@ namespace OneDevApp
         /// <param name="maxWidth">image max width to compress</param>
         /// <param name="maxHeight">image max height to compress</param>
         /// <param name="quality">image quality from 1 to 100</param>
-        public void GetImageFromDevice(ImagePickerType pickerType = ImagePickerType.CHOICE, int maxWidth = 612, int maxHeight = 816, int quality = 80)
+        /// <param name="resultMode">FILE returns OnImagePicked with cache file, RAW_PIXELS returns OnImagePixelsPicked with texture</param>
+        /// <param name="format">format of the compressed image</param>
+        /// <param name="maxFileSize">max size of the compressed image in bytes, quality is lowered (and the image scaled down) to fit, 0 keeps quality as it is</param>
+        /// <param name="previewSize">max side of a preview sent with OnImagePreview before the final image, 0 disables it</param>
+        /// <param name="renditions">extra outputs derived from the same decode, returned in ImageData.renditions (FILE mode only)</param>
+        /// <param name="lazyOrientation">keep the stored orientation of the pixels, ImageData.rotation and ImageData.mirrored tell how to display them upright</param>
+        /// <returns>id of the request, see EventRequestId</returns>
+        public int GetImageFromDevice(ImagePickerType pickerType = ImagePickerType.CHOICE, int maxWidth = 612, int maxHeight = 816, int quality = 80, ImageResultMode resultMode = ImageResultMode.FILE,
+            ImageFormat format = ImageFormat.JPEG, long maxFileSize = 0, int previewSize = 0, ImageRendition[] renditions = null, bool lazyOrientation = false)
         {
 
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize ImagePicker Manager
+            int requestId = NextRequestId();
+            // Renditions are packed as max width, max height, format and quality, see ImagePickerBridge
+            int[] packedRenditions = null;
+            long[] renditionMaxFileSizes = null;
+            if (renditions != null && renditions.Length > 0)
+            {
+                packedRenditions = new int[renditions.Length * 4];
+                renditionMaxFileSizes = new long[renditions.Length];
+                for (int i = 0; i < renditions.Length; i++)
+                {
+                    packedRenditions[i * 4] = renditions[i].maxWidth;
+                    packedRenditions[i * 4 + 1] = renditions[i].maxHeight;
+                    packedRenditions[i * 4 + 2] = (int)renditions[i].format;
+                    packedRenditions[i * 4 + 3] = renditions[i].quality;
+                    renditionMaxFileSizes[i] = renditions[i].maxFileSize;
+                }
+            }
+
+            mOpenImagePicker.Begin().Object(mContext).Int(requestId).Bool(m_jsonResults)
+                .Int((int)pickerType).Int(1).Int(maxWidth).Int(maxHeight).Int(quality).Int((int)format).Long(maxFileSize)
+                .Int((int)resultMode).Int(previewSize).Bool(lazyOrientation).Array(packedRenditions).Array(renditionMaxFileSizes)
+                .Proxy(resultMode == ImageResultMode.RAW_PIXELS ? new OnImagePixelsListener() : null)
+                .CallVoid();
+            return requestId;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return 0;
+#endif
+        }
 
+        /// <summary>
+        /// Get multiple images from gallery, each image is reported with OnImagesItemPicked followed by OnImagesPickCompleted
+        /// </summary>
+        /// <param name="maxImages">max images to pick, up to 30</param>
+        /// <param name="maxWidth">image max width to compress</param>
+        /// <param name="maxHeight">image max height to compress</param>
+        /// <param name="quality">image quality from 1 to 100</param>
+        /// <param name="format">format of the compressed images</param>
+        /// <param name="maxFileSize">max size of each compressed image in bytes, 0 keeps quality as it is</param>
+        /// <returns>id of the request, see EventRequestId</returns>
+        public int GetImagesFromGallery(int maxImages = 30, int maxWidth = 612, int maxHeight = 816, int quality = 80,
+            ImageFormat format = ImageFormat.JPEG, long maxFileSize = 0)
+        {
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+            int requestId = NextRequestId();
+            mOpenImagePicker.Begin().Object(mContext).Int(requestId).Bool(m_jsonResults)
+                .Int((int)ImagePickerType.GALLERY).Int(maxImages).Int(maxWidth).Int(maxHeight).Int(quality).Int((int)format).Long(maxFileSize)
+                .Int((int)ImageResultMode.FILE).Int(0).Bool(false).Array((int[])null).Array((long[])null).Proxy(null)
+                .CallVoid();
+            return requestId;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return 0;
+#endif
+        }
+
+        /// <summary>
+        /// Decode a region of a large image at full resolution, result is returned with OnImagePicked.
+        /// Coordinates are in the stored pixel orientation of the source, see ImageData.orientation
+        /// </summary>
+        /// <param name="source">file path or content uri of the image, e.g. ImageData.path or ImageData.uri</param>
+        /// <param name="region">region to decode in source pixels</param>
+        /// <param name="outWidth">width of the output image</param>
+        /// <param name="outHeight">height of the output image</param>
+        /// <param name="quality">quality from 1 to 100</param>
+        /// <param name="format">format of the output image</param>
+        /// <returns>id of the request, see EventRequestId</returns>
+        public int DecodeImageRegion(string source, RectInt region, int outWidth, int outHeight, int quality = 80, ImageFormat format = ImageFormat.JPEG)
+        {
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+            int requestId = NextRequestId();
+            mDecodeImageRegion.Begin().Object(mContext).Int(requestId).Bool(m_jsonResults).String(source)
+                .Int(region.x).Int(region.y).Int(region.width).Int(region.height).Int(outWidth).Int(outHeight).Int(quality).Int((int)format).CallVoid();
+            return requestId;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return 0;
+#endif
+        }
+
+        /// <summary>
+        /// Read the encoded image of an ImageResultMode.BYTES result, pulled in chunks so it never crosses as a single string.
+        /// The native buffer is freed once the last chunk is read
+        /// </summary>
+        /// <param name="imageData">result received with OnImagePicked</param>
+        /// <param name="chunkSize">bytes pulled per call, at most 1 MB</param>
+        /// <returns>encoded image bytes, null when the transfer is unknown or already read</returns>
+        public byte[] ReadImageBytes(ImageData imageData, int chunkSize = 256 * 1024)
+        {
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+            if (imageData == null || imageData.transferId <= 0)
+                return null;
+
+            byte[] bytes = new byte[imageData.transferSize];
+            int offset = 0;
+            while (offset < bytes.Length)
+            {
+                int read = ReadImageChunk(imageData.transferId, offset, bytes, offset, Math.Min(chunkSize, bytes.Length - offset));
+                if (read <= 0)
+                    return null;
+                offset += read;
+            }
+            return bytes;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return null;
+#endif
+        }
+
+        /// <summary>
+        /// Copy a chunk of an ImageResultMode.BYTES result into the destination array and acknowledge it,
+        /// the native buffer is freed with the last chunk
+        /// </summary>
+        /// <param name="transferId">ImageData.transferId of the result</param>
+        /// <param name="offset">offset of the chunk in the image</param>
+        /// <param name="destination">array receiving the chunk</param>
+        /// <param name="destinationIndex">index in the array of the first byte</param>
+        /// <param name="length">bytes wanted, fewer are copied at the end of the image</param>
+        /// <returns>bytes copied, 0 when the transfer is unknown</returns>
+        public int ReadImageChunk(int transferId, int offset, byte[] destination, int destinationIndex, int length)
+        {
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+            IntPtr chunk = mGetTransferChunk.Begin().Int(transferId).Int(offset).Int(length).CallObject();
+            if (chunk == IntPtr.Zero)
+                return 0;
+
+            //the chunk is a view of the native buffer sliced to its length, copied straight into the managed array
+            IntPtr address;
+            unsafe
+            {
+                address = (IntPtr)AndroidJNI.GetDirectBufferAddress(chunk);
+            }
+            int read = (int)AndroidJNI.GetDirectBufferCapacity(chunk);
+            Marshal.Copy(address, destination, destinationIndex, read);
+            AndroidJNI.DeleteLocalRef(chunk);
+
+            mAcknowledgeTransferChunk.Begin().Int(transferId).Int(offset).Int(read).CallBool();
+            return read;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return 0;
+#endif
+        }
+
+        /// <summary>
+        /// Free an ImageResultMode.BYTES result which won't be read to the end
+        /// </summary>
+        /// <param name="transferId">ImageData.transferId of the result</param>
+        public void ReleaseImageBytes(int transferId)
+        {
+
+#if UNITY_ANDROID && !UNITY_EDITOR
             using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.imagepicker.ImagePickerManager"))
             {
-                var mImagePickerManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-                mImagePickerManager
-                    .Call<AndroidJavaObject>("setPickerType", (int)pickerType)
-                    .Call<AndroidJavaObject>("setMaxWidth", maxWidth)
-                    .Call<AndroidJavaObject>("handler", new OnImageSelectedListener())
-                    .Call<AndroidJavaObject>("setMaxHeight", maxHeight)
-                    .Call<AndroidJavaObject>("setQuality", quality)
-                    .Call("openImagePicker");
+                jc.CallStatic("releaseTransfer", transferId);
             }
 #elif UNITY_EDITOR
             if(writeLog)
@@ -489,6 +818,38 @@ namespace OneDevApp
 #endif
         }
 
+        /// <summary>
+        /// Release a cache file of a result once it is read or copied. Files handed out with OnImagePicked, OnImagePreview,
+        /// OnImagesItemPicked and their renditions are kept by the cache until released, up to the 256 most recent ones
+        /// </summary>
+        /// <param name="cacheFilePath">ImageData.cacheFilePath or ImageRenditionData.cacheFilePath of the result</param>
+        public void ReleaseImageFile(string cacheFilePath)
+        {
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+            mReleaseCacheFile.Begin().Object(mContext).String(cacheFilePath).CallVoid();
+#elif UNITY_EDITOR
+            if(writeLog)
+                Debug.Log("Platform not supported");
+#endif
+        }
+
+        /// <summary>
+        /// Set the share of the app memory a single image decode may use. Larger images are decoded to RGB_565,
+        /// by tiles or smaller than requested to stay within it, see ImageData.memory
+        /// </summary>
+        /// <param name="share">share from 0.05 to 1, 0.25 by default and 0.15 on low RAM devices</param>
+        public void SetImageMemoryBudget(float share)
+        {
+
+#if UNITY_ANDROID && !UNITY_EDITOR
+            mSetMemoryBudget.Begin().Object(mContext).Float(share).CallVoid();
+#elif UNITY_EDITOR
+            if(writeLog)
+                Debug.Log("Platform not supported");
+#endif
+        }
+
         #endregion
 
         #region Share
@@ -503,22 +864,7 @@ namespace OneDevApp
         public void ShareOnWhatsApp(string message, string mobileNo = "", string filePath = "", bool isFileUri = false, string header = "")
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Share Manager
-            using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.share.ShareManager"))
-            {
-                var mShareManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-
-                mShareManager.Call<AndroidJavaObject>("setMessage", message);
-
-                if (!string.IsNullOrEmpty(filePath))
-                    mShareManager.Call<AndroidJavaObject>(isFileUri ? "addFileUri" : "addFilePath", filePath);
-                if (!string.IsNullOrEmpty(mobileNo))
-                    mShareManager.Call<AndroidJavaObject>("setWhatsAppMobileNo", mobileNo);
-                if (!string.IsNullOrEmpty(header))
-                    mShareManager.Call<AndroidJavaObject>("setHeader", header);
-
-                mShareManager.Call("shareOnWhatsApp");
-            }
+            Share(ShareWhatsApp, message, header, isFileUri ? null : new string[] { filePath }, isFileUri ? new string[] { filePath } : null, mobileNo);
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -532,19 +878,7 @@ namespace OneDevApp
         public void ShareTextContent(string message, string header = "")
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Share Manager
-            using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.share.ShareManager"))
-            {
-                var mShareManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-
-                mShareManager.Call<AndroidJavaObject>("setMessage", message);
-
-                if (!string.IsNullOrEmpty(header))
-                    mShareManager.Call<AndroidJavaObject>("setHeader", header);
-
-                mShareManager.Call("shareTextContent");
-            }
-
+            Share(ShareText, message, header, null, null);
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -561,21 +895,7 @@ namespace OneDevApp
         public void ShareFileContent(string message, string filePath = "", bool isFileUri = false, string header = "")
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Share Manager
-            using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.share.ShareManager"))
-            {
-                var mShareManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-
-                mShareManager.Call<AndroidJavaObject>("setMessage", message);
-
-                if (!string.IsNullOrEmpty(filePath))
-                    mShareManager.Call<AndroidJavaObject>(isFileUri ? "addFileUri" : "addFilePath", filePath);
-                if (!string.IsNullOrEmpty(header))
-                    mShareManager.Call<AndroidJavaObject>("setHeader", header);
-
-                mShareManager.Call("shareFileContent");
-            }
-
+            Share(ShareFile, message, header, isFileUri ? null : new string[] { filePath }, isFileUri ? new string[] { filePath } : null);
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -591,31 +911,7 @@ namespace OneDevApp
         public void ShareMultipleFileContent(string message, MultipleFilesData fileData, string header = "")
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Share Manager
-            using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.share.ShareManager"))
-            {
-                var mShareManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-
-                mShareManager.Call<AndroidJavaObject>("setMessage", message);
-
-                if (fileData.filePath != null || fileData.filePath.Length > 0)
-                {
-                    mShareManager.Call<AndroidJavaObject>("addMultipleFilePaths", javaArrayFromCS(fileData.filePath));
-                }
-
-                if (fileData.fileUri != null || fileData.fileUri.Length > 0)
-                {
-                    foreach (string fileUri in fileData.fileUri)
-                        mShareManager.Call<AndroidJavaObject>("addFileUri", fileUri);
-                }
-
-                if (!string.IsNullOrEmpty(header))
-                    mShareManager.Call<AndroidJavaObject>("setHeader", header);
-
-                mShareManager.Call("shareMultipleFileContent");
-            }
-
-
+            Share(ShareMultipleFiles, message, header, fileData.filePath, fileData.fileUri);
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -630,45 +926,8 @@ namespace OneDevApp
         public void ShareOnMail(EmailSharingData emailData, string header = "")
         {
 #if UNITY_ANDROID && !UNITY_EDITOR
-            // Initialize Share Manager
-
-            using (AndroidJavaClass jc = new AndroidJavaClass("com.onedevapp.nativeplugin.share.ShareManager"))
-            {
-                var mShareManager = jc.CallStatic<AndroidJavaObject>("Builder", mContext);
-
-                mShareManager.Call<AndroidJavaObject>("setMessage", emailData.message);
-
-                if (emailData.emailTo.Length > 0)
-                {
-                    mShareManager.Call<AndroidJavaObject>("addMultipleEmailAddress", javaArrayFromCS(emailData.emailTo));
-                }
-
-                if (emailData.emailCc.Length > 0)
-                {
-                    mShareManager.Call<AndroidJavaObject>("addMultipleEmailCcAddress", javaArrayFromCS(emailData.emailCc));
-                }
-
-                if (emailData.emailBcc.Length > 0)
-                {
-                    mShareManager.Call<AndroidJavaObject>("addMultipleEmailBccAddress", javaArrayFromCS(emailData.emailBcc));
-                }
-
-                if (emailData.fileData.filePath.Length > 0)
-                {
-                    mShareManager.Call<AndroidJavaObject>("addMultipleFilePaths", javaArrayFromCS(emailData.fileData.filePath));
-                }
-
-                if (emailData.fileData.fileUri.Length > 0)
-                {
-                    foreach (string fileUri in emailData.fileData.fileUri)
-                        mShareManager.Call<AndroidJavaObject>("addFileUri", fileUri);
-                }
-
-                if (!string.IsNullOrEmpty(header))
-                    mShareManager.Call<AndroidJavaObject>("setHeader", header);
-
-                mShareManager.Call("shareOnEmail", new object[] { emailData.subject, emailData.isHtmlText });
-            }
+            Share(ShareEmail, emailData.message, header, emailData.fileData.filePath, emailData.fileData.fileUri, null,
+                emailData.emailTo, emailData.emailCc, emailData.emailBcc, emailData.subject, emailData.isHtmlText);
 #elif UNITY_EDITOR
             if(writeLog)
                 Debug.Log("Platform not supported");
@@ -902,6 +1161,94 @@ namespace OneDevApp
         }
         #endregion
 
+        #region Metrics
+        /// <summary>
+        /// Counts, errors and latency histograms of every plugin operation and phase as json,
+        /// e.g. {"periodMs":..,"firstBucketMicros":128,"metrics":{"imageDecode":{"count":..,"errors":..,"meanMicros":..,"maxMicros":..,"buckets":[..]}}}.
+        /// Bucket i counts latencies below firstBucketMicros << i, the last bucket the rest
+        /// </summary>
+        /// <param name="reset">start over from zero once read</param>
+        /// <returns>json of the metrics, empty when not supported</returns>
+        public string GetMetricsSnapshot(bool reset = false)
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            IntPtr javaText = mGetMetricsSnapshot.Begin().Bool(reset).CallObject();
+            string text = AndroidJNI.GetStringUTFChars(javaText);
+            AndroidJNI.DeleteLocalRef(javaText);
+            return text;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return string.Empty;
+#endif
+        }
+
+        /// <summary>
+        /// The same metrics in their compact binary layout, see PluginMetrics.java, to be shipped with telemetry as they are
+        /// </summary>
+        /// <param name="reset">start over from zero once read</param>
+        /// <returns>bytes of the metrics, null when not supported</returns>
+        public byte[] GetMetricsSnapshotBytes(bool reset = false)
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            IntPtr buffer = mGetMetricsBuffer.Begin().Bool(reset).CallObject();
+            if (buffer == IntPtr.Zero)
+                return null;
+
+            IntPtr address;
+            unsafe
+            {
+                address = (IntPtr)AndroidJNI.GetDirectBufferAddress(buffer);
+            }
+            byte[] bytes = new byte[(int)AndroidJNI.GetDirectBufferCapacity(buffer)];
+            Marshal.Copy(address, bytes, 0, bytes.Length);
+            AndroidJNI.DeleteLocalRef(buffer);
+            return bytes;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return null;
+#endif
+        }
+
+        /// <summary>
+        /// Queues of the native task scheduler as json, e.g. {"io":{"workers":..,"active":..,"depth":..,"peakDepth":..,"maxDepth":..,
+        /// "submitted":..,"completed":..,"failed":..,"cancelled":..,"rejected":..},"cpu":{..}}.
+        /// The time tasks waited in each queue is in the metrics as ioQueueWait and cpuQueueWait
+        /// </summary>
+        /// <param name="resetPeaks">start the peak depths over once read</param>
+        /// <returns>json of the queues, empty when not supported</returns>
+        public string GetSchedulerSnapshot(bool resetPeaks = false)
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            IntPtr javaText = mGetSchedulerSnapshot.Begin().Bool(resetPeaks).CallObject();
+            string text = AndroidJNI.GetStringUTFChars(javaText);
+            AndroidJNI.DeleteLocalRef(javaText);
+            return text;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return string.Empty;
+#endif
+        }
+
+        /// <summary>
+        /// Cap the native threads of a scheduler queue, e.g. lower the CPU queue while a heavy scene is loading.
+        /// Running tasks finish before extra threads are released
+        /// </summary>
+        /// <param name="queue">queue to cap</param>
+        /// <param name="workers">threads allowed, at least 1</param>
+        public void SetSchedulerWorkerLimit(TaskQueue queue, int workers)
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            mSetSchedulerWorkerLimit.Begin().Int((int)queue).Int(workers).CallVoid();
+#elif UNITY_EDITOR
+            if(writeLog)
+                Debug.Log("Platform not supported");
+#endif
+        }
+        #endregion
+
         #region Debug
         /// <summary>
         /// By default puglin console log will be diabled, but can be enabled
@@ -919,28 +1266,75 @@ namespace OneDevApp
             writeLog = showLog;
 #endif
         }
-        #endregion
 
+        /// <summary>
+        /// Set the lowest level kept in the native log ring, INFO by default, whether logcat is enabled or not
+        /// </summary>
+        /// <param name="level">lowest level kept</param>
+        public void SetLogLevel(PluginLogLevel level)
+        {
 #if UNITY_ANDROID && !UNITY_EDITOR
+            mSetLogLevel.Begin().Int((int)level).CallVoid();
+#elif UNITY_EDITOR
+            if(writeLog)
+                Debug.Log("Platform not supported");
+#endif
+        }
+
         /// <summary>
-        /// Converts Csharp array to java array
-        /// https://stackoverflow.com/questions/42681410/androidjavaobject-call-array-passing-error-unity-for-android
+        /// Last entries of the native log ring, e.g. for a crash report
         /// </summary>
-        /// <param name="values"></param>
-        /// <returns></returns>
-        private AndroidJavaObject javaArrayFromCS(string[] values)
+        /// <param name="count">max number of entries, the ring keeps the last 256</param>
+        /// <returns>entries as "time level message", oldest first</returns>
+        public string[] GetLogEntries(int count = 50)
         {
-            AndroidJavaClass arrayClass = new AndroidJavaClass("java.lang.reflect.Array");
-            AndroidJavaObject arrayObject = arrayClass.CallStatic<AndroidJavaObject>("newInstance", new AndroidJavaClass("java.lang.String"), values.Length);
-            for (int i = 0; i < values.Length; ++i)
-            {
-                arrayClass.CallStatic("set", arrayObject, i, new AndroidJavaObject("java.lang.String", values[i]));
-            }
+#if UNITY_ANDROID && !UNITY_EDITOR
+            IntPtr javaText = mGetLogEntries.Begin().Int(count).CallObject();
+            string text = AndroidJNI.GetStringUTFChars(javaText);
+            AndroidJNI.DeleteLocalRef(javaText);
+            return string.IsNullOrEmpty(text) ? new string[0] : text.Split('\n');
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return new string[0];
+#endif
+        }
 
-            return arrayObject;
+        /// <summary>
+        /// Persist the native log to a memory-mapped file in the cache dir, kept by the system if the app crashes.
+        /// Call it early, the log of the previous session is then read with GetPreviousSessionLog
+        /// </summary>
+        /// <returns>true if enabled</returns>
+        public bool EnableLogPersistence()
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            return mEnableLogPersistence.Begin().Object(mContext).CallBool();
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return false;
+#endif
         }
-        
+
+        /// <summary>
+        /// Native log persisted by the previous session, e.g. to attach to a crash report
+        /// </summary>
+        /// <returns>entries one per line, empty when there is none</returns>
+        public string GetPreviousSessionLog()
+        {
+#if UNITY_ANDROID && !UNITY_EDITOR
+            IntPtr javaText = mGetPreviousSessionLog.Begin().Object(mContext).CallObject();
+            string text = AndroidJNI.GetStringUTFChars(javaText);
+            AndroidJNI.DeleteLocalRef(javaText);
+            return text;
+#else
+            if(writeLog)
+                Debug.Log("Platform not supported");
+            return string.Empty;
 #endif
+        }
+        #endregion
+
     }
 
 }
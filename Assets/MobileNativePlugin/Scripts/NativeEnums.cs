@@ -13,6 +13,49 @@
         GALLERY = 2
     }
 
+    /// <summary>
+    /// Image picker result options
+    /// </summary>
+    public enum ImageResultMode
+    {
+        // Compressed image saved to the cache, returns cacheFilePath
+        FILE = 0,
+        // RGBA32 pixels loaded straight into a Texture2D, no cache file
+        RAW_PIXELS = 1,
+        // Compressed image saved to the cache and held for MobileNativeManager.ReadImageBytes, returns transferId
+        BYTES = 2
+    }
+
+    /// <summary>
+    /// Image picker compressed image format
+    /// </summary>
+    public enum ImageFormat
+    {
+        JPEG = 0,
+        PNG = 1,
+        WEBP = 2
+    }
+
+    /// <summary>
+    /// Type of a record drained from the native event queue
+    /// </summary>
+    public enum NativeEventType
+    {
+        UPDATE_VERSION_CODE = 1,
+        UPDATE_STALENESS_DAYS = 2,
+        UPDATE_AVAILABLE = 3,
+        UPDATE_INSTALL_STATE = 4,
+        UPDATE_DOWNLOADING = 5,
+        UPDATE_ERROR = 6,
+        PERMISSION_GRANTED = 10,
+        PERMISSION_DENIED = 11,
+        PERMISSION_ERROR = 12,
+        IMAGE_SELECTED = 20,
+        IMAGE_PREVIEW = 21,
+        IMAGE_ITEM_SELECTED = 22,
+        IMAGES_COMPLETED = 23
+    }
+
     /// <summary>
     /// Status of a error.
     /// </summary>
@@ -82,4 +125,28 @@
         ERROR_STORAGE_PERMISSION = -101,
         ERROR_NETWORK = -102
     }
+
+    /// <summary>
+    /// Level of the plugin log, as android.util.Log
+    /// </summary>
+    public enum PluginLogLevel
+    {
+        DEBUG = 3,
+        INFO = 4,
+        WARN = 5,
+        ERROR = 6,
+        // Keep nothing in the log ring
+        NONE = 7
+    }
+
+    /// <summary>
+    /// Queue of the native task scheduler
+    /// </summary>
+    public enum TaskQueue
+    {
+        // Blocking file, network and system service calls
+        IO = 0,
+        // Image decoding and encoding
+        CPU = 1
+    }
 }
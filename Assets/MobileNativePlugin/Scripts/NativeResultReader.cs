@@ -0,0 +1,186 @@
+﻿using System;
+using System.Runtime.InteropServices;
+using System.Text;
+
+namespace OneDevApp
+{
+    /// <summary>
+    /// NativeResultReader reads the binary payloads of native events in place from the event buffer, without json.
+    /// A payload starts with its version, kind and length, fields follow in a fixed order and new ones are only appended,
+    /// so the fields a newer plugin adds are skipped by the length. Called on the main thread only
+    /// </summary>
+    internal static class NativeResultReader
+    {
+        const int HeaderBytes = 8;
+        const int KindImage = 1;
+        const int KindStrings = 2;
+
+        const int FlagPreview = 4;
+        const int FlagMemory = 8;
+
+        static readonly ImageRenditionData[] NoRenditions = new ImageRenditionData[0];
+        // MIME types of the ImageFormat indexes, as the image json reports them
+        static readonly string[] MimeTypes = { "image/jpeg", "image/png", "image/webp" };
+        static byte[] sScratch = new byte[256];
+
+        /// <summary>
+        /// Reads an image payload
+        /// </summary>
+        /// <returns>the image details, null if the payload is not an image</returns>
+        public static ImageData ReadImageData(IntPtr payload)
+        {
+            Cursor cursor;
+            if (!Open(payload, KindImage, out cursor))
+                return null;
+
+            ImageData imageData = new ImageData();
+            imageData.status = true;
+            imageData.width = cursor.ReadInt32();
+            imageData.height = cursor.ReadInt32();
+            imageData.orientation = cursor.ReadInt32();
+            imageData.rotation = cursor.ReadInt32();
+            imageData.mirrored = cursor.ReadByte() != 0;
+            int flags = cursor.ReadByte();
+            imageData.preview = (flags & FlagPreview) != 0;
+            imageData.mimeType = GetMimeType(cursor.ReadByte());
+            cursor.Skip(1);
+            imageData.quality = cursor.ReadInt32();
+            imageData.fileSize = cursor.ReadInt64();
+            imageData.transferId = cursor.ReadInt32();
+            imageData.transferSize = cursor.ReadInt32();
+            imageData.uri = cursor.ReadString();
+            imageData.path = cursor.ReadString();
+            imageData.cacheFilePath = cursor.ReadString();
+            imageData.captureDate = cursor.ReadString();
+
+            if ((flags & FlagMemory) != 0)
+            {
+                ImageMemoryPlan memory = new ImageMemoryPlan();
+                memory.sampleSize = cursor.ReadInt32();
+                memory.tiled = cursor.ReadByte() != 0;
+                cursor.Skip(1);     // rotated, reported by orientation
+                memory.lowRamDevice = cursor.ReadByte() != 0;
+                cursor.Skip(1);
+                memory.estimatedBytes = cursor.ReadInt64();
+                memory.budgetBytes = cursor.ReadInt64();
+                memory.config = cursor.ReadString();
+                imageData.memory = memory;
+            }
+
+            int count = cursor.ReadInt32();
+            imageData.renditions = count > 0 ? new ImageRenditionData[count] : NoRenditions;
+            for (int i = 0; i < count; i++)
+            {
+                int start = cursor.Offset;
+                int length = cursor.ReadInt32();
+                ImageRenditionData rendition = new ImageRenditionData();
+                rendition.width = cursor.ReadInt32();
+                rendition.height = cursor.ReadInt32();
+                rendition.mimeType = GetMimeType(cursor.ReadByte());
+                rendition.quality = cursor.ReadInt32();
+                rendition.fileSize = cursor.ReadInt64();
+                rendition.cacheFilePath = cursor.ReadString();
+                rendition.orientation = cursor.ReadInt32();
+                rendition.rotation = cursor.ReadInt32();
+                rendition.mirrored = cursor.ReadByte() != 0;
+                imageData.renditions[i] = rendition;
+                cursor.Offset = start + length;
+            }
+            return imageData;
+        }
+
+        /// <summary>
+        /// Reads a list of strings payload, e.g. permissions
+        /// </summary>
+        /// <returns>the strings, empty if the payload is not a list of strings</returns>
+        public static string[] ReadStrings(IntPtr payload)
+        {
+            Cursor cursor;
+            if (!Open(payload, KindStrings, out cursor))
+                return new string[0];
+
+            string[] values = new string[cursor.ReadInt32()];
+            for (int i = 0; i < values.Length; i++)
+                values[i] = cursor.ReadString();
+            return values;
+        }
+
+        private static string GetMimeType(int formatIndex)
+        {
+            return formatIndex < MimeTypes.Length ? MimeTypes[formatIndex] : string.Empty;
+        }
+
+        private static bool Open(IntPtr payload, int kind, out Cursor cursor)
+        {
+            cursor = new Cursor(payload, HeaderBytes, Marshal.ReadInt32(payload, 4));
+            return Marshal.ReadByte(payload, 1) == kind;
+        }
+
+        /// <summary>
+        /// Reads the fields of one payload in order, a read past the payload length throws a FormatException
+        /// </summary>
+        private struct Cursor
+        {
+            private readonly IntPtr mPayload;
+            private readonly int mLength;
+            public int Offset;
+
+            public Cursor(IntPtr payload, int offset, int length)
+            {
+                mPayload = payload;
+                mLength = length;
+                Offset = offset;
+            }
+
+            public void Skip(int bytes)
+            {
+                Offset += bytes;
+            }
+
+            public byte ReadByte()
+            {
+                Require(1);
+                byte value = Marshal.ReadByte(mPayload, Offset);
+                Offset += 1;
+                return value;
+            }
+
+            public int ReadInt32()
+            {
+                Require(4);
+                int value = Marshal.ReadInt32(mPayload, Offset);
+                Offset += 4;
+                return value;
+            }
+
+            public long ReadInt64()
+            {
+                Require(8);
+                long value = Marshal.ReadInt64(mPayload, Offset);
+                Offset += 8;
+                return value;
+            }
+
+            public string ReadString()
+            {
+                int length = ReadInt32();
+                if (length < 0)
+                    return null;
+                if (length == 0)
+                    return string.Empty;
+                Require(length);
+                if (sScratch.Length < length)
+                    sScratch = new byte[Math.Max(length, sScratch.Length * 2)];
+                Marshal.Copy(new IntPtr(mPayload.ToInt64() + Offset), sScratch, 0, length);
+                Offset += length;
+                return Encoding.UTF8.GetString(sScratch, 0, length);
+            }
+
+            private void Require(int bytes)
+            {
+                if (Offset + bytes > mLength)
+                    throw new FormatException("Native payload of " + mLength + " bytes truncated at " + Offset);
+            }
+        }
+    }
+}
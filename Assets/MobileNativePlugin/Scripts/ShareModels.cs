@@ -14,11 +14,65 @@ public class ImageData
     public int errorCode;
     public int width;
     public int height;
-    public int mimeType;
+    public string mimeType;
     public int orientation;
+    public int rotation;
+    public bool mirrored;
     public string uri;
     public string path;
     public string cacheFilePath;
+    public int stride;
+    public string format;
+    public int quality;
+    public long fileSize;
+    public string captureDate;
+    public ImageMemoryPlan memory;
+    public bool preview;
+    public ImageRenditionData[] renditions;
+    public int transferId;
+    public int transferSize;
+    public int requestId;
+}
+/// <summary>
+/// ImageRenditionData class model for an extra output of the picked image
+/// </summary>
+[Serializable]
+public class ImageRenditionData
+{
+    public int width;
+    public int height;
+    public string mimeType;
+    public int orientation;
+    public int rotation;
+    public bool mirrored;
+    public string cacheFilePath;
+    public long fileSize;
+    public int quality;
+}
+/// <summary>
+/// ImageRendition class model for requesting an extra output of the picked image
+/// </summary>
+[Serializable]
+public class ImageRendition
+{
+    public int maxWidth;
+    public int maxHeight;
+    public ImageFormat format = ImageFormat.JPEG;
+    public int quality = 80;
+    public long maxFileSize = 0;
+}
+/// <summary>
+/// ImageMemoryPlan class model for the decode decisions taken to stay within the memory budget
+/// </summary>
+[Serializable]
+public class ImageMemoryPlan
+{
+    public string config;
+    public int sampleSize;
+    public bool tiled;
+    public long estimatedBytes;
+    public long budgetBytes;
+    public bool lowRamDevice;
 }
 /// <summary>
 /// EmailSharingData class model for sharing email content details